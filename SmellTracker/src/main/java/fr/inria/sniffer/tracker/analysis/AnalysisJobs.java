@@ -0,0 +1,146 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JobQueries;
+import fr.inria.sniffer.tracker.analysis.query.Query;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run the stages of a project analysis while recording their progress in the persistence,
+ * thus enabling to resume an interrupted analysis.
+ */
+final class AnalysisJobs {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobs.class.getName());
+    static final String RUNNING = "RUNNING";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    private final int projectId;
+    private final Persistence persistence;
+    private final JobQueries jobQueries;
+    private int skippedStages;
+
+    AnalysisJobs(int projectId, Persistence persistence, JobQueries jobQueries) {
+        this.projectId = projectId;
+        this.persistence = persistence;
+        this.jobQueries = jobQueries;
+    }
+
+    /**
+     * Run the analysis stages in order, recording the status of each one.
+     * <p>
+     * On resume, the stages preceding the first unfinished one are skipped.
+     * The partial results of the following stages are removed before running them again.
+     * The analysis stops on the first failed stage, since the following ones depend on its results.
+     *
+     * @param stages The analysis stages, in execution order.
+     * @param resume True to skip the stages completed by a previous execution.
+     * @return True if all the executed stages succeeded, false if a stage failed.
+     */
+    boolean run(List<Query> stages, boolean resume) {
+        int first = 0;
+        if (resume) {
+            first = firstUnfinishedStage(stages, statuses());
+            skippedStages = first;
+            logger.info("[" + projectId + "] Resuming analysis after " + first + " completed stages");
+            for (int i = stages.size() - 1; i >= first; i--) {
+                stages.get(i).cleanup();
+            }
+        }
+
+        Query stage;
+        String name;
+        for (int i = first; i < stages.size(); i++) {
+            stage = stages.get(i);
+            name = stageName(stage);
+            start(name);
+            try {
+                stage.query();
+                done(name);
+            } catch (QueryException e) {
+                logger.warn("An error occurred during query!", e);
+                failed(name, e.toString());
+                return false;
+            } catch (RuntimeException e) {
+                failed(name, e.toString());
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the last run skipped stages completed by a previous execution.
+     */
+    boolean resumed() {
+        return skippedStages > 0;
+    }
+
+    /**
+     * Find the first stage that was not completed by a previous execution.
+     *
+     * @param stages   The analysis stages, in execution order.
+     * @param statuses The status of the previously started stages, by stage name.
+     * @return The index of the first unfinished stage, the number of stages if all of them are completed.
+     */
+    static int firstUnfinishedStage(List<Query> stages, Map<String, String> statuses) {
+        for (int i = 0; i < stages.size(); i++) {
+            if (!DONE.equals(statuses.get(stageName(stages.get(i))))) {
+                return i;
+            }
+        }
+        return stages.size();
+    }
+
+    private static String stageName(Query stage) {
+        return stage.getClass().getSimpleName();
+    }
+
+    /**
+     * Retrieve the status of the project stages started so far.
+     *
+     * @return The stages status, by stage name.
+     */
+    Map<String, String> statuses() {
+        Map<String, String> statuses = new HashMap<>();
+        for (Map<String, Object> job : persistence.query(jobQueries.jobStatusesQuery(projectId))) {
+            statuses.put((String) job.get("stage"), (String) job.get("status"));
+        }
+        return statuses;
+    }
+
+    void start(String stage) {
+        persistence.execute(jobQueries.jobStartStatement(projectId, stage, RUNNING));
+    }
+
+    void done(String stage) {
+        persistence.execute(jobQueries.jobEndStatement(projectId, stage, DONE, null));
+    }
+
+    void failed(String stage, String error) {
+        persistence.execute(jobQueries.jobEndStatement(projectId, stage, FAILED, error));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+/**
+ * Options tuning how a project is analyzed, shared by the single and multiple projects analyses.
+ * The options not given on the command line default to the {@link Main} constants.
+ */
+public final class AnalysisOptions {
+    public static final AnalysisOptions DEFAULT = new AnalysisOptions(Main.SMELL_ANALYSIS_THREADS,
+            Main.DATABASE_TRANSACTION_SIZE, Main.GIT_CLI_DETAILS, Main.SMELL_PRESENCE_INTERVALS,
+            Main.SMELL_BITMAP_ANALYSIS);
+    // Values of the commit details option.
+    private static final String GIT_DETAILS_JGIT = "jgit";
+    private static final String GIT_DETAILS_CLI = "cli";
+
+    // Number of smell types analyzed simultaneously, each one using its own connection.
+    public final int smellThreads;
+    // Written statements per database transaction, 0 to autocommit, 1 to commit on each persisted batch.
+    public final int transactionSize;
+    // Compute commit details by executing the local git program instead of JGit.
+    public final boolean gitCliDetails;
+    // Persist smell presence as intervals of branch commits instead of one row per commit.
+    public final boolean presenceIntervals;
+    // Compute the smell introductions and refactorings of whole branches on in-memory presence bitmaps.
+    public final boolean bitmapAnalysis;
+
+    AnalysisOptions(int smellThreads, int transactionSize, boolean gitCliDetails, boolean presenceIntervals,
+                    boolean bitmapAnalysis) {
+        this.smellThreads = smellThreads;
+        this.transactionSize = transactionSize;
+        this.gitCliDetails = gitCliDetails;
+        this.presenceIntervals = presenceIntervals;
+        this.bitmapAnalysis = bitmapAnalysis;
+    }
+
+    /**
+     * Constructor for command line arguments
+     *
+     * @param arguments The command line arguments.
+     */
+    AnalysisOptions(Namespace arguments) {
+        this(
+                arguments.getInt("smellThreads"),
+                arguments.getInt("transactionSize"),
+                GIT_DETAILS_CLI.equals(arguments.getString("gitDetails")),
+                arguments.getBoolean("presenceIntervals"),
+                arguments.getBoolean("bitmapAnalysis")
+        );
+    }
+
+    /**
+     * Defines the available analysis options.
+     *
+     * @param parser The parser to configure
+     */
+    static void setArguments(Subparser parser) {
+        parser.addArgument("--smellThreads")
+                .help("Number of smell types analyzed simultaneously, without single pass nor pipelined persistence")
+                .type(Integer.class)
+                .setDefault(Main.SMELL_ANALYSIS_THREADS)
+                .required(false);
+
+        parser.addArgument("--transactionSize")
+                .help("Written statements per database transaction, 0 to autocommit, 1 to commit each persisted batch")
+                .type(Integer.class)
+                .setDefault(Main.DATABASE_TRANSACTION_SIZE)
+                .required(false);
+
+        parser.addArgument("--gitDetails")
+                .help("Compute the commit details with JGit or by executing the local git program")
+                .type(String.class)
+                .choices(GIT_DETAILS_JGIT, GIT_DETAILS_CLI)
+                .setDefault(Main.GIT_CLI_DETAILS ? GIT_DETAILS_CLI : GIT_DETAILS_JGIT)
+                .required(false);
+
+        parser.addArgument("--presenceIntervals")
+                .help("Persist the smell presence as intervals of branch commits instead of one row per commit")
+                .action(Arguments.storeTrue())
+                .setDefault(Main.SMELL_PRESENCE_INTERVALS);
+
+        parser.addArgument("--bitmapAnalysis")
+                .help("Compute the smell changes of whole branches on in-memory bitmaps, unless extending an analysis")
+                .action(Arguments.storeTrue())
+                .setDefault(Main.SMELL_BITMAP_ANALYSIS);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import fr.inria.sniffer.tracker.analysis.model.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order the project analyses longest first, so that the largest projects do not delay the end of the run.
+ * <p>
+ * The cost of a project is estimated from its number of commits and the size of its Paprika database.
+ * Projects analyzed in a previous run are predicted to last as long as their last analysis,
+ * which also calibrates the predicted durations of the other projects.
+ */
+final class AnalysisScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisScheduler.class.getName());
+    // Rough size of the Paprika graph for a single commit, to weigh the databases against commit counts.
+    private static final long PAPRIKA_BYTES_PER_COMMIT = 1024 * 1024;
+    static final long UNKNOWN = -1;
+
+    // Duration of the last analysis of each project, in milliseconds.
+    private final Map<String, Long> history;
+
+    /**
+     * @param history Duration of the previous analysis of each project, in milliseconds.
+     */
+    AnalysisScheduler(Map<String, Long> history) {
+        this.history = history;
+    }
+
+    /**
+     * Estimate the cost of a project analysis.
+     *
+     * @param app        The project name.
+     * @param repository Local path of the project repository, or its remote location.
+     * @param paprikaDB  Path to the project Paprika database.
+     * @return The estimated analysis.
+     */
+    ScheduledAnalysis estimate(String app, String repository, String paprikaDB) {
+        long commits = repository != null && Files.exists(Paths.get(repository)) ? countCommits(repository) : 0;
+        long paprikaSize = FilesUtils.directorySize(Paths.get(paprikaDB));
+        return new ScheduledAnalysis(app, repository, paprikaDB,
+                commits + paprikaSize / PAPRIKA_BYTES_PER_COMMIT, history.getOrDefault(app, UNKNOWN));
+    }
+
+    private static long countCommits(String repository) {
+        Repository gitRepository = new Repository(repository);
+        try {
+            gitRepository.initializeRepository();
+            return gitRepository.getCommitCount();
+        } catch (Repository.RepositoryException | IOException e) {
+            logger.warn("Unable to count commits of repository: " + repository, e);
+            return 0;
+        } finally {
+            gitRepository.finalizeRepository();
+        }
+    }
+
+    /**
+     * Predict the duration of each analysis and sort them longest first.
+     * <p>
+     * Without any previous analysis, projects are sorted on their estimated cost only.
+     *
+     * @param analyses The estimated analyses.
+     * @return The analyses in scheduling order.
+     */
+    List<ScheduledAnalysis> schedule(List<ScheduledAnalysis> analyses) {
+        long knownCost = 0;
+        long knownDuration = 0;
+        for (ScheduledAnalysis analysis : analyses) {
+            if (analysis.previousDuration != UNKNOWN && analysis.cost > 0) {
+                knownCost += analysis.cost;
+                knownDuration += analysis.previousDuration;
+            }
+        }
+        double millisPerCost = knownCost > 0 ? (double) knownDuration / knownCost : UNKNOWN;
+        for (ScheduledAnalysis analysis : analyses) {
+            if (analysis.previousDuration != UNKNOWN) {
+                analysis.predictedDuration = analysis.previousDuration;
+            } else if (millisPerCost != UNKNOWN) {
+                analysis.predictedDuration = Math.round(analysis.cost * millisPerCost);
+            }
+        }
+
+        List<ScheduledAnalysis> scheduled = new ArrayList<>(analyses);
+        if (millisPerCost != UNKNOWN) {
+            scheduled.sort(Comparator.comparingLong((ScheduledAnalysis analysis) -> analysis.predictedDuration).reversed());
+        } else {
+            scheduled.sort(Comparator.comparingLong((ScheduledAnalysis analysis) -> analysis.cost).reversed());
+        }
+        return scheduled;
+    }
+
+    /**
+     * Log the predicted and actual duration of each analysis, in scheduling order.
+     *
+     * @param analyses The finished analyses.
+     */
+    void report(List<ScheduledAnalysis> analyses) {
+        logger.info("Analyses durations (predicted / actual, in seconds):");
+        for (ScheduledAnalysis analysis : analyses) {
+            logger.info("  " + analysis.app + ": " + seconds(analysis.predictedDuration)
+                    + " / " + seconds(analysis.actualDuration) + " (cost: " + analysis.cost + ")");
+        }
+    }
+
+    private static String seconds(long millis) {
+        return millis == UNKNOWN ? "?" : String.valueOf(millis / 1000);
+    }
+
+    /**
+     * A project analysis along with its estimated cost and durations.
+     */
+    static final class ScheduledAnalysis {
+        final String app;
+        final String repository;
+        final String paprikaDB;
+        final long cost;
+        final long previousDuration;
+        long predictedDuration = UNKNOWN;
+        volatile long actualDuration = UNKNOWN;
+
+        ScheduledAnalysis(String app, String repository, String paprikaDB, long cost, long previousDuration) {
+            this.app = app;
+            this.repository = repository;
+            this.paprikaDB = paprikaDB;
+            this.cost = cost;
+            this.previousDuration = previousDuration;
+        }
+    }
+}
@@ -23,19 +23,24 @@ import java.util.concurrent.Callable;
 public enum AnalysisType {
     SINGLE_APP {
         @Override
-        public Callable<Void> getCallable(String application, String repository, String paprikaDB,
-                                          String githubToken, String url, DataSource connections) {
-            return new SingleAppAnalysisCallable(application, repository, paprikaDB, githubToken, url, connections);
+        public Callable<Boolean> getCallable(String application, String repository, String paprikaDB,
+                                             String githubToken, String url, DataSource connections, boolean resume,
+                                             AnalysisOptions options) {
+            return new SingleAppAnalysisCallable(application, repository, paprikaDB, githubToken, url, connections,
+                    resume, options);
         }
     },
     SUPPLEMENTARY {
         @Override
-        public Callable<Void> getCallable(String application, String repository, String paprikaDB,
-                                          String githubToken, String url, DataSource connections) {
-            return new SupplementaryAnalysisCallable(application, repository, paprikaDB, connections);
+        public Callable<Boolean> getCallable(String application, String repository, String paprikaDB,
+                                             String githubToken, String url, DataSource connections, boolean resume,
+                                             AnalysisOptions options) {
+            return new SupplementaryAnalysisCallable(application, repository, paprikaDB, connections, resume,
+                    options);
         }
     };
 
-    public abstract Callable<Void> getCallable(String application, String repository, String paprikaDB,
-                                               String githubToken, String url, DataSource connections);
+    public abstract Callable<Boolean> getCallable(String application, String repository, String paprikaDB,
+                                                  String githubToken, String url, DataSource connections,
+                                                  boolean resume, AnalysisOptions options);
 }
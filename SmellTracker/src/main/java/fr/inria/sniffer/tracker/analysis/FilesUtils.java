@@ -52,4 +52,34 @@ public class FilesUtils {
         }
         toRemove.toFile().delete();
     }
+
+    /**
+     * Compute the total size of the regular files under the given path.
+     *
+     * @param path The file or directory to measure.
+     * @return The size in bytes, 0 if the path does not exist.
+     */
+    public static long directorySize(Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long[] size = {0};
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to measure directory: " + path.toString(), e);
+        }
+        return size[0];
+    }
 }
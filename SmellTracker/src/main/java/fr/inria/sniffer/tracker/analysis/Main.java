@@ -31,6 +31,30 @@ public class Main {
     public static final String DATABASE_URL = "//127.0.0.1:5432/tracker";
     public static final String DATABASE_USERNAME = "tracker";
     public static final String DATABASE_PASSWORD = "tracker";
+    // Default written statements per database transaction, 0 to autocommit, 1 to commit on each persisted batch.
+    public static final int DATABASE_TRANSACTION_SIZE = 0;
+    // Compute commit details by executing the local git program instead of JGit by default.
+    public static final boolean GIT_CLI_DETAILS = false;
+    // Read the details of all commits from a single git process, instead of one process per commit.
+    public static final boolean GIT_CLI_SINGLE_PROCESS = true;
+    // Default number of smell types analyzed simultaneously for a single project, each one using its own connection.
+    public static final int SMELL_ANALYSIS_THREADS = 1;
+    // Analyze all smell types in a single pass ordered by commit when using a single thread.
+    public static final boolean SMELL_SINGLE_PASS = true;
+    // Persist smell presence as intervals of branch commits instead of one row per commit by default.
+    public static final boolean SMELL_PRESENCE_INTERVALS = false;
+    // Compute the smell introductions and refactorings of whole branches on in-memory presence bitmaps.
+    public static final boolean SMELL_BITMAP_ANALYSIS = false;
+    // Smell instances read ahead from Paprika for each smell type, in single pass analysis.
+    public static final int SMELL_READ_BUFFER_SIZE = 1024;
+    // Class qualified names of renamed files kept in cache while guessing the original smells.
+    public static final int QUALIFIED_NAME_CACHE_SIZE = 4096;
+    // Analyzed commits after which the smell statements are handed to the persistence, 0 to wait for the end of the pass.
+    public static final int SMELL_COMMIT_INTERVAL = 100;
+    // Commits queued for the database writer thread while analyzing smells, 0 to write on the analysis thread.
+    public static final int PERSISTENCE_QUEUE_DEPTH = 4;
+    // Default memory in megabytes shared by the simultaneous project analyses, 0 to use the maximum heap size.
+    public static final long MULTI_ANALYSIS_MEMORY_BUDGET = 0;
     public static final String GITHUB_URL = "https://github.com/";
 
     private static final Logger logger = LoggerFactory.getLogger(Main.class.getName());
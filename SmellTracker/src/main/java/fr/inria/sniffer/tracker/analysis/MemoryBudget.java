@@ -0,0 +1,130 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Memory shared by the simultaneous project analyses.
+ * <p>
+ * Each project reserves its estimated footprint before starting, and releases it once done.
+ * A project is only admitted when its footprint fits in the remaining memory,
+ * or when no other project is running, thus a single oversized project is still analyzed.
+ * <p>
+ * The footprint ratios below are rough guesses that were never calibrated against measured analyses,
+ * and remote repositories are not measured at all before being cloned.
+ * The heap actually used is logged as each project completes, next to its estimate,
+ * so that the budget can be tuned from the command line.
+ */
+final class MemoryBudget {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class.getName());
+    private static final long MEGABYTE = 1024 * 1024;
+    // Analysis state retained regardless of the project size.
+    private static final long BASE_FOOTPRINT = 64 * MEGABYTE;
+    // Memory retained per byte of Paprika database, mostly the Neo4j caches.
+    private static final int PAPRIKA_DB_RATIO = 2;
+    // Memory retained per byte of git repository, i.e. commits maps and JGit caches.
+    private static final int REPOSITORY_RATIO = 1;
+
+    private final long budget;
+    private long reserved = 0;
+    private int running = 0;
+
+    /**
+     * @param budget The memory available to the analyses, in bytes.
+     */
+    MemoryBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Create a budget from the configuration, defaulting to the maximum heap size.
+     *
+     * @param budgetMegabytes The configured budget in megabytes, 0 to use the maximum heap size.
+     * @return The new {@link MemoryBudget}.
+     */
+    static MemoryBudget create(long budgetMegabytes) {
+        return new MemoryBudget(budgetMegabytes > 0 ? budgetMegabytes * MEGABYTE : Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * Estimate the memory retained while analyzing a project, from the size of its inputs.
+     *
+     * @param paprikaDB  Path to the project Paprika database.
+     * @param repository Local path of the project repository, or its remote location.
+     * @return The estimated footprint in bytes.
+     */
+    static long estimate(String paprikaDB, String repository) {
+        long paprikaSize = FilesUtils.directorySize(Paths.get(paprikaDB));
+        // Remote repositories are not measured before being cloned.
+        long repositorySize = 0;
+        if (repository != null) {
+            Path gitDir = Paths.get(repository, ".git");
+            repositorySize = FilesUtils.directorySize(Files.exists(gitDir) ? gitDir : Paths.get(repository));
+        }
+        return BASE_FOOTPRINT + PAPRIKA_DB_RATIO * paprikaSize + REPOSITORY_RATIO * repositorySize;
+    }
+
+    /**
+     * Wait until the given footprint fits in the budget, then reserve it.
+     *
+     * @param footprint The footprint to reserve, in bytes.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    synchronized void reserve(long footprint) throws InterruptedException {
+        while (running > 0 && reserved + footprint > budget) {
+            wait();
+        }
+        reserved += footprint;
+        running++;
+        logger.info("Reserved " + footprint / MEGABYTE + "MB, " + reserved / MEGABYTE + "MB of "
+                + budget / MEGABYTE + "MB in use by " + running + " analyses");
+    }
+
+    /**
+     * Release a footprint previously reserved.
+     *
+     * @param footprint The footprint to release, in bytes.
+     */
+    synchronized void release(long footprint) {
+        reserved -= footprint;
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * @return The heap currently used by the whole process, in bytes.
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @param bytes A memory size in bytes.
+     * @return The size in megabytes.
+     */
+    static long megabytes(long bytes) {
+        return bytes / MEGABYTE;
+    }
+}
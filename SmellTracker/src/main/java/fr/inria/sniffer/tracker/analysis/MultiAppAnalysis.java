@@ -18,6 +18,13 @@
 package fr.inria.sniffer.tracker.analysis;
 
 import com.mchange.v2.c3p0.DataSources;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.PostgresqlPersistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCJobQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCProjectQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JobQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.ProjectQueries;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.LoggerFactory;
@@ -30,9 +37,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -52,6 +62,11 @@ public class MultiAppAnalysis {
     private final String appLocalRepositories;
     private AnalysisType analysisType;
     private final DataSource connectionPool;
+    private final MemoryBudget memoryBudget;
+    private final boolean resume;
+    private final AnalysisOptions options;
+    private final ProjectQueries projectQueries = new JDBCProjectQueries();
+    private final JobQueries jobQueries = new JDBCJobQueries();
 
     /**
      * Start a simultaneous analysis on multiple projects.
@@ -61,9 +76,15 @@ public class MultiAppAnalysis {
      * @param githubToken          Github API token to query on developers.
      * @param threadsCount         Number of available threads for the analysis.
      * @param appLocalRepositories Path to the git remoteRepositories of applications to avoid cloning them, under the form repos/$appName.
+     * @param resume               True to skip the applications and stages completed by a previous run.
+     * @param memoryBudget         Memory in megabytes shared by the simultaneous analyses, 0 to use the maximum heap size.
+     * @param options              The options tuning each project analysis.
      */
-    MultiAppAnalysis(String appsFile, String paprikaDBs, String githubToken, int threadsCount, String appLocalRepositories, AnalysisType analysisType) {
+    MultiAppAnalysis(String appsFile, String paprikaDBs, String githubToken, int threadsCount, String appLocalRepositories,
+                     AnalysisType analysisType, boolean resume, long memoryBudget, AnalysisOptions options) {
         this.paprikaDBs = paprikaDBs;
+        this.resume = resume;
+        this.options = options;
         this.githubToken = githubToken;
         this.threadsCount = threadsCount;
         this.appLocalRepositories = appLocalRepositories;
@@ -73,6 +94,7 @@ public class MultiAppAnalysis {
         remoteRepositories = new HashMap<>();
         parseAppsCSV(Paths.get(appsFile));
         connectionPool = initializeConnectionPool();
+        this.memoryBudget = MemoryBudget.create(memoryBudget);
     }
 
     private void parseAppsCSV(Path appsFile) {
@@ -96,7 +118,7 @@ public class MultiAppAnalysis {
 
     }
 
-    private DataSource initializeConnectionPool() {
+    static DataSource initializeConnectionPool() {
         try {
             DataSource ds_unpooled = DataSources.unpooledDataSource(
                     "jdbc:postgresql:" + Main.DATABASE_URL, Main.DATABASE_USERNAME, Main.DATABASE_PASSWORD);
@@ -106,28 +128,157 @@ public class MultiAppAnalysis {
         }
     }
 
+    /**
+     * Close the pooled connections and stop the pool helper threads.
+     *
+     * @param connections The pool created by {@link #initializeConnectionPool()}.
+     */
+    static void destroyConnectionPool(DataSource connections) {
+        try {
+            DataSources.destroy(connections);
+        } catch (SQLException e) {
+            logger.warn("Unable to close the connection pool", e);
+        }
+    }
+
     public void analyze() throws InterruptedException {
         logger.info("Starting multi application analysis using " + threadsCount + " threads");
-        ExecutorService executorService = Executors.newWorkStealingPool(threadsCount);
-        String repository;
-        String paprikaDB;
+        // Analyses are started in submission order, longest first.
+        ExecutorService executorService = Executors.newFixedThreadPool(threadsCount);
+        AnalysisScheduler scheduler = new AnalysisScheduler(loadAnalysisHistory());
+        List<AnalysisScheduler.ScheduledAnalysis> schedule = new ArrayList<>();
+        Set<String> completed = resume ? loadCompletedApplications() : Collections.emptySet();
+        for (String app : applications) {
+            if (completed.contains(app)) {
+                logger.info("Skipping already analyzed app: " + app);
+                continue;
+            }
+            schedule.add(scheduler.estimate(app, chooseRepository(app),
+                    Paths.get(paprikaDBs, app, "databases", "graph.db").toString()));
+        }
+        schedule = scheduler.schedule(schedule);
 
-        Callable<Void> analysis;
+        Callable<Boolean> analysis;
+        long footprint;
 
-        for (String app : applications) {
-            repository = chooseRepository(app);
-            paprikaDB = Paths.get(paprikaDBs, app, "databases", "graph.db").toString();
-            analysis = analysisType.getCallable(app, repository, paprikaDB, githubToken, remoteRepositories.get(app), connectionPool);
+        for (AnalysisScheduler.ScheduledAnalysis scheduled : schedule) {
+            analysis = analysisType.getCallable(scheduled.app, scheduled.repository, scheduled.paprikaDB,
+                    githubToken, remoteRepositories.get(scheduled.app), connectionPool, resume, options);
+            // We only start the analysis once its estimated footprint fits in memory.
+            footprint = MemoryBudget.estimate(scheduled.paprikaDB, scheduled.repository);
+            memoryBudget.reserve(footprint);
             logger.info("New app analysis: " + analysis);
-            executorService.submit(analysis);
+            executorService.submit(releasing(analysis, scheduled, footprint));
         }
 
         executorService.shutdown();
         executorService.awaitTermination(24, TimeUnit.HOURS);
 
+        destroyConnectionPool(connectionPool);
+
+        scheduler.report(schedule);
         logger.info("Done.");
     }
 
+    /**
+     * Wrap the analysis to release its memory footprint once done, whatever the outcome,
+     * and record its duration for the next runs when all its stages were completed by this run.
+     *
+     * @param analysis  The analysis to run.
+     * @param scheduled The scheduled analysis, receiving its actual duration.
+     * @param footprint The memory footprint reserved for the analysis.
+     * @return The wrapped analysis.
+     */
+    private Callable<Boolean> releasing(Callable<Boolean> analysis, AnalysisScheduler.ScheduledAnalysis scheduled,
+                                        long footprint) {
+        return () -> {
+            long start = System.currentTimeMillis();
+            boolean complete = false;
+            try {
+                complete = analysis.call();
+            } catch (Exception e) {
+                logger.error("Unable to perform analysis " + analysis, e);
+            } finally {
+                memoryBudget.release(footprint);
+                scheduled.actualDuration = System.currentTimeMillis() - start;
+                // The heap is shared by the running analyses, thus only an upper bound of this one.
+                logger.info("Analysis of " + scheduled.app + " finished with "
+                        + MemoryBudget.megabytes(MemoryBudget.usedHeap()) + "MB of heap in use, estimated footprint: "
+                        + MemoryBudget.megabytes(footprint) + "MB");
+            }
+            // Failed or resumed analyses would make the next schedules underestimate the project.
+            if (complete) {
+                recordAnalysisDuration(scheduled.app, scheduled.actualDuration);
+            }
+            return complete;
+        };
+    }
+
+    /**
+     * Load the duration of the last analysis of each project, of the current analysis type.
+     *
+     * @return The durations in milliseconds by project name, empty if unavailable.
+     */
+    private Map<String, Long> loadAnalysisHistory() {
+        Map<String, Long> history = new HashMap<>();
+        for (Map<String, Object> run : queryPool(projectQueries.lastAnalysisDurationsQuery(analysisType.name()))) {
+            history.put((String) run.get("name"), ((Number) run.get("duration")).longValue());
+        }
+        logger.info("Found previous analysis durations for " + history.size() + " projects");
+        return history;
+    }
+
+    /**
+     * Load the applications whose analysis of the current type was completed by a previous run.
+     *
+     * @return The completed applications names.
+     */
+    private Set<String> loadCompletedApplications() {
+        Set<String> completed = new HashSet<>();
+        for (Map<String, Object> project : queryPool(jobQueries.projectsWithStatusQuery(analysisType.name(), AnalysisJobs.DONE))) {
+            completed.add((String) project.get("name"));
+        }
+        logger.info("Resuming analysis, " + completed.size() + " applications already completed");
+        return completed;
+    }
+
+    /**
+     * Query the persistence using a pooled connection.
+     *
+     * @param statement The query statement to execute.
+     * @return The resulting rows, empty if no connection could be made.
+     */
+    private List<Map<String, Object>> queryPool(String statement) {
+        Persistence persistence;
+        try {
+            persistence = new PostgresqlPersistence(connectionPool.getConnection());
+        } catch (SQLException e) {
+            logger.warn("Unable to query database: " + statement, e);
+            return Collections.emptyList();
+        }
+        try {
+            persistence.initialize();
+            return persistence.query(statement);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private void recordAnalysisDuration(String app, long duration) {
+        Persistence persistence;
+        try {
+            persistence = new PostgresqlPersistence(connectionPool.getConnection());
+        } catch (SQLException e) {
+            logger.warn("Unable to record analysis duration of project " + app, e);
+            return;
+        }
+        try {
+            persistence.execute(projectQueries.analysisRunInsertStatement(app, analysisType.name(), duration));
+        } finally {
+            persistence.close();
+        }
+    }
+
     private String chooseRepository(String app) {
         if (appLocalRepositories != null) {
             return Paths.get(appLocalRepositories, app).toString();
@@ -148,7 +299,10 @@ public class MultiAppAnalysis {
                 arguments.getString("githubToken"),
                 arguments.getInt("threads"),
                 arguments.getString("repositories"),
-                arguments.get("type") != null ? arguments.get("type") : AnalysisType.SINGLE_APP
+                arguments.get("type") != null ? arguments.get("type") : AnalysisType.SINGLE_APP,
+                arguments.getBoolean("resume"),
+                arguments.getLong("memoryBudget"),
+                new AnalysisOptions(arguments)
         );
     }
 
@@ -190,5 +344,16 @@ public class MultiAppAnalysis {
                 .type(String.class)
                 .required(false);
 
+        parser.addArgument("--resume")
+                .help("Skip the applications and analysis stages completed by a previous run")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--memoryBudget")
+                .help("Memory in megabytes shared by the simultaneous analyses, 0 to use the maximum heap size")
+                .type(Long.class)
+                .setDefault(Main.MULTI_ANALYSIS_MEMORY_BUDGET)
+                .required(false);
+
+        AnalysisOptions.setArguments(parser);
     }
 }
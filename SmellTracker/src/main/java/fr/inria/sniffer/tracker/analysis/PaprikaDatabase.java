@@ -0,0 +1,50 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import fr.inria.sniffer.detector.neo4j.QueryEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Open the Paprika database of a project once for all the queries using it.
+ */
+final class PaprikaDatabase {
+    private static final Logger logger = LoggerFactory.getLogger(PaprikaDatabase.class.getName());
+
+    private PaprikaDatabase() {
+    }
+
+    /**
+     * Open the Paprika database, logging its startup time and the time saved
+     * by sharing it instead of opening it for each query.
+     *
+     * @param appId     The project identifier, for logging.
+     * @param paprikaDB Path to the Paprika database.
+     * @param queries   Number of queries sharing the database.
+     * @return The opened {@link QueryEngine}, to shut down once all queries are done.
+     */
+    static QueryEngine open(int appId, String paprikaDB, int queries) {
+        long start = System.nanoTime();
+        QueryEngine queryEngine = new QueryEngine(paprikaDB);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        logger.info("[" + appId + "] Paprika database opened in " + elapsed + "ms, shared by " + queries
+                + " queries (~" + elapsed * (queries - 1) + "ms saved)");
+        return queryEngine;
+    }
+}
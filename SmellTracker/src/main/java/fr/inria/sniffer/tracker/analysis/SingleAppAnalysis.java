@@ -20,25 +20,30 @@ package fr.inria.sniffer.tracker.analysis;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.DeveloperQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCBranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCCommitQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCJobQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCProjectQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.PostgresqlPersistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCDeveloperQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCSmellQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JobQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.ProjectQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
-import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import fr.inria.sniffer.tracker.analysis.query.branch.BranchQuery;
 import fr.inria.sniffer.tracker.analysis.query.commit.CommitsQuery;
 import fr.inria.sniffer.tracker.analysis.query.smell.SmellQuery;
+import fr.inria.sniffer.detector.neo4j.QueryEngine;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -58,16 +63,33 @@ public class SingleAppAnalysis implements Analysis {
     private final String paprikaDB;
     private final String githubToken;
     private final String projectUrl;
+    // Queries of the analysis process using the Paprika database.
+    private static final int PAPRIKA_QUERIES = 2;
+    // Name of the whole analysis in the jobs status.
+    static final String ANALYSIS_STAGE = AnalysisType.SINGLE_APP.name();
+    private final boolean resume;
+    private final boolean incremental;
+    private final AnalysisOptions options;
+    private final JobQueries jobQueries = new JDBCJobQueries();
 
     private List<Query> getAnalysisProcess(int appId, Repository repository, Persistence persistence,
+                                           QueryEngine queryEngine, DataSource connections,
                                            ProjectQueries projectQueries, DeveloperQueries developerQueries,
                                            CommitQueries commitQueries, SmellQueries smellQueries,
-                                           BranchQueries branchQueries) {
+                                           BranchQueries branchQueries, Map<String, Object> lastCommit) {
         List<Query> analysisProcess = new ArrayList<>();
+        // Only the history following the last persisted commit is analyzed, if any.
+        String sinceSha = lastCommit == null ? null : (String) lastCommit.get("sha1");
+        int sinceId = lastCommit == null ? 0 : (int) lastCommit.get("id");
+        // Identifiers resolved by each step are reused by the following ones.
+        IdCache idCache = new IdCache();
 
-        analysisProcess.add(new CommitsQuery(appId, paprikaDB, repository, persistence, developerQueries, commitQueries));
-        analysisProcess.add(new BranchQuery(appId, repository, persistence, commitQueries, branchQueries));
-        analysisProcess.add(new SmellQuery(appId, paprikaDB, persistence, commitQueries, smellQueries, branchQueries));
+        analysisProcess.add(new CommitsQuery(appId, queryEngine, repository, persistence, developerQueries, commitQueries,
+                idCache, sinceSha, options));
+        analysisProcess.add(new BranchQuery(appId, repository, persistence, commitQueries, branchQueries, idCache,
+                lastCommit != null));
+        analysisProcess.add(new SmellQuery(appId, queryEngine, persistence, commitQueries, smellQueries, branchQueries,
+                idCache, connections, options, sinceId));
 
         // if (githubToken != null) {
         //     analysisProcess.add(new DevelopersQuery(appRepo, githubToken));
@@ -84,11 +106,45 @@ public class SingleAppAnalysis implements Analysis {
      * @param githubToken Github API token to query on developers.
      */
     SingleAppAnalysis(String appName, String appRepo, String paprikaDB, String githubToken, String url) {
+        this(appName, appRepo, paprikaDB, githubToken, url, false);
+    }
+
+    /**
+     * Compute a single project analysis, possibly resuming a previous one.
+     *
+     * @param resume True to skip the stages completed by a previous analysis of the project.
+     */
+    SingleAppAnalysis(String appName, String appRepo, String paprikaDB, String githubToken, String url,
+                      boolean resume) {
+        this(appName, appRepo, paprikaDB, githubToken, url, resume, false);
+    }
+
+    /**
+     * Compute a single project analysis, possibly only on the commits added since the previous one.
+     *
+     * @param resume      True to skip the stages completed by a previous analysis of the project.
+     * @param incremental True to only analyze the commits following the ones of a completed analysis.
+     */
+    SingleAppAnalysis(String appName, String appRepo, String paprikaDB, String githubToken, String url,
+                      boolean resume, boolean incremental) {
+        this(appName, appRepo, paprikaDB, githubToken, url, resume, incremental, AnalysisOptions.DEFAULT);
+    }
+
+    /**
+     * Compute a single project analysis using the given options.
+     *
+     * @param options The options tuning the analysis.
+     */
+    SingleAppAnalysis(String appName, String appRepo, String paprikaDB, String githubToken, String url,
+                      boolean resume, boolean incremental, AnalysisOptions options) {
         this.appName = appName;
         this.appRepo = appRepo;
         this.paprikaDB = paprikaDB;
         this.githubToken = githubToken;
         projectUrl = url;
+        this.resume = resume;
+        this.incremental = incremental;
+        this.options = options;
     }
 
     /**
@@ -111,6 +167,29 @@ public class SingleAppAnalysis implements Analysis {
         return (int) result.get(0).get("id");
     }
 
+    /**
+     * Find the last commit persisted by a completed analysis of the project.
+     *
+     * @param appId         The project identifier.
+     * @param jobs          The project analysis jobs.
+     * @param persistence   The persistence to read from.
+     * @param commitQueries The commit queries to use.
+     * @return The id and sha1 of the last persisted commit, null if the project has to be fully analyzed.
+     */
+    private static Map<String, Object> fetchLastAnalyzedCommit(int appId, AnalysisJobs jobs, Persistence persistence,
+                                                               CommitQueries commitQueries) {
+        if (!AnalysisJobs.DONE.equals(jobs.statuses().get(ANALYSIS_STAGE))) {
+            logger.warn("[" + appId + "] No completed analysis to extend, analyzing the whole history");
+            return null;
+        }
+        List<Map<String, Object>> result = persistence.query(commitQueries.lastPersistedCommitQuery(appId));
+        if (result.isEmpty()) {
+            return null;
+        }
+        logger.info("[" + appId + "] Extending analysis from commit: " + result.get(0).get("sha1"));
+        return result.get(0);
+    }
+
     public void analyze() throws AnalysisException {
         // TODO: Use dependency injection someday
         // Persistence persistence = new SQLitePersistence("output.sqlite");
@@ -118,38 +197,81 @@ public class SingleAppAnalysis implements Analysis {
         ProjectQueries projectQueries = new JDBCProjectQueries();
         DeveloperQueries developerQueries = new JDBCDeveloperQueries();
         CommitQueries commitQueries = new JDBCCommitQueries(developerQueries);
-        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries);
+        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries, options.presenceIntervals);
         BranchQueries branchQueries = new JDBCBranchQueries(commitQueries, smellQueries);
-        this.analyze(persistence, projectQueries, developerQueries, commitQueries, smellQueries, branchQueries);
+        // Smell types are only analyzed simultaneously using pooled connections.
+        DataSource connections = options.smellThreads > 1 ? MultiAppAnalysis.initializeConnectionPool() : null;
+        try {
+            this.analyze(persistence, connections,
+                    projectQueries, developerQueries, commitQueries, smellQueries, branchQueries);
+        } finally {
+            if (connections != null) {
+                MultiAppAnalysis.destroyConnectionPool(connections);
+            }
+        }
     }
 
-    public void analyze(Persistence persistence,
-                        ProjectQueries projectQueries, DeveloperQueries developerQueries,
-                        CommitQueries commitQueries, SmellQueries smellQueries,
-                        BranchQueries branchQueries) throws AnalysisException {
-        persistence.initialize();
-        int appId = persistApp(appName, projectUrl, persistence, projectQueries);
+    public boolean analyze(Persistence persistence,
+                           ProjectQueries projectQueries, DeveloperQueries developerQueries,
+                           CommitQueries commitQueries, SmellQueries smellQueries,
+                           BranchQueries branchQueries) throws AnalysisException {
+        return this.analyze(persistence, null, projectQueries, developerQueries, commitQueries, smellQueries, branchQueries);
+    }
 
-        Repository repository = new Repository(appRepo);
+    /**
+     * Compute the analysis on the given persistence.
+     *
+     * @param persistence The persistence to write on.
+     * @param connections Pool of connections for the simultaneous analyses, may be null to only use persistence.
+     * @return True if all the analysis stages were run and succeeded, false if some failed or were resumed.
+     */
+    public boolean analyze(Persistence persistence, DataSource connections,
+                           ProjectQueries projectQueries, DeveloperQueries developerQueries,
+                           CommitQueries commitQueries, SmellQueries smellQueries,
+                           BranchQueries branchQueries) throws AnalysisException {
+        boolean complete;
+        // The project resources are always released, the analysis state being dropped along with them.
         try {
-            repository.initializeRepository();
-        } catch (Repository.RepositoryException e) {
-            throw new AnalysisException("Unable to open repository", e);
-        }
-        logger.info("[" + appId + "] Analyzing application: " + appName);
-        for (Query process : getAnalysisProcess(appId, repository, persistence,
-                projectQueries, developerQueries, commitQueries, smellQueries, branchQueries)) {
+            persistence.initialize();
+            persistence.setTransactionSize(options.transactionSize);
+            int appId = persistApp(appName, projectUrl, persistence, projectQueries);
+
+            Repository repository = new Repository(appRepo);
             try {
-                process.query();
-            } catch (QueryException e) {
-                logger.warn("An error occurred during query!", e);
+                repository.initializeRepository();
+            } catch (Repository.RepositoryException e) {
+                throw new AnalysisException("Unable to open repository", e);
+            }
+            try {
+                logger.info("[" + appId + "] Analyzing application: " + appName);
+                AnalysisJobs jobs = new AnalysisJobs(appId, persistence, jobQueries);
+                Map<String, Object> lastCommit = incremental ?
+                        fetchLastAnalyzedCommit(appId, jobs, persistence, commitQueries) : null;
+                jobs.start(ANALYSIS_STAGE);
+                QueryEngine queryEngine = PaprikaDatabase.open(appId, paprikaDB, PAPRIKA_QUERIES);
+                boolean succeeded;
+                try {
+                    succeeded = jobs.run(getAnalysisProcess(appId, repository, persistence, queryEngine, connections,
+                            projectQueries, developerQueries, commitQueries, smellQueries, branchQueries, lastCommit),
+                            resume && lastCommit == null);
+                } finally {
+                    queryEngine.shutDown();
+                }
+                if (succeeded) {
+                    jobs.done(ANALYSIS_STAGE);
+                } else {
+                    jobs.failed(ANALYSIS_STAGE, "Some analysis stages failed");
+                }
+                complete = succeeded && !jobs.resumed();
+            } finally {
+                repository.finalizeRepository();
             }
-        }
-
-        repository.finalizeRepository();
 
-        logger.info("[" + appId + "] Analysis done for: " + appName);
-        persistence.close();
+            logger.info("[" + appId + "] Analysis done for: " + appName);
+        } finally {
+            persistence.close();
+        }
+        return complete;
     }
 
     /**
@@ -163,7 +285,10 @@ public class SingleAppAnalysis implements Analysis {
                 arguments.getString("repository"),
                 arguments.getString("database"),
                 arguments.getString("githubToken"),
-                arguments.getString("url")
+                arguments.getString("url"),
+                arguments.getBoolean("resume"),
+                arguments.getBoolean("incremental"),
+                new AnalysisOptions(arguments)
         );
     }
 
@@ -197,5 +322,15 @@ public class SingleAppAnalysis implements Analysis {
                 .help("Repository complete path to log in database")
                 .type(String.class)
                 .required(false);
+
+        parser.addArgument("--resume")
+                .help("Skip the analysis stages completed by a previous run")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--incremental")
+                .help("Only analyze the commits added since the last completed run")
+                .action(Arguments.storeTrue());
+
+        AnalysisOptions.setArguments(parser);
     }
 }
@@ -33,7 +33,7 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.util.concurrent.Callable;
 
-final class SingleAppAnalysisCallable implements Callable<Void> {
+final class SingleAppAnalysisCallable implements Callable<Boolean> {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SingleAppAnalysisCallable.class.getName());
     private String application;
     private String repository;
@@ -41,9 +41,12 @@ final class SingleAppAnalysisCallable implements Callable<Void> {
     private String githubToken;
     private String url;
     DataSource connections;
+    private final boolean resume;
+    private final AnalysisOptions options;
 
     public SingleAppAnalysisCallable(String application, String repository, String paprikaDB,
-                                     String githubToken, String url, DataSource connections) {
+                                     String githubToken, String url, DataSource connections, boolean resume,
+                                     AnalysisOptions options) {
         this.application = application;
         this.repository = repository;
         this.paprikaDB = paprikaDB;
@@ -56,23 +59,27 @@ final class SingleAppAnalysisCallable implements Callable<Void> {
             this.url = Main.GITHUB_URL + (url.startsWith("/") ? url.substring(1) : url);
         }
         this.connections = connections;
+        this.resume = resume;
+        this.options = options;
     }
 
     @Override
-    public Void call() throws Exception {
-        SingleAppAnalysis analysis = new SingleAppAnalysis(application, repository, paprikaDB, githubToken, url);
+    public Boolean call() throws Exception {
+        SingleAppAnalysis analysis = new SingleAppAnalysis(application, repository, paprikaDB, githubToken, url,
+                resume, false, options);
         PostgresqlPersistence persistence = new PostgresqlPersistence(connections.getConnection());
         ProjectQueries projectQueries = new JDBCProjectQueries();
         DeveloperQueries developerQueries = new JDBCDeveloperQueries();
         CommitQueries commitQueries = new JDBCCommitQueries(developerQueries);
-        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries);
+        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries, options.presenceIntervals);
         BranchQueries branchQueries = new JDBCBranchQueries(commitQueries, smellQueries);
         try {
-            analysis.analyze(persistence, projectQueries, developerQueries, commitQueries, smellQueries, branchQueries);
+            return analysis.analyze(persistence, connections,
+                    projectQueries, developerQueries, commitQueries, smellQueries, branchQueries);
         } catch (AnalysisException e) {
             logger.error("Unable to perform analysis on project " + application, e);
+            return false;
         }
-        return null;
     }
 
     @Override
@@ -24,18 +24,21 @@ import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.DeveloperQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCCommitQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCDeveloperQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCJobQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCProjectQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCSmellQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCTagQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JobQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.ProjectQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.TagQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
-import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import fr.inria.sniffer.tracker.analysis.query.commit.FilesChangeDetectionQuery;
 import fr.inria.sniffer.tracker.analysis.query.commit.SizeQuery;
 import fr.inria.sniffer.tracker.analysis.query.project.TagQuery;
 import fr.inria.sniffer.tracker.analysis.query.smell.SmellDeletionQuery;
+import fr.inria.sniffer.detector.neo4j.QueryEngine;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.LoggerFactory;
@@ -49,15 +52,22 @@ public class SupplementaryAnalysis implements Analysis {
     private final String appName;
     private final String paprikaDB;
     private final String appRepo;
+    // Queries of the analysis process using the Paprika database.
+    private static final int PAPRIKA_QUERIES = 2;
+    // Name of the whole analysis in the jobs status.
+    static final String ANALYSIS_STAGE = AnalysisType.SUPPLEMENTARY.name();
+    private final boolean resume;
+    private final AnalysisOptions options;
+    private final JobQueries jobQueries = new JDBCJobQueries();
 
     private List<Query> getAnalysisProcess(int appId, Repository repository, Persistence persistence,
-                                           CommitQueries commitQueries, SmellQueries smellQueries,
+                                           QueryEngine queryEngine, CommitQueries commitQueries, SmellQueries smellQueries,
                                            TagQueries tagQueries) {
         List<Query> analysisProcess = new ArrayList<>();
-        analysisProcess.add(new SizeQuery(appId, paprikaDB, persistence, commitQueries));
+        analysisProcess.add(new SizeQuery(appId, queryEngine, persistence, commitQueries));
         analysisProcess.add(new TagQuery(appId, repository, persistence, tagQueries));
-        analysisProcess.add(new SmellDeletionQuery(appId, paprikaDB, persistence, smellQueries));
-        analysisProcess.add(new FilesChangeDetectionQuery(appId, repository, persistence, commitQueries));
+        analysisProcess.add(new SmellDeletionQuery(appId, queryEngine, persistence, smellQueries));
+        analysisProcess.add(new FilesChangeDetectionQuery(appId, repository, persistence, commitQueries, options));
         return analysisProcess;
     }
 
@@ -67,9 +77,29 @@ public class SupplementaryAnalysis implements Analysis {
      * @param paprikaDB Path to paprika database.
      */
     SupplementaryAnalysis(String appName, String paprikaDB, String appRepo) {
+        this(appName, paprikaDB, appRepo, false);
+    }
+
+    /**
+     * Compute a single project analysis, possibly resuming a previous one.
+     *
+     * @param resume True to skip the stages completed by a previous analysis of the project.
+     */
+    SupplementaryAnalysis(String appName, String paprikaDB, String appRepo, boolean resume) {
+        this(appName, paprikaDB, appRepo, resume, AnalysisOptions.DEFAULT);
+    }
+
+    /**
+     * Compute a single project analysis using the given options.
+     *
+     * @param options The options tuning the analysis.
+     */
+    SupplementaryAnalysis(String appName, String paprikaDB, String appRepo, boolean resume, AnalysisOptions options) {
         this.appName = appName;
         this.paprikaDB = paprikaDB;
         this.appRepo = appRepo;
+        this.resume = resume;
+        this.options = options;
     }
 
     /**
@@ -95,35 +125,58 @@ public class SupplementaryAnalysis implements Analysis {
         ProjectQueries projectQueries = new JDBCProjectQueries();
         DeveloperQueries developerQueries = new JDBCDeveloperQueries();
         CommitQueries commitQueries = new JDBCCommitQueries(developerQueries);
-        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries);
+        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries, options.presenceIntervals);
         TagQueries tagQueries = new JDBCTagQueries(commitQueries);
         this.analyze(persistence, projectQueries, commitQueries, smellQueries, tagQueries);
     }
 
-    public void analyze(Persistence persistence, ProjectQueries projectQueries,
-                        CommitQueries commitQueries, SmellQueries smellQueries, TagQueries tagQueries) throws AnalysisException {
-        persistence.initialize();
-        int appId = appId(appName, persistence, projectQueries);
-        logger.info("[" + appId + "] Starting supplementary analysis");
-        Repository repository = new Repository(appRepo);
+    /**
+     * Compute the supplementary analysis on the given persistence.
+     *
+     * @param persistence The persistence to write on.
+     * @return True if all the analysis stages were run and succeeded, false if some failed or were resumed.
+     */
+    public boolean analyze(Persistence persistence, ProjectQueries projectQueries,
+                           CommitQueries commitQueries, SmellQueries smellQueries, TagQueries tagQueries) throws AnalysisException {
+        boolean complete;
+        // The project resources are always released, the analysis state being dropped along with them.
         try {
-            repository.initializeRepository();
-        } catch (Repository.RepositoryException e) {
-            throw new AnalysisException("Unable to open repository", e);
-        }
+            persistence.initialize();
+            persistence.setTransactionSize(options.transactionSize);
+            int appId = appId(appName, persistence, projectQueries);
+            logger.info("[" + appId + "] Starting supplementary analysis");
+            Repository repository = new Repository(appRepo);
+            try {
+                repository.initializeRepository();
+            } catch (Repository.RepositoryException e) {
+                throw new AnalysisException("Unable to open repository", e);
+            }
 
-        for (Query process : getAnalysisProcess(appId, repository, persistence,
-                commitQueries, smellQueries, tagQueries)) {
             try {
-                process.query();
-            } catch (QueryException e) {
-                logger.warn("An error occurred during query!", e);
+                AnalysisJobs jobs = new AnalysisJobs(appId, persistence, jobQueries);
+                jobs.start(ANALYSIS_STAGE);
+                QueryEngine queryEngine = PaprikaDatabase.open(appId, paprikaDB, PAPRIKA_QUERIES);
+                boolean succeeded;
+                try {
+                    succeeded = jobs.run(getAnalysisProcess(appId, repository, persistence, queryEngine,
+                            commitQueries, smellQueries, tagQueries), resume);
+                } finally {
+                    queryEngine.shutDown();
+                }
+                if (succeeded) {
+                    jobs.done(ANALYSIS_STAGE);
+                } else {
+                    jobs.failed(ANALYSIS_STAGE, "Some analysis stages failed");
+                }
+                complete = succeeded && !jobs.resumed();
+                logger.info("[" + appId + "] Supplementary analysis done.");
+            } finally {
+                repository.finalizeRepository();
             }
+        } finally {
+            persistence.close();
         }
-
-        logger.info("[" + appId + "] Supplementary analysis done.");
-        repository.finalizeRepository();
-        persistence.close();
+        return complete;
     }
 
     /**
@@ -135,7 +188,9 @@ public class SupplementaryAnalysis implements Analysis {
         this(
                 arguments.getString("name"),
                 arguments.getString("database"),
-                arguments.getString("repository")
+                arguments.getString("repository"),
+                arguments.getBoolean("resume"),
+                new AnalysisOptions(arguments)
         );
     }
 
@@ -159,5 +214,11 @@ public class SupplementaryAnalysis implements Analysis {
                 .help("Github repository as \"username/repository\" or local path")
                 .type(String.class)
                 .required(true);
+
+        parser.addArgument("--resume")
+                .help("Skip the analysis stages completed by a previous run")
+                .action(Arguments.storeTrue());
+
+        AnalysisOptions.setArguments(parser);
     }
 }
@@ -33,35 +33,40 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.util.concurrent.Callable;
 
-final class SupplementaryAnalysisCallable implements Callable<Void> {
+final class SupplementaryAnalysisCallable implements Callable<Boolean> {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SupplementaryAnalysisCallable.class.getName());
     private final String appName;
     private final String repository;
     private final String paprikaDB;
     private final DataSource connections;
+    private final boolean resume;
+    private final AnalysisOptions options;
 
-    public SupplementaryAnalysisCallable(String appName, String repository, String paprikaDB, DataSource connections) {
+    public SupplementaryAnalysisCallable(String appName, String repository, String paprikaDB, DataSource connections,
+                                         boolean resume, AnalysisOptions options) {
         this.appName = appName;
         this.repository = repository;
         this.paprikaDB = paprikaDB;
         this.connections = connections;
+        this.resume = resume;
+        this.options = options;
     }
 
     @Override
-    public Void call() throws Exception {
-        SupplementaryAnalysis analysis = new SupplementaryAnalysis(appName, paprikaDB, repository);
+    public Boolean call() throws Exception {
+        SupplementaryAnalysis analysis = new SupplementaryAnalysis(appName, paprikaDB, repository, resume, options);
         PostgresqlPersistence persistence = new PostgresqlPersistence(connections.getConnection());
         ProjectQueries projectQueries = new JDBCProjectQueries();
         DeveloperQueries developerQueries = new JDBCDeveloperQueries();
         CommitQueries commitQueries = new JDBCCommitQueries(developerQueries);
-        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries);
+        SmellQueries smellQueries = new JDBCSmellQueries(commitQueries, options.presenceIntervals);
         TagQueries tagQueries = new JDBCTagQueries(commitQueries);
         try {
-            analysis.analyze(persistence, projectQueries, commitQueries, smellQueries, tagQueries);
+            return analysis.analyze(persistence, projectQueries, commitQueries, smellQueries, tagQueries);
         } catch (AnalysisException e) {
             logger.error("Unable to perform analysis on project " + appName, e);
+            return false;
         }
-        return null;
     }
 
     @Override
@@ -36,8 +36,8 @@ public class Commit {
 
     private boolean inPaprika;
 
-    private final List<Smell> smells;
-    private final List<Smell> mergedSmells;
+    private final SmellIndex smells;
+    private final SmellIndex mergedSmells;
     private final Map<Smell, Smell> renamedSmells;
 
     /**
@@ -90,9 +90,9 @@ public class Commit {
         this.message = message;
         this.authorEmail = authorEmail;
         this.parents = parents;
-        this.smells = new ArrayList<>();
+        this.smells = new SmellIndex();
         this.renamedSmells = new HashMap<>();
-        this.mergedSmells = new ArrayList<>();
+        this.mergedSmells = new SmellIndex();
     }
 
     /**
@@ -168,6 +168,27 @@ public class Commit {
         return new Commit(revCommit.name(), -1, new DateTime(0), "", "", parents);
     }
 
+    /**
+     * Create a commit instance from a JGit {@link RevCommit} parsed during a {@link org.eclipse.jgit.revwalk.RevWalk}.
+     * This {@link Commit} will be filled with both its details (message, author, date) and its parents.
+     * <p>
+     * Warning: This creation does not handle ordinal since the information is not available.
+     * It will return -1 if used.
+     * <p>
+     * The parents only contain their sha1, since within a walk they are already parsed
+     * and recursing on them would load the whole history.
+     *
+     * @param revCommit The commit to transform.
+     * @return A newly created {@link Commit}.
+     */
+    public static Commit commitWithDetailsAndParents(RevCommit revCommit) {
+        Commit commit = commitWithDetails(revCommit);
+        for (RevCommit parent : revCommit.getParents()) {
+            commit.parents.add(new Commit(parent.name(), -1));
+        }
+        return commit;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -258,7 +279,7 @@ public class Commit {
      * @return true in case of a merge commit, false otherwise.
      */
     public boolean isMerge() {
-        return this.mergedSmells != null && !this.mergedSmells.isEmpty();
+        return !this.mergedSmells.isEmpty();
     }
 
     public void addSmell(Smell smell) {
@@ -270,12 +291,12 @@ public class Commit {
     }
 
     public Collection<Smell> getSmells() {
-        return this.smells;
+        return this.smells.asList();
     }
 
 
     public void addMergedSmell(Smell smell) {
-        addSmells(Collections.singleton(smell));
+        addMergedSmells(Collections.singleton(smell));
     }
 
     public void addMergedSmells(Collection<Smell> smells) {
@@ -283,7 +304,7 @@ public class Commit {
     }
 
     public Collection<Smell> getMergedSmells() {
-        return mergedSmells;
+        return mergedSmells.asList();
     }
 
     public void setRenamedSmell(Smell parent, Smell renamed) {
@@ -307,12 +328,17 @@ public class Commit {
      * @return The list of {@link Smell} introduced in the current commit.
      */
     public List<Smell> getIntroduced(Commit previous) {
-        List<Smell> introduction = new ArrayList<>(this.getSmells());
-        introduction.removeAll(previous.getSmells());
-        if (this.isMerge()) {
-            introduction.removeAll(this.getMergedSmells());
+        boolean merge = this.isMerge();
+        Set<Smell> renamed = new HashSet<>(this.getRenamedSmells());
+        List<Smell> introduction = new ArrayList<>();
+        for (Smell smell : this.getSmells()) {
+            if (previous.smells.contains(smell)
+                    || (merge && this.mergedSmells.contains(smell))
+                    || renamed.contains(smell)) {
+                continue;
+            }
+            introduction.add(smell);
         }
-        introduction.removeAll(this.getRenamedSmells());
         return introduction;
     }
 
@@ -326,15 +352,18 @@ public class Commit {
      * @return The list of {@link Smell} refactored in the current commit.
      */
     public List<Smell> getRefactored(Commit previous) {
-        List<Smell> refactoring = new ArrayList<>(previous.getSmells());
-        if (this.isMerge()) {
-            refactoring.retainAll(this.getMergedSmells());
+        boolean merge = this.isMerge();
+        List<Smell> refactoring = new ArrayList<>();
+        for (Smell smell : previous.getSmells()) {
+            if ((merge && !this.mergedSmells.contains(smell))
+                    || this.smells.contains(smell)
+                    // We don't count the Smell as refactoring if its parent Smell
+                    // is the origin of a renamed smell in the previous commit.
+                    || this.renamedSmells.containsKey(smell)) {
+                continue;
+            }
+            refactoring.add(smell);
         }
-        refactoring.removeAll(this.getSmells());
-
-        // We don't count the Smell as refactoring if its parent Smell
-        // is the origin of a renamed smell in the previous commit.
-        refactoring.removeAll(getRenamedSmellsOrigins());
         return refactoring;
     }
 
@@ -346,13 +375,8 @@ public class Commit {
      * @return The previous {@link Smell} if found,the tested {@link Smell} if not found.
      */
     public Smell getPreviousInstance(Smell tested) {
-        for (Smell smell : getSmells()) {
-            if (Smell.copyWithoutParent(smell).equals(tested)) {
-                return smell;
-            }
-
-        }
-        return tested;
+        Smell smell = smells.instanceOf(tested);
+        return smell != null ? smell : tested;
     }
 
     /**
@@ -363,12 +387,8 @@ public class Commit {
      * @return The previous {@link Smell} if found,the tested {@link Smell} if not found.
      */
     public Smell getMergedInstance(Smell tested) {
-        for (Smell smell : getMergedSmells()) {
-            if (Smell.copyWithoutParent(smell).equals(tested)) {
-                return smell;
-            }
-        }
-        return tested;
+        Smell smell = mergedSmells.instanceOf(tested);
+        return smell != null ? smell : tested;
     }
 
     public boolean isInPaprika() {
@@ -0,0 +1,109 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory commit graph of a repository, each commit being identified by an index.
+ * <p>
+ * The parents of each commit are stored as indexes, a parent which is not part
+ * of the graph being referenced as {@link #UNKNOWN}.
+ */
+public class CommitGraph {
+    public static final int UNKNOWN = -1;
+
+    private final List<Commit> commits;
+    private final Map<String, Integer> indexes;
+    private final int[][] parents;
+    private final int head;
+
+    /**
+     * Build the graph of the given commits.
+     *
+     * @param commits The commits of the graph, with their parents.
+     * @param head    The repository HEAD commit, must be part of the given commits.
+     */
+    public CommitGraph(List<Commit> commits, Commit head) {
+        this.commits = new ArrayList<>(commits);
+        this.parents = new int[commits.size()][];
+
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < commits.size(); i++) {
+            indexes.put(commits.get(i).sha, i);
+        }
+        for (int i = 0; i < commits.size(); i++) {
+            List<Commit> commitParents = commits.get(i).parents;
+            parents[i] = new int[commitParents.size()];
+            for (int parent = 0; parent < commitParents.size(); parent++) {
+                parents[i][parent] = indexes.getOrDefault(commitParents.get(parent).sha, UNKNOWN);
+            }
+        }
+        this.head = indexes.getOrDefault(head.sha, UNKNOWN);
+    }
+
+    /**
+     * @return The number of commits in the graph.
+     */
+    public int size() {
+        return commits.size();
+    }
+
+    /**
+     * @return The index of the repository HEAD, {@link #UNKNOWN} if not part of the graph.
+     */
+    public int getHead() {
+        return head;
+    }
+
+    /**
+     * @param commit The commit to look for.
+     * @return The commit index, {@link #UNKNOWN} if not part of the graph.
+     */
+    public int indexOf(Commit commit) {
+        return indexes.getOrDefault(commit.sha, UNKNOWN);
+    }
+
+    /**
+     * @param index The commit index.
+     * @return The {@link Commit} at the given index.
+     */
+    public Commit getCommit(int index) {
+        return commits.get(index);
+    }
+
+    /**
+     * @param index The commit index.
+     * @return The number of parents of the commit, including the ones not part of the graph.
+     */
+    public int getParentCount(int index) {
+        return parents[index].length;
+    }
+
+    /**
+     * @param index    The commit index.
+     * @param position The nth parent to fetch.
+     * @return The parent index, {@link #UNKNOWN} if the parent is not part of the graph.
+     */
+    public int getParent(int index, int position) {
+        return parents[index][position];
+    }
+}
@@ -23,6 +23,7 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +33,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Abstract a repository concept to choose between cloning or using local path.
@@ -90,12 +93,16 @@ public class Repository {
 
     /**
      * Remove all useless data from this repository.
-     * i.e. clean the cloned directory for a remote repository.
+     * i.e. close the git repository, releasing its caches, and clean the cloned directory for a remote repository.
      */
     public void finalizeRepository() {
         if (logger.isDebugEnabled() && cloneDir == null) {
             logger.debug("Repository not initialized, doing nothing (" + repository + ")");
         }
+        if (git != null) {
+            git.close();
+            git = null;
+        }
         // We don't delete files if the repository was there before us.
         // We won't delete anything by default.
         if (isRemote) {
@@ -161,6 +168,94 @@ public class Repository {
         }
     }
 
+    /**
+     * Count the commits reachable from HEAD, without parsing their details.
+     *
+     * @return The number of commits in the repository history.
+     * @throws IOException If anything goes wrong while parsing Git repository.
+     */
+    public int getCommitCount() throws IOException {
+        org.eclipse.jgit.lib.Repository gitRepo = getGitRepository().getRepository();
+        try (RevWalk walk = new RevWalk(gitRepo)) {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(gitRepo.resolve("HEAD")));
+            int count = 0;
+            for (RevCommit ignored : walk) {
+                count++;
+            }
+            walk.dispose();
+            return count;
+        }
+    }
+
+    /**
+     * Build the {@link CommitGraph} of all commits reachable from HEAD, using a single {@link RevWalk}.
+     * The commits are only filled with their parents, not their details (message, author, date).
+     *
+     * @return The repository {@link CommitGraph}.
+     * @throws IOException If anything goes wrong while parsing Git repository.
+     */
+    public CommitGraph getCommitGraph() throws IOException {
+        org.eclipse.jgit.lib.Repository gitRepo = getGitRepository().getRepository();
+        List<Commit> commits = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(gitRepo)) {
+            walk.setRetainBody(false);
+            RevCommit head = walk.parseCommit(gitRepo.resolve("HEAD"));
+            walk.markStart(head);
+            for (RevCommit commit : walk) {
+                List<Commit> parents = new ArrayList<>();
+                for (RevCommit parent : commit.getParents()) {
+                    parents.add(new Commit(parent.name(), -1));
+                }
+                commits.add(new Commit(commit.name(), -1, parents));
+            }
+            walk.dispose();
+            return new CommitGraph(commits, new Commit(head.name(), -1));
+        }
+    }
+
+    /**
+     * Walk the whole history of the repository, from the first commit to HEAD.
+     * <p>
+     * A single {@link RevWalk} is used for the whole history, in topological order,
+     * each {@link Commit} being filled with its details (message, author, date) and its parents.
+     * The walk is released once the last commit has been returned,
+     * an iterator not exhausted must be released by {@link #closeHistory(Iterator)}.
+     *
+     * @return An iterator over the repository history, oldest commits first.
+     * @throws IOException If anything goes wrong while parsing Git repository.
+     */
+    public Iterator<Commit> getHistory() throws IOException {
+        return getHistory(null);
+    }
+
+    /**
+     * Walk the history of the repository added since the given commit, up to HEAD.
+     * <p>
+     * The given commit and all of its ancestors are excluded from the walk,
+     * the remaining commits being returned in topological order.
+     *
+     * @param sinceSha The last commit already known, null to walk the whole history.
+     * @return An iterator over the repository history following the given commit, oldest commits first.
+     * @throws IOException If anything goes wrong while parsing Git repository, e.g. the commit can't be found.
+     */
+    public Iterator<Commit> getHistory(String sinceSha) throws IOException {
+        org.eclipse.jgit.lib.Repository gitRepo = getGitRepository().getRepository();
+        RevWalk walk = new RevWalk(gitRepo);
+        try {
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.REVERSE, true);
+            walk.markStart(walk.parseCommit(gitRepo.resolve("HEAD")));
+            if (sinceSha != null) {
+                walk.markUninteresting(walk.parseCommit(ObjectId.fromString(sinceSha)));
+            }
+        } catch (IOException e) {
+            walk.close();
+            throw e;
+        }
+        return new HistoryIterator(walk);
+    }
+
     /**
      * Retrieve the {@link RevCommit} from any object reference in the repository.
      *
@@ -228,6 +323,60 @@ public class Repository {
         }
     }
 
+    /**
+     * Release the walk of a history returned by {@link #getHistory(String)}, whether exhausted or not.
+     *
+     * @param history The history to release, may be any other iterator.
+     */
+    public static void closeHistory(Iterator<Commit> history) {
+        if (history instanceof HistoryIterator) {
+            ((HistoryIterator) history).close();
+        }
+    }
+
+    /**
+     * Iterate over the {@link Commit}s of a {@link RevWalk}, closing it when exhausted.
+     */
+    private static final class HistoryIterator implements Iterator<Commit>, AutoCloseable {
+        private final RevWalk walk;
+        private final Iterator<RevCommit> commits;
+        private boolean closed = false;
+
+        HistoryIterator(RevWalk walk) {
+            this.walk = walk;
+            this.commits = walk.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (!commits.hasNext()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                walk.dispose();
+                walk.close();
+                closed = true;
+            }
+        }
+
+        @Override
+        public Commit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return Commit.commitWithDetailsAndParents(commits.next());
+        }
+    }
+
     /**
      * Any {@link Exception} linked to the {@link Repository} class.
      */
@@ -0,0 +1,86 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.model;
+
+import java.util.*;
+
+/**
+ * Ordered collection of {@link Smell}s backed by hash indexes.
+ * <p>
+ * Membership uses the full {@link Smell#equals(Object)} (parent included),
+ * while instance lookups are keyed by (type, instance, file) only,
+ * so that both run in constant time on commits with many smells.
+ */
+final class SmellIndex {
+    private final List<Smell> smells;
+    private final Set<Smell> members;
+    private final Map<Smell, Smell> instances;
+
+    SmellIndex() {
+        this.smells = new ArrayList<>();
+        this.members = new HashSet<>();
+        this.instances = new HashMap<>();
+    }
+
+    /**
+     * Add the given smells, keeping their insertion order.
+     * The smells must not be modified once added.
+     *
+     * @param added The smells to add.
+     */
+    void addAll(Collection<Smell> added) {
+        for (Smell smell : added) {
+            smells.add(smell);
+            members.add(smell);
+            // Keep the first matching smell, as a linear scan would.
+            instances.putIfAbsent(Smell.copyWithoutParent(smell), smell);
+        }
+    }
+
+    /**
+     * Tells if an equal {@link Smell}, parent included, has been added.
+     *
+     * @param smell The smell to look for.
+     * @return true if the smell is contained, false otherwise.
+     */
+    boolean contains(Smell smell) {
+        return members.contains(smell);
+    }
+
+    /**
+     * Find the first added {@link Smell} whose copy without parent equals the tested smell.
+     *
+     * @param tested The instance to retrieve.
+     * @return The matching {@link Smell}, null if none.
+     */
+    Smell instanceOf(Smell tested) {
+        // A parentless copy can never equal a smell with a parent.
+        if (tested.parent != null) {
+            return null;
+        }
+        return instances.get(tested);
+    }
+
+    boolean isEmpty() {
+        return smells.isEmpty();
+    }
+
+    List<Smell> asList() {
+        return Collections.unmodifiableList(smells);
+    }
+}
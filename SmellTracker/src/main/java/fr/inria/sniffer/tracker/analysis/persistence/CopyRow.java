@@ -0,0 +1,67 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A row of literal values to bulk load through a {@link CopyTemplate}.
+ */
+public final class CopyRow {
+    public final CopyTemplate template;
+    private final Object[] values;
+
+    CopyRow(CopyTemplate template, Object[] values) {
+        this.template = template;
+        this.values = values;
+    }
+
+    /**
+     * @return The row values, in columns order.
+     */
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    Object[] values() {
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CopyRow copyRow = (CopyRow) o;
+        return Objects.equals(template.table, copyRow.template.table) &&
+                Arrays.equals(values, copyRow.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(template.table) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "CopyRow{" +
+                "table=" + template.table +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
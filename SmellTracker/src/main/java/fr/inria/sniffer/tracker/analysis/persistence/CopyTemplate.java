@@ -0,0 +1,92 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+/**
+ * A table and its ordered columns, in which the {@link Persistence} can bulk load rows.
+ * <p>
+ * Contrary to a {@link StatementTemplate}, values are copied as is into the table,
+ * hence foreign keys must be resolved before creating the {@link CopyRow}.
+ */
+public final class CopyTemplate {
+    public final String table;
+    public final String columns;
+    public final boolean ignoreConflicts;
+    private final int columnCount;
+    private final StatementTemplate insertTemplate;
+
+    /**
+     * Create a new {@link CopyTemplate}.
+     *
+     * @param table           The table to load rows into, must be unique across the application.
+     * @param columns         The comma separated columns, in row values order.
+     * @param ignoreConflicts True to silently skip the rows violating a unicity constraint,
+     *                        as an 'ON CONFLICT DO NOTHING' insertion would.
+     */
+    public CopyTemplate(String table, String columns, boolean ignoreConflicts) {
+        this.table = table;
+        this.columns = columns;
+        this.ignoreConflicts = ignoreConflicts;
+        this.columnCount = columns.split(",").length;
+        this.insertTemplate = new StatementTemplate(table + "_row_insertion", insertSql());
+    }
+
+    private String insertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(columns).append(") VALUES (");
+        for (int i = 0; i < columnCount; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        if (ignoreConflicts) {
+            sql.append(" ON CONFLICT DO NOTHING");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Create a row for this table.
+     *
+     * @param values The row values, in columns order. Can contain null values.
+     * @return The new {@link CopyRow}.
+     * @throws IllegalArgumentException If the values count does not match the columns.
+     */
+    public CopyRow row(Object... values) {
+        if (values.length != columnCount) {
+            throw new IllegalArgumentException("Expected " + columnCount + " values for table "
+                    + table + ", got " + values.length);
+        }
+        return new CopyRow(this, values);
+    }
+
+    /**
+     * @return The statement inserting a single row, for databases not supporting COPY.
+     */
+    StatementTemplate getInsertTemplate() {
+        return insertTemplate;
+    }
+
+    @Override
+    public String toString() {
+        return "CopyTemplate{" +
+                "table='" + table + '\'' +
+                ", columns='" + columns + '\'' +
+                ", ignoreConflicts=" + ignoreConflicts +
+                '}';
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Database identifiers of a single project's entities, resolved on the client side
+ * to insert literal foreign keys rather than looking them up in the database for each row.
+ * <p>
+ * Identifiers are cached from the 'RETURNING' clause of insertions when possible,
+ * or read back after bulk loads.
+ * <p>
+ * A missing identifier is returned as null, in which case the caller should fall back
+ * on a statement resolving it in the database.
+ * This class is not thread safe.
+ */
+public class IdCache {
+    private final Map<String, Integer> commitIds = new HashMap<>();
+    private final Map<Integer, Integer> branchIds = new HashMap<>();
+    private final Map<String, Integer> developerIds = new HashMap<>();
+    private int lastCommitId = 0;
+
+    /**
+     * @param sha The commit sha1.
+     * @return The commit_entry identifier, null if unknown.
+     */
+    public Integer commitId(String sha) {
+        return commitIds.get(sha);
+    }
+
+    /**
+     * @param ordinal The branch ordinal in the project.
+     * @return The branch identifier, null if unknown.
+     */
+    public Integer branchId(int ordinal) {
+        return branchIds.get(ordinal);
+    }
+
+    /**
+     * @param email The developer email.
+     * @return The developer identifier, null if unknown.
+     */
+    public Integer developerId(String email) {
+        return developerIds.get(email);
+    }
+
+    /**
+     * @return The greatest cached commit_entry identifier, 0 if none.
+     */
+    public int lastCommitId() {
+        return lastCommitId;
+    }
+
+    public void putCommitId(String sha, int id) {
+        commitIds.put(sha, id);
+        lastCommitId = Math.max(lastCommitId, id);
+    }
+
+    public void putBranchId(int ordinal, int id) {
+        branchIds.put(ordinal, id);
+    }
+
+    public void putDeveloperId(String email, int id) {
+        developerIds.put(email, id);
+    }
+
+    /**
+     * Cache the commit identifiers from query results.
+     *
+     * @param rows Rows containing the 'id' and 'sha1' columns.
+     */
+    public void putCommitIds(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            putCommitId((String) row.get("sha1"), (int) row.get("id"));
+        }
+    }
+
+    /**
+     * Cache the branch identifiers from query results.
+     *
+     * @param rows Rows containing the 'id' and 'ordinal' columns.
+     */
+    public void putBranchIds(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            putBranchId((int) row.get("ordinal"), (int) row.get("id"));
+        }
+    }
+}
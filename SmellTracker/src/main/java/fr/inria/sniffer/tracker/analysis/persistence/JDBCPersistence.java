@@ -18,6 +18,7 @@
 package fr.inria.sniffer.tracker.analysis.persistence;
 
 import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.postgresql.copy.CopyManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,20 +34,47 @@ import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class JDBCPersistence implements Persistence {
     private static final Logger logger = LoggerFactory.getLogger(JDBCPersistence.class.getName());
+    // Rows fetched at once by streamed queries.
+    private static final int FETCH_SIZE = 1000;
+    // Size of the CSV chunks sent to a COPY stream.
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // SQL state of a unicity constraint violation.
+    private static final String UNIQUE_VIOLATION = "23505";
     private final Connection connection;
-    private Statement sqlStatement;
+    // Prepared statements are kept for the connection lifetime, by template name.
+    private final Map<String, PreparedStatement> batchStatements = new HashMap<>();
+    private final Map<String, PreparedStatement> executeStatements = new HashMap<>();
+    // Pending statements and copies in order of addition, consecutive ones of the same kind sharing a batch.
+    private final List<PendingBatch> pendingBatches = new ArrayList<>();
+    // Whether COPY is available on this connection, lazily checked.
+    private Boolean copySupported;
+    // Temporary staging tables created on this connection, dropped along with the session.
+    private final Set<String> stagingTables = new HashSet<>();
+    // Written statements to execute before committing the transaction, autocommit if not positive.
+    private int transactionSize = AUTOCOMMIT;
+    // Written statements executed since the beginning of the transaction, queries excluded.
+    private int uncommittedStatements = 0;
+    // Streamed queries currently running, their cursors being closed on transaction commit.
+    private int openCursors = 0;
+    // Whether the autocommit has been disabled to open cursors.
+    private boolean cursorTransaction = false;
     private final String path;
     private final String schemaResourcePath;
 
@@ -86,101 +114,531 @@ public class JDBCPersistence implements Persistence {
 
     @Override
     public void addStatements(String... statements) {
-        try {
-            if (sqlStatement == null) {
-                sqlStatement = connection.createStatement();
+        StatementBatch batch;
+        for (String statement : statements) {
+            logger.trace("Adding new statement: " + statement);
+            batch = lastBatch(StatementBatch.class, StatementBatch.class);
+            if (batch == null) {
+                batch = new StatementBatch();
+                pendingBatches.add(batch);
             }
-            for (String statement : statements) {
-                logger.trace("Adding new statement: " + statement);
-                sqlStatement.addBatch(statement);
+            batch.statements.add(statement);
+        }
+    }
+
+    @Override
+    public void addParameterizedStatements(ParameterizedStatement... statements) {
+        PreparedBatch batch;
+        for (ParameterizedStatement statement : statements) {
+            logger.trace("Adding new statement: " + statement);
+            batch = lastBatch(PreparedBatch.class, statement.template);
+            if (batch == null) {
+                batch = new PreparedBatch(statement.template);
+                pendingBatches.add(batch);
+            }
+            batch.parameters.add(statement.parameters());
+        }
+    }
+
+    @Override
+    public void addCopyRows(CopyRow... rows) {
+        CopyBatch batch;
+        for (CopyRow row : rows) {
+            logger.trace("Adding new row: " + row);
+            batch = lastBatch(CopyBatch.class, row.template);
+            if (batch == null) {
+                batch = new CopyBatch(row.template);
+                pendingBatches.add(batch);
+            }
+            batch.rows.add(row.values());
+        }
+    }
+
+    /**
+     * Retrieve the last pending batch if more statements can be appended to it.
+     * A statement of another kind or template starts a new batch, so that every statement
+     * is executed in order of addition.
+     *
+     * @param type   The expected batch type.
+     * @param source The template, or statement type, of the statement to append.
+     * @return The last batch, null if a new batch must be started.
+     */
+    private <T extends PendingBatch> T lastBatch(Class<T> type, Object source) {
+        if (pendingBatches.isEmpty()) {
+            return null;
+        }
+        PendingBatch last = pendingBatches.get(pendingBatches.size() - 1);
+        return type.isInstance(last) && last.accepts(source) ? type.cast(last) : null;
+    }
+
+    /**
+     * Retrieve the {@link PreparedStatement} of the given template, preparing it on first use.
+     *
+     * @param cache    The prepared statements to look into.
+     * @param template The template to prepare.
+     * @return The {@link PreparedStatement} for this connection.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    private PreparedStatement prepare(Map<String, PreparedStatement> cache, StatementTemplate template) throws SQLException {
+        PreparedStatement preparedStatement = cache.get(template.name);
+        if (preparedStatement == null) {
+            logger.debug("Preparing statement: " + template);
+            preparedStatement = connection.prepareStatement(template.sql);
+            cache.put(template.name, preparedStatement);
+        }
+        return preparedStatement;
+    }
+
+    private void bindParameters(PreparedStatement preparedStatement, ParameterizedStatement statement) throws SQLException {
+        bindParameters(preparedStatement, statement.parameters());
+    }
+
+    /**
+     * Bind the parameters to the statement, {@link String} and {@link Integer} arrays being bound as SQL arrays.
+     *
+     * @param preparedStatement The statement to bind.
+     * @param parameters        The parameters values, in placeholder order.
+     * @throws SQLException If a parameter could not be bound.
+     */
+    private void bindParameters(PreparedStatement preparedStatement, Object[] parameters) throws SQLException {
+        Object value;
+        for (int i = 0; i < parameters.length; i++) {
+            value = parameters[i];
+            if (value == null) {
+                preparedStatement.setNull(i + 1, Types.NULL);
+            } else if (value instanceof String[]) {
+                preparedStatement.setArray(i + 1, connection.createArrayOf("text", (String[]) value));
+            } else if (value instanceof Integer[]) {
+                preparedStatement.setArray(i + 1, connection.createArrayOf("integer", (Integer[]) value));
+            } else {
+                preparedStatement.setObject(i + 1, value);
             }
+        }
+    }
+
+    @Override
+    public void setTransactionSize(int transactionSize) {
+        endTransaction();
+        try {
+            connection.setAutoCommit(transactionSize <= AUTOCOMMIT);
+            this.transactionSize = transactionSize;
         } catch (SQLException e) {
             SQLException nextException = e.getNextException();
             if (nextException != null) {
                 e = nextException;
             }
-            logger.error("Unable to create statement for database: " + path, e);
+            logger.error("Unable to set transaction mode for database: " + path, e);
         }
     }
 
     @Override
     public void commit() {
         logger.debug("Committing transaction");
-        if (sqlStatement == null) {
+        if (pendingBatches.isEmpty()) {
             logger.debug("Nothing to commit, skipping");
             return;
         }
+        Savepoint savepoint;
+        for (PendingBatch batch : pendingBatches) {
+            savepoint = null;
+            try {
+                savepoint = setSavepoint();
+                batch.execute();
+                releaseSavepoint(savepoint);
+                // Counted now so that the next batches keep it with a savepoint, committed after the whole call.
+                uncommittedStatements += isTransactional() ? batch.size() : 0;
+            } catch (SQLException e) {
+                SQLException nextException = e.getNextException();
+                if (nextException != null) {
+                    e = nextException;
+                }
+                logger.error("Unable to commit " + batch.size() + " statements into database, discarding them: "
+                        + path, e);
+                rollbackSavepoint(savepoint);
+            }
+        }
+        pendingBatches.clear();
+        countStatements(0);
+    }
+
+    /**
+     * Count the executed statements, committing the transaction if it reached its size.
+     * Queries are not counted, since they do not write anything.
+     *
+     * @param statements The number of statements executed.
+     */
+    private void countStatements(int statements) {
+        if (!isTransactional()) {
+            return;
+        }
+        uncommittedStatements += statements;
+        if (openCursors == 0 && transactionSize > AUTOCOMMIT && uncommittedStatements >= transactionSize) {
+            endTransaction();
+        }
+    }
+
+    /**
+     * Commit the current transaction, also ending the one only used by queries.
+     */
+    private void endTransaction() {
+        if (!isTransactional()) {
+            return;
+        }
+        logger.debug("Committing " + uncommittedStatements + " statements to database");
         try {
-            sqlStatement.executeBatch();
-            sqlStatement.clearBatch();
+            connection.commit();
         } catch (SQLException e) {
             SQLException nextException = e.getNextException();
             if (nextException != null) {
                 e = nextException;
             }
-            logger.warn("Unable to commit transaction into database: " + path, e);
-        } finally {
-            closeStatement();
+            logger.error("Unable to commit transaction into database: " + path, e);
+        }
+        uncommittedStatements = 0;
+    }
+
+    private boolean isTransactional() {
+        return transactionSize > AUTOCOMMIT || cursorTransaction;
+    }
+
+    /**
+     * Server side cursors only exist in a transaction,
+     * thus the autocommit is disabled until every cursor is closed.
+     *
+     * @throws SQLException If the autocommit could not be disabled.
+     */
+    private void openCursor() throws SQLException {
+        if (openCursors == 0 && connection.getAutoCommit()) {
+            connection.setAutoCommit(false);
+            cursorTransaction = true;
+        }
+        openCursors++;
+    }
+
+    /**
+     * Close a cursor, committing the transaction if it was only opened for cursors.
+     */
+    private void closeCursor() {
+        if (--openCursors > 0) {
+            return;
+        }
+        if (cursorTransaction) {
+            endTransaction();
+            cursorTransaction = false;
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Unable to restore autocommit on database: " + path, e);
+            }
+        } else {
+            countStatements(0);
+        }
+    }
+
+    /**
+     * Set a savepoint to recover the transaction from a failing statement.
+     * No savepoint is needed when the transaction holds nothing yet,
+     * the whole transaction being rolled back on failure.
+     *
+     * @return The savepoint, null if not in a transaction or if the transaction is empty.
+     * @throws SQLException If the savepoint could not be set.
+     */
+    private Savepoint setSavepoint() throws SQLException {
+        if (!isTransactional() || (uncommittedStatements == 0 && openCursors == 0)) {
+            return null;
+        }
+        return connection.setSavepoint();
+    }
+
+    private void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        if (savepoint != null) {
+            connection.releaseSavepoint(savepoint);
+        }
+    }
+
+    /**
+     * Rollback the transaction to the given savepoint, discarding the failed statement
+     * while keeping the previous ones.
+     *
+     * @param savepoint The savepoint to rollback to, null to rollback the whole transaction.
+     */
+    private void rollbackSavepoint(Savepoint savepoint) {
+        if (!isTransactional()) {
+            return;
+        }
+        try {
+            if (savepoint == null) {
+                connection.rollback();
+            } else {
+                connection.rollback(savepoint);
+            }
+        } catch (SQLException e) {
+            logger.error("Unable to rollback transaction on database: " + path, e);
         }
     }
 
     @Override
     public List<Map<String, Object>> query(String statement) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (!query(statement, 0, row -> result.add(row.toMap()))) {
+            return new ArrayList<>();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean query(String statement, RowHandler handler) {
+        return query(statement, FETCH_SIZE, handler);
+    }
+
+    /**
+     * Query the database, handling each row of the result.
+     *
+     * @param statement The query statement to execute.
+     * @param fetchSize Number of rows to fetch at once through a cursor, 0 to fetch everything.
+     * @param handler   The handler receiving each row.
+     * @return True if the query succeeded, false otherwise.
+     */
+    private boolean query(String statement, int fetchSize, RowHandler handler) {
         logger.debug("Querying database: " + statement);
 
+        Savepoint savepoint = null;
+        boolean cursor = false;
         try (Statement queryStatement = connection.createStatement()) {
-            ResultSet resultSet = queryStatement.executeQuery(statement);
-            return resultSetToArrayList(resultSet);
+            if (fetchSize > 0) {
+                openCursor();
+                cursor = true;
+                queryStatement.setFetchSize(fetchSize);
+            }
+            savepoint = setSavepoint();
+            try (ResultSet resultSet = queryStatement.executeQuery(statement)) {
+                handleRows(resultSet, handler);
+            }
+            releaseSavepoint(savepoint);
+            return true;
         } catch (SQLException e) {
             SQLException nextException = e.getNextException();
             if (nextException != null) {
                 e = nextException;
             }
             logger.error("Unable to query database: " + path, e);
+            rollbackSavepoint(savepoint);
+        } finally {
+            if (cursor) {
+                closeCursor();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Map<String, Object>> query(ParameterizedStatement statement) {
+        logger.debug("Querying database: " + statement);
+
+        Savepoint savepoint = null;
+        try {
+            PreparedStatement preparedStatement = prepare(executeStatements, statement.template);
+            bindParameters(preparedStatement, statement);
+            savepoint = setSavepoint();
+            List<Map<String, Object>> result = new ArrayList<>();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                handleRows(resultSet, row -> result.add(row.toMap()));
+            }
+            releaseSavepoint(savepoint);
+            return result;
+        } catch (SQLException e) {
+            SQLException nextException = e.getNextException();
+            if (nextException != null) {
+                e = nextException;
+            }
+            logger.error("Unable to query database: " + path, e);
+            rollbackSavepoint(savepoint);
         }
         return new ArrayList<>();
     }
 
     /**
-     * Transform the query result to a {@link List} of {@link Map} containing {@link String} as key and {@link Object}
-     * as value.
+     * Give each row of the result to the handler.
      *
-     * @param rs the {@link ResultSet} to transform.
-     * @return The result list.
+     * @param rs      the {@link ResultSet} to read.
+     * @param handler The handler receiving each row.
      * @throws SQLException If anything goes wrong while fetching data.
      */
-    private List<Map<String, Object>> resultSetToArrayList(ResultSet rs) throws SQLException {
-        ResultSetMetaData md = rs.getMetaData();
-        int columns = md.getColumnCount();
-        List<Map<String, Object>> list = new ArrayList<>(50);
-        Map<String, Object> row;
+    private static void handleRows(ResultSet rs, RowHandler handler) throws SQLException {
+        ResultSetRow row = new ResultSetRow(rs);
         while (rs.next()) {
-            row = new HashMap<>(columns);
-            for (int i = 1; i <= columns; ++i) {
-                row.put(md.getColumnName(i), rs.getObject(i));
+            handler.handle(row);
+        }
+    }
+
+    /**
+     * Load the given rows into the template table.
+     * This uses a COPY when available, otherwise a batch of insertions.
+     *
+     * @param template The template defining the target table.
+     * @param rows     The rows to load.
+     * @throws SQLException If the rows could not be loaded.
+     */
+    private void loadRows(CopyTemplate template, List<Object[]> rows) throws SQLException {
+        if (isCopySupported()) {
+            copyRows(template, rows);
+        } else {
+            insertRows(template, rows);
+        }
+    }
+
+    private boolean isCopySupported() {
+        if (copySupported == null) {
+            try {
+                getPgConnection();
+                copySupported = true;
+            } catch (SQLException | ClassCastException e) {
+                logger.debug("COPY is not supported by database: " + path);
+                copySupported = false;
             }
-            list.add(row);
         }
-        return list;
+        return copySupported;
     }
 
+    /**
+     * Stream the rows to the database through a COPY, encoded as CSV.
+     * <p>
+     * If the template ignores conflicts, rows are first copied directly into the table, as they are usually new.
+     * On a unicity violation, they are copied again into a temporary staging table,
+     * from which they are inserted with an 'ON CONFLICT DO NOTHING' clause.
+     *
+     * @param template The template defining the target table.
+     * @param rows     The rows to load.
+     * @throws SQLException If the rows could not be copied.
+     */
+    private void copyRows(CopyTemplate template, List<Object[]> rows) throws SQLException {
+        if (!template.ignoreConflicts) {
+            copyRows(template.table, template.columns, rows);
+            return;
+        }
 
-    private void closeStatement() {
-        logger.trace("Closing statement");
+        Savepoint savepoint = setSavepoint();
         try {
-            sqlStatement.close();
-            sqlStatement = null;
+            copyRows(template.table, template.columns, rows);
+            releaseSavepoint(savepoint);
+            return;
         } catch (SQLException e) {
-            SQLException nextException = e.getNextException();
-            if (nextException != null) {
-                e = nextException;
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                throw e;
+            }
+            logger.debug("Conflicting rows in table " + template.table + ", copying them through staging table");
+            rollbackSavepoint(savepoint);
+        }
+
+        String staging = stagingTable(template);
+        copyRows(staging, template.columns, rows);
+        try {
+            executeUpdate("INSERT INTO " + template.table + " (" + template.columns + ") SELECT " +
+                    template.columns + " FROM " + staging + " ON CONFLICT DO NOTHING");
+        } finally {
+            executeUpdate("TRUNCATE " + staging);
+        }
+    }
+
+    /**
+     * Retrieve the temporary staging table of the template, creating it on first use by this connection.
+     *
+     * @param template The template defining the target table.
+     * @return The staging table name.
+     * @throws SQLException If the staging table could not be created.
+     */
+    private String stagingTable(CopyTemplate template) throws SQLException {
+        String staging = template.table + "_staging";
+        if (!stagingTables.contains(staging)) {
+            executeUpdate("CREATE TEMP TABLE IF NOT EXISTS " + staging +
+                    " AS SELECT " + template.columns + " FROM " + template.table + " WITH NO DATA");
+            stagingTables.add(staging);
+        }
+        return staging;
+    }
+
+    private void copyRows(String table, String columns, List<Object[]> rows) throws SQLException {
+        CopyManager copyManager = getPgConnection().getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn("COPY " + table + " (" + columns + ") FROM STDIN WITH CSV");
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE);
+            for (Object[] row : rows) {
+                appendCsvRow(buffer, row);
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            writeToCopy(copyIn, buffer);
+            long copied = copyIn.endCopy();
+            logger.debug("Copied " + copied + " rows into: " + table);
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
             }
-            logger.warn("Unable to close statement from database: " + path, e);
+        }
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Append the row to the buffer in CSV format, null values being left empty.
+     *
+     * @param buffer The buffer to append to.
+     * @param row    The row values.
+     */
+    private static void appendCsvRow(StringBuilder buffer, Object[] row) {
+        Object value;
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            value = row[i];
+            if (value instanceof Number || value instanceof Boolean) {
+                buffer.append(value);
+            } else if (value != null) {
+                // Quoting every string distinguishes empty strings from null values.
+                buffer.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        buffer.append('\n');
+    }
+
+    /**
+     * Insert the rows one by one in a single batch.
+     *
+     * @param template The template defining the target table.
+     * @param rows     The rows to load.
+     * @throws SQLException If the rows could not be inserted.
+     */
+    private void insertRows(CopyTemplate template, List<Object[]> rows) throws SQLException {
+        PreparedStatement preparedStatement = prepare(batchStatements, template.getInsertTemplate());
+        try {
+            for (Object[] row : rows) {
+                bindParameters(preparedStatement, row);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        } finally {
+            preparedStatement.clearBatch();
+        }
+    }
+
+    private void executeUpdate(String statement) throws SQLException {
+        logger.trace("Executing on database: " + statement);
+        try (Statement executeStatement = connection.createStatement()) {
+            executeStatement.executeUpdate(statement);
         }
     }
 
     @Override
     public void close() {
+        endTransaction();
+        closePreparedStatements(batchStatements);
+        closePreparedStatements(executeStatements);
         logger.info("Closing database connection");
         if (connection != null) {
             try {
@@ -195,6 +653,17 @@ public class JDBCPersistence implements Persistence {
         }
     }
 
+    private void closePreparedStatements(Map<String, PreparedStatement> statements) {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.warn("Unable to close prepared statement from database: " + path, e);
+            }
+        }
+        statements.clear();
+    }
+
     @Override
     public void initialize() {
         logger.info("Initializing database: " + this.path);
@@ -218,14 +687,43 @@ public class JDBCPersistence implements Persistence {
     @Override
     public int execute(String statement) {
         logger.debug("Executing on database: " + statement);
+        Savepoint savepoint = null;
         try (Statement executeStatement = connection.createStatement()) {
-            return executeStatement.executeUpdate(statement);
+            savepoint = setSavepoint();
+            int result = executeStatement.executeUpdate(statement);
+            releaseSavepoint(savepoint);
+            countStatements(1);
+            return result;
         } catch (SQLException e) {
             SQLException nextException = e.getNextException();
             if (nextException != null) {
                 e = nextException;
             }
             logger.error("Unable to execute on database: " + path, e);
+            rollbackSavepoint(savepoint);
+        }
+        return -1;
+    }
+
+    @Override
+    public int execute(ParameterizedStatement statement) {
+        logger.debug("Executing on database: " + statement);
+        Savepoint savepoint = null;
+        try {
+            PreparedStatement preparedStatement = prepare(executeStatements, statement.template);
+            bindParameters(preparedStatement, statement);
+            savepoint = setSavepoint();
+            int result = preparedStatement.executeUpdate();
+            releaseSavepoint(savepoint);
+            countStatements(1);
+            return result;
+        } catch (SQLException e) {
+            SQLException nextException = e.getNextException();
+            if (nextException != null) {
+                e = nextException;
+            }
+            logger.error("Unable to execute on database: " + path, e);
+            rollbackSavepoint(savepoint);
         }
         return -1;
     }
@@ -312,4 +810,161 @@ public class JDBCPersistence implements Persistence {
         InputStreamReader streamReader = new InputStreamReader(resource, StandardCharsets.UTF_8);
         return new BufferedReader(streamReader);
     }
+
+    /**
+     * A batch to execute on {@link Persistence#commit()}.
+     */
+    private interface PendingBatch {
+        /**
+         * Tells if a statement from the given source can be appended to this batch.
+         *
+         * @param source The template, or statement type, of the statement.
+         * @return True if the statement belongs to this batch.
+         */
+        boolean accepts(Object source);
+
+        void execute() throws SQLException;
+
+        /**
+         * @return The number of statements, or rows, in this batch.
+         */
+        int size();
+    }
+
+    /**
+     * Batch of raw SQL statements.
+     */
+    private final class StatementBatch implements PendingBatch {
+        private final List<String> statements = new ArrayList<>();
+
+        @Override
+        public boolean accepts(Object source) {
+            return source == StatementBatch.class;
+        }
+
+        @Override
+        public void execute() throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.addBatch(sql);
+                }
+                statement.executeBatch();
+            }
+        }
+
+        @Override
+        public int size() {
+            return statements.size();
+        }
+    }
+
+    /**
+     * Batch of parameters bound to a single prepared {@link StatementTemplate}.
+     */
+    private final class PreparedBatch implements PendingBatch {
+        private final StatementTemplate template;
+        private final List<Object[]> parameters = new ArrayList<>();
+
+        PreparedBatch(StatementTemplate template) {
+            this.template = template;
+        }
+
+        @Override
+        public boolean accepts(Object source) {
+            return source instanceof StatementTemplate && ((StatementTemplate) source).name.equals(template.name);
+        }
+
+        @Override
+        public void execute() throws SQLException {
+            PreparedStatement preparedStatement = prepare(batchStatements, template);
+            try {
+                for (Object[] statementParameters : parameters) {
+                    bindParameters(preparedStatement, statementParameters);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            } finally {
+                preparedStatement.clearBatch();
+            }
+        }
+
+        @Override
+        public int size() {
+            return parameters.size();
+        }
+    }
+
+    /**
+     * Rows waiting to be loaded into a single table.
+     */
+    private final class CopyBatch implements PendingBatch {
+        private final CopyTemplate template;
+        private final List<Object[]> rows = new ArrayList<>();
+
+        CopyBatch(CopyTemplate template) {
+            this.template = template;
+        }
+
+        @Override
+        public boolean accepts(Object source) {
+            return source instanceof CopyTemplate && ((CopyTemplate) source).table.equals(template.table);
+        }
+
+        @Override
+        public void execute() throws SQLException {
+            loadRows(template, rows);
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+    }
+
+    /**
+     * {@link Row} reading the current position of a {@link ResultSet}.
+     * Column names are only fetched once for the whole result.
+     */
+    private static final class ResultSetRow implements Row {
+        private final ResultSet resultSet;
+        private final String[] columns;
+
+        ResultSetRow(ResultSet resultSet) throws SQLException {
+            this.resultSet = resultSet;
+            ResultSetMetaData md = resultSet.getMetaData();
+            columns = new String[md.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = md.getColumnName(i + 1);
+            }
+        }
+
+        @Override
+        public Object getObject(String column) throws SQLException {
+            return resultSet.getObject(column);
+        }
+
+        @Override
+        public String getString(String column) throws SQLException {
+            return resultSet.getString(column);
+        }
+
+        @Override
+        public int getInt(String column) throws SQLException {
+            return resultSet.getInt(column);
+        }
+
+        @Override
+        public boolean getBoolean(String column) throws SQLException {
+            return resultSet.getBoolean(column);
+        }
+
+        @Override
+        public Map<String, Object> toMap() throws SQLException {
+            Map<String, Object> row = new HashMap<>(columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                row.put(columns[i], resultSet.getObject(i + 1));
+            }
+            return row;
+        }
+    }
 }
@@ -0,0 +1,67 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link StatementTemplate} bound to a row of parameters.
+ */
+public final class ParameterizedStatement {
+    public final StatementTemplate template;
+    private final Object[] parameters;
+
+    ParameterizedStatement(StatementTemplate template, Object[] parameters) {
+        this.template = template;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @return The parameters values, in placeholder order.
+     */
+    public Object[] getParameters() {
+        return parameters.clone();
+    }
+
+    Object[] parameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ParameterizedStatement that = (ParameterizedStatement) o;
+        return Objects.equals(template.name, that.template.name) &&
+                Arrays.equals(parameters, that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(template.name) + Arrays.hashCode(parameters);
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterizedStatement{" +
+                "template=" + template.name +
+                ", parameters=" + Arrays.toString(parameters) +
+                '}';
+    }
+}
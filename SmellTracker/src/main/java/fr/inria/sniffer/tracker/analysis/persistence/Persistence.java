@@ -21,6 +21,11 @@ import java.util.List;
 import java.util.Map;
 
 public interface Persistence {
+    /**
+     * Transaction size committing every statement on its own.
+     */
+    int AUTOCOMMIT = 0;
+
     /**
      * Add the query statement to execute on the database.
      *
@@ -28,11 +33,53 @@ public interface Persistence {
      */
     void addStatements(String... statements);
 
+    /**
+     * Add parameterized statements to execute on the database.
+     * <p>
+     * Statements sharing the same {@link StatementTemplate} are batched together
+     * and only prepared once per connection.
+     * On {@link Persistence#commit()}, batches are executed in the order of their first added statement,
+     * hence a statement must not depend on a template first used after its own.
+     *
+     * @param statements An array of statements to execute on {@link Persistence#commit()}.
+     */
+    void addParameterizedStatements(ParameterizedStatement... statements);
+
+    /**
+     * Add rows to bulk load into the database.
+     * <p>
+     * Rows sharing the same {@link CopyTemplate} are streamed together using a single COPY
+     * when the database supports it, and inserted as a batch otherwise.
+     * On {@link Persistence#commit()}, they are ordered alongside the parameterized statements batches,
+     * by first added row.
+     *
+     * @param rows An array of rows to load on {@link Persistence#commit()}.
+     */
+    void addCopyRows(CopyRow... rows);
+
     /**
      * Actually persist all the given statements and remove them from the buffer.
+     * <p>
+     * Outside of autocommit, the statements are executed in the current transaction,
+     * which is committed once it reached the configured size.
+     * A failing batch is rolled back on its own, without aborting the transaction,
+     * its statements being discarded.
      */
     void commit();
 
+    /**
+     * Set the number of statements to execute in a single transaction, any pending transaction being committed.
+     * <p>
+     * Only the written statements are counted, not the queries.
+     * The transaction is only committed on {@link Persistence#commit()} or statement execution,
+     * thus a size of 1 will commit on each call to {@link Persistence#commit()},
+     * while greater sizes will group several calls into a single transaction.
+     * The remaining statements are committed on {@link Persistence#close()}.
+     *
+     * @param transactionSize The number of statements to group, {@link Persistence#AUTOCOMMIT} by default.
+     */
+    void setTransactionSize(int transactionSize);
+
     /**
      * Query the persistence with a specific statement.
      *
@@ -41,6 +88,28 @@ public interface Persistence {
      */
     List<Map<String, Object>> query(String statement);
 
+    /**
+     * Stream the results of a query to the given handler, one row at a time.
+     * <p>
+     * The rows are fetched by chunks, thus the result is never fully loaded in memory.
+     * The handler may add or commit statements, but the transaction will not be committed
+     * before the end of the query.
+     *
+     * @param statement The query statement to execute.
+     * @param handler   The handler receiving each row.
+     * @return True if the query succeeded, false otherwise.
+     */
+    boolean query(String statement, RowHandler handler);
+
+    /**
+     * Query the persistence with a parameterized statement.
+     * This is also used to retrieve the rows of an insertion 'RETURNING' clause.
+     *
+     * @param statement The query statement to execute.
+     * @return Results from database as a {@link List} of {@link Map}, each list item being a row.
+     */
+    List<Map<String, Object>> query(ParameterizedStatement statement);
+
     /**
      * Close the database connection.
      */
@@ -59,6 +128,14 @@ public interface Persistence {
      */
     int execute(String statement);
 
+    /**
+     * Execute a parameterized statement modifying the database content, either INSERT, UPDATE or DELETE.
+     *
+     * @param statement The statement to execute.
+     * @return -1 if an error occurred, 0 if no modification, the number of affected rows otherwise.
+     */
+    int execute(ParameterizedStatement statement);
+
 
     /**
      * Copy the CSV input file into a table.
@@ -0,0 +1,262 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link Persistence} writing to another persistence on a dedicated thread,
+ * thus letting the caller go on with its analysis while the statements are executed.
+ * <p>
+ * The added statements are buffered until {@link Persistence#commit()}, which queues them for the writer thread.
+ * At most the configured depth of commits may be queued, further commits waiting for the writer.
+ * Any other call is executed on the writer thread once the queued commits are written,
+ * hence the queries always see the previously committed statements.
+ * <p>
+ * The first failure of the writer thread is rethrown by the following calls, including {@link #shutdown()},
+ * the commits queued after it being discarded.
+ */
+public class PipelinedPersistence implements Persistence {
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedPersistence.class.getName());
+    private final Persistence delegate;
+    private final ExecutorService writer;
+    private final Semaphore queueSlots;
+    // Statements added since the last call to commit, replayed on the delegate by the writer.
+    private List<Consumer<Persistence>> pending = new ArrayList<>();
+    private int pendingStatements = 0;
+    private volatile Thread writerThread;
+    // First exception thrown while writing the queued commits.
+    private volatile RuntimeException failure;
+
+    // Throughput counters, only updated on the writer thread.
+    private long writtenCommits = 0;
+    private long writtenStatements = 0;
+    private long writingNanos = 0;
+    // Time spent by the caller waiting for a queue slot, only updated on the caller thread.
+    private long waitingNanos = 0;
+
+    /**
+     * @param delegate   The persistence to write to, only used on the writer thread from now on.
+     * @param queueDepth The number of commits that can be queued for writing.
+     */
+    public PipelinedPersistence(Persistence delegate, int queueDepth) {
+        this.delegate = delegate;
+        this.queueSlots = new Semaphore(queueDepth);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            writerThread = new Thread(runnable, "persistence-writer");
+            writerThread.setDaemon(true);
+            return writerThread;
+        });
+    }
+
+    @Override
+    public void addStatements(String... statements) {
+        pending.add(persistence -> persistence.addStatements(statements));
+        pendingStatements += statements.length;
+    }
+
+    @Override
+    public void addParameterizedStatements(ParameterizedStatement... statements) {
+        pending.add(persistence -> persistence.addParameterizedStatements(statements));
+        pendingStatements += statements.length;
+    }
+
+    @Override
+    public void addCopyRows(CopyRow... rows) {
+        pending.add(persistence -> persistence.addCopyRows(rows));
+        pendingStatements += rows.length;
+    }
+
+    @Override
+    public void commit() {
+        rethrowFailure();
+        List<Consumer<Persistence>> statements = pending;
+        int count = pendingStatements;
+        pending = new ArrayList<>();
+        pendingStatements = 0;
+        if (Thread.currentThread() == writerThread) {
+            // Committing from a streamed query handler, we are already writing.
+            write(statements, count);
+            return;
+        }
+        long start = System.nanoTime();
+        queueSlots.acquireUninterruptibly();
+        waitingNanos += System.nanoTime() - start;
+        writer.execute(() -> {
+            try {
+                if (failure == null) {
+                    write(statements, count);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Unable to write statements", e);
+                failure = e;
+            } finally {
+                queueSlots.release();
+            }
+        });
+    }
+
+    /**
+     * Throw the failure of the writer thread, if any.
+     *
+     * @throws IllegalStateException If a queued commit could not be written.
+     */
+    private void rethrowFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Unable to write statements", failure);
+        }
+    }
+
+    private void write(List<Consumer<Persistence>> statements, int count) {
+        long start = System.nanoTime();
+        for (Consumer<Persistence> statement : statements) {
+            statement.accept(delegate);
+        }
+        delegate.commit();
+        writingNanos += System.nanoTime() - start;
+        writtenStatements += count;
+        writtenCommits++;
+    }
+
+    /**
+     * Execute the given call on the writer thread, once all queued commits are written.
+     *
+     * @param call The call to execute.
+     * @param <T>  The call result type.
+     * @return The call result.
+     */
+    private <T> T call(Callable<T> call) {
+        if (Thread.currentThread() == writerThread) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to execute persistence call", e);
+            }
+        }
+        rethrowFailure();
+        // Queued commits are written before the call, which is not executed if any of them failed.
+        Future<T> result = writer.submit(() -> {
+            rethrowFailure();
+            return call.call();
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for persistence", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to execute persistence call", e.getCause());
+        }
+    }
+
+    @Override
+    public void setTransactionSize(int transactionSize) {
+        call(() -> {
+            delegate.setTransactionSize(transactionSize);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Map<String, Object>> query(String statement) {
+        return call(() -> delegate.query(statement));
+    }
+
+    @Override
+    public boolean query(String statement, RowHandler handler) {
+        return call(() -> delegate.query(statement, handler));
+    }
+
+    @Override
+    public List<Map<String, Object>> query(ParameterizedStatement statement) {
+        return call(() -> delegate.query(statement));
+    }
+
+    @Override
+    public int execute(String statement) {
+        return call(() -> delegate.execute(statement));
+    }
+
+    @Override
+    public int execute(ParameterizedStatement statement) {
+        return call(() -> delegate.execute(statement));
+    }
+
+    @Override
+    public long copyFile(String path, String table, String columns) {
+        return call(() -> delegate.copyFile(path, table, columns));
+    }
+
+    @Override
+    public void initialize() {
+        call(() -> {
+            delegate.initialize();
+            return null;
+        });
+    }
+
+    /**
+     * Write the queued commits and stop the writer thread, without closing the delegate persistence.
+     * <p>
+     * Statements added but not committed are discarded.
+     *
+     * @throws IllegalStateException If a queued commit could not be written.
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            while (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for pending statements to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while writing pending statements", e);
+        }
+        if (writtenCommits > 0) {
+            logger.info("Wrote " + writtenStatements + " statements in " + writtenCommits + " commits, "
+                    + TimeUnit.NANOSECONDS.toMillis(writingNanos) + "ms writing, "
+                    + TimeUnit.NANOSECONDS.toMillis(waitingNanos) + "ms waiting for the writer");
+        }
+        rethrowFailure();
+    }
+
+    @Override
+    public void close() {
+        try {
+            shutdown();
+        } finally {
+            delegate.close();
+        }
+    }
+}
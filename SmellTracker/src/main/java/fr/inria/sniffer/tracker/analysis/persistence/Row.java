@@ -0,0 +1,65 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Current row of a streamed query result.
+ * <p>
+ * The row is only valid during the {@link RowHandler#handle(Row)} call,
+ * its values have to be copied to be kept.
+ */
+public interface Row {
+    /**
+     * @param column The column name.
+     * @return The column value, may be null.
+     * @throws SQLException If the column does not exist.
+     */
+    Object getObject(String column) throws SQLException;
+
+    /**
+     * @param column The column name.
+     * @return The column value, may be null.
+     * @throws SQLException If the column does not exist.
+     */
+    String getString(String column) throws SQLException;
+
+    /**
+     * @param column The column name.
+     * @return The column value, 0 if null.
+     * @throws SQLException If the column does not exist.
+     */
+    int getInt(String column) throws SQLException;
+
+    /**
+     * @param column The column name.
+     * @return The column value, false if null.
+     * @throws SQLException If the column does not exist.
+     */
+    boolean getBoolean(String column) throws SQLException;
+
+    /**
+     * Copy the row values.
+     *
+     * @return The row as a {@link Map} of column name to value.
+     * @throws SQLException If the values could not be read.
+     */
+    Map<String, Object> toMap() throws SQLException;
+}
@@ -0,0 +1,58 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+/**
+ * A named SQL statement using '?' placeholders for its parameters.
+ * <p>
+ * The {@link Persistence} prepares each template once per connection,
+ * using its name as identifier.
+ */
+public final class StatementTemplate {
+    public final String name;
+    public final String sql;
+
+    /**
+     * Create a new {@link StatementTemplate}.
+     *
+     * @param name The template name, must be unique across the application.
+     * @param sql  The SQL statement with '?' placeholders.
+     */
+    public StatementTemplate(String name, String sql) {
+        this.name = name;
+        this.sql = sql;
+    }
+
+    /**
+     * Bind the given parameters to this template.
+     *
+     * @param parameters The parameters values, in placeholder order. Can contain null values.
+     * @return The new {@link ParameterizedStatement}.
+     */
+    public ParameterizedStatement bind(Object... parameters) {
+        return new ParameterizedStatement(this, parameters);
+    }
+
+    @Override
+    public String toString() {
+        return "StatementTemplate{" +
+                "name='" + name + '\'' +
+                ", sql='" + sql + '\'' +
+                '}';
+    }
+}
@@ -19,6 +19,10 @@ package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+
+import java.util.List;
 
 public interface BranchQueries {
     /**
@@ -30,7 +34,17 @@ public interface BranchQueries {
      * @param mergedInto   The last {@link Commit} into which this branch is merged.
      * @return The generated insertion statement.
      */
-    String branchInsertionStatement(int projectId, int ordinal, Commit parentCommit, Commit mergedInto);
+    ParameterizedStatement branchInsertionStatement(int projectId, int ordinal, Commit parentCommit, Commit mergedInto);
+
+    /**
+     * Create a statement setting the commit into which an already persisted branch is merged.
+     *
+     * @param projectId  Current project.
+     * @param ordinal    Branch ordinal.
+     * @param mergedInto The last {@link Commit} into which this branch is merged.
+     * @return The generated update statement.
+     */
+    ParameterizedStatement branchMergedIntoStatement(int projectId, int ordinal, Commit mergedInto);
 
     /**
      * Create a BranchCommit insertion query.
@@ -41,7 +55,17 @@ public interface BranchQueries {
      * @param ordinal       {@link Commit} ordinal in the branch.
      * @return The generated insertion statement.
      */
-    String branchCommitInsertionQuery(int projectId, int branchOrdinal, String commitSha, int ordinal);
+    ParameterizedStatement branchCommitInsertionQuery(int projectId, int branchOrdinal, String commitSha, int ordinal);
+
+    /**
+     * Create a BranchCommit row to bulk load, with already resolved identifiers.
+     *
+     * @param branchId Branch identifier.
+     * @param commitId {@link Commit} identifier.
+     * @param ordinal  {@link Commit} ordinal in the branch.
+     * @return The generated row.
+     */
+    CopyRow branchCommitRow(int branchId, int commitId, int ordinal);
 
     /**
      * Query the identifier of a Branch.
@@ -108,6 +132,17 @@ public interface BranchQueries {
      */
     String lastCommitShaQuery(int projectId, int branchId);
 
+    /**
+     * Retrieve the id and sha of the last commit of the branch among the given commits,
+     * i.e. the branch commit reached by a previous analysis.
+     *
+     * @param projectId    The project identifier.
+     * @param branchId     The branch on which we look for the commit.
+     * @param lastCommitId Identifier of the last commit persisted before this analysis.
+     * @return The generated query statement.
+     */
+    String lastCommitBeforeQuery(int projectId, int branchId, int lastCommitId);
+
     /**
      * Retrieve the smells present on the last commit of the branch merged in the given commit.
      *
@@ -157,4 +192,31 @@ public interface BranchQueries {
      * @return The generated query statement.
      */
     String shaFromOrdinalQuery(int projectId, int branchId, int ordinal, boolean paprikaOnly);
+
+    /**
+     * Retrieve every commit of every branch of the project with its branch identifier and ordinal,
+     * and whether it was analyzed by SmellDetector.
+     * Commits are returned in their insertion order, thus the first branch of a commit comes first.
+     *
+     * @param projectId The project identifier.
+     * @return The generated query statement.
+     */
+    String branchCommitsQuery(int projectId);
+
+    /**
+     * Retrieve the identifier and ordinal of all the project's branches
+     * along with their parent commit sha and the sha of the commit they are merged into.
+     *
+     * @param projectId The project identifier.
+     * @return The generated query statement.
+     */
+    String branchesQuery(int projectId);
+
+    /**
+     * Generate the statements deleting all the project's branches, in execution order.
+     *
+     * @param projectId The project identifier.
+     * @return The generated deletion statements.
+     */
+    List<String> projectBranchesDeletionStatements(int projectId);
 }
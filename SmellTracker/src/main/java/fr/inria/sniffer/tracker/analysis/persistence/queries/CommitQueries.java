@@ -21,6 +21,8 @@ import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
 import fr.inria.sniffer.tracker.analysis.model.GitDiff;
 import fr.inria.sniffer.tracker.analysis.model.GitRename;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 
 public interface CommitQueries {
     /**
@@ -31,7 +33,38 @@ public interface CommitQueries {
      * @param diff      {@link GitDiff} for this commit.
      * @return The generated insertion statement.
      */
-    String commitInsertionStatement(int projectId, Commit commit, GitDiff diff);
+    ParameterizedStatement commitInsertionStatement(int projectId, Commit commit, GitDiff diff);
+
+    /**
+     * Generate a commit row to bulk load, with already resolved identifiers.
+     *
+     * @param projectId      The project identifier.
+     * @param developerId    Identifier of the commit author.
+     * @param commit         The commit to insert.
+     * @param diff           {@link GitDiff} for this commit.
+     * @param mergedCommitId Identifier of the merged commit, null if none or not yet known.
+     * @return The generated row.
+     */
+    CopyRow commitRow(int projectId, int developerId, Commit commit, GitDiff diff, Integer mergedCommitId);
+
+    /**
+     * Generate a statement setting the merged commit of an already inserted merge commit.
+     *
+     * @param projectId The project identifier.
+     * @param commit    The merge commit to update.
+     * @return The generated update statement.
+     */
+    ParameterizedStatement mergedCommitUpdateStatement(int projectId, Commit commit);
+
+    /**
+     * Generate a statement setting the merged commit of an already inserted merge commit,
+     * with already resolved identifiers.
+     *
+     * @param commitId       Identifier of the merge commit to update.
+     * @param mergedCommitId Identifier of the merged commit.
+     * @return The generated update statement.
+     */
+    ParameterizedStatement mergedCommitUpdateStatement(int commitId, int mergedCommitId);
 
     /**
      * Generate a statement inserting a {@link GitRename} into the persistence.
@@ -41,7 +74,17 @@ public interface CommitQueries {
      * @param rename    {@link GitRename} instance to persist.
      * @return The generated insertion statement.
      */
-    String fileRenameInsertionStatement(int projectId, String commitSha, GitRename rename);
+    ParameterizedStatement fileRenameInsertionStatement(int projectId, String commitSha, GitRename rename);
+
+    /**
+     * Generate a statement inserting a {@link GitRename} into the persistence, with an already resolved commit.
+     *
+     * @param projectId The project identifier.
+     * @param commitId  Identifier of the commit to link.
+     * @param rename    {@link GitRename} instance to persist.
+     * @return The generated insertion statement.
+     */
+    ParameterizedStatement fileRenameInsertionStatement(int projectId, int commitId, GitRename rename);
 
     /**
      * Query the identifier of a commit.
@@ -98,6 +141,15 @@ public interface CommitQueries {
      */
     String lastProjectCommitShaQuery(int projectId, boolean paprikaOnly);
 
+    /**
+     * Returns the id and sha1 of the last commit persisted for the project,
+     * i.e. the last commit reached by the previous analysis of its history.
+     *
+     * @param projectId Project to look into.
+     * @return The generated query statement.
+     */
+    String lastPersistedCommitQuery(int projectId);
+
     /**
      * Returns the id of the commit merged into this one, if exists.
      *
@@ -133,5 +185,30 @@ public interface CommitQueries {
      * @param changedFile {@link GitRename} instance to persist.
      * @return The generated insertion statement.
      */
-    String fileChangedInsertionStatement(int projectId, String commitSha, GitChangedFile changedFile);
+    ParameterizedStatement fileChangedInsertionStatement(int projectId, String commitSha, GitChangedFile changedFile);
+
+    /**
+     * Returns the sha1 of every merge commit in the project along with the id of the commit it merges.
+     *
+     * @param projectId The project identifier.
+     * @return The generated query statement.
+     */
+    String mergedCommitIdsQuery(int projectId);
+
+    /**
+     * Returns the identifier and sha1 of every commit in the project.
+     *
+     * @param projectId The project identifier.
+     * @return The generated query statement.
+     */
+    String commitIdsQuery(int projectId);
+
+    /**
+     * Returns the identifier and sha1 of every commit in the project inserted after the given identifier.
+     *
+     * @param projectId The project identifier.
+     * @param sinceId   Only return commits with a greater identifier.
+     * @return The generated query statement.
+     */
+    String commitIdsQuery(int projectId, int sinceId);
 }
@@ -17,6 +17,10 @@
  */
 package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+
+import java.util.Collection;
+
 public interface DeveloperQueries {
     /**
      * Generate a statement inserting the developer into the persistence.
@@ -24,7 +28,16 @@ public interface DeveloperQueries {
      * @param developerName The developer name
      * @return The generated insertion statement.
      */
-    String developerInsertStatement(String developerName);
+    ParameterizedStatement developerInsertStatement(String developerName);
+
+    /**
+     * Generate a statement inserting the developers if not existing,
+     * then returning the 'id' and 'username' of each of them in any case.
+     *
+     * @param developerNames Developers names.
+     * @return The generated query statement.
+     */
+    ParameterizedStatement developerIdsStatement(Collection<String> developerNames);
 
     /**
      * Generate a statement binding the developer to the project into the persistence.
@@ -33,7 +46,16 @@ public interface DeveloperQueries {
      * @param developerName The developer name (must be in developer table).
      * @return The generated insertion statement.
      */
-    String projectDeveloperInsertStatement(int projectId, String developerName);
+    ParameterizedStatement projectDeveloperInsertStatement(int projectId, String developerName);
+
+    /**
+     * Generate a statement inserting a project_developer from an already resolved developer.
+     *
+     * @param projectId   Project identifier.
+     * @param developerId Developer identifier.
+     * @return The generated insertion statement.
+     */
+    ParameterizedStatement projectDeveloperInsertStatement(int projectId, int developerId);
 
     /**
      * Query the identifier of a developer.
@@ -18,8 +18,29 @@
 package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyTemplate;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class JDBCBranchQueries extends JDBCQueriesHelper implements BranchQueries {
+    private static final StatementTemplate BRANCH_INSERTION = new StatementTemplate("branch_insertion",
+            "INSERT INTO branch (project_id, ordinal, parent_commit, merged_into) VALUES (?, ?, " +
+                    "(SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?), " +
+                    "(SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?)) ON CONFLICT DO NOTHING");
+    private static final StatementTemplate BRANCH_MERGED_INTO = new StatementTemplate("branch_merged_into",
+            "UPDATE branch SET merged_into = (SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?) " +
+                    "WHERE project_id = ? AND ordinal = ?");
+    private static final StatementTemplate BRANCH_COMMIT_INSERTION = new StatementTemplate("branch_commit_insertion",
+            "INSERT INTO branch_commit (branch_id, commit_id, ordinal) VALUES (" +
+                    "(SELECT id FROM branch WHERE project_id = ? AND ordinal = ?), " +
+                    "(SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?), ?) ON CONFLICT DO NOTHING");
+    private static final CopyTemplate BRANCH_COMMIT_COPY = new CopyTemplate("branch_commit",
+            "branch_id, commit_id, ordinal", true);
+
     private CommitQueries commitQueries;
     private SmellQueries smellQueries;
 
@@ -29,19 +50,26 @@ public class JDBCBranchQueries extends JDBCQueriesHelper implements BranchQuerie
     }
 
     @Override
-    public String branchInsertionStatement(int projectId, int ordinal, Commit parentCommit, Commit mergedInto) {
-        String parentCommitQuery = parentCommit == null ? null : "(" + commitQueries.idFromShaQuery(projectId, parentCommit.sha) + ")";
-        String mergedIntoQuery = mergedInto == null ? null : "(" + commitQueries.idFromShaQuery(projectId, mergedInto.sha) + ")";
-        return "INSERT INTO branch (project_id, ordinal, parent_commit, merged_into) VALUES ('"
-                + projectId + "', '" + ordinal + "', " + parentCommitQuery + ", " + mergedIntoQuery
-                + ") ON CONFLICT DO NOTHING;";
+    public ParameterizedStatement branchInsertionStatement(int projectId, int ordinal, Commit parentCommit, Commit mergedInto) {
+        // A null sha will leave the commit reference to null.
+        String parentCommitSha = parentCommit == null ? null : parentCommit.sha;
+        String mergedIntoSha = mergedInto == null ? null : mergedInto.sha;
+        return BRANCH_INSERTION.bind(projectId, ordinal, parentCommitSha, projectId, mergedIntoSha, projectId);
+    }
+
+    @Override
+    public ParameterizedStatement branchMergedIntoStatement(int projectId, int ordinal, Commit mergedInto) {
+        return BRANCH_MERGED_INTO.bind(mergedInto.sha, projectId, projectId, ordinal);
     }
 
     @Override
-    public String branchCommitInsertionQuery(int projectId, int branchOrdinal, String commitSha, int ordinal) {
-        return "INSERT INTO branch_commit (branch_id, commit_id, ordinal) VALUES (" +
-                "(" + idFromOrdinalQueryStatement(projectId, branchOrdinal) + "), " +
-                "(" + commitQueries.idFromShaQuery(projectId, commitSha) + "), " + ordinal + ") ON CONFLICT DO NOTHING;";
+    public ParameterizedStatement branchCommitInsertionQuery(int projectId, int branchOrdinal, String commitSha, int ordinal) {
+        return BRANCH_COMMIT_INSERTION.bind(projectId, branchOrdinal, commitSha, projectId, ordinal);
+    }
+
+    @Override
+    public CopyRow branchCommitRow(int branchId, int commitId, int ordinal) {
+        return BRANCH_COMMIT_COPY.row(branchId, commitId, ordinal);
     }
 
     @Override
@@ -112,6 +140,16 @@ public class JDBCBranchQueries extends JDBCQueriesHelper implements BranchQuerie
         return branchLastCommitQuery(projectId, branchId, "id");
     }
 
+    @Override
+    public String lastCommitBeforeQuery(int projectId, int branchId, int lastCommitId) {
+        return "SELECT commit_entry.id, commit_entry.sha1 FROM branch_commit " +
+                "JOIN commit_entry ON commit_entry.id = branch_commit.commit_id " +
+                "WHERE branch_commit.branch_id = " + branchId + " " +
+                "AND commit_entry.project_id = " + projectId + " " +
+                "AND commit_entry.id <= " + lastCommitId + " " +
+                "ORDER BY branch_commit.ordinal DESC LIMIT 1";
+    }
+
     @Override
     public String commitOrdinalQuery(int projectId, int branchId, Commit commit) {
         return "SELECT branch_commit.ordinal FROM branch_commit " +
@@ -120,6 +158,33 @@ public class JDBCBranchQueries extends JDBCQueriesHelper implements BranchQuerie
                 "AND commit_entry.sha1 = '" + commit.sha + "'";
     }
 
+    @Override
+    public String branchCommitsQuery(int projectId) {
+        return "SELECT branch_commit.branch_id, branch_commit.ordinal, commit_entry.sha1, commit_entry.in_detector " +
+                "FROM branch_commit " +
+                "JOIN branch ON branch.id = branch_commit.branch_id " +
+                "JOIN commit_entry ON commit_entry.id = branch_commit.commit_id " +
+                "WHERE branch.project_id = " + projectId + " " +
+                "ORDER BY branch_commit.id";
+    }
+
+    @Override
+    public String branchesQuery(int projectId) {
+        return "SELECT branch.id, branch.ordinal, commit_entry.sha1 AS parent_sha1, merged.sha1 AS merged_into_sha1 " +
+                "FROM branch " +
+                "LEFT JOIN commit_entry ON commit_entry.id = branch.parent_commit " +
+                "LEFT JOIN commit_entry AS merged ON merged.id = branch.merged_into " +
+                "WHERE branch.project_id = " + projectId;
+    }
+
+    @Override
+    public List<String> projectBranchesDeletionStatements(int projectId) {
+        return Arrays.asList(
+                "DELETE FROM branch_commit WHERE branch_id IN (SELECT id FROM branch WHERE project_id = " + projectId + ")",
+                "DELETE FROM branch WHERE project_id = " + projectId
+        );
+    }
+
     /**
      * Helper method to fetch a last branch commit's commit_entry specific field.
      *
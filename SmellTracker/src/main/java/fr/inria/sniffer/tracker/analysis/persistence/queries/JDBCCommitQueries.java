@@ -21,8 +21,37 @@ import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
 import fr.inria.sniffer.tracker.analysis.model.GitDiff;
 import fr.inria.sniffer.tracker.analysis.model.GitRename;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyTemplate;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
+
+import java.sql.Timestamp;
 
 public class JDBCCommitQueries extends JDBCQueriesHelper implements CommitQueries {
+    private static final StatementTemplate COMMIT_INSERTION = new StatementTemplate("commit_insertion",
+            "INSERT INTO commit_entry (project_id, developer_id, sha1, ordinal, date, " +
+                    "additions, deletions, files_changed, message, merged_commit_id, in_detector) VALUES (" +
+                    "?, (SELECT id FROM developer WHERE username = ?), ?, ?, ?, ?, ?, ?, ?, " +
+                    "(SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?), ?) ON CONFLICT DO NOTHING");
+    private static final CopyTemplate COMMIT_COPY = new CopyTemplate("commit_entry",
+            "project_id, developer_id, sha1, ordinal, date, additions, deletions, files_changed, " +
+                    "message, merged_commit_id, in_detector", true);
+    private static final StatementTemplate MERGED_COMMIT_UPDATE = new StatementTemplate("merged_commit_update",
+            "UPDATE commit_entry SET merged_commit_id = " +
+                    "(SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?) " +
+                    "WHERE sha1 = ? AND project_id = ?");
+    private static final StatementTemplate MERGED_COMMIT_ID_UPDATE = new StatementTemplate("merged_commit_id_update",
+            "UPDATE commit_entry SET merged_commit_id = ? WHERE id = ?");
+    private static final StatementTemplate FILE_RENAME_INSERTION = new StatementTemplate("file_rename_insertion",
+            "INSERT INTO file_rename (project_id, commit_id, old_file, new_file, similarity) VALUES (" +
+                    "?, (SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?), ?, ?, ?) ON CONFLICT DO NOTHING");
+    private static final StatementTemplate FILE_RENAME_ID_INSERTION = new StatementTemplate("file_rename_id_insertion",
+            "INSERT INTO file_rename (project_id, commit_id, old_file, new_file, similarity) VALUES (" +
+                    "?, ?, ?, ?, ?) ON CONFLICT DO NOTHING");
+    private static final StatementTemplate FILE_CHANGED_INSERTION = new StatementTemplate("file_changed_insertion",
+            "INSERT INTO file_changed (project_id, commit_id, file_name, modification_size) VALUES (" +
+                    "?, (SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?), ?, ?) ON CONFLICT DO NOTHING");
 
     private DeveloperQueries developerQueries;
 
@@ -31,22 +60,33 @@ public class JDBCCommitQueries extends JDBCQueriesHelper implements CommitQuerie
     }
 
     @Override
-    public String commitInsertionStatement(int projectId, Commit commit, GitDiff diff) {
+    public ParameterizedStatement commitInsertionStatement(int projectId, Commit commit, GitDiff diff) {
         logger.trace("[" + projectId + "] Inserting commit: " + commit.sha
                 + " - ordinal: " + commit.ordinal + " - diff: " + diff + " - time: " + commit.date);
 
-        // Escaping double dollars to avoid exiting dollar quoted string too soon.
-        String commitMessage = escapeStringEntry(commit.message);
+        // A null sha will leave merged_commit_id to null.
+        String mergedCommitSha = commit.getParentCount() >= 2 ? commit.getParent(1).sha : null;
+
+        return COMMIT_INSERTION.bind(projectId, commit.authorEmail, commit.sha, commit.ordinal,
+                new Timestamp(commit.date.getMillis()), diff.getAddition(), diff.getDeletion(), diff.getChangedFiles(),
+                commit.message, mergedCommitSha, projectId, commit.isInPaprika());
+    }
+
+    @Override
+    public CopyRow commitRow(int projectId, int developerId, Commit commit, GitDiff diff, Integer mergedCommitId) {
+        return COMMIT_COPY.row(projectId, developerId, commit.sha, commit.ordinal,
+                new Timestamp(commit.date.getMillis()), diff.getAddition(), diff.getDeletion(), diff.getChangedFiles(),
+                commit.message, mergedCommitId, commit.isInPaprika());
+    }
 
-        String mergedCommit = commit.getParentCount() >= 2 ?
-                "(" + idFromShaQuery(projectId, commit.getParent(1).sha) + ")" : null;
+    @Override
+    public ParameterizedStatement mergedCommitUpdateStatement(int projectId, Commit commit) {
+        return MERGED_COMMIT_UPDATE.bind(commit.getParent(1).sha, projectId, commit.sha, projectId);
+    }
 
-        String developerQuery = developerQueries.idFromEmailQuery(commit.authorEmail);
-        return "INSERT INTO commit_entry (project_id, developer_id, sha1, ordinal, date, " +
-                "additions, deletions, files_changed, message, merged_commit_id, in_detector) VALUES ('" +
-                projectId + "', (" + developerQuery + "), '" + commit.sha + "', " + commit.ordinal + ", '" + commit.date.toString() +
-                "', " + diff.getAddition() + ", " + diff.getDeletion() + ", " + diff.getChangedFiles() +
-                ", $$ " + commitMessage + " $$, " + mergedCommit + ", " + commit.isInPaprika() + ") ON CONFLICT DO NOTHING;";
+    @Override
+    public ParameterizedStatement mergedCommitUpdateStatement(int commitId, int mergedCommitId) {
+        return MERGED_COMMIT_ID_UPDATE.bind(mergedCommitId, commitId);
     }
 
     @Override
@@ -94,10 +134,19 @@ public class JDBCCommitQueries extends JDBCQueriesHelper implements CommitQuerie
     }
 
     @Override
-    public String fileRenameInsertionStatement(int projectId, String commitSha, GitRename rename) {
-        return "INSERT INTO file_rename (project_id, commit_id, old_file, new_file, similarity) VALUES ('" +
-                projectId + "', (" + idFromShaQuery(projectId, commitSha) + "), '" + rename.oldFile + "', '" +
-                rename.newFile + "', " + rename.similarity + ") ON CONFLICT DO NOTHING;";
+    public String lastPersistedCommitQuery(int projectId) {
+        return "SELECT id, sha1 FROM commit_entry WHERE project_id = " + projectId + " ORDER BY id DESC LIMIT 1";
+    }
+
+    @Override
+    public ParameterizedStatement fileRenameInsertionStatement(int projectId, String commitSha, GitRename rename) {
+        return FILE_RENAME_INSERTION.bind(projectId, commitSha, projectId,
+                rename.oldFile, rename.newFile, rename.similarity);
+    }
+
+    @Override
+    public ParameterizedStatement fileRenameInsertionStatement(int projectId, int commitId, GitRename rename) {
+        return FILE_RENAME_ID_INSERTION.bind(projectId, commitId, rename.oldFile, rename.newFile, rename.similarity);
     }
 
     @Override
@@ -105,6 +154,22 @@ public class JDBCCommitQueries extends JDBCQueriesHelper implements CommitQuerie
         return "SELECT merged_commit_id AS id FROM commit_entry where sha1 = '" + commit.sha + "'";
     }
 
+    @Override
+    public String mergedCommitIdsQuery(int projectId) {
+        return "SELECT sha1, merged_commit_id AS id FROM commit_entry " +
+                "WHERE project_id = " + projectId + " AND merged_commit_id IS NOT NULL";
+    }
+
+    @Override
+    public String commitIdsQuery(int projectId) {
+        return commitIdsQuery(projectId, 0);
+    }
+
+    @Override
+    public String commitIdsQuery(int projectId, int sinceId) {
+        return "SELECT id, sha1 FROM commit_entry WHERE project_id = " + projectId + " AND id > " + sinceId;
+    }
+
     @Override
     public String projectIdFromShaQuery(String sha) {
         return "SELECT project_id from commit_entry WHERE sha1 = '" + sha + "'";
@@ -124,10 +189,8 @@ public class JDBCCommitQueries extends JDBCQueriesHelper implements CommitQuerie
     }
 
     @Override
-    public String fileChangedInsertionStatement(int projectId, String commitSha, GitChangedFile changedFile) {
-        return "INSERT INTO file_changed (project_id, commit_id, file_name, modification_size) VALUES ('" +
-                projectId + "', (" + idFromShaQuery(projectId, commitSha) + "), '" + escapeStringEntry(changedFile.name) + "', '" +
-                changedFile.changeSize + "') ON CONFLICT DO NOTHING;";
+    public ParameterizedStatement fileChangedInsertionStatement(int projectId, String commitSha, GitChangedFile changedFile) {
+        return FILE_CHANGED_INSERTION.bind(projectId, commitSha, projectId, changedFile.name, changedFile.changeSize);
     }
 
 }
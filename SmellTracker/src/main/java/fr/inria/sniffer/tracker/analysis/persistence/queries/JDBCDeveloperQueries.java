@@ -17,16 +17,45 @@
  */
 package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
+
+import java.util.Collection;
+
 public class JDBCDeveloperQueries extends JDBCQueriesHelper implements DeveloperQueries {
+    private static final StatementTemplate DEVELOPER_INSERTION = new StatementTemplate("developer_insertion",
+            "INSERT INTO developer (username) VALUES (?) ON CONFLICT DO NOTHING");
+    private static final StatementTemplate PROJECT_DEVELOPER_INSERTION = new StatementTemplate("project_developer_insertion",
+            "INSERT INTO project_developer (developer_id, project_id) VALUES (" +
+                    "(SELECT id FROM developer WHERE username = ?), ?) ON CONFLICT DO NOTHING");
+    private static final StatementTemplate PROJECT_DEVELOPER_ID_INSERTION = new StatementTemplate("project_developer_id_insertion",
+            "INSERT INTO project_developer (developer_id, project_id) VALUES (?, ?) ON CONFLICT DO NOTHING");
+    // The existing developers are selected apart, instead of rewriting their rows to be returned.
+    private static final StatementTemplate DEVELOPER_IDS = new StatementTemplate("developer_ids",
+            "WITH input AS (SELECT DISTINCT unnest(?::text[]) AS username), " +
+                    "inserted AS (INSERT INTO developer (username) SELECT username FROM input " +
+                    "ON CONFLICT DO NOTHING RETURNING id, username) " +
+                    "SELECT id, username FROM inserted " +
+                    "UNION ALL SELECT id, username FROM developer WHERE username IN (SELECT username FROM input)");
+
+    @Override
+    public ParameterizedStatement developerInsertStatement(String developerName) {
+        return DEVELOPER_INSERTION.bind(developerName);
+    }
+
+    @Override
+    public ParameterizedStatement developerIdsStatement(Collection<String> developerNames) {
+        return DEVELOPER_IDS.bind((Object) developerNames.toArray(new String[0]));
+    }
+
     @Override
-    public String developerInsertStatement(String developerName) {
-        return "INSERT INTO developer (username) VALUES ($$" + escapeStringEntry(developerName) + "$$) ON CONFLICT DO NOTHING;";
+    public ParameterizedStatement projectDeveloperInsertStatement(int projectId, String developerName) {
+        return PROJECT_DEVELOPER_INSERTION.bind(developerName, projectId);
     }
 
     @Override
-    public String projectDeveloperInsertStatement(int projectId, String developerName) {
-        return "INSERT INTO project_developer (developer_id, project_id) VALUES (" +
-                "(" + idFromEmailQuery(developerName) + "), " + projectId + ") ON CONFLICT DO NOTHING;";
+    public ParameterizedStatement projectDeveloperInsertStatement(int projectId, int developerId) {
+        return PROJECT_DEVELOPER_ID_INSERTION.bind(developerId, projectId);
     }
 
     @Override
@@ -0,0 +1,53 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence.queries;
+
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
+
+public class JDBCJobQueries implements JobQueries {
+    private static final StatementTemplate JOB_START = new StatementTemplate("job_start",
+            "INSERT INTO analysis_job (project_id, stage, status, started) VALUES (?, ?, ?, CURRENT_TIMESTAMP) " +
+                    "ON CONFLICT (project_id, stage) DO UPDATE SET status = EXCLUDED.status, " +
+                    "started = EXCLUDED.started, finished = NULL, error = NULL");
+    private static final StatementTemplate JOB_END = new StatementTemplate("job_end",
+            "UPDATE analysis_job SET status = ?, finished = CURRENT_TIMESTAMP, error = ? " +
+                    "WHERE project_id = ? AND stage = ?");
+
+    @Override
+    public ParameterizedStatement jobStartStatement(int projectId, String stage, String status) {
+        return JOB_START.bind(projectId, stage, status);
+    }
+
+    @Override
+    public ParameterizedStatement jobEndStatement(int projectId, String stage, String status, String error) {
+        return JOB_END.bind(status, error, projectId, stage);
+    }
+
+    @Override
+    public String jobStatusesQuery(int projectId) {
+        return "SELECT stage, status FROM analysis_job WHERE project_id = " + projectId;
+    }
+
+    @Override
+    public String projectsWithStatusQuery(String stage, String status) {
+        return "SELECT project.name AS name FROM analysis_job " +
+                "INNER JOIN project ON project.id = analysis_job.project_id " +
+                "WHERE analysis_job.stage = '" + stage + "' AND analysis_job.status = '" + status + "'";
+    }
+}
@@ -30,4 +30,18 @@ public class JDBCProjectQueries implements ProjectQueries {
         return "SELECT id FROM project WHERE name = '" + name + "'";
     }
 
+    @Override
+    public String analysisRunInsertStatement(String name, String analysisType, long duration) {
+        return "INSERT INTO analysis_run (project_id, type, duration) " +
+                "SELECT id, '" + analysisType + "', " + duration + " FROM project WHERE name = '" + name + "';";
+    }
+
+    @Override
+    public String lastAnalysisDurationsQuery(String analysisType) {
+        return "SELECT DISTINCT ON (project.name) project.name AS name, analysis_run.duration AS duration " +
+                "FROM analysis_run INNER JOIN project ON project.id = analysis_run.project_id " +
+                "WHERE analysis_run.type = '" + analysisType + "' " +
+                "ORDER BY project.name, analysis_run.id DESC";
+    }
+
 }
@@ -17,31 +17,112 @@
  */
 package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
+import fr.inria.sniffer.tracker.analysis.Main;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyTemplate;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 public class JDBCSmellQueries extends JDBCQueriesHelper implements SmellQueries {
+    private static final StatementTemplate SMELL_INSERTION = new StatementTemplate("smell_insertion",
+            "INSERT INTO smell (project_id, instance, type, file, renamed_from) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT DO NOTHING");
+    // The existing smells are not returned by the insertion, hence selected from the table.
+    private static final StatementTemplate SMELLS_INSERTION = new StatementTemplate("smells_insertion",
+            "WITH input AS (SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::integer[]) " +
+                    "AS input (instance, type, file, renamed_from)), " +
+                    "inserted AS (INSERT INTO smell (project_id, instance, type, file, renamed_from) " +
+                    "SELECT ?, instance, type, file, renamed_from FROM input " +
+                    "ON CONFLICT DO NOTHING RETURNING id, instance, type, file, renamed_from) " +
+                    "SELECT id, instance, type, file, renamed_from FROM inserted " +
+                    "UNION ALL SELECT id, instance, type, file, renamed_from FROM smell " +
+                    "WHERE project_id = ? AND (instance, type, file) IN (SELECT instance, type, file FROM input)");
+    private static final StatementTemplate PRESENCE_INTERVAL_INSERTION = new StatementTemplate("smell_presence_interval_insertion",
+            "INSERT INTO smell_presence_interval (project_id, smell_id, branch_id, first_ordinal, last_ordinal) " +
+                    "VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (smell_id, branch_id, first_ordinal) DO UPDATE SET last_ordinal = EXCLUDED.last_ordinal");
+    private static final Map<SmellCategory, StatementTemplate> CATEGORY_INSERTIONS = new EnumMap<>(SmellCategory.class);
+    private static final Map<SmellCategory, CopyTemplate> CATEGORY_COPIES = new EnumMap<>(SmellCategory.class);
+
+    static {
+        for (SmellCategory category : SmellCategory.values()) {
+            CATEGORY_INSERTIONS.put(category, new StatementTemplate(category.getName() + "_insertion",
+                    "INSERT INTO " + category.getName() + " (project_id, smell_id, commit_id) VALUES " +
+                            "(?, ?, (SELECT id FROM commit_entry WHERE sha1 = ? AND project_id = ?))"));
+            // A smell already bound to the commit must not abort the whole copy.
+            CATEGORY_COPIES.put(category, new CopyTemplate(category.getName(), "project_id, smell_id, commit_id", true));
+        }
+    }
 
     private CommitQueries commitQueries;
+    // Whether the smell presence is persisted as branch intervals.
+    private final boolean presenceIntervals;
+    // Table or view holding the smell presence on each commit.
+    private final String presenceTable;
 
     public JDBCSmellQueries(CommitQueries commitQueries) {
+        this(commitQueries, Main.SMELL_PRESENCE_INTERVALS);
+    }
+
+    /**
+     * @param presenceIntervals True to read and write the smell presence as branch intervals,
+     *                          false to only use the presence persisted per commit.
+     */
+    public JDBCSmellQueries(CommitQueries commitQueries, boolean presenceIntervals) {
         this.commitQueries = commitQueries;
+        this.presenceIntervals = presenceIntervals;
+        this.presenceTable = presenceIntervals ? "smell_presence_expanded" : SmellCategory.PRESENCE.getName();
+    }
+
+    @Override
+    public boolean presenceIntervals() {
+        return presenceIntervals;
+    }
+
+    @Override
+    public ParameterizedStatement smellInsertionStatement(int projectId, Smell smell) {
+        Integer parentIdOrNull = smell.parent == null ? null : smell.parent.id;
+        return SMELL_INSERTION.bind(projectId, smell.instance, smell.type, smell.file, parentIdOrNull);
     }
 
     @Override
-    public String smellInsertionStatement(int projectId, Smell smell) {
-        String parentIdOrNull = smell.parent == null ? null : String.valueOf(smell.parent.id);
+    public ParameterizedStatement smellsInsertionStatement(int projectId, List<Smell> smells) {
+        String[] instances = new String[smells.size()];
+        String[] types = new String[smells.size()];
+        String[] files = new String[smells.size()];
+        Integer[] parents = new Integer[smells.size()];
+        Smell smell;
+        for (int i = 0; i < smells.size(); i++) {
+            smell = smells.get(i);
+            instances[i] = smell.instance;
+            types[i] = smell.type;
+            files[i] = smell.file;
+            parents[i] = smell.parent == null ? null : smell.parent.id;
+        }
+        return SMELLS_INSERTION.bind(instances, types, files, parents, projectId, projectId);
+    }
 
-        return "INSERT INTO smell (project_id, instance, type, file, renamed_from) VALUES" +
-                "(" + projectId + ", '" + smell.instance + "', '" + smell.type + "', '"
-                + smell.file + "', " + parentIdOrNull + ") ON CONFLICT DO NOTHING;";
+    @Override
+    public ParameterizedStatement smellCategoryInsertionStatement(int projectId, String sha1, Smell smell, SmellCategory category) {
+        return CATEGORY_INSERTIONS.get(category).bind(projectId, smell.id, sha1, projectId);
     }
 
     @Override
-    public String smellCategoryInsertionStatement(int projectId, String sha1, Smell smell, SmellCategory category) {
-        return "INSERT INTO " + category.getName() + " (project_id, smell_id, commit_id) VALUES " +
-                "(" + projectId + ", " + smell.id + ", (" +
-                commitQueries.idFromShaQuery(projectId, sha1) + "));";
+    public CopyRow smellCategoryRow(int projectId, int commitId, Smell smell, SmellCategory category) {
+        return CATEGORY_COPIES.get(category).row(projectId, smell.id, commitId);
+    }
+
+    @Override
+    public ParameterizedStatement smellPresenceIntervalStatement(int projectId, int branchId, Smell smell,
+                                                                 int firstOrdinal, int lastOrdinal) {
+        return PRESENCE_INTERVAL_INSERTION.bind(projectId, smell.id, branchId, firstOrdinal, lastOrdinal);
     }
 
     @Override
@@ -94,8 +175,8 @@ public class JDBCSmellQueries extends JDBCQueriesHelper implements SmellQueries
     @Override
     public String commitSmellsQuery(int projectId, String commitId, String smellType) {
         String smellsQuery = "SELECT smell.id, type, instance, file, renamed_from FROM smell " +
-                "RIGHT JOIN smell_presence ON smell_presence.smell_id = smell.id " +
-                "WHERE smell_presence.commit_id = " + commitId;
+                "RIGHT JOIN " + presenceTable + " ON " + presenceTable + ".smell_id = smell.id " +
+                "WHERE " + presenceTable + ".commit_id = " + commitId;
         if (smellType != null) {
             smellsQuery += " AND smell.type = '" + smellType + "'";
         }
@@ -127,8 +208,27 @@ public class JDBCSmellQueries extends JDBCQueriesHelper implements SmellQueries
                 "WHERE smell_refactoring.project_id = " + projectId;
     }
 
+    @Override
+    public String refactoredInstancesWithSha1Page(int projectId, int afterId, int limit) {
+        return allRefactoredInstancesWithSha1(projectId) + " AND smell_refactoring.id > " + afterId +
+                " ORDER BY smell_refactoring.id LIMIT " + limit;
+    }
+
     public String setAsDeleted(int projectId, int refactoringId, boolean deleted) {
         return "UPDATE smell_refactoring SET deleted = " + deleted + " " +
                 "WHERE id = " + refactoringId;
     }
+
+    @Override
+    public List<String> projectSmellsDeletionStatements(int projectId) {
+        List<String> statements = new ArrayList<>();
+        for (SmellCategory category : SmellCategory.values()) {
+            statements.add("DELETE FROM " + category.getName() + " WHERE project_id = " + projectId);
+        }
+        statements.add("DELETE FROM smell_presence_interval WHERE project_id = " + projectId);
+        statements.add("DELETE FROM lost_smell_introduction WHERE project_id = " + projectId);
+        statements.add("DELETE FROM lost_smell_refactoring WHERE project_id = " + projectId);
+        statements.add("DELETE FROM smell WHERE project_id = " + projectId);
+        return statements;
+    }
 }
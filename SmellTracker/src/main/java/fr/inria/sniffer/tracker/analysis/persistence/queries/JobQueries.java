@@ -0,0 +1,60 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence.queries;
+
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+
+public interface JobQueries {
+    /**
+     * Generate a statement marking an analysis stage as started, replacing any previous execution.
+     *
+     * @param projectId The project identifier.
+     * @param stage     The analysis stage name.
+     * @param status    The status of the started stage.
+     * @return The generated statement.
+     */
+    ParameterizedStatement jobStartStatement(int projectId, String stage, String status);
+
+    /**
+     * Generate a statement marking an analysis stage as ended.
+     *
+     * @param projectId The project identifier.
+     * @param stage     The analysis stage name.
+     * @param status    The final status of the stage.
+     * @param error     The error that ended the stage, may be null.
+     * @return The generated statement.
+     */
+    ParameterizedStatement jobEndStatement(int projectId, String stage, String status, String error);
+
+    /**
+     * Query the 'stage' and 'status' of every analysis stage started on a project.
+     *
+     * @param projectId The project identifier.
+     * @return The generated query statement.
+     */
+    String jobStatusesQuery(int projectId);
+
+    /**
+     * Query the 'name' of all projects on which the given stage ended with the given status.
+     *
+     * @param stage  The analysis stage name.
+     * @param status The stage status.
+     * @return The generated query statement.
+     */
+    String projectsWithStatusQuery(String stage, String status);
+}
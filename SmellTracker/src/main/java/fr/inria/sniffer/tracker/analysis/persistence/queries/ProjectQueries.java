@@ -35,4 +35,22 @@ public interface ProjectQueries {
      * @return The generated query statement.
      */
     String idFromNameQuery(String name);
+
+    /**
+     * Generate a statement inserting the duration of a project analysis.
+     *
+     * @param name         The analyzed project name.
+     * @param analysisType The kind of analysis performed.
+     * @param duration     The analysis duration, in milliseconds.
+     * @return The generated insertion statement.
+     */
+    String analysisRunInsertStatement(String name, String analysisType, long duration);
+
+    /**
+     * Query the duration of the last analysis of each project, as 'name' and 'duration'.
+     *
+     * @param analysisType The kind of analysis to look for.
+     * @return The generated query statement.
+     */
+    String lastAnalysisDurationsQuery(String analysisType);
 }
@@ -18,15 +18,33 @@
 package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.CopyRow;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
 
+import java.util.List;
+
 public interface SmellQueries {
     /**
      * @param projectId The project identifier.
      * @param smell     The smell instance to insert.
      * @return The generated insertion statement.
      */
-    String smellInsertionStatement(int projectId, Smell smell);
+    ParameterizedStatement smellInsertionStatement(int projectId, Smell smell);
+
+    /**
+     * Generate a statement inserting all the given smells if not existing,
+     * then returning the 'id', 'instance', 'type', 'file', and 'renamed_from' of each of them.
+     * <p>
+     * Existing smells are returned alongside any other smell of the project with the same instance, type, and file,
+     * thus the result has to be matched against the smells' renamed_from.
+     * The parent of each renamed smell must already be identified.
+     *
+     * @param projectId The project identifier.
+     * @param smells    The smell instances to insert.
+     * @return The generated query statement.
+     */
+    ParameterizedStatement smellsInsertionStatement(int projectId, List<Smell> smells);
 
     /**
      * Generate a statement inserting a {@link Smell} introduction, presence, or refactor into the persistence.
@@ -37,7 +55,39 @@ public interface SmellQueries {
      * @param category  The {@link SmellCategory} to insert the smell into.
      * @return The generated insertion statement.
      */
-    String smellCategoryInsertionStatement(int projectId, String sha1, Smell smell, SmellCategory category);
+    ParameterizedStatement smellCategoryInsertionStatement(int projectId, String sha1, Smell smell, SmellCategory category);
+
+    /**
+     * Generate a {@link Smell} introduction, presence, or refactor row to bulk load, with an already resolved commit.
+     *
+     * @param projectId The project identifier.
+     * @param commitId  Identifier of the commit to bind the Smell category onto.
+     * @param smell     The smell instance to insert.
+     * @param category  The {@link SmellCategory} to insert the smell into.
+     * @return The generated row.
+     */
+    CopyRow smellCategoryRow(int projectId, int commitId, Smell smell, SmellCategory category);
+
+    /**
+     * Tell how the smell presence is persisted, the analysis writing it the same way it is read.
+     *
+     * @return True if the smell presence is persisted as intervals of branch commits, false if persisted per commit.
+     */
+    boolean presenceIntervals();
+
+    /**
+     * Generate a statement persisting the presence of a {@link Smell} on consecutive commits of a branch.
+     * The interval of the smell starting on the same branch commit is extended if already persisted.
+     *
+     * @param projectId    The project identifier.
+     * @param branchId     The branch holding the commits.
+     * @param smell        The identified smell instance.
+     * @param firstOrdinal Ordinal in the branch of the first commit holding the smell.
+     * @param lastOrdinal  Ordinal in the branch of the last commit holding the smell.
+     * @return The generated insertion statement.
+     */
+    ParameterizedStatement smellPresenceIntervalStatement(int projectId, int branchId, Smell smell,
+                                                          int firstOrdinal, int lastOrdinal);
 
     /**
      * Generate a statement inserting a lost {@link Smell} introduction, or refactor into the persistence.
@@ -90,6 +140,17 @@ public interface SmellQueries {
      */
     String allRefactoredInstancesWithSha1(int projectId);
 
+    /**
+     * Return a page of the instances of refactored smells for the project
+     * with their matching commit's sha1, ordered by refactoring 'id'.
+     *
+     * @param projectId The project identifier.
+     * @param afterId   Only return the refactorings following this identifier.
+     * @param limit     Maximum number of refactorings to return.
+     * @return The generated query statement.
+     */
+    String refactoredInstancesWithSha1Page(int projectId, int afterId, int limit);
+
     /**
      * Set the smell_refactoring entry as deleted.
      *
@@ -99,4 +160,12 @@ public interface SmellQueries {
      * @return The generated query statement.
      */
     String setAsDeleted(int projectId, int refactoringId, boolean deleted);
+
+    /**
+     * Generate the statements deleting all the project's smells along with their categories, in execution order.
+     *
+     * @param projectId The project identifier.
+     * @return The generated deletion statements.
+     */
+    List<String> projectSmellsDeletionStatements(int projectId);
 }
@@ -23,4 +23,11 @@ public interface Query {
      * Execute the query.
      */
     void query() throws QueryException;
+
+    /**
+     * Remove the partial results left by an interrupted execution of the query,
+     * before executing it again. Nothing is removed by default.
+     */
+    default void cleanup() {
+    }
 }
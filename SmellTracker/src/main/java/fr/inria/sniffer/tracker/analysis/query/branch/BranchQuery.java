@@ -19,19 +19,30 @@ package fr.inria.sniffer.tracker.analysis.query.branch;
 
 import fr.inria.sniffer.tracker.analysis.model.Branch;
 import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.CommitGraph;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
 import fr.inria.sniffer.tracker.analysis.query.PersistenceAnalyzer;
 import fr.inria.sniffer.tracker.analysis.query.Query;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Build a branch tree in the Persistence for the given project.
@@ -39,67 +50,280 @@ import java.util.List;
 public class BranchQuery extends PersistenceAnalyzer implements Query {
     private final Repository repository;
     private final BranchQueries branchQueries;
+    private final IdCache idCache;
+    private final boolean extend;
 
     private int branchCounter;
 
     public BranchQuery(int projectId, Repository repository,
                        Persistence persistence, CommitQueries commitQueries, BranchQueries branchQueries) {
+        this(projectId, repository, persistence, commitQueries, branchQueries, new IdCache());
+    }
+
+    public BranchQuery(int projectId, Repository repository,
+                       Persistence persistence, CommitQueries commitQueries, BranchQueries branchQueries,
+                       IdCache idCache) {
+        this(projectId, repository, persistence, commitQueries, branchQueries, idCache, false);
+    }
+
+    /**
+     * Build the branch tree of the project, possibly extending the one of a previous analysis.
+     * <p>
+     * The persisted branches keep their identifier and ordinals, only the new commits and branches being added.
+     * As the smells analysis relies on them, the extension fails if the new history changes the persisted branches.
+     *
+     * @param extend True to extend the branches previously persisted for the project.
+     */
+    public BranchQuery(int projectId, Repository repository,
+                       Persistence persistence, CommitQueries commitQueries, BranchQueries branchQueries,
+                       IdCache idCache, boolean extend) {
         super(LoggerFactory.getLogger(BranchQuery.class.getName()), projectId, persistence, commitQueries);
         this.repository = repository;
         this.branchQueries = branchQueries;
+        this.idCache = idCache;
+        this.extend = extend;
         branchCounter = 0;
     }
 
     @Override
     public void query() throws QueryException {
         logger.info("[" + projectId + "] Starting Branches insertion");
-        Commit commit = retrieveHeadCommit();
+        CommitGraph graph = retrieveCommitGraph();
+        List<Branch> branches = buildBranchTree(graph);
+        for (Branch branch : branches) {
+            orderCommits(branch);
+        }
+        if (extend) {
+            branches = extendPersistedBranches(branches);
+        }
 
-        List<Branch> branches = buildBranchTree(null, commit);
+        // Commits identifiers are resolved once to bulk load the branch commits.
+        idCache.putCommitIds(persistence.query(commitQueries.commitIdsQuery(projectId, idCache.lastCommitId())));
+        boolean newBranches = false;
         for (Branch branch : branches) {
-            persistBranch(branch);
+            // Extended branches are already persisted.
+            if (!extend || idCache.branchId(branch.getOrdinal()) == null) {
+                persistBranch(branch);
+                newBranches = true;
+            }
         }
         persistence.commit();
+
+        // The inserted branches identifiers are all resolved at once.
+        if (newBranches) {
+            idCache.putBranchIds(persistence.query(branchQueries.branchesQuery(projectId)));
+        }
+        for (Branch branch : branches) {
+            persistBranchCommits(branch);
+        }
+        persistence.commit();
+    }
+
+    @Override
+    public void cleanup() {
+        logger.info("[" + projectId + "] Removing previously inserted Branches");
+        for (String statement : branchQueries.projectBranchesDeletionStatements(projectId)) {
+            persistence.execute(statement);
+        }
+    }
+
+    /**
+     * Match the built branches with the ones persisted by a previous analysis.
+     * <p>
+     * A built branch holding persisted commits keeps the persisted branch ordinal, and only its new commits.
+     * If the new history merges a persisted branch which was still open, its merge commit is updated.
+     * The other branches are numbered after the persisted ones.
+     *
+     * @param branches The built branches, with their commits ordered.
+     * @return The branches to persist, holding the commits to add.
+     * @throws QueryException If the history changed the persisted branches.
+     */
+    private List<Branch> extendPersistedBranches(List<Branch> branches) throws QueryException {
+        Map<Integer, Integer> branchOrdinals = new HashMap<>();
+        // Parent and merge commits sha of each persisted branch.
+        Map<Integer, String> persistedParents = new HashMap<>();
+        Map<Integer, String> persistedMerges = new HashMap<>();
+        int nextOrdinal = 0;
+        for (Map<String, Object> row : persistence.query(branchQueries.branchesQuery(projectId))) {
+            int ordinal = (int) row.get("ordinal");
+            branchOrdinals.put((int) row.get("id"), ordinal);
+            idCache.putBranchId(ordinal, (int) row.get("id"));
+            persistedParents.put(ordinal, (String) row.get("parent_sha1"));
+            persistedMerges.put(ordinal, (String) row.get("merged_into_sha1"));
+            nextOrdinal = Math.max(nextOrdinal, ordinal + 1);
+        }
+        // Branch and commit ordinals of the persisted commits, and commits count of each persisted branch.
+        Map<String, int[]> persistedCommits = new HashMap<>();
+        Map<Integer, Integer> persistedSizes = new HashMap<>();
+        for (Map<String, Object> row : persistence.query(branchQueries.branchCommitsQuery(projectId))) {
+            int branchOrdinal = branchOrdinals.get((int) row.get("branch_id"));
+            persistedCommits.put((String) row.get("sha1"), new int[]{branchOrdinal, (int) row.get("ordinal")});
+            persistedSizes.merge(branchOrdinal, 1, Integer::sum);
+        }
+        logger.info("[" + projectId + "] => Extending " + branchOrdinals.size() + " persisted branches");
+
+        List<Branch> result = new ArrayList<>();
+        List<Branch> mergedBranches = new ArrayList<>();
+        Set<Integer> extended = new HashSet<>();
+        for (Branch branch : branches) {
+            Integer ordinal = null;
+            int retained = 0;
+            List<Commit> newCommits = new ArrayList<>();
+            for (Commit commit : branch.getCommits()) {
+                int[] persisted = persistedCommits.get(commit.sha);
+                if (persisted == null) {
+                    newCommits.add(commit);
+                    continue;
+                }
+                if (ordinal == null) {
+                    ordinal = persisted[0];
+                }
+                if (persisted[0] != ordinal || persisted[1] != commit.getBranchOrdinal()) {
+                    throw branchesChanged("commit " + commit.sha + " moved from branch " + persisted[0]);
+                }
+                retained++;
+            }
+            if (ordinal == null) {
+                result.add(copyBranch(branch, nextOrdinal++, branch.getCommits()));
+            } else if (!extended.add(ordinal) || retained != persistedSizes.get(ordinal)) {
+                throw branchesChanged("branch " + ordinal + " has been split");
+            } else {
+                Branch extendedBranch = copyBranch(branch, ordinal, newCommits);
+                if (mergedSinceAnalysis(branch, ordinal, persistedParents.get(ordinal), persistedMerges.get(ordinal))) {
+                    mergedBranches.add(extendedBranch);
+                }
+                result.add(extendedBranch);
+            }
+        }
+        if (extended.size() != persistedSizes.size()) {
+            throw branchesChanged("persisted commits are no longer part of the history");
+        }
+        for (Branch branch : mergedBranches) {
+            logger.info("[" + projectId + "] => Branch " + branch.getOrdinal() + " is now merged into "
+                    + branch.getMergedInto().sha);
+            persistence.addParameterizedStatements(
+                    branchQueries.branchMergedIntoStatement(projectId, branch.getOrdinal(), branch.getMergedInto()));
+        }
+        return result;
+    }
+
+    /**
+     * Check the parent and merge commits of a persisted branch against the rebuilt one.
+     *
+     * @param branch          The rebuilt branch.
+     * @param ordinal         The persisted branch ordinal.
+     * @param persistedParent Sha of the persisted branch parent commit, may be null.
+     * @param persistedMerge  Sha of the commit the persisted branch is merged into, null if still open.
+     * @return True if the persisted branch was open and is now merged, thus must be updated.
+     * @throws QueryException If the rebuilt branch has another parent or merge commit.
+     */
+    private boolean mergedSinceAnalysis(Branch branch, int ordinal, String persistedParent, String persistedMerge)
+            throws QueryException {
+        if (!Objects.equals(persistedParent, sha(branch.getParentCommit()))) {
+            throw branchesChanged("branch " + ordinal + " has another parent commit");
+        }
+        String mergedInto = sha(branch.getMergedInto());
+        if (persistedMerge == null) {
+            return mergedInto != null;
+        }
+        if (!persistedMerge.equals(mergedInto)) {
+            throw branchesChanged("branch " + ordinal + " is merged into another commit");
+        }
+        return false;
+    }
+
+    private static String sha(Commit commit) {
+        return commit == null ? null : commit.sha;
+    }
+
+    private QueryException branchesChanged(String reason) {
+        return new QueryException(logger.getName(), "Unable to extend the persisted branches, " + reason
+                + ", the project must be analyzed again from scratch");
+    }
+
+    /**
+     * Copy the given branch with another ordinal and only the given commits.
+     *
+     * @param branch  The branch to copy.
+     * @param ordinal The new branch ordinal.
+     * @param commits The commits to keep, with their ordinal.
+     * @return The new {@link Branch}.
+     */
+    private static Branch copyBranch(Branch branch, int ordinal, List<Commit> commits) {
+        Branch copy = new Branch(ordinal, branch.getMergedInto());
+        copy.setParentCommit(branch.getParentCommit());
+        for (Commit commit : commits) {
+            copy.addCommit(commit, commit.getBranchOrdinal());
+        }
+        return copy;
     }
 
     /**
-     * Retrieve the last commit analyzed by Paprika.
+     * Retrieve the commit graph of the repository, from its HEAD.
      *
-     * @return The first commit to analyze on branch query.
-     * @throws QueryException If the commit could not be found.
+     * @return The graph of commits to analyze on branch query.
+     * @throws QueryException If the graph could not be built.
      */
-    private Commit retrieveHeadCommit() throws QueryException {
-        Commit commit;
+    private CommitGraph retrieveCommitGraph() throws QueryException {
+        CommitGraph graph;
         try {
-            commit = repository.getCommitWithParents(repository.getHead().sha);
-            logger.info("[" + projectId + "] => Found HEAD commit: " + commit.sha);
-        } catch (IOException | IndexOutOfBoundsException e) {
+            graph = repository.getCommitGraph();
+        } catch (IOException e) {
             throw new QueryException(logger.getName(), e);
         }
-        return commit;
+        if (graph.getHead() == CommitGraph.UNKNOWN) {
+            throw new QueryException(logger.getName(), "Unable to find HEAD commit in repository " + repository);
+        }
+        logger.info("[" + projectId + "] => Found HEAD commit: " + graph.getCommit(graph.getHead()).sha);
+        return graph;
     }
 
     /**
      * Persist the given branch in repository.
+     * The insertion is batched, its identifier being resolved once all the branches are committed.
      *
      * @param branch The branch to persist.
      */
     private void persistBranch(Branch branch) {
-        String statement = branchQueries.branchInsertionStatement(projectId, branch.getOrdinal(),
+        ParameterizedStatement statement = branchQueries.branchInsertionStatement(projectId, branch.getOrdinal(),
                 branch.getParentCommit(), branch.getMergedInto());
-        persistence.addStatements(statement);
+        persistence.addParameterizedStatements(statement);
+    }
 
+    /**
+     * Persist the commits of the given branch.
+     * Rows are bulk loaded when both the branch and commit identifiers are known,
+     * otherwise they are resolved by the database.
+     *
+     * @param branch The branch to persist commits from.
+     */
+    private void persistBranchCommits(Branch branch) {
+        Integer branchId = idCache.branchId(branch.getOrdinal());
+        Integer commitId;
+
+        for (Commit commit : branch.getCommits()) {
+            commitId = idCache.commitId(commit.sha);
+            if (branchId != null && commitId != null) {
+                persistence.addCopyRows(branchQueries.branchCommitRow(branchId, commitId, commit.getBranchOrdinal()));
+            } else {
+                persistence.addParameterizedStatements(branchQueries.branchCommitInsertionQuery(
+                        projectId, branch.getOrdinal(), commit.sha, commit.getBranchOrdinal()));
+            }
+        }
+    }
+
+    /**
+     * Order the commits of the branch from the oldest one, numbered from 0.
+     *
+     * @param branch The branch to order.
+     */
+    private static void orderCommits(Branch branch) {
         List<Commit> commits = branch.getCommits();
         Collections.reverse(commits);
         reverse_ordinal(commits);
-        for (Commit commit : commits) {
-            statement = branchQueries.branchCommitInsertionQuery(projectId, branch.getOrdinal(), commit.sha, commit.getBranchOrdinal());
-            persistence.addStatements(statement);
-
-        }
     }
 
-    private void reverse_ordinal(List<Commit> commits) {
+    private static void reverse_ordinal(List<Commit> commits) {
         List<Integer> ordinals = new ArrayList<>();
         for (Commit commit : commits) {
             ordinals.add(commit.getBranchOrdinal());
@@ -112,144 +336,133 @@ public class BranchQuery extends PersistenceAnalyzer implements Query {
 
     /**
      * Create the Tree of branches from the principal one.
-     * This will parse all merge commits and follow their child branches recursively.
+     * This will parse all merge commits and follow their child branches,
+     * a child branch stopping on the first commit already part of a branch.
+     * <p>
+     * The branches are numbered in discovery order, and returned
+     * with each branch after all of its child branches.
      *
-     * @param mother The branch on which this branch is built.
-     * @param start  The branch first commit.
+     * @param graph The repository commit graph.
      * @return The list of {@link Branch} in this project.
      */
-    private List<Branch> buildBranchTree(Branch mother, Commit start) {
-        // In the case that a merge commit will send us to already analyzed commits.
-        // It can happen in the case of BranchQueryTest#testContinuingBranches
-        if (isInBranch(mother, start)) {
-            logger.debug("We already analyzed this commit, returning.");
-            return Collections.emptyList();
-        }
-
-        Branch current = buildBranch(mother, start);
-
-        List<Branch> newBranches;
+    private List<Branch> buildBranchTree(CommitGraph graph) {
+        BitSet inBranch = new BitSet(graph.size());
         List<Branch> branches = new ArrayList<>();
-        Branch traversedCommits = Branch.newMother(mother, current);
 
-        // We build a branch tree for all merge commits of the current branch.
-        for (Commit merge : current.getMerges()) {
-            Commit parentCommit = retrieveParentCommit(merge, 1);
-            if (parentCommit != null) {
-                logger.debug("[" + projectId + "] => Handling merge commit: " + merge.sha);
-                // We set the merge commit to the branch to be able to retrieve it in the child branch.
-                traversedCommits.setMergedInto(merge);
-                newBranches = buildBranchTree(traversedCommits, parentCommit);
+        Deque<BranchMerges> stack = new ArrayDeque<>();
+        stack.push(new BranchMerges(buildBranch(graph, inBranch, graph.getHead(), null)));
+        while (!stack.isEmpty()) {
+            BranchMerges current = stack.peek();
+            if (!current.hasNext()) {
+                stack.pop();
+                branches.add(current.branch);
+                continue;
+            }
 
-                for (Branch traversedBranch : newBranches) {
-                    traversedCommits.addCommits(traversedBranch.getCommits());
-                }
-                branches.addAll(newBranches);
+            int parentCommit = graph.getParent(graph.indexOf(current.next()), 1);
+            if (parentCommit == CommitGraph.UNKNOWN) {
+                logger.error("[" + projectId + "] ==> Unable to find merged parent for commit: " + current.last().sha);
+            } else if (inBranch.get(parentCommit)) {
+                // In the case that a merge commit will send us to already analyzed commits.
+                // It can happen in the case of BranchQueryTest#testContinuingBranches
+                logger.debug("We already analyzed this commit, skipping.");
+            } else {
+                logger.debug("[" + projectId + "] => Handling merge commit: " + current.last().sha);
+                // We set the merge commit to the branch to be able to retrieve it in the child branch.
+                stack.push(new BranchMerges(buildBranch(graph, inBranch, parentCommit, current.last())));
             }
         }
-
-        branches.add(current);
         return branches;
     }
 
     /**
-     * Build a branch with ordered commits.
+     * Build a branch with ordered commits, following the first parent of each commit.
      *
-     * @param mother The branch from which the current one is forked.
-     * @param start  The starting commit of our current branch.
+     * @param graph      The repository commit graph.
+     * @param inBranch   The commits already part of a branch, updated with the new branch commits.
+     * @param start      The starting commit of our current branch.
+     * @param mergedInto The commit merging this branch, null for the principal branch.
      * @return The newly built branch.
      */
-    private Branch buildBranch(Branch mother, Commit start) {
-        Branch current = Branch.fromMother(mother, branchCounter++);
+    private Branch buildBranch(CommitGraph graph, BitSet inBranch, int start, Commit mergedInto) {
+        Branch current = new Branch(branchCounter++, mergedInto);
 
-        Commit commit = start;
+        int commit = start;
         int commitOrdinal = 0;
-        while (nextStillInBranch(commit, mother)) {
-            logger.trace("[" + projectId + "] => Handling commit: " + commit.sha);
-            logger.trace("[" + projectId + "] ==> commit parents (" + commit.getParentCount() + "): " + commit.parents);
-
-            current.addCommit(commit, commitOrdinal);
-            if (commit.getParentCount() >= 2) {
-                current.addMerge(commit);
-            }
+        while (nextStillInBranch(graph, inBranch, commit)) {
+            addCommit(graph, inBranch, current, commit, commitOrdinal);
 
             // Retrieve the parent commit, and do the same.
-            commit = retrieveParentCommit(commit, 0);
+            commit = graph.getParent(commit, 0);
             // But we increase the ordinal whichever the commit to notify the commit gap
             // in case that Paprika does not know the commit.
             commitOrdinal++;
         }
 
         // Last execution setting parent commit
-        if (commit != null) {
-            if (commit.getParentCount() >= 2) {
-                current.addMerge(commit);
-            }
-            current.addCommit(commit, commitOrdinal);
+        if (commit != CommitGraph.UNKNOWN) {
+            addCommit(graph, inBranch, current, commit, commitOrdinal);
             // If the current commit has a parent, we set this parent
             // as the whole branch parent commit.
-            if (commit.getParentCount() >= 1) {
-                current.setParentCommit(retrieveParentCommit(commit, 0));
+            if (graph.getParentCount(commit) >= 1 && graph.getParent(commit, 0) != CommitGraph.UNKNOWN) {
+                current.setParentCommit(graph.getCommit(graph.getParent(commit, 0)));
             }
         }
         return current;
     }
 
-    /**
-     * Retrieve the nth parent of the given commit.
-     * If it could not retrieve the parent for any reason, we log as error the reason and return null.
-     *
-     * @param commit   The commit to retrieve parent from.
-     * @param position The nth parent to fetch.
-     * @return The {@link Commit} if found, null otherwise.
-     */
-    private Commit retrieveParentCommit(Commit commit, int position) {
-        try {
-            return repository.getCommitWithParents(commit.getParent(position).sha);
-        } catch (IOException e) {
-            logger.error("[" + projectId + "] ==> Unable to fetch parent n°" + position + " (" + commit.getParent(1).sha +
-                    ") for commit: " + commit.sha, e);
-            return null;
+    private void addCommit(CommitGraph graph, BitSet inBranch, Branch branch, int commit, int ordinal) {
+        Commit current = graph.getCommit(commit);
+        logger.trace("[" + projectId + "] => Handling commit: " + current.sha);
+        logger.trace("[" + projectId + "] ==> commit parents (" + current.getParentCount() + "): " + current.parents);
+
+        branch.addCommit(current, ordinal);
+        inBranch.set(commit);
+        if (graph.getParentCount(commit) >= 2) {
+            branch.addMerge(current);
         }
     }
 
     /**
-     * Determine if the next commit (the given commit's parent)
+     * Determine if the next commit (the given commit's first parent)
      * is still in the analyzed branch.
      *
-     * @param commit The commit to check.
-     * @param mother The mother of the analyzed branch.
-     * @return False if the commit parent is null or in the mother branch,
+     * @param graph    The repository commit graph.
+     * @param inBranch The commits already part of a branch.
+     * @param commit   The commit to check.
+     * @return False if the commit is unknown, has no parent, or its parent is already in a branch,
      * True otherwise.
      */
-    private boolean nextStillInBranch(Commit commit, Branch mother) {
-        return !(isProjectFirstCommit(commit)
-                || isInBranch(mother, commit.getParent(0)));
+    private static boolean nextStillInBranch(CommitGraph graph, BitSet inBranch, int commit) {
+        if (commit == CommitGraph.UNKNOWN || graph.getParentCount(commit) == 0) {
+            return false;
+        }
+        int parent = graph.getParent(commit, 0);
+        return parent == CommitGraph.UNKNOWN || !inBranch.get(parent);
     }
 
     /**
-     * Determine if the given commit is the origin of the currently parsed branch.
-     *
-     * @param commit The current commit to assert. If the commit is null or has no parent,
-     *               we consider that we reached the end of the commit tree,
-     *               i.e. the original commit of the principal branch.
-     * @return True if the commit is null or has no parent, false otherwise.
+     * Iterate over the merge commits of a built branch.
      */
-    private boolean isProjectFirstCommit(Commit commit) {
-        return commit == null || commit.getParentCount() == 0;
-    }
+    private static final class BranchMerges {
+        final Branch branch;
+        private int nextMerge = 0;
 
-    /**
-     * Determine if the given commit is contained in the given branch.
-     *
-     * @param branch The mother branch in which we could find the original commit.
-     *               If we are handling the principal branch, this can be null,
-     *               thus the commit will never be part of the mother branch.
-     * @param commit The commit to check.
-     * @return True if the commit is part of the mother branch, false otherwise.
-     */
-    private boolean isInBranch(Branch branch, Commit commit) {
-        return branch != null && branch.contains(commit);
+        BranchMerges(Branch branch) {
+            this.branch = branch;
+        }
+
+        boolean hasNext() {
+            return nextMerge < branch.getMerges().size();
+        }
+
+        Commit next() {
+            return branch.getMerges().get(nextMerge++);
+        }
+
+        Commit last() {
+            return branch.getMerges().get(nextMerge - 1);
+        }
     }
 
 }
\ No newline at end of file
@@ -17,60 +17,51 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.commit;
 
+import fr.inria.sniffer.tracker.analysis.Main;
 import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
-import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
-import fr.inria.sniffer.tracker.analysis.model.GitDiff;
-import fr.inria.sniffer.tracker.analysis.model.GitRename;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.ArrayList;
-import java.util.List;
+import fr.inria.sniffer.tracker.analysis.model.Repository;
 
 /**
- * Retrieve all details of a commit using a runtime execution of the local Git program.
- * <p>
- * Version 2.13 is required, since we use the '-C' parameter.
- * <p>
- * This class will build a {@link CommitDetails} class, holding the fetched data.
+ * Retrieve all details of a commit, i.e. its {@link fr.inria.sniffer.tracker.analysis.model.GitDiff},
+ * its renamed files and its changed files, as shown by 'git show -M50% --stat --summary'.
  */
-class CommitDetailsChecker {
-    private static final Logger logger = LoggerFactory.getLogger(CommitDetails.class.getName());
-    private final String repository;
-
-    CommitDetailsChecker(String repository) {
-        this.repository = repository;
-    }
-
-    public CommitDetails fetch(String sha1) {
-        List<GitRename> renames = new ArrayList<>();
-        List<GitChangedFile> changedFiles = new ArrayList<>();
-        GitDiff diff = GitDiff.EMPTY;
-
-        List<String> lines = GitExecution.commitSummary(repository, sha1);
-        for (String line : lines) {
-            try {
-                renames.add(GitRename.parseRenamed(line));
-            } catch (Exception e) {
-                // This is an expected behavior
-                logger.trace("[Rename] " + e.getMessage(), e);
-            }
+interface CommitDetailsChecker extends AutoCloseable {
 
-            try {
-                diff = GitDiff.parse(line);
-            } catch (Exception e) {
-                // This is an expected behavior
-                logger.trace("[Diff] " + e.getMessage(), e);
+    /**
+     * Create the {@link CommitDetailsChecker} to use on the given repository.
+     * <p>
+     * The details are computed by JGit unless the Git program is requested,
+     * in which case the local Git program is executed, either once for the whole history
+     * if {@link Main#GIT_CLI_SINGLE_PROCESS} is set, or once for each commit.
+     *
+     * @param repository The initialized repository to analyze.
+     * @param gitCli     True to execute the local Git program instead of JGit.
+     * @return A new {@link CommitDetailsChecker}.
+     */
+    static CommitDetailsChecker forRepository(Repository repository, boolean gitCli) {
+        if (gitCli) {
+            String path = repository.getRepoDir().toString();
+            if (Main.GIT_CLI_SINGLE_PROCESS) {
+                return new GitLogCommitDetailsChecker(path);
             }
+            return new GitCommitDetailsChecker(path);
+        }
+        return new JGitCommitDetailsChecker(repository.getGitRepository().getRepository());
+    }
 
-            try {
-                changedFiles.add(GitChangedFile.parseFileChange(line));
-            } catch (Exception e) {
-                // This is an expected behavior
-                logger.trace("[FileChanged] " + e.getMessage(), e);
-            }
+    /**
+     * Fetch the details of the given commit.
+     *
+     * @param sha1 The commit sha1.
+     * @return The {@link CommitDetails}, empty if they could not be retrieved.
+     */
+    CommitDetails fetch(String sha1);
 
-        }
-        return new CommitDetails(diff, renames, changedFiles);
+    /**
+     * Release any resource held by this checker.
+     */
+    @Override
+    default void close() {
+        // Nothing to release by default.
     }
 }
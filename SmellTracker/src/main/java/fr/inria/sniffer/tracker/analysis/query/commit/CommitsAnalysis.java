@@ -22,6 +22,8 @@ import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
 import fr.inria.sniffer.tracker.analysis.model.GitDiff;
 import fr.inria.sniffer.tracker.analysis.model.GitRename;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.DeveloperQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
@@ -32,11 +34,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Actual analysis and persisting of commits and authors for a project.
@@ -54,6 +57,9 @@ class CommitsAnalysis implements Query {
     private final DeveloperQueries developerQueries;
     private final CommitQueries commitQueries;
     private final boolean paprikaOnly;
+    private final IdCache idCache;
+    // Last commit persisted by a previous analysis, null to analyze the whole history.
+    private final String sinceSha;
 
     CommitsAnalysis(int projectId, Persistence persistence, Repository repository,
                     Iterator<Map<String, Object>> commits,
@@ -67,6 +73,30 @@ class CommitsAnalysis implements Query {
                     CommitDetailsChecker detailsChecker,
                     DeveloperQueries developerQueries, CommitQueries commitQueries,
                     boolean paprikaOnly) {
+        this(projectId, persistence, repository, commits, detailsChecker, developerQueries, commitQueries,
+                paprikaOnly, new IdCache());
+    }
+
+    CommitsAnalysis(int projectId, Persistence persistence, Repository repository,
+                    Iterator<Map<String, Object>> commits,
+                    CommitDetailsChecker detailsChecker,
+                    DeveloperQueries developerQueries, CommitQueries commitQueries,
+                    boolean paprikaOnly, IdCache idCache) {
+        this(projectId, persistence, repository, commits, detailsChecker, developerQueries, commitQueries,
+                paprikaOnly, idCache, null);
+    }
+
+    /**
+     * Analyze the commits of the project, possibly only the ones added since a previous analysis.
+     *
+     * @param sinceSha The last commit persisted by a previous analysis,
+     *                 its ancestors being skipped from the git history. Null to analyze the whole history.
+     */
+    CommitsAnalysis(int projectId, Persistence persistence, Repository repository,
+                    Iterator<Map<String, Object>> commits,
+                    CommitDetailsChecker detailsChecker,
+                    DeveloperQueries developerQueries, CommitQueries commitQueries,
+                    boolean paprikaOnly, IdCache idCache, String sinceSha) {
         this.projectId = projectId;
         this.persistence = persistence;
         this.repository = repository;
@@ -75,6 +105,9 @@ class CommitsAnalysis implements Query {
         this.developerQueries = developerQueries;
         this.commitQueries = commitQueries;
         this.paprikaOnly = paprikaOnly;
+        this.idCache = idCache;
+        this.sinceSha = sinceSha;
+        logger.debug("[" + projectId + "] Retaining " + paprikaCommits.size() + " Paprika commits");
     }
 
     private static Map<String, Commit> mapPaprikaCommits(Iterator<Map<String, Object>> commits) {
@@ -89,133 +122,199 @@ class CommitsAnalysis implements Query {
 
     @Override
     public void query() throws QueryException {
-        List<String> commitStatements = new ArrayList<>();
-        List<String> authorStatements = new ArrayList<>();
-        List<String> renameStatements = new ArrayList<>();
+        List<AnalyzedCommit> analyzedCommits = new ArrayList<>();
 
         int commitCount = 0;
         CommitDetails details;
         Commit currentCommit;
-        for (String commit : choseCommitsSource()) {
-            currentCommit = fillCommit(commit);
-
-            logger.debug("[" + projectId + "] => Analyzing commit: " + currentCommit.sha);
-            details = detailsChecker.fetch(currentCommit.sha);
-
-            authorStatements.addAll(authorStatements(currentCommit.authorEmail));
-            // GitCommit will not contain the right ordinal.
-            commitStatements.add(commitStatement(currentCommit, details));
-            renameStatements.addAll(fileRenameStatements(currentCommit, details));
-
-            if (++commitCount % BATCH_SIZE == 0) {
-                logger.info("[" + projectId + "] Persist commit batch of size: " + BATCH_SIZE);
-                persistBatch(commitStatements, authorStatements, renameStatements);
-                authorStatements.clear();
-                commitStatements.clear();
-                renameStatements.clear();
+        Iterator<Commit> commits = choseCommitsSource();
+        try {
+            while (commits.hasNext()) {
+                currentCommit = setPaprikaData(commits.next());
+
+                logger.debug("[" + projectId + "] => Analyzing commit: " + currentCommit.sha);
+                details = detailsChecker.fetch(currentCommit.sha);
+
+                // GitCommit will not contain the right ordinal.
+                analyzedCommits.add(new AnalyzedCommit(currentCommit, details));
+
+                if (++commitCount % BATCH_SIZE == 0) {
+                    logger.info("[" + projectId + "] Persist commit batch of size: " + BATCH_SIZE);
+                    persistBatch(analyzedCommits);
+                    analyzedCommits.clear();
+                }
             }
+        } finally {
+            Repository.closeHistory(commits);
         }
-        persistBatch(commitStatements, authorStatements, renameStatements);
+        persistBatch(analyzedCommits);
     }
 
     /**
      * Chose the commits source depending on if we want to query only Paprika
      * commits or not.
      *
-     * @return The list of sha to add to the project.
+     * @return The commits to add to the project.
      * @throws QueryException If anything goes wrong.
      */
-    private List<String> choseCommitsSource() throws QueryException {
+    private Iterator<Commit> choseCommitsSource() throws QueryException {
         if (paprikaOnly) {
-            List<String> shas = new ArrayList<>();
+            List<Commit> commits = new ArrayList<>();
             for (Commit commit : paprikaCommits.values()) {
-                shas.add(commit.sha);
+                commits.add(fetchCommit(commit.sha));
             }
-            return shas;
+            return commits.iterator();
         } else {
-            List<String> list = fetchGitLog();
-            Collections.reverse(list);
-            return list;
+            return fetchGitHistory();
         }
     }
 
     /**
-     * Retrieve the git repository's log.
+     * Retrieve the git repository's history, oldest commits first.
+     * Only the commits following the last persisted one are retrieved if set.
      *
-     * @return An iterable of SHA1s.
+     * @return An iterator of {@link Commit}s filled with their details and parents.
      * @throws QueryException If anything goes wrong.
      */
-    private List<String> fetchGitLog() throws QueryException {
+    private Iterator<Commit> fetchGitHistory() throws QueryException {
         try {
-            return repository.getLog();
+            if (sinceSha != null) {
+                logger.info("[" + projectId + "] => Analyzing commits added since: " + sinceSha);
+            }
+            return repository.getHistory(sinceSha);
         } catch (IOException e) {
             throw new QueryException(logger.getName(), e.getMessage());
         }
     }
 
     /**
-     * Retrieve all details for a commit, currently;
-     * - Author,
-     * - Message,
-     * - Date,
-     * - If it exists in Paprika.
-     * - Ordinal (from Paprika)
+     * Retrieve a single commit from the repository, with its details
+     * (Author, Message, Date) and parents.
      *
      * @param sha1 The commit's sha1.
      * @return A new, filled in {@link Commit}.
      * @throws QueryException If anything goes wrong.
      */
-    private Commit fillCommit(String sha1) throws QueryException {
-        Commit result;
-        Commit paprikaCommit = paprikaCommits.getOrDefault(sha1, null);
+    private Commit fetchCommit(String sha1) throws QueryException {
         try {
-            result = repository.getCommitWithDetails(sha1);
-
-            // Add parents to the gitCommit.
+            Commit result = repository.getCommitWithDetails(sha1);
             result.setParents(repository.getCommitWithParents(sha1).parents);
-
-            // Set paprika data, i.e. the ordinal
-            if (paprikaCommit != null) {
-                // We chose to use Paprika order in commit insertion
-                result.setOrdinal(paprikaCommit.ordinal);
-                result.setInPaprika(true);
-            } else {
-                result.setInPaprika(false);
-            }
+            return result;
         } catch (IOException e) {
             throw new QueryException(logger.getName(),
-                    "Unable to retrieve commit " + paprikaCommit.sha + " in git repository " + repository);
+                    "Unable to retrieve commit " + sha1 + " in git repository " + repository);
         }
-        return result;
+    }
+
+    /**
+     * Set the Paprika data of a commit, currently;
+     * - If it exists in Paprika.
+     * - Ordinal (from Paprika)
+     *
+     * @param commit The commit retrieved from git.
+     * @return The same {@link Commit}, filled in.
+     */
+    private Commit setPaprikaData(Commit commit) {
+        Commit paprikaCommit = paprikaCommits.getOrDefault(commit.sha, null);
+        if (paprikaCommit != null) {
+            // We chose to use Paprika order in commit insertion
+            commit.setOrdinal(paprikaCommit.ordinal);
+            commit.setInPaprika(true);
+        } else {
+            commit.setInPaprika(false);
+        }
+        return commit;
     }
 
     /**
      * Create Developer and project_developer insertion statements.
+     * <p>
+     * The unknown developers of the batch are all inserted at once to cache their identifiers,
+     * the statements are then only generated on their first commit.
+     * If an identifier could not be retrieved, the developer is resolved by the database.
      *
-     * @param emailAddress The developer mail.
+     * @param commits The commits of the batch.
      * @return The generated statements.
      */
-    private List<String> authorStatements(String emailAddress) {
-        List<String> statements = new ArrayList<>();
+    private List<ParameterizedStatement> authorStatements(List<AnalyzedCommit> commits) {
+        List<ParameterizedStatement> statements = new ArrayList<>();
+        Set<String> unknownAuthors = new LinkedHashSet<>();
+        for (AnalyzedCommit analyzed : commits) {
+            if (idCache.developerId(analyzed.commit.authorEmail) == null) {
+                unknownAuthors.add(analyzed.commit.authorEmail);
+            }
+        }
+        if (unknownAuthors.isEmpty()) {
+            return statements;
+        }
 
-        // Try to insert the developer if not exist
-        statements.add(developerQueries.developerInsertStatement(emailAddress));
+        int developerId;
+        for (Map<String, Object> row : persistence.query(developerQueries.developerIdsStatement(unknownAuthors))) {
+            developerId = (int) row.get("id");
+            idCache.putDeveloperId((String) row.get("username"), developerId);
+            statements.add(developerQueries.projectDeveloperInsertStatement(projectId, developerId));
+        }
 
-        // Try to insert the developer/project mapping if not exist
-        statements.add(developerQueries.projectDeveloperInsertStatement(projectId, emailAddress));
+        for (String author : unknownAuthors) {
+            if (idCache.developerId(author) != null) {
+                continue;
+            }
+            // Try to insert the developer if not exist
+            statements.add(developerQueries.developerInsertStatement(author));
 
+            // Try to insert the developer/project mapping if not exist
+            statements.add(developerQueries.projectDeveloperInsertStatement(projectId, author));
+        }
         return statements;
     }
 
     /**
-     * Creates the {@link Commit} insertion statement.
+     * Add the {@link Commit} to the persistence.
+     * The commit is bulk loaded if its author identifier is known, otherwise resolved by the database.
+     * A merge resolved by the database is always set afterward, its merged commit being possibly bulk loaded
+     * in the same batch.
      *
      * @param commit  Commit from Git, containing main data (message, author, ...)
      * @param details Commit details containing file_rename and {@link GitDiff} info.
-     * @return The generated persistence statement.
+     * @return True if the commit is a merge whose merged commit has still to be set, false otherwise.
+     */
+    private boolean addCommit(Commit commit, CommitDetails details) {
+        Integer developerId = idCache.developerId(commit.authorEmail);
+        if (developerId == null) {
+            persistence.addParameterizedStatements(commitQueries.commitInsertionStatement(projectId, commit, details.diff));
+            return commit.getParentCount() >= 2;
+        }
+
+        Integer mergedCommitId = mergedCommitId(commit);
+        persistence.addCopyRows(commitQueries.commitRow(projectId, developerId, commit, details.diff, mergedCommitId));
+        return commit.getParentCount() >= 2 && mergedCommitId == null;
+    }
+
+    /**
+     * @param commit The commit to check.
+     * @return The identifier of the commit merged by this one, null if not a merge or not yet known.
      */
-    private String commitStatement(Commit commit, CommitDetails details) {
-        return commitQueries.commitInsertionStatement(projectId, commit, details.diff);
+    private Integer mergedCommitId(Commit commit) {
+        if (commit.getParentCount() < 2) {
+            return null;
+        }
+        return idCache.commitId(commit.getParent(1).sha);
+    }
+
+    /**
+     * Create the statement setting the merged commit of a merge commit,
+     * using the cached identifiers when both commits are known.
+     *
+     * @param merge The merge commit.
+     * @return The generated statement.
+     */
+    private ParameterizedStatement mergedCommitStatement(Commit merge) {
+        Integer commitId = idCache.commitId(merge.sha);
+        Integer mergedCommitId = idCache.commitId(merge.getParent(1).sha);
+        if (commitId != null && mergedCommitId != null) {
+            return commitQueries.mergedCommitUpdateStatement(commitId, mergedCommitId);
+        }
+        return commitQueries.mergedCommitUpdateStatement(projectId, merge);
     }
 
     /**
@@ -225,8 +324,9 @@ class CommitsAnalysis implements Query {
      * @param details The commit details containing FileRename.
      * @return The generated statements.
      */
-    private List<String> fileRenameStatements(Commit commit, CommitDetails details) {
-        List<String> result = new ArrayList<>();
+    private List<ParameterizedStatement> fileRenameStatements(Commit commit, CommitDetails details) {
+        List<ParameterizedStatement> result = new ArrayList<>();
+        Integer commitId = idCache.commitId(commit.sha);
 
         for (GitRename rename : details.renames) {
             if (!(rename.oldFile.endsWith(".java") && rename.newFile.endsWith(".java"))) {
@@ -237,24 +337,57 @@ class CommitsAnalysis implements Query {
             logger.trace("[" + projectId + "]    => new file: " + rename.newFile);
             logger.trace("[" + projectId + "]    => Similarity: " + rename.similarity);
 
-            result.add(commitQueries.fileRenameInsertionStatement(projectId, commit.sha, rename));
+            if (commitId != null) {
+                result.add(commitQueries.fileRenameInsertionStatement(projectId, commitId, rename));
+            } else {
+                result.add(commitQueries.fileRenameInsertionStatement(projectId, commit.sha, rename));
+            }
         }
         return result;
     }
 
     /**
      * Persist the current commit state.
-     * We add everything in a bulk insert since we must have a coherent state.
      * Warning, we have to insert authors, then commits, then renaming!
+     * The identifiers of the persisted commits are then read back
+     * so that merges and renaming can reference them directly.
      *
-     * @param commitStatements CommitEntry to persists.
-     * @param authorStatements Developer to persist.
-     * @param renameStatements FileRename to persist.
+     * @param commits CommitEntry to persists, along with their authors.
      */
-    private void persistBatch(List<String> commitStatements, List<String> authorStatements, List<String> renameStatements) {
-        persistence.addStatements(authorStatements.toArray(new String[0]));
-        persistence.addStatements(commitStatements.toArray(new String[0]));
-        persistence.addStatements(renameStatements.toArray(new String[0]));
+    private void persistBatch(List<AnalyzedCommit> commits) {
+        List<ParameterizedStatement> authorStatements = authorStatements(commits);
+        persistence.addParameterizedStatements(authorStatements.toArray(new ParameterizedStatement[0]));
+
+        List<Commit> unresolvedMerges = new ArrayList<>();
+        for (AnalyzedCommit analyzed : commits) {
+            if (addCommit(analyzed.commit, analyzed.details)) {
+                unresolvedMerges.add(analyzed.commit);
+            }
+        }
         persistence.commit();
+        idCache.putCommitIds(persistence.query(commitQueries.commitIdsQuery(projectId, idCache.lastCommitId())));
+
+        // The merged commit may be part of the same bulk load, thus is set afterward.
+        for (Commit merge : unresolvedMerges) {
+            persistence.addParameterizedStatements(mergedCommitStatement(merge));
+        }
+        for (AnalyzedCommit analyzed : commits) {
+            List<ParameterizedStatement> renameStatements = fileRenameStatements(analyzed.commit, analyzed.details);
+            persistence.addParameterizedStatements(renameStatements.toArray(new ParameterizedStatement[0]));
+        }
+        persistence.commit();
+    }
+
+    /**
+     * A commit waiting for its batch to be persisted.
+     */
+    private static final class AnalyzedCommit {
+        final Commit commit;
+        final CommitDetails details;
+
+        AnalyzedCommit(Commit commit, CommitDetails details) {
+            this.commit = commit;
+            this.details = details;
+        }
     }
 }
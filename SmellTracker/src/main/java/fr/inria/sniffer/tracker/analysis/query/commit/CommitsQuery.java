@@ -17,7 +17,9 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.commit;
 
+import fr.inria.sniffer.tracker.analysis.AnalysisOptions;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.DeveloperQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
@@ -35,41 +37,59 @@ import org.slf4j.LoggerFactory;
 public class CommitsQuery implements Query {
     private static final Logger logger = LoggerFactory.getLogger(CommitsQuery.class.getName());
     private final int projectId;
-    private final String paprikaDB;
+    private final QueryEngine engine;
     private final Repository repository;
 
     private final Persistence persistence;
     private final DeveloperQueries developerQueries;
     private final CommitQueries commitQueries;
+    private final IdCache idCache;
+    private final String sinceSha;
+    private final AnalysisOptions options;
 
-    public CommitsQuery(int projectId, String paprikaDB, Repository repository,
+    public CommitsQuery(int projectId, QueryEngine engine, Repository repository,
                         Persistence persistence, DeveloperQueries developerQueries, CommitQueries commitQueries) {
+        this(projectId, engine, repository, persistence, developerQueries, commitQueries, new IdCache());
+    }
+
+    public CommitsQuery(int projectId, QueryEngine engine, Repository repository,
+                        Persistence persistence, DeveloperQueries developerQueries, CommitQueries commitQueries,
+                        IdCache idCache) {
+        this(projectId, engine, repository, persistence, developerQueries, commitQueries, idCache, null,
+                AnalysisOptions.DEFAULT);
+    }
+
+    /**
+     * Fetch the commits of the project added since a previous analysis.
+     *
+     * @param sinceSha The last commit persisted by the previous analysis, null to fetch the whole history.
+     * @param options  The options tuning the analysis.
+     */
+    public CommitsQuery(int projectId, QueryEngine engine, Repository repository,
+                        Persistence persistence, DeveloperQueries developerQueries, CommitQueries commitQueries,
+                        IdCache idCache, String sinceSha, AnalysisOptions options) {
         this.projectId = projectId;
-        this.paprikaDB = paprikaDB;
+        this.engine = engine;
         this.repository = repository;
         this.persistence = persistence;
         this.developerQueries = developerQueries;
         this.commitQueries = commitQueries;
+        this.idCache = idCache;
+        this.sinceSha = sinceSha;
+        this.options = options;
     }
 
     @Override
     public void query() throws QueryException {
         logger.info("[" + projectId + "] Starting Commits insertion");
 
-        try {
-            repository.initializeRepository();
-        } catch (Repository.RepositoryException e) {
-            throw new QueryException(logger.getName(), e);
-        }
-
-        QueryEngine engine = new QueryEngine(paprikaDB);
-        CommitDetailsChecker detailsChecker = new CommitDetailsChecker(repository.getRepoDir().toString());
-
+        // The repository is initialized and finalized by the analysis, being used by the following queries.
         Result commits = getCommits(engine);
-        new CommitsAnalysis(projectId, persistence, repository, commits, detailsChecker, developerQueries, commitQueries).query();
-
-        engine.shutDown();
-        repository.finalizeRepository();
+        try (CommitDetailsChecker detailsChecker =
+                     CommitDetailsChecker.forRepository(repository, options.gitCliDetails)) {
+            new CommitsAnalysis(projectId, persistence, repository, commits, detailsChecker,
+                    developerQueries, commitQueries, false, idCache, sinceSha).query();
+        }
     }
 
     private static Result getCommits(QueryEngine engine) throws QueryException {
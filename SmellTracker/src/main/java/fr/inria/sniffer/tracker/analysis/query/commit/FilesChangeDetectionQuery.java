@@ -17,6 +17,8 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.commit;
 
+import fr.inria.sniffer.tracker.analysis.AnalysisOptions;
+import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
 import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
@@ -28,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -38,38 +41,54 @@ public class FilesChangeDetectionQuery implements Query {
     private final Repository repository;
     private final Persistence persistence;
     private final CommitQueries commitQueries;
+    private final AnalysisOptions options;
 
     public FilesChangeDetectionQuery(int appId, Repository repository, Persistence persistence, CommitQueries commitQueries) {
+        this(appId, repository, persistence, commitQueries, AnalysisOptions.DEFAULT);
+    }
+
+    /**
+     * Detect the changed files of each commit using the given options.
+     *
+     * @param options The options tuning the analysis.
+     */
+    public FilesChangeDetectionQuery(int appId, Repository repository, Persistence persistence,
+                                     CommitQueries commitQueries, AnalysisOptions options) {
         this.appId = appId;
         this.repository = repository;
         this.persistence = persistence;
         this.commitQueries = commitQueries;
+        this.options = options;
     }
 
     @Override
     public void query() throws QueryException {
-        List<String> log;
+        persistence.execute(createFilesTable());
+
+        Iterator<Commit> history;
         try {
-            log = repository.getLog();
+            history = repository.getHistory();
         } catch (IOException e) {
             throw new QueryException(logger.getName(), e);
         }
+        try (CommitDetailsChecker detailsChecker =
+                     CommitDetailsChecker.forRepository(repository, options.gitCliDetails)) {
+            while (history.hasNext()) {
+                String sha1 = history.next().sha;
+                CommitDetails details = detailsChecker.fetch(sha1);
+                List<Map<String, Object>> commitId;
 
-        CommitDetailsChecker detailsChecker = new CommitDetailsChecker(repository.getRepoDir().toString());
-
-        persistence.execute(createFilesTable());
-        for (String sha1 : log) {
-            CommitDetails details = detailsChecker.fetch(sha1);
-            List<Map<String, Object>> commitId;
-
-            for (GitChangedFile changedFile : details.changedFiles) {
-                commitId = persistence.query(commitQueries.idFromShaQuery(appId, sha1));
-                if (commitId.isEmpty()) {
-                    logger.warn("Unable to find commit id for project " + appId + " - sha: " + sha1);
-                } else {
-                    persistence.addStatements(commitQueries.fileChangedInsertionStatement(appId, sha1, changedFile));
+                for (GitChangedFile changedFile : details.changedFiles) {
+                    commitId = persistence.query(commitQueries.idFromShaQuery(appId, sha1));
+                    if (commitId.isEmpty()) {
+                        logger.warn("Unable to find commit id for project " + appId + " - sha: " + sha1);
+                    } else {
+                        persistence.addParameterizedStatements(commitQueries.fileChangedInsertionStatement(appId, sha1, changedFile));
+                    }
                 }
             }
+        } finally {
+            Repository.closeHistory(history);
         }
         persistence.commit();
     }
@@ -34,6 +34,7 @@ import java.util.concurrent.TimeUnit;
  */
 class GitExecution {
     private static final Logger logger = LoggerFactory.getLogger(GitExecution.class.getName());
+    public static final String COMMIT_DELIMITER = "\u0000";
 
     public static List<String> execute(String repository, String query) {
         List<String> result = new ArrayList<>();
@@ -70,4 +71,22 @@ class GitExecution {
         // stat=800 avoids losing file name when too long (default is 80)
         return execute(repository, " show " + commit + " -M50% --stat=800 --summary --format=");
     }
+
+    /**
+     * Start a git process printing the summary of every commit, from the oldest one to HEAD.
+     * Each commit summary is preceded by a line made of {@link #COMMIT_DELIMITER} and the commit sha1.
+     * <p>
+     * Merge commits are printed once per parent, the first parent coming first.
+     *
+     * @param repository Path to the repository.
+     * @return The started process, its output has to be consumed by the caller.
+     * @throws IOException If the process could not be started.
+     */
+    public static Process historySummary(String repository) throws IOException {
+        return new ProcessBuilder("git", "-C", repository, "log", "--reverse", "--topo-order", "-m",
+                "-M50%", "--stat=800", "--summary", "--no-color", "--format=%x00%H")
+                // The process is long-lived, an unread error output could block it.
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
 }
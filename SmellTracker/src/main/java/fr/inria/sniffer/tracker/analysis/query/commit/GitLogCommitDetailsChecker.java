@@ -0,0 +1,157 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.commit;
+
+import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retrieve all details of the commits using a single execution of 'git log' over the whole history.
+ * <p>
+ * The output is read lazily, up to the requested commit, the git process being blocked
+ * until we consume it. Commits read ahead of the requested one are kept until requested,
+ * thus the commits should be fetched from the oldest to the most recent.
+ * The read ahead commits are bounded, the oldest ones being dropped first.
+ * A commit not found in the log, or too far ahead, is fetched by a dedicated 'git show' execution.
+ * <p>
+ * This class will build a {@link CommitDetails} class, holding the fetched data.
+ */
+class GitLogCommitDetailsChecker implements CommitDetailsChecker {
+    private static final Logger logger = LoggerFactory.getLogger(GitLogCommitDetailsChecker.class.getName());
+    // Maximum number of commits kept or read ahead of the requested one.
+    static final int READ_AHEAD_LIMIT = 1000;
+    private final String repository;
+    private final int readAheadLimit;
+    private final Map<String, CommitDetails> readAhead;
+
+    private Process process;
+    private BufferedReader reader;
+    private boolean exhausted = false;
+    private String nextSha;
+    private String lastSha;
+
+    GitLogCommitDetailsChecker(String repository) {
+        this(repository, READ_AHEAD_LIMIT);
+    }
+
+    /**
+     * @param repository     The repository path.
+     * @param readAheadLimit Maximum number of commits kept or read ahead of the requested one.
+     */
+    GitLogCommitDetailsChecker(String repository, int readAheadLimit) {
+        this.repository = repository;
+        this.readAheadLimit = readAheadLimit;
+        this.readAhead = new LinkedHashMap<String, CommitDetails>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CommitDetails> eldest) {
+                return size() > readAheadLimit;
+            }
+        };
+    }
+
+    @Override
+    public CommitDetails fetch(String sha1) {
+        CommitDetails details = readAhead.remove(sha1);
+        int read = 0;
+        try {
+            while (details == null && read++ < readAheadLimit && readNextCommit()) {
+                details = readAhead.remove(sha1);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read git log of repository " + repository, e);
+            close();
+        }
+
+        if (details == null) {
+            logger.debug("Commit " + sha1 + " not found in git log, fetching it alone");
+            details = GitCommitDetailsChecker.parseDetails(GitExecution.commitSummary(repository, sha1));
+        }
+        return details;
+    }
+
+    /**
+     * Read the next commit summary from the log, starting the git process if needed.
+     *
+     * @return False if the log has been entirely read, true otherwise.
+     * @throws IOException If the git process could not be read.
+     */
+    private boolean readNextCommit() throws IOException {
+        if (exhausted) {
+            return false;
+        }
+        if (reader == null) {
+            process = GitExecution.historySummary(repository);
+            reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            nextSha = readHeader(reader.readLine());
+        }
+
+        String sha = nextSha;
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null && !line.startsWith(GitExecution.COMMIT_DELIMITER)) {
+            lines.add(line);
+        }
+        nextSha = readHeader(line);
+
+        // Merge commits are printed once per parent, we only keep the first parent diff.
+        if (sha != null && !sha.equals(lastSha)) {
+            readAhead.put(sha, GitCommitDetailsChecker.parseDetails(lines));
+        }
+        lastSha = sha;
+        if (nextSha == null) {
+            close();
+        }
+        return true;
+    }
+
+    /**
+     * @param line The header line.
+     * @return The commit sha1, null if there is no header.
+     */
+    private static String readHeader(String line) {
+        if (line == null) {
+            return null;
+        }
+        return line.substring(GitExecution.COMMIT_DELIMITER.length()).trim();
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close git log output of repository " + repository, e);
+            }
+        }
+        if (process != null) {
+            process.destroy();
+        }
+    }
+}
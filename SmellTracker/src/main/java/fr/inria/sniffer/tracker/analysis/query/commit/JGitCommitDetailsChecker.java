@@ -0,0 +1,148 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.commit;
+
+import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
+import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
+import fr.inria.sniffer.tracker.analysis.model.GitDiff;
+import fr.inria.sniffer.tracker.analysis.model.GitRename;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.patch.FileHeader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retrieve all details of a commit using JGit, without spawning any process.
+ * <p>
+ * The output mimics 'git show -M50% --stat=800 --summary', i.e. a merge commit
+ * is compared to its first parent and the renamed files are not listed as changed files.
+ * <p>
+ * This class will build a {@link CommitDetails} class, holding the fetched data.
+ */
+class JGitCommitDetailsChecker implements CommitDetailsChecker {
+    private static final Logger logger = LoggerFactory.getLogger(JGitCommitDetailsChecker.class.getName());
+    private static final int RENAME_SCORE = 50;
+
+    private final RevWalk walk;
+    private final DiffFormatter formatter;
+
+    JGitCommitDetailsChecker(Repository repository) {
+        this.walk = new RevWalk(repository);
+        // Only the trees are needed, the messages would be kept for the whole history.
+        walk.setRetainBody(false);
+        this.formatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
+        formatter.setRepository(repository);
+        formatter.setDiffComparator(RawTextComparator.DEFAULT);
+        // Git defaults to Myers, keeping it avoids differences in the line counts.
+        formatter.setDiffAlgorithm(DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.MYERS));
+        formatter.setDetectRenames(true);
+        formatter.getRenameDetector().setRenameScore(RENAME_SCORE);
+    }
+
+    @Override
+    public CommitDetails fetch(String sha1) {
+        List<GitRename> renames = new ArrayList<>();
+        List<GitChangedFile> changedFiles = new ArrayList<>();
+        int additions = 0;
+        int deletions = 0;
+
+        List<DiffEntry> entries;
+        try {
+            RevCommit commit = walk.parseCommit(ObjectId.fromString(sha1));
+            entries = formatter.scan(parentTree(commit), commit.getTree());
+        } catch (IOException e) {
+            logger.error("Unable to compute diff of commit " + sha1, e);
+            return new CommitDetails(GitDiff.EMPTY, renames, changedFiles);
+        }
+
+        for (DiffEntry entry : entries) {
+            int fileAdditions = 0;
+            int fileDeletions = 0;
+            boolean binary;
+            try {
+                FileHeader header = formatter.toFileHeader(entry);
+                binary = header.getPatchType() != FileHeader.PatchType.UNIFIED;
+                for (Edit edit : header.toEditList()) {
+                    fileAdditions += edit.getLengthB();
+                    fileDeletions += edit.getLengthA();
+                }
+            } catch (IOException e) {
+                binary = true;
+                logger.warn("Unable to compute diff of file " + entry.getNewPath() + " in commit " + sha1, e);
+            }
+            additions += fileAdditions;
+            deletions += fileDeletions;
+
+            if (entry.getChangeType() == DiffEntry.ChangeType.RENAME) {
+                renames.add(new GitRename(entry.getOldPath(), entry.getNewPath(), entry.getScore()));
+            } else if (!binary) {
+                addChangedFile(changedFiles, entry, fileAdditions + fileDeletions);
+            }
+        }
+
+        GitDiff diff = entries.isEmpty() ? GitDiff.EMPTY : new GitDiff(additions, deletions, entries.size());
+        return new CommitDetails(diff, renames, changedFiles);
+    }
+
+    /**
+     * Add the file as changed, unless 'git show --stat' would not have reported it
+     * as such, i.e. paths containing whitespaces.
+     *
+     * @param changedFiles The list to fill.
+     * @param entry        The file diff.
+     * @param changeSize   Number of lines added and deleted.
+     */
+    private void addChangedFile(List<GitChangedFile> changedFiles, DiffEntry entry, int changeSize) {
+        String path = entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+        if (!path.matches(".*\\s.*")) {
+            changedFiles.add(new GitChangedFile(path, changeSize));
+        }
+    }
+
+    /**
+     * @param commit The commit.
+     * @return The tree of the commit's first parent, null if the commit has no parent.
+     * @throws IOException If the parent commit could not be parsed.
+     */
+    private RevTree parentTree(RevCommit commit) throws IOException {
+        if (commit.getParentCount() == 0) {
+            return null;
+        }
+        return walk.parseCommit(commit.getParent(0)).getTree();
+    }
+
+    @Override
+    public void close() {
+        formatter.close();
+        walk.close();
+    }
+}
@@ -37,15 +37,15 @@ public class SizeQuery implements Query {
     private static final Logger logger = LoggerFactory.getLogger(SizeQuery.class.getName());
 
     private final int appId;
-    private final String paprikaDB;
+    private final QueryEngine engine;
     private final Persistence persistence;
     private CommitQueries commitQueries;
 
     private final static String TMP_DIR = System.getProperty("java.io.tmpdir");
 
-    public SizeQuery(int appId, String paprikaDB, Persistence persistence, CommitQueries commitQueries) {
+    public SizeQuery(int appId, QueryEngine engine, Persistence persistence, CommitQueries commitQueries) {
         this.appId = appId;
-        this.paprikaDB = paprikaDB;
+        this.engine = engine;
         this.persistence = persistence;
         this.commitQueries = commitQueries;
     }
@@ -104,10 +104,8 @@ public class SizeQuery implements Query {
     }
 
     private void generateCsv() throws QueryException {
-        QueryEngine engine = new QueryEngine(paprikaDB);
         engine.setCsvPrefix(csvFilePrefix());
         generateCommitSize(engine);
-        engine.shutDown();
     }
 
     private static String addCommitEntryColumn(String columnName) {
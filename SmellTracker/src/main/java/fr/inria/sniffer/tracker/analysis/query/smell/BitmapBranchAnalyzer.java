@@ -0,0 +1,445 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+import fr.inria.sniffer.tracker.analysis.query.PersistenceAnalyzer;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.query.smell.duplication.SmellDuplicationChecker;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.CommitGapHandler;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.CommitNotFoundException;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyze the smell introduction/presence/refactoring for a given branch,
+ * keeping the presence of each smell as a compressed bitmap of branch ordinals.
+ * <p>
+ * The commits are only walked to identify their smells. The introductions and refactorings
+ * are computed for the whole branch once it ends, with the same results as the {@link MultiBranchAnalyzer}:
+ * a smell is introduced on the commits holding it when their previous commit does not,
+ * and refactored on the commits following a commit holding it.
+ * The smells coming from a merged commit or a renamed file are neither introduced nor refactored.
+ */
+class BitmapBranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
+    private static final Logger logger = LoggerFactory.getLogger(BitmapBranchAnalyzer.class.getName());
+
+    // Analyzer Configuration
+    private final int branchId;
+    private final CommitGapHandler gapHandler;
+
+    // Analyzer data source
+    private final BranchQueries branchQueries;
+    private final SmellQueries smellQueries;
+    private final SmellDuplicationChecker duplicationChecker;
+    private final SmellDictionary dictionary;
+    private final SmellIdentifier smellIdentifier;
+    private final IdCache idCache;
+
+    // Branch ordinals of the commits holding each smell, keyed by smell index.
+    private final Map<Integer, RoaringBitmap> presence = new HashMap<>();
+    // Smells held by the commit preceding the branch.
+    private final RoaringBitmap existing = new RoaringBitmap();
+    // Commits on which smells can be introduced or refactored, i.e. analyzed, gap, and end commits.
+    private final RoaringBitmap observed = new RoaringBitmap();
+    private final Map<Integer, String> shas = new HashMap<>();
+    // Merge commits, and the merged commits on which each smell was present.
+    private final RoaringBitmap merges = new RoaringBitmap();
+    private final Map<Integer, RoaringBitmap> merged = new HashMap<>();
+    // Commits renaming each smell, and commits renaming a smell from each smell.
+    private final Map<Integer, RoaringBitmap> renamed = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> renamedOrigins = new HashMap<>();
+    // Commits following a lost gap, with the project ordinals of the gap and the branch ordinal preceding it.
+    private final Map<Integer, int[]> lostCommits = new HashMap<>();
+    private int firstOrdinal = -1;
+
+    // Those attributes are the walk state.
+    private Commit previous;
+    private Commit underAnalysis;
+    private Map<Smell, Integer> previousInstances = Collections.emptyMap();
+    private Map<Smell, Integer> currentInstances = new HashMap<>();
+    private Map<Smell, Integer> mergedInstances = Collections.emptyMap();
+
+    BitmapBranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
+                         CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries,
+                         int branchId, String parentCommitSha, SmellDictionary dictionary, IdCache idCache,
+                         CommitGapHandler gapHandler) {
+        super(logger, projectId, persistence, commitQueries);
+        this.branchId = branchId;
+        this.gapHandler = gapHandler;
+        this.branchQueries = branchQueries;
+        this.smellQueries = smellQueries;
+        this.duplicationChecker = duplicationChecker;
+        this.dictionary = dictionary;
+        this.smellIdentifier = new SmellIdentifier(projectId, persistence, smellQueries);
+        this.idCache = idCache;
+
+        previous = Commit.empty();
+        if (parentCommitSha != null) {
+            underAnalysis = new Commit(parentCommitSha, -1);
+        } else {
+            underAnalysis = Commit.empty();
+        }
+    }
+
+    /**
+     * Tells if the given commit is a dummy placeholder commit.
+     *
+     * @param commit The commit to test.
+     * @return True if it is a placeholder, false otherwise.
+     */
+    private boolean isEmptyCommit(Commit commit) {
+        return commit.ordinal == -1;
+    }
+
+    @Override
+    public void addExistingSmells(List<Smell> smells) {
+        int index;
+        for (Smell smell : smells) {
+            index = dictionary.index(smell);
+            existing.add(index);
+            currentInstances.putIfAbsent(Smell.copyWithoutParent(smell), index);
+        }
+    }
+
+    @Override
+    public void addMergedSmells(List<Smell> smells) {
+        if (smells.isEmpty()) {
+            return;
+        }
+        int ordinal = underAnalysis.getBranchOrdinal();
+        merges.add(ordinal);
+        mergedInstances = new HashMap<>();
+        int index;
+        for (Smell smell : smells) {
+            index = dictionary.index(smell);
+            bitmap(merged, index).add(ordinal);
+            mergedInstances.putIfAbsent(Smell.copyWithoutParent(smell), index);
+        }
+    }
+
+    @Override
+    public void notifyCommit(Commit commit) {
+        if (underAnalysis.equals(commit)) {
+            return;
+        }
+        previous = underAnalysis;
+        previousInstances = currentInstances;
+        // Compare the two commits ordinal to find a gap.
+        if (!isEmptyCommit(previous) && gapHandler.hasGap(previous, commit)) {
+            handleCommitGap(commit);
+        }
+        underAnalysis = commit;
+        currentInstances = new HashMap<>();
+        mergedInstances = Collections.emptyMap();
+        if (firstOrdinal == -1) {
+            firstOrdinal = commit.getBranchOrdinal();
+        }
+        observe(commit);
+        logger.debug("[" + projectId + "] => Now analysing commit: " + underAnalysis);
+    }
+
+    @Override
+    public void notifySmell(Smell smell) {
+        Integer index = fetchIdentifiedIndex(smell);
+        if (index == null) {
+            index = indexNewSmell(smell);
+        }
+        bitmap(presence, index).add(underAnalysis.getBranchOrdinal());
+        currentInstances.putIfAbsent(Smell.copyWithoutParent(dictionary.smell(index)), index);
+    }
+
+    /**
+     * The smells are only persisted once the branch ends, and read from memory until then.
+     */
+    @Override
+    public void flushSmells() {
+    }
+
+    /**
+     * The smells are identified in bulk once the branch ends, hence the returned smells may not have an identifier.
+     */
+    @Override
+    public Collection<Smell> currentSmells() {
+        List<Smell> smells = new ArrayList<>();
+        for (int index : currentInstances.values()) {
+            smells.add(dictionary.smell(index));
+        }
+        return smells;
+    }
+
+    @Override
+    public void notifyEnd() throws QueryException {
+        notifyEnd(fetchLastBranchCommitSha());
+    }
+
+    @Override
+    public void notifyEnd(String lastCommitSha1) {
+        if (isEmptyCommit(underAnalysis)) {
+            logger.info("[" + projectId + "] No smell found");
+            return;
+        }
+
+        // If we didn't reach the last branch commit, it means we have refactored our smells
+        // In a commit prior to it.
+        if (!underAnalysis.sha.equals(lastCommitSha1)) {
+            logger.info("[" + projectId + "] Last analyzed commit is not last present commit: "
+                    + underAnalysis.sha + " / " + lastCommitSha1);
+            try {
+                observe(gapHandler.fetchNoSmellCommit(underAnalysis));
+            } catch (CommitNotFoundException e) {
+                logger.warn("[" + projectId + "] Unable to fetch last branch commit: " + e.getMessage());
+            }
+        } else {
+            logger.info("[" + projectId + "] Last analysed commit is last project commit: " + underAnalysis.sha);
+        }
+
+        persistBranch();
+        previousInstances = Collections.emptyMap();
+        currentInstances = Collections.emptyMap();
+        mergedInstances = Collections.emptyMap();
+    }
+
+    /**
+     * Retrieve the smells held by a commit of this branch.
+     *
+     * @param ordinal The commit ordinal in the branch.
+     * @return The indexed {@link Smell}s present on the commit.
+     */
+    List<Smell> smellsAt(int ordinal) {
+        List<Smell> smells = new ArrayList<>();
+        for (Map.Entry<Integer, RoaringBitmap> smellPresence : presence.entrySet()) {
+            if (smellPresence.getValue().contains(ordinal)) {
+                smells.add(dictionary.smell(smellPresence.getKey()));
+            }
+        }
+        return smells;
+    }
+
+    /**
+     * If we found a gap, the next commit is compared to the gap commit, holding no smell of this type,
+     * or to the commit preceding the gap if the gap commit is lost.
+     *
+     * @param next The commit following the gap.
+     */
+    private void handleCommitGap(Commit next) {
+        logger.info("[" + projectId + "] ==> Handling gap after commit: " + previous);
+        try {
+            Commit emptyCommit = gapHandler.fetchNoSmellCommit(previous);
+            observe(emptyCommit);
+            previous = emptyCommit;
+            previousInstances = Collections.emptyMap();
+        } catch (CommitNotFoundException e) {
+            logger.warn("An error occurred while treating gap, inserting in lost smells: " + e.getMessage());
+            lostCommits.put(next.getBranchOrdinal(),
+                    new int[]{e.getOrdinal(), next.getOrdinal(), previous.getBranchOrdinal()});
+        }
+    }
+
+    private void observe(Commit commit) {
+        observed.add(commit.getBranchOrdinal());
+        shas.put(commit.getBranchOrdinal(), commit.sha);
+    }
+
+    /**
+     * Retrieve the index of the same smell present on the previous commit or the merged commit.
+     *
+     * @param temporary The smell to retrieve.
+     * @return The smell index, null if the smell is new.
+     */
+    private Integer fetchIdentifiedIndex(Smell temporary) {
+        Smell strippedTemporary = Smell.copyWithoutParent(temporary);
+        Integer index = previousInstances.get(strippedTemporary);
+        return index != null ? index : mergedInstances.get(strippedTemporary);
+    }
+
+    /**
+     * Index a new smell, guessing its parent if its file has been renamed.
+     *
+     * @param smell The new smell.
+     * @return The smell index.
+     */
+    private int indexNewSmell(Smell smell) {
+        Smell parent = duplicationChecker.original(smell, underAnalysis, previous);
+        Integer parentIndex = null;
+        if (parent != null) {
+            logger.info("[" + projectId + "] => Guessed rename for smell: " + smell);
+            parentIndex = fetchIdentifiedIndex(parent);
+            if (parentIndex != null) {
+                smell.parent = dictionary.smell(parentIndex);
+                logger.info("[" + projectId + "]   => Found parent smell: " + smell.parent);
+            } else {
+                logger.warn("[" + projectId + "]   => Could not find original smell for parent: " + parent);
+            }
+        }
+
+        int index = dictionary.index(smell);
+        if (parentIndex != null) {
+            bitmap(renamed, index).add(underAnalysis.getBranchOrdinal());
+            bitmap(renamedOrigins, parentIndex).add(underAnalysis.getBranchOrdinal());
+        }
+        return index;
+    }
+
+    /**
+     * Identify the branch smells, then persist their presence, introductions, and refactorings.
+     */
+    private void persistBranch() {
+        dictionary.identify(smellIdentifier);
+        RoaringBitmap indexes = existing.clone();
+        for (int index : presence.keySet()) {
+            indexes.add(index);
+        }
+        logger.debug("[" + projectId + "] ==> Persisting " + indexes.getCardinality() + " smells for branch: " + branchId);
+        for (int index : indexes) {
+            persistSmell(index);
+        }
+    }
+
+    private void persistSmell(int index) {
+        Smell smell = dictionary.smell(index);
+        RoaringBitmap present = presence.getOrDefault(index, new RoaringBitmap());
+        RoaringBitmap previouslyPresent = previousPresence(index, present);
+        RoaringBitmap mergedPresence = merged.getOrDefault(index, new RoaringBitmap());
+
+        RoaringBitmap introduced = RoaringBitmap.andNot(present, previouslyPresent);
+        introduced.andNot(mergedPresence);
+        introduced.andNot(renamed.getOrDefault(index, new RoaringBitmap()));
+
+        // On a merge commit, only the smells also present on the merged commit can be refactored.
+        RoaringBitmap refactored = RoaringBitmap.and(RoaringBitmap.andNot(previouslyPresent, present), observed);
+        refactored.andNot(RoaringBitmap.andNot(merges, mergedPresence));
+        refactored.andNot(renamedOrigins.getOrDefault(index, new RoaringBitmap()));
+
+        persistPresence(smell, present);
+        persistChanges(smell, introduced, SmellCategory.INTRODUCTION);
+        persistChanges(smell, refactored, SmellCategory.REFACTOR);
+    }
+
+    /**
+     * Compute the commits of the branch whose previous commit holds the smell.
+     *
+     * @param index   The smell index.
+     * @param present The commits holding the smell.
+     * @return The branch ordinals of the commits.
+     */
+    private RoaringBitmap previousPresence(int index, RoaringBitmap present) {
+        RoaringBitmap previouslyPresent = RoaringBitmap.addOffset(present, 1);
+        if (existing.contains(index)) {
+            previouslyPresent.add(firstOrdinal);
+        }
+        for (Map.Entry<Integer, int[]> lostCommit : lostCommits.entrySet()) {
+            if (present.contains(lostCommit.getValue()[2])) {
+                previouslyPresent.add(lostCommit.getKey());
+            }
+        }
+        return previouslyPresent;
+    }
+
+    private void persistPresence(Smell smell, RoaringBitmap present) {
+        if (!smellQueries.presenceIntervals()) {
+            for (int ordinal : present) {
+                insertSmellInCategory(smell, shas.get(ordinal), SmellCategory.PRESENCE);
+            }
+            return;
+        }
+        int intervalStart = -1;
+        int intervalEnd = -1;
+        int ordinal;
+        IntIterator ordinals = present.getIntIterator();
+        while (ordinals.hasNext()) {
+            ordinal = ordinals.next();
+            if (intervalStart == -1) {
+                intervalStart = ordinal;
+            } else if (ordinal != intervalEnd + 1) {
+                persistence.addParameterizedStatements(smellQueries.smellPresenceIntervalStatement(
+                        projectId, branchId, smell, intervalStart, intervalEnd));
+                intervalStart = ordinal;
+            }
+            intervalEnd = ordinal;
+        }
+        if (intervalStart != -1) {
+            persistence.addParameterizedStatements(smellQueries.smellPresenceIntervalStatement(
+                    projectId, branchId, smell, intervalStart, intervalEnd));
+        }
+    }
+
+    private void persistChanges(Smell smell, RoaringBitmap ordinals, SmellCategory category) {
+        int[] lostCommit;
+        for (int ordinal : ordinals) {
+            lostCommit = lostCommits.get(ordinal);
+            if (lostCommit != null) {
+                persistence.addStatements(smellQueries.lostSmellCategoryInsertionStatement(
+                        projectId, smell, category, lostCommit[0], lostCommit[1]));
+            } else {
+                insertSmellInCategory(smell, shas.get(ordinal), category);
+            }
+        }
+    }
+
+    /**
+     * Helper method adding Smell- -Presence, -Introduction, or -Refactor statement.
+     * The row is bulk loaded if the commit identifier is known, otherwise resolved by the database.
+     *
+     * @param smell    The smell to insert.
+     * @param sha      The commit to insert into.
+     * @param category The table category, either SmellPresence, SmellIntroduction, or SmellRefactor
+     */
+    private void insertSmellInCategory(Smell smell, String sha, SmellCategory category) {
+        Integer commitId = idCache.commitId(sha);
+        if (commitId != null) {
+            persistence.addCopyRows(smellQueries.smellCategoryRow(projectId, commitId, smell, category));
+        } else {
+            persistence.addParameterizedStatements(smellQueries.smellCategoryInsertionStatement(projectId, sha, smell, category));
+        }
+    }
+
+    private static RoaringBitmap bitmap(Map<Integer, RoaringBitmap> bitmaps, int index) {
+        return bitmaps.computeIfAbsent(index, k -> new RoaringBitmap());
+    }
+
+    /**
+     * Retrieve the sha1 of the last branch's commit analyzed by Paprika.
+     *
+     * @return The current Paprika HEAD sha1 for the branch.
+     * @throws QueryException If we could not find the last paprika Commit, this should not happen.
+     */
+    private String fetchLastBranchCommitSha() throws QueryException {
+        List<Map<String, Object>> result = persistence.query(branchQueries.lastCommitShaQuery(projectId, branchId));
+        if (result.isEmpty()) {
+            throw new QueryException(logger.getName(), "Unable to fetch last commit for project: " + projectId);
+        }
+        return (String) result.get(0).get("sha1");
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.query.smell.duplication.SmellDuplicationChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyze a {@link Smell} type by branch, using a {@link BitmapBranchAnalyzer} for each branch.
+ * <p>
+ * The presence of the smells on every branch is kept in memory, so the smells of a branch parent commit
+ * or of a merged commit are read from the bitmaps rather than flushed to and queried from the persistence.
+ * This analysis does not resume from a previous analysis.
+ */
+class BitmapSmellTypeAnalysis extends BranchAwareSmellTypeAnalysis {
+    private static final Logger logger = LoggerFactory.getLogger(BitmapSmellTypeAnalysis.class.getName());
+
+    // Analysis configuration
+    private final int projectId;
+
+    // Analysis data source
+    private final Persistence persistence;
+    private final CommitQueries commitQueries;
+    private final SmellQueries smellQueries;
+    private final BranchQueries branchQueries;
+    private final SmellDuplicationChecker duplicationChecker;
+    private final BranchLookup branchLookup;
+    private final IdCache idCache;
+
+    // Processed data
+    private final SmellDictionary dictionary = new SmellDictionary();
+    // Every analyzed branch, kept once ended to read the smells of its commits.
+    private final Map<Integer, BitmapBranchAnalyzer> branches = new HashMap<>();
+    private final Map<Integer, String> analyzedShas = new HashMap<>();
+
+    /**
+     * The identifiers of the project commits should be available in the {@link IdCache}
+     * in order to resolve the merged commits.
+     */
+    BitmapSmellTypeAnalysis(int projectId, Persistence persistence, Iterator<Map<String, Object>> smells,
+                            String smellType, SmellDuplicationChecker duplicationChecker,
+                            CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries,
+                            BranchLookup branchLookup, IdCache idCache) {
+        super(projectId, persistence, smells, smellType, duplicationChecker, commitQueries, smellQueries,
+                branchQueries, branchLookup, idCache, 0, null);
+        this.projectId = projectId;
+        this.persistence = persistence;
+        this.duplicationChecker = duplicationChecker;
+        this.commitQueries = commitQueries;
+        this.smellQueries = smellQueries;
+        this.branchQueries = branchQueries;
+        this.branchLookup = branchLookup;
+        this.idCache = idCache;
+    }
+
+    @Override
+    void notifyInstance(Map<String, Object> instance) throws QueryException {
+        String sha = (String) instance.get("key");
+        Integer commitId = idCache.commitId(sha);
+        if (commitId != null) {
+            analyzedShas.putIfAbsent(commitId, sha);
+        }
+        super.notifyInstance(instance);
+    }
+
+    @Override
+    protected BranchAnalysis createBranchAnalyzer(int branchId, String parentCommitSha) {
+        BitmapBranchAnalyzer analyzer = new BitmapBranchAnalyzer(projectId, persistence, duplicationChecker,
+                commitQueries, smellQueries, branchQueries, branchId, parentCommitSha, dictionary, idCache,
+                createGapHandler(branchId));
+        branches.put(branchId, analyzer);
+        return analyzer;
+    }
+
+    /**
+     * The smells are read from memory, thus there is no need to persist them beforehand.
+     */
+    @Override
+    protected void commitBranches() {
+    }
+
+    @Override
+    protected List<Smell> retrieveBranchParentSmells(int branchId) {
+        return retrieveCommitSmells(branchLookup.parentCommitSha(branchId));
+    }
+
+    @Override
+    protected List<Smell> retrieveCommitSmells(int commitId) {
+        return retrieveCommitSmells(analyzedShas.get(commitId));
+    }
+
+    /**
+     * Retrieve the smells present on an analyzed commit.
+     *
+     * @param sha The commit sha, may be null.
+     * @return The {@link List} of {@link Smell}, empty if the commit holds no smell of this type.
+     */
+    private List<Smell> retrieveCommitSmells(String sha) {
+        if (sha == null) {
+            return Collections.emptyList();
+        }
+        Commit commit = new Commit(sha, -1);
+        try {
+            int branchId = branchLookup.branchId(commit);
+            BitmapBranchAnalyzer analyzer = branches.get(branchId);
+            if (analyzer == null) {
+                return Collections.emptyList();
+            }
+            return analyzer.smellsAt(branchLookup.branchOrdinal(branchId, commit));
+        } catch (BranchNotFoundException | QueryException e) {
+            logger.warn("[" + projectId + "] Unable to locate commit " + sha + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 
+import java.util.Collection;
 import java.util.List;
 
 interface BranchAnalysis {
@@ -55,6 +56,21 @@ interface BranchAnalysis {
      */
     void notifySmell(Smell smell);
 
+    /**
+     * Identify the new smells of the currently analyzed commit and persist their presence.
+     * This is done on commit change, but must also be triggered before reading the current commit smells
+     * from the persistence.
+     */
+    void flushSmells();
+
+    /**
+     * Identify the new smells of the currently analyzed commit, without persisting anything else,
+     * and return all the smells notified on it so far so that they can be shared with the other branches.
+     *
+     * @return The {@link Smell}s of the currently analyzed commit.
+     */
+    Collection<Smell> currentSmells();
+
     /**
      * Notify the end of smell analysis, the Branch fr.inria.sniffer.detector.analyzer should check for the last
      * commit sha and finalize the analysis.
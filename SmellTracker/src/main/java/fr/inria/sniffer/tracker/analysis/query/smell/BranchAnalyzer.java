@@ -23,6 +23,7 @@ import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
 import fr.inria.sniffer.tracker.analysis.query.PersistenceAnalyzer;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import fr.inria.sniffer.tracker.analysis.query.smell.gap.SingleBranchGapHandler;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
@@ -32,8 +33,9 @@ import fr.inria.sniffer.tracker.analysis.query.smell.gap.CommitNotFoundException
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Analyze the smell introduction/presence/refactoring for a given branch.
@@ -46,12 +48,16 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
 
     // Analyzer data source
     private final SmellQueries smellQueries;
+    private final SmellIdentifier smellIdentifier;
     private final SmellDuplicationChecker duplicationChecker;
+    private final IdCache idCache;
 
     // Those attributes are the class state.
     private Commit previous;
     private Commit underAnalysis;
     private int lostCommitOrdinal;
+    // New smells of the commit under analysis, waiting for their identifier.
+    private final List<Smell> pendingSmells = new ArrayList<>();
 
     BranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
                    CommitQueries commitQueries, SmellQueries smellQueries) {
@@ -67,10 +73,18 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
     BranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
                    CommitQueries commitQueries, SmellQueries smellQueries,
                    CommitGapHandler gapHandler, String parentCommitSha) {
+        this(projectId, persistence, duplicationChecker, commitQueries, smellQueries, gapHandler, parentCommitSha, new IdCache());
+    }
+
+    BranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
+                   CommitQueries commitQueries, SmellQueries smellQueries,
+                   CommitGapHandler gapHandler, String parentCommitSha, IdCache idCache) {
         super(logger, projectId, persistence, commitQueries);
         this.duplicationChecker = duplicationChecker;
         this.smellQueries = smellQueries;
+        this.smellIdentifier = new SmellIdentifier(projectId, persistence, smellQueries);
         this.gapHandler = gapHandler;
+        this.idCache = idCache;
 
         previous = Commit.empty();
         if (parentCommitSha != null) {
@@ -107,7 +121,9 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
         // We handle the commit change in our result dataset.
         // This dataset MUST be ordered by commit_number to have right results.
         if (!underAnalysis.equals(commit)) {
+            identifyPendingSmells();
             if (!isEmptyCommit(underAnalysis)) {
+                notifyPresencesComplete(underAnalysis);
                 handleCommitChanges(underAnalysis);
             }
             // Compare the two commits ordinal to find a gap.
@@ -131,12 +147,12 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
 
         // Check if we already inserted smell previously to avoid having too much insert statements.
         // This could be removed and still checked by our unicity constraint.
+        // New smells are identified in bulk on the next commit, along with their presence.
         if (isNew(smell)) {
-            smell.id = insertSmellInstance(smell);
+            pendingSmells.add(smell);
+        } else {
+            insertSmellPresence(smell, underAnalysis);
         }
-        assert smell.id != -1;
-
-        insertSmellInCategory(smell, underAnalysis, SmellCategory.PRESENCE);
 
         // We keep track of the smells present in our commit.
         underAnalysis.addSmell(smell);
@@ -178,6 +194,7 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
 
     @Override
     public void notifyEnd(String lastCommitSha1) {
+        identifyPendingSmells();
         if (isEmptyCommit(underAnalysis)) {
             logger.info("[" + projectId + "] No smell found");
             return;
@@ -213,6 +230,7 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
             Commit emptyCommit = gapHandler.fetchNoSmellCommit(underAnalysis);
             // If we found the gap commit, we insert it as any other before continuing
             updateCommitTracking(emptyCommit);
+            notifyPresencesComplete(emptyCommit);
             persistCommitChanges(emptyCommit);
         } catch (CommitNotFoundException e) {
             logger.warn("An error occurred while treating gap, inserting in lost smells: " + e.getMessage());
@@ -303,26 +321,64 @@ class BranchAnalyzer extends PersistenceAnalyzer implements BranchAnalysis {
         underAnalysis = commit;
     }
 
-    private int insertSmellInstance(Smell smell) {
-        int insertResult = persistence.execute(smellQueries.smellInsertionStatement(projectId, smell));
-        List<Map<String, Object>> result;
-        if (insertResult == 1) {
-            result = persistence.query(smellQueries.lastSmellIdQuery(projectId));
-        } else {
-            result = persistence.query(smellQueries.smellIdQuery(projectId, smell));
+    @Override
+    public void flushSmells() {
+        identifyPendingSmells();
+    }
+
+    @Override
+    public Collection<Smell> currentSmells() {
+        identifyPendingSmells();
+        return new ArrayList<>(underAnalysis.getSmells());
+    }
+
+    /**
+     * Identify the new smells of the commit under analysis and persist their presence.
+     */
+    private void identifyPendingSmells() {
+        if (pendingSmells.isEmpty()) {
+            return;
+        }
+        smellIdentifier.identify(pendingSmells);
+        for (Smell smell : pendingSmells) {
+            insertSmellPresence(smell, underAnalysis);
         }
-        return (int) result.get(0).get("id");
+        pendingSmells.clear();
+    }
+
+    /**
+     * Persist the presence of an identified smell on the given commit.
+     *
+     * @param smell  The smell to insert.
+     * @param commit The commit holding the smell.
+     */
+    protected void insertSmellPresence(Smell smell, Commit commit) {
+        insertSmellInCategory(smell, commit, SmellCategory.PRESENCE);
+    }
+
+    /**
+     * Called once the presence of all the smells of the given commit has been persisted.
+     *
+     * @param commit The analyzed commit.
+     */
+    protected void notifyPresencesComplete(Commit commit) {
     }
 
     /**
      * Helper method adding Smell- -Presence, -Introduction, or -Refactor statement.
+     * The row is bulk loaded if the commit identifier is known, otherwise resolved by the database.
      *
      * @param smell    The smell to insert.
      * @param commit   The commit to insert into.
      * @param category The table category, either SmellPresence, SmellIntroduction, or SmellRefactor
      */
     private void insertSmellInCategory(Smell smell, Commit commit, SmellCategory category) {
-        persistence.addStatements(smellQueries.smellCategoryInsertionStatement(projectId, commit.sha, smell, category));
+        Integer commitId = idCache.commitId(commit.sha);
+        if (commitId != null) {
+            persistence.addCopyRows(smellQueries.smellCategoryRow(projectId, commitId, smell, category));
+        } else {
+            persistence.addParameterizedStatements(smellQueries.smellCategoryInsertionStatement(projectId, commit.sha, smell, category));
+        }
     }
 
     /**
@@ -23,14 +23,19 @@ import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import fr.inria.sniffer.tracker.analysis.query.branch.BranchQuery;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.query.smell.duplication.SmellDuplicationChecker;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.CommitGapHandler;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.DetectorCommitShas;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.MultiBranchGapHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Analyze a {@link Smell} type considering the commits ordinal as well as their original branch.
@@ -44,6 +49,8 @@ class BranchAwareSmellTypeAnalysis implements Query {
     // Analysis configuration
     private final int projectId;
     private final String smellType;
+    // Last commit analyzed by a previous analysis, 0 to analyze the whole history.
+    private final int analyzedCommitId;
 
     // Analysis data source
     private final Persistence persistence;
@@ -51,15 +58,46 @@ class BranchAwareSmellTypeAnalysis implements Query {
     private final SmellQueries smellQueries;
     private final BranchQueries branchQueries;
     private final SmellDuplicationChecker duplicationChecker;
+    private final BranchLookup branchLookup;
+    private final IdCache idCache;
 
     // Processed data
     private final Iterator<Map<String, Object>> smells;
-    private final Map<Integer, BranchAnalyzer> branchAnalyzers;
+    private final Map<Integer, BranchAnalysis> branchAnalyzers;
     private final Map<Integer, String> branchLastCommitSha;
+    // Smells of the merged and branch parent commits, null to read them back from the persistence.
+    private final CommitSmellSnapshots snapshots;
+    private Commit lastCommit = Commit.empty();
+    private Integer lastBranch = -1;
 
     BranchAwareSmellTypeAnalysis(int projectId, Persistence persistence, Iterator<Map<String, Object>> smells,
                                  String smellType, SmellDuplicationChecker duplicationChecker,
                                  CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries) {
+        this(projectId, persistence, smells, smellType, duplicationChecker, commitQueries, smellQueries, branchQueries,
+                new PersistenceBranchLookup(projectId, persistence, commitQueries, branchQueries), new IdCache(),
+                0, null);
+    }
+
+    /**
+     * Analyze the smells of the commits added since a previous analysis,
+     * keeping the smells of the merged and branch parent commits in memory
+     * instead of persisting the smells of every branch and querying them back on each merge and branch start.
+     * <p>
+     * The instances of the commits already analyzed are skipped,
+     * and each branch is resumed from the smells present on its last analyzed commit.
+     * The identifiers of the project commits must be available in the {@link IdCache}.
+     *
+     * @param analyzedCommitId     Identifier of the last commit persisted before this analysis,
+     *                             0 to analyze the whole history.
+     * @param branchingCommitReads Number of reads of the merged and branch parent commits by commit identifier,
+     *                             see {@link BranchLookup#branchingCommitReads(IdCache)},
+     *                             null to read the smells back from the persistence.
+     */
+    BranchAwareSmellTypeAnalysis(int projectId, Persistence persistence, Iterator<Map<String, Object>> smells,
+                                 String smellType, SmellDuplicationChecker duplicationChecker,
+                                 CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries,
+                                 BranchLookup branchLookup, IdCache idCache, int analyzedCommitId,
+                                 Map<Integer, Integer> branchingCommitReads) {
         this.projectId = projectId;
         this.persistence = persistence;
         this.smells = smells;
@@ -68,60 +106,84 @@ class BranchAwareSmellTypeAnalysis implements Query {
         this.commitQueries = commitQueries;
         this.smellQueries = smellQueries;
         this.branchQueries = branchQueries;
+        this.branchLookup = branchLookup;
+        this.idCache = idCache;
+        this.analyzedCommitId = analyzedCommitId;
 
         branchAnalyzers = new HashMap<>();
         branchLastCommitSha = new HashMap<>();
+        snapshots = branchingCommitReads != null ? new CommitSmellSnapshots(branchingCommitReads) : null;
     }
 
     @Override
     public void query() throws QueryException {
-        Smell smell;
-        Commit previousCommit;
-        Commit commit = Commit.empty();
-        Integer previousBranch;
-        Integer currentBranch = -1;
-
-        Map<String, Object> instance;
         while (smells.hasNext()) {
-            instance = smells.next();
-            previousCommit = commit;
-            previousBranch = currentBranch;
-            commit = Commit.fromInstance(instance);
-            smell = Smell.fromPaprikaInstance(instance, smellType);
-            try {
-                currentBranch = fetchCommitBranch(commit);
-            } catch (BranchNotFoundException e) {
-                logger.warn("[" + projectId + "] ==> Unable to guess branch for commit (" + commit.sha + "), skipping", e.getMessage());
-                continue;
-            }
+            notifyInstance(smells.next());
+        }
+        finish();
+    }
 
-            // We create the new BranchAnalyzer if needed.
-            if (!branchAnalyzers.containsKey(currentBranch)) {
-                logger.debug("[" + projectId + "] => Initializing new branch: " + currentBranch);
-                initializeBranch(currentBranch);
-            }
+    /**
+     * Analyze the next smell instance, instances being ordered by commit.
+     *
+     * @param instance The Paprika smell instance.
+     * @throws QueryException If anything goes wrong while finalizing a branch.
+     */
+    void notifyInstance(Map<String, Object> instance) throws QueryException {
+        Commit previousCommit = lastCommit;
+        Integer previousBranch = lastBranch;
+        Commit commit = Commit.fromInstance(instance);
+        if (isAlreadyAnalyzed(commit)) {
+            return;
+        }
+        // All the smells of the previous commit are known once the commit changes.
+        if (!previousCommit.equals(commit)) {
+            snapshotSmells(previousCommit, previousBranch);
+        }
+        lastCommit = commit;
+        Smell smell = Smell.fromPaprikaInstance(instance, smellType);
+        Integer currentBranch;
+        try {
+            currentBranch = branchLookup.branchId(commit);
+        } catch (BranchNotFoundException e) {
+            logger.warn("[" + projectId + "] ==> Unable to guess branch for commit (" + commit.sha + "), skipping", e.getMessage());
+            return;
+        }
+        lastBranch = currentBranch;
 
-            // We set the commit ordinal, branch-wise to enable our BranchAnalyzer
-            // to correctly handle gaps.
-            commit.setBranchOrdinal(fetchCommitOrdinal(currentBranch, commit));
-            branchAnalyzers.get(currentBranch).notifyCommit(commit);
+        // We create the new BranchAnalyzer if needed.
+        if (!branchAnalyzers.containsKey(currentBranch)) {
+            logger.debug("[" + projectId + "] => Initializing new branch: " + currentBranch);
+            initializeBranch(currentBranch);
+        }
 
-            // On commit change, we ensure to merge SmellPresence from the merged commit if necessary.
-            if (!previousCommit.equals(commit)) {
-                synchronizeMergeSmells(commit, currentBranch);
-            }
+        // We set the commit ordinal, branch-wise to enable our BranchAnalyzer
+        // to correctly handle gaps.
+        commit.setBranchOrdinal(branchLookup.branchOrdinal(currentBranch, commit));
+        branchAnalyzers.get(currentBranch).notifyCommit(commit);
+
+        // On commit change, we ensure to merge SmellPresence from the merged commit if necessary.
+        if (!previousCommit.equals(commit)) {
+            synchronizeMergeSmells(commit, currentBranch);
+        }
 
-            // Once the previous Smells are all set, notify our newly found smell.
-            branchAnalyzers.get(currentBranch).notifySmell(smell);
+        // Once the previous Smells are all set, notify our newly found smell.
+        branchAnalyzers.get(currentBranch).notifySmell(smell);
 
-            // When we are sure that we passed the last branch commit, we will finalize the branch analysis,
-            // i.e. setting introductions and refactoring for the last branch commit.
-            if (!previousCommit.equals(commit) && isLastBranchCommit(previousCommit, previousBranch)) {
-                finalizeBranch(previousBranch);
-                branchAnalyzers.remove(previousBranch);
-            }
+        // When we are sure that we passed the last branch commit, we will finalize the branch analysis,
+        // i.e. setting introductions and refactoring for the last branch commit.
+        if (!previousCommit.equals(commit) && isLastBranchCommit(previousCommit, previousBranch)) {
+            finalizeBranch(previousBranch);
+            branchAnalyzers.remove(previousBranch);
         }
+    }
 
+    /**
+     * Finalize the analysis once all smell instances have been notified.
+     *
+     * @throws QueryException If anything goes wrong while querying the last commit for this project.
+     */
+    void finish() throws QueryException {
         // We should only perform operations for branch 0 since all other commits are looped around.
         // On top of that, we may have missed some branch finalization because of lost commits.
         for (int branchId : branchAnalyzers.keySet()) {
@@ -129,6 +191,41 @@ class BranchAwareSmellTypeAnalysis implements Query {
         }
     }
 
+    /**
+     * Tells if the commit smells have been analyzed by a previous analysis.
+     *
+     * @param commit The commit to test.
+     * @return True if the commit was persisted before this analysis, false otherwise.
+     */
+    private boolean isAlreadyAnalyzed(Commit commit) {
+        if (analyzedCommitId <= 0) {
+            return false;
+        }
+        Integer commitId = idCache.commitId(commit.sha);
+        return commitId != null && commitId <= analyzedCommitId;
+    }
+
+    /**
+     * Keep the smells of the given commit if they are to be read on a merge or a branch start.
+     *
+     * @param commit   The commit whose smells have all been notified.
+     * @param branchId The commit branch.
+     */
+    private void snapshotSmells(Commit commit, int branchId) {
+        if (snapshots == null) {
+            return;
+        }
+        Integer commitId = idCache.commitId(commit.sha);
+        if (commitId == null || !snapshots.isTracked(commitId)) {
+            return;
+        }
+        // The notified commit instance only holds its own smell, the analyzer holds the whole commit.
+        BranchAnalysis analyzer = branchAnalyzers.get(branchId);
+        if (analyzer != null) {
+            snapshots.record(commitId, analyzer.currentSmells());
+        }
+    }
+
     /**
      * This method will check if the current commit is a merge commit.
      * It will then load every smell from the merged commit in its branch.
@@ -137,21 +234,12 @@ class BranchAwareSmellTypeAnalysis implements Query {
      * @param currentBranch The commit branch to insert smells into.
      */
     private void synchronizeMergeSmells(Commit commit, Integer currentBranch) {
-        Integer mergedCommitId = getMergedCommitId(commit);
+        Integer mergedCommitId = branchLookup.mergedCommitId(commit);
         if (mergedCommitId != null) {
-            persistence.commit();
             addSmellsToMergeCommit(mergedCommitId, currentBranch);
         }
     }
 
-    private int fetchCommitOrdinal(int branchId, Commit commit) throws QueryException {
-        List<Map<String, Object>> result = persistence.query(branchQueries.commitOrdinalQuery(projectId, branchId, commit));
-        if (result.isEmpty()) {
-            throw new QueryException(logger.getName(), "Unable to find commit (" + commit.sha + ") in branch n°" + branchId);
-        }
-        return (int) result.get(0).get("ordinal");
-    }
-
     /**
      * When we change our commit, we check if it is a merge commit,
      * if we have one, we will retrieve all smells from the merged branch last commit, in order
@@ -161,29 +249,115 @@ class BranchAwareSmellTypeAnalysis implements Query {
      * @param currentBranch  The branch to add commits onto.
      */
     private void addSmellsToMergeCommit(int mergedCommitId, int currentBranch) {
-        branchAnalyzers.get(currentBranch).addMergedSmells(retrieveMergedCommitSmells(mergedCommitId));
+        branchAnalyzers.get(currentBranch).addMergedSmells(
+                readCommitSmells(mergedCommitId, () -> retrieveCommitSmells(mergedCommitId)));
+    }
+
+    /**
+     * Read the smells present on a commit already analyzed.
+     * <p>
+     * The smells of a commit analyzed by this analysis are taken from the snapshots if possible.
+     * Otherwise they are queried, once the smells of the branches under analysis are persisted,
+     * unless the commit was analyzed by a previous analysis.
+     *
+     * @param commitId Identifier of the commit, null if unknown.
+     * @param query    Retrieve the commit smells from the persistence.
+     * @return A {@link List} of {@link Smell}.
+     */
+    private List<Smell> readCommitSmells(Integer commitId, Supplier<List<Smell>> query) {
+        if (snapshots != null && commitId != null) {
+            if (commitId <= analyzedCommitId) {
+                return query.get();
+            }
+            if (snapshots.isTracked(commitId)) {
+                return snapshots.read(commitId);
+            }
+        }
+        commitBranches();
+        return query.get();
     }
 
     /**
      * Create a new {@link BranchAnalyzer} and add is to the branchAnalyzers,
-     * With all the smells from its parent commit.
+     * With all the smells from its parent commit,
+     * or from its last commit analyzed by a previous analysis if any.
      *
      * @param currentBranch Identifier of the branch to initialize.
      */
     private void initializeBranch(int currentBranch) {
         logger.debug("[" + projectId + "] => Initializing branch: " + currentBranch);
-        persistence.commit();
-        BranchAnalyzer analyzer = new MultiBranchAnalyzer(projectId, persistence, duplicationChecker,
-                commitQueries, smellQueries, branchQueries, currentBranch, retrieveBranchParentSha(currentBranch));
-        analyzer.addExistingSmells(retrieveBranchParentSmells(currentBranch));
+        Map<String, Object> analyzedCommit = retrieveLastAnalyzedCommit(currentBranch);
+        BranchAnalysis analyzer;
+        if (analyzedCommit != null) {
+            logger.debug("[" + projectId + "] => Resuming branch " + currentBranch + " from commit: " + analyzedCommit.get("sha1"));
+            analyzer = createBranchAnalyzer(currentBranch, (String) analyzedCommit.get("sha1"));
+            analyzer.addExistingSmells(retrieveCommitSmells((int) analyzedCommit.get("id")));
+        } else {
+            String parentSha = retrieveBranchParentSha(currentBranch);
+            analyzer = createBranchAnalyzer(currentBranch, parentSha);
+            analyzer.addExistingSmells(readCommitSmells(parentSha != null ? idCache.commitId(parentSha) : null,
+                    () -> retrieveBranchParentSmells(currentBranch)));
+        }
         branchAnalyzers.put(currentBranch, analyzer);
 
-        List<Map<String, Object>> query = persistence.query(branchQueries.lastCommitShaQuery(projectId, currentBranch));
-        if (query.isEmpty()) {
+        String lastCommitSha = branchLookup.lastCommitSha(currentBranch);
+        if (lastCommitSha == null) {
             logger.warn("No merge commit found for branch: " + currentBranch);
         } else {
-            branchLastCommitSha.put(currentBranch, (String) query.get(0).get("sha1"));
+            branchLastCommitSha.put(currentBranch, lastCommitSha);
+        }
+    }
+
+    /**
+     * Create the analyzer of a newly found branch.
+     *
+     * @param branchId        Identifier of the branch to analyze.
+     * @param parentCommitSha Sha of the commit preceding the branch analysis, may be null.
+     * @return The new {@link BranchAnalysis}.
+     */
+    protected BranchAnalysis createBranchAnalyzer(int branchId, String parentCommitSha) {
+        return new MultiBranchAnalyzer(projectId, persistence, duplicationChecker,
+                commitQueries, smellQueries, branchQueries, branchId, parentCommitSha, idCache,
+                createGapHandler(branchId));
+    }
+
+    /**
+     * Create the gap handler of a branch, reading the branch commits from memory if they are preloaded.
+     *
+     * @param branchId Identifier of the analyzed branch.
+     * @return The new {@link CommitGapHandler}.
+     */
+    protected CommitGapHandler createGapHandler(int branchId) {
+        DetectorCommitShas detectorShas = branchLookup.detectorCommitShas(branchId);
+        if (detectorShas != null) {
+            return new MultiBranchGapHandler(projectId, branchId, detectorShas);
+        }
+        return new MultiBranchGapHandler(projectId, branchId, persistence, branchQueries);
+    }
+
+    /**
+     * Persist the smells of every analyzed branch, so that they can be read back from the persistence.
+     */
+    protected void commitBranches() {
+        for (BranchAnalysis analyzer : branchAnalyzers.values()) {
+            analyzer.flushSmells();
+        }
+        persistence.commit();
+    }
+
+    /**
+     * Find the last commit of the branch analyzed by a previous analysis.
+     *
+     * @param currentBranch The current branch identifier.
+     * @return The commit id and sha1, null if the whole history is analyzed or the branch is new.
+     */
+    private Map<String, Object> retrieveLastAnalyzedCommit(int currentBranch) {
+        if (analyzedCommitId <= 0) {
+            return null;
         }
+        List<Map<String, Object>> result = persistence.query(
+                branchQueries.lastCommitBeforeQuery(projectId, currentBranch, analyzedCommitId));
+        return result.isEmpty() ? null : result.get(0);
     }
 
     /**
@@ -193,12 +367,11 @@ class BranchAwareSmellTypeAnalysis implements Query {
      * @return The commit sha if found, null if not found.
      */
     private String retrieveBranchParentSha(int currentBranch) {
-        List<Map<String, Object>> result = persistence.query(branchQueries.parentCommitShaQuery(projectId, currentBranch));
-        if (result.isEmpty()) {
+        String parentSha = branchLookup.parentCommitSha(currentBranch);
+        if (parentSha == null) {
             logger.warn("No sha found for parent commit of branch: " + currentBranch);
-            return null;
         }
-        return (String) result.get(0).get("sha1");
+        return parentSha;
     }
 
     /**
@@ -233,7 +406,7 @@ class BranchAwareSmellTypeAnalysis implements Query {
      * @param branchId The branch identifier.
      * @return A {@link List} of present {@link Smell}.
      */
-    private List<Smell> retrieveBranchParentSmells(int branchId) {
+    protected List<Smell> retrieveBranchParentSmells(int branchId) {
         String parentSmellsQuery = branchQueries.parentCommitSmellsQuery(projectId, branchId, smellType);
         List<Map<String, Object>> results = persistence.query(parentSmellsQuery);
         return toSmells(results);
@@ -242,11 +415,11 @@ class BranchAwareSmellTypeAnalysis implements Query {
     /**
      * Fetch the SmellPresences of the given commit.
      *
-     * @param mergedCommitId Identifier of the commit being merged.
+     * @param commitId Identifier of the commit, e.g. being merged.
      * @return A {@link List} of {@link Smell}.
      */
-    private List<Smell> retrieveMergedCommitSmells(int mergedCommitId) {
-        String lastCommitSmellsQuery = smellQueries.commitSmellsQuery(projectId, String.valueOf(mergedCommitId), smellType);
+    protected List<Smell> retrieveCommitSmells(int commitId) {
+        String lastCommitSmellsQuery = smellQueries.commitSmellsQuery(projectId, String.valueOf(commitId), smellType);
         List<Map<String, Object>> results = persistence.query(lastCommitSmellsQuery);
         return toSmells(results);
     }
@@ -265,17 +438,6 @@ class BranchAwareSmellTypeAnalysis implements Query {
         return smells;
     }
 
-    /**
-     * Gives the identifier of the merged commit, if any.
-     *
-     * @param commit The commit to test.
-     * @return An {@link Integer} identifying the merged commit, null if commit is not a merge commit.
-     */
-    private Integer getMergedCommitId(Commit commit) {
-        List<Map<String, Object>> result = persistence.query(commitQueries.mergedCommitIdQuery(projectId, commit));
-        return (result.isEmpty() || result.get(0).isEmpty()) ? null : (Integer) result.get(0).get("id");
-    }
-
     /**
      * Tells if the current commit is the last commit in the branch.
      *
@@ -286,20 +448,4 @@ class BranchAwareSmellTypeAnalysis implements Query {
     private boolean isLastBranchCommit(Commit commit, int currentBranch) {
         return branchLastCommitSha.containsKey(currentBranch) && branchLastCommitSha.get(currentBranch).equals(commit.sha);
     }
-
-    /**
-     * Retrieve the branch on which the commit is located.
-     *
-     * @param commit The commit to find a branch for.
-     * @return The branch ordinal in the project.
-     * @throws BranchNotFoundException If no branch could be found for this commit.
-     *                                 This can happen until there are no commit gap anymore on Paprika result.
-     */
-    private int fetchCommitBranch(Commit commit) throws BranchNotFoundException {
-        List<Map<String, Object>> result = persistence.query(branchQueries.idFromCommitQueryStatement(projectId, commit));
-        if (result.isEmpty() || result.get(0).get("id") == null) {
-            throw new BranchNotFoundException(projectId, commit.sha);
-        }
-        return (int) result.get(0).get("id");
-    }
 }
@@ -0,0 +1,91 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.DetectorCommitShas;
+
+import java.util.Map;
+
+/**
+ * Resolve the branch related data of a project's commits,
+ * i.e. the branch holding a commit, its position in this branch, and the branches bounds.
+ */
+interface BranchLookup {
+    /**
+     * Retrieve the branch on which the commit is located.
+     *
+     * @param commit The commit to find a branch for.
+     * @return The branch identifier.
+     * @throws BranchNotFoundException If no branch could be found for this commit.
+     */
+    int branchId(Commit commit) throws BranchNotFoundException;
+
+    /**
+     * Retrieve the commit ordinal in the given branch.
+     *
+     * @param branchId The branch identifier.
+     * @param commit   The commit to look for.
+     * @return The commit ordinal in the branch.
+     * @throws QueryException If the commit is not part of the branch.
+     */
+    int branchOrdinal(int branchId, Commit commit) throws QueryException;
+
+    /**
+     * Gives the identifier of the merged commit, if any.
+     *
+     * @param commit The commit to test.
+     * @return An {@link Integer} identifying the merged commit, null if commit is not a merge commit.
+     */
+    Integer mergedCommitId(Commit commit);
+
+    /**
+     * Return the sha of the branch's last commit.
+     *
+     * @param branchId The branch identifier.
+     * @return The last commit sha, null if not found.
+     */
+    String lastCommitSha(int branchId);
+
+    /**
+     * Find the sha of this branch's parent commit.
+     *
+     * @param branchId The branch identifier.
+     * @return The commit sha if found, null if not found.
+     */
+    String parentCommitSha(int branchId);
+
+    /**
+     * Retrieve the commits of the branch analyzed by SmellDetector, to find the commits without smells.
+     *
+     * @param branchId The branch identifier.
+     * @return The commits shas by branch ordinal, null if they are not loaded.
+     */
+    DetectorCommitShas detectorCommitShas(int branchId);
+
+    /**
+     * Count how many times the smells of each commit are read back by a smell type analysis,
+     * i.e. once for each merge of the commit and for each branch starting from it.
+     *
+     * @param idCache The identifiers of the project commits.
+     * @return The number of reads by commit identifier, null if the commits can't be enumerated.
+     */
+    Map<Integer, Integer> branchingCommitReads(IdCache idCache);
+}
@@ -0,0 +1,89 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Smells present on the commits read back by a smell type analysis,
+ * i.e. the merged commits and the parent commits of the branches.
+ * <p>
+ * The smells are recorded as soon as the analysis passes these commits,
+ * so that the merges and branch starts are resolved without persisting then querying
+ * the smells of the branches under analysis.
+ * Each snapshot is dropped once read as many times as expected.
+ */
+class CommitSmellSnapshots {
+    // Remaining reads of each tracked commit, by commit identifier.
+    private final Map<Integer, Integer> pendingReads;
+    private final Map<Integer, List<Smell>> snapshots = new HashMap<>();
+
+    /**
+     * @param reads Number of times the smells of each commit will be read, by commit identifier.
+     */
+    CommitSmellSnapshots(Map<Integer, Integer> reads) {
+        this.pendingReads = new HashMap<>(reads);
+    }
+
+    /**
+     * Tells if the smells of the commit are still to be read.
+     *
+     * @param commitId The commit identifier.
+     * @return True if the commit smells must be recorded, or can be read, false otherwise.
+     */
+    boolean isTracked(int commitId) {
+        return pendingReads.containsKey(commitId);
+    }
+
+    /**
+     * Record the smells present on a commit, if they are to be read.
+     *
+     * @param commitId The commit identifier.
+     * @param smells   All the smells present on the commit.
+     */
+    void record(int commitId, Collection<Smell> smells) {
+        if (isTracked(commitId)) {
+            snapshots.put(commitId, new ArrayList<>(smells));
+        }
+    }
+
+    /**
+     * Read the smells present on a tracked commit.
+     *
+     * @param commitId The commit identifier.
+     * @return The {@link List} of {@link Smell}, empty if no smell has been recorded for this commit.
+     */
+    List<Smell> read(int commitId) {
+        Integer reads = pendingReads.remove(commitId);
+        List<Smell> smells;
+        if (reads != null && reads > 1) {
+            pendingReads.put(commitId, reads - 1);
+            smells = snapshots.get(commitId);
+        } else {
+            smells = snapshots.remove(commitId);
+        }
+        return smells == null ? Collections.emptyList() : smells;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Stream the smell instances of several smell types in a single pass ordered by commit.
+ * <p>
+ * Each smell type source must be ordered by commit number, it is consumed on its own thread
+ * into a bounded buffer and the buffers heads are merged on their commit number.
+ */
+class MergedSmellStream implements Iterator<MergedSmellStream.TypedInstance>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MergedSmellStream.class.getName());
+    private static final Map<String, Object> END_OF_SOURCE = Collections.emptyMap();
+
+    private final List<Source> sources;
+    private final PriorityQueue<TypedInstance> heads;
+
+    /**
+     * @param sources    Open the ordered smell instances stream of each smell type, keyed by smell type.
+     * @param bufferSize The number of instances read ahead for each smell type.
+     */
+    MergedSmellStream(Map<String, Callable<? extends Iterator<Map<String, Object>>>> sources, int bufferSize) {
+        this.sources = new ArrayList<>();
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), Comparator
+                .comparingInt((TypedInstance head) -> head.commitNumber())
+                .thenComparingInt(head -> head.source.index));
+        for (Map.Entry<String, Callable<? extends Iterator<Map<String, Object>>>> source : sources.entrySet()) {
+            this.sources.add(new Source(this.sources.size(), source.getKey(), source.getValue(), bufferSize));
+        }
+        for (Source source : this.sources) {
+            source.start();
+        }
+        for (Source source : this.sources) {
+            pollHead(source);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public TypedInstance next() {
+        TypedInstance head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        pollHead(head.source);
+        return head;
+    }
+
+    /**
+     * Wait for the next instance of the given source, if any, and add it to the merged heads.
+     *
+     * @param source The source to poll.
+     */
+    private void pollHead(Source source) {
+        Map<String, Object> instance;
+        try {
+            instance = source.buffer.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading smells of type " + source.smellType, e);
+        }
+        if (instance == END_OF_SOURCE) {
+            if (source.failure != null) {
+                throw new IllegalStateException("Unable to read smells of type " + source.smellType, source.failure);
+            }
+            return;
+        }
+        heads.add(new TypedInstance(source, instance));
+    }
+
+    @Override
+    public void close() {
+        for (Source source : sources) {
+            source.interrupt();
+        }
+    }
+
+    /**
+     * A smell instance along with its smell type.
+     */
+    static final class TypedInstance {
+        private final Source source;
+        final Map<String, Object> instance;
+
+        private TypedInstance(Source source, Map<String, Object> instance) {
+            this.source = source;
+            this.instance = instance;
+        }
+
+        String smellType() {
+            return source.smellType;
+        }
+
+        int commitNumber() {
+            return (Integer) instance.get("commit_number");
+        }
+    }
+
+    /**
+     * Fill the buffer of a single smell type on its own thread.
+     */
+    private static final class Source extends Thread {
+        private final int index;
+        private final String smellType;
+        private final Callable<? extends Iterator<Map<String, Object>>> opener;
+        private final BlockingQueue<Map<String, Object>> buffer;
+        private volatile Throwable failure;
+
+        private Source(int index, String smellType, Callable<? extends Iterator<Map<String, Object>>> opener,
+                       int bufferSize) {
+            super("smells-" + smellType);
+            setDaemon(true);
+            this.index = index;
+            this.smellType = smellType;
+            this.opener = opener;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        @Override
+        public void run() {
+            Iterator<Map<String, Object>> instances = null;
+            long start = System.currentTimeMillis();
+            long read = 0;
+            try {
+                instances = opener.call();
+                while (instances.hasNext()) {
+                    buffer.put(instances.next());
+                    read++;
+                }
+                logger.debug("Read " + read + " smells of type " + smellType + " in "
+                        + (System.currentTimeMillis() - start) + "ms");
+            } catch (InterruptedException e) {
+                logger.debug("Stopped reading smells of type " + smellType);
+                return;
+            } catch (Throwable e) {
+                // Errors are handed over to the consumer as well, which would otherwise wait forever.
+                failure = e;
+            } finally {
+                closeQuietly(instances);
+            }
+            try {
+                buffer.put(END_OF_SOURCE);
+            } catch (InterruptedException e) {
+                logger.debug("Stopped reading smells of type " + smellType);
+            }
+        }
+
+        private void closeQuietly(Iterator<Map<String, Object>> instances) {
+            if (instances instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) instances).close();
+                } catch (Exception e) {
+                    logger.warn("Unable to close smells stream of type " + smellType, e);
+                }
+            }
+        }
+    }
+}
@@ -17,12 +17,16 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.smell;
 
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import fr.inria.sniffer.tracker.analysis.query.smell.duplication.SmellDuplicationChecker;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.CommitGapHandler;
 import fr.inria.sniffer.tracker.analysis.query.smell.gap.MultiBranchGapHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,18 +43,79 @@ class MultiBranchAnalyzer extends BranchAnalyzer {
 
     private final BranchQueries branchQueries;
     private final int branchId;
+    // Presence of the smells persisted as branch intervals, null to persist it per commit.
+    private final SmellPresenceIntervals presenceIntervals;
 
     MultiBranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
                         CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries, int branchId, String parentCommitSha) {
-        super(projectId, persistence, duplicationChecker, commitQueries, smellQueries, new MultiBranchGapHandler(projectId, branchId, persistence, branchQueries), parentCommitSha);
+        this(projectId, persistence, duplicationChecker, commitQueries, smellQueries, branchQueries, branchId, parentCommitSha, new IdCache());
+    }
+
+    MultiBranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
+                        CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries, int branchId, String parentCommitSha,
+                        IdCache idCache) {
+        this(projectId, persistence, duplicationChecker, commitQueries, smellQueries, branchQueries, branchId, parentCommitSha,
+                idCache, new MultiBranchGapHandler(projectId, branchId, persistence, branchQueries));
+    }
+
+    MultiBranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
+                        CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries, int branchId, String parentCommitSha,
+                        IdCache idCache, CommitGapHandler gapHandler) {
+        this(projectId, persistence, duplicationChecker, commitQueries, smellQueries, branchQueries, branchId, parentCommitSha,
+                idCache, gapHandler, smellQueries.presenceIntervals() ?
+                        new SmellPresenceIntervals(projectId, branchId, persistence, smellQueries) : null);
+    }
+
+    MultiBranchAnalyzer(int projectId, Persistence persistence, SmellDuplicationChecker duplicationChecker,
+                        CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries, int branchId, String parentCommitSha,
+                        IdCache idCache, CommitGapHandler gapHandler, SmellPresenceIntervals presenceIntervals) {
+        super(projectId, persistence, duplicationChecker, commitQueries, smellQueries, gapHandler, parentCommitSha, idCache);
         this.branchQueries = branchQueries;
         this.branchId = branchId;
+        this.presenceIntervals = presenceIntervals;
+    }
+
+    @Override
+    protected void insertSmellPresence(Smell smell, Commit commit) {
+        if (presenceIntervals == null) {
+            super.insertSmellPresence(smell, commit);
+        } else {
+            presenceIntervals.notifyPresence(smell, commit);
+        }
+    }
+
+    @Override
+    protected void notifyPresencesComplete(Commit commit) {
+        if (presenceIntervals != null) {
+            presenceIntervals.closeAbsent(commit);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The open presence intervals are persisted up to the commit under analysis.
+     */
+    @Override
+    public void flushSmells() {
+        super.flushSmells();
+        if (presenceIntervals != null) {
+            presenceIntervals.flush();
+        }
     }
 
 
     @Override
     public void notifyEnd() throws QueryException {
-        super.notifyEnd(fetchLastBranchCommitSha());
+        notifyEnd(fetchLastBranchCommitSha());
+    }
+
+    @Override
+    public void notifyEnd(String lastCommitSha1) {
+        super.notifyEnd(lastCommitSha1);
+        if (presenceIntervals != null) {
+            presenceIntervals.closeAll();
+        }
     }
     /**
      * Retrieve the sha1 of the last branch's commit analyzed by Paprika.
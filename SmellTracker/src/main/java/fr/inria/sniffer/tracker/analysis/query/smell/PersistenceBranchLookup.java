@@ -0,0 +1,108 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.DetectorCommitShas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BranchLookup} querying the {@link Persistence} on each call.
+ */
+class PersistenceBranchLookup implements BranchLookup {
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceBranchLookup.class.getName());
+
+    private final int projectId;
+    private final Persistence persistence;
+    private final CommitQueries commitQueries;
+    private final BranchQueries branchQueries;
+
+    PersistenceBranchLookup(int projectId, Persistence persistence,
+                            CommitQueries commitQueries, BranchQueries branchQueries) {
+        this.projectId = projectId;
+        this.persistence = persistence;
+        this.commitQueries = commitQueries;
+        this.branchQueries = branchQueries;
+    }
+
+    @Override
+    public int branchId(Commit commit) throws BranchNotFoundException {
+        List<Map<String, Object>> result = persistence.query(branchQueries.idFromCommitQueryStatement(projectId, commit));
+        if (result.isEmpty() || result.get(0).get("id") == null) {
+            throw new BranchNotFoundException(projectId, commit.sha);
+        }
+        return (int) result.get(0).get("id");
+    }
+
+    @Override
+    public int branchOrdinal(int branchId, Commit commit) throws QueryException {
+        List<Map<String, Object>> result = persistence.query(branchQueries.commitOrdinalQuery(projectId, branchId, commit));
+        if (result.isEmpty()) {
+            throw new QueryException(logger.getName(), "Unable to find commit (" + commit.sha + ") in branch n°" + branchId);
+        }
+        return (int) result.get(0).get("ordinal");
+    }
+
+    @Override
+    public Integer mergedCommitId(Commit commit) {
+        List<Map<String, Object>> result = persistence.query(commitQueries.mergedCommitIdQuery(projectId, commit));
+        return (result.isEmpty() || result.get(0).isEmpty()) ? null : (Integer) result.get(0).get("id");
+    }
+
+    @Override
+    public String lastCommitSha(int branchId) {
+        List<Map<String, Object>> result = persistence.query(branchQueries.lastCommitShaQuery(projectId, branchId));
+        if (result.isEmpty()) {
+            return null;
+        }
+        return (String) result.get(0).get("sha1");
+    }
+
+    @Override
+    public String parentCommitSha(int branchId) {
+        List<Map<String, Object>> result = persistence.query(branchQueries.parentCommitShaQuery(projectId, branchId));
+        if (result.isEmpty()) {
+            return null;
+        }
+        return (String) result.get(0).get("sha1");
+    }
+
+    @Override
+    public DetectorCommitShas detectorCommitShas(int branchId) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The branches are only queried one at a time, thus the analyses read back the persisted smells.
+     */
+    @Override
+    public Map<Integer, Integer> branchingCommitReads(IdCache idCache) {
+        return null;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.query.branch.BranchQuery;
+import fr.inria.sniffer.tracker.analysis.query.smell.gap.DetectorCommitShas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BranchLookup} loading all the branches and commits of a project in memory at once.
+ * This must be built after the {@link BranchQuery} has been processed on the project,
+ * and can then be shared by every smell type analysis of the project.
+ */
+class PreloadedBranchLookup implements BranchLookup {
+    private static final Logger logger = LoggerFactory.getLogger(PreloadedBranchLookup.class.getName());
+    private static final DetectorCommitShas NO_DETECTOR_COMMITS = new DetectorCommitShas();
+
+    private final int projectId;
+    private final Map<String, Integer> commitBranches;
+    private final Map<Integer, Map<String, Integer>> branchOrdinals;
+    private final Map<Integer, String> lastCommitShas;
+    private final Map<Integer, String> parentCommitShas;
+    private final Map<String, Integer> mergedCommitIds;
+    private final Map<Integer, DetectorCommitShas> detectorCommitShas;
+
+    private PreloadedBranchLookup(int projectId) {
+        this.projectId = projectId;
+        commitBranches = new HashMap<>();
+        branchOrdinals = new HashMap<>();
+        lastCommitShas = new HashMap<>();
+        parentCommitShas = new HashMap<>();
+        mergedCommitIds = new HashMap<>();
+        detectorCommitShas = new HashMap<>();
+    }
+
+    /**
+     * Load the branches data of the given project.
+     *
+     * @param projectId     The project identifier.
+     * @param persistence   The persistence to load from.
+     * @param commitQueries The commit queries generator.
+     * @param branchQueries The branch queries generator.
+     * @return A new {@link PreloadedBranchLookup}.
+     */
+    static PreloadedBranchLookup load(int projectId, Persistence persistence,
+                                      CommitQueries commitQueries, BranchQueries branchQueries) {
+        PreloadedBranchLookup lookup = new PreloadedBranchLookup(projectId);
+
+        Map<Integer, Integer> lastOrdinals = new HashMap<>();
+        int branchId;
+        int ordinal;
+        String sha;
+        for (Map<String, Object> row : persistence.query(branchQueries.branchCommitsQuery(projectId))) {
+            branchId = (int) row.get("branch_id");
+            ordinal = (int) row.get("ordinal");
+            sha = (String) row.get("sha1");
+
+            // A commit may be in multiple branches, we keep the first one as the query would do.
+            lookup.commitBranches.putIfAbsent(sha, branchId);
+            lookup.branchOrdinals.computeIfAbsent(branchId, k -> new HashMap<>()).put(sha, ordinal);
+            if (isTrue(row.get("in_detector"))) {
+                lookup.detectorCommitShas.computeIfAbsent(branchId, k -> new DetectorCommitShas()).put(ordinal, sha);
+            }
+            if (ordinal >= lastOrdinals.getOrDefault(branchId, -1)) {
+                lastOrdinals.put(branchId, ordinal);
+                lookup.lastCommitShas.put(branchId, sha);
+            }
+        }
+
+        for (Map<String, Object> row : persistence.query(branchQueries.branchesQuery(projectId))) {
+            if (row.get("parent_sha1") != null) {
+                lookup.parentCommitShas.put((int) row.get("id"), (String) row.get("parent_sha1"));
+            }
+        }
+
+        for (Map<String, Object> row : persistence.query(commitQueries.mergedCommitIdsQuery(projectId))) {
+            lookup.mergedCommitIds.put((String) row.get("sha1"), (Integer) row.get("id"));
+        }
+
+        logger.info("[" + projectId + "] Loaded " + lookup.commitBranches.size() + " commits in "
+                + lookup.branchOrdinals.size() + " branches");
+        return lookup;
+    }
+
+    /**
+     * Read a boolean column the way {@link java.sql.ResultSet#getBoolean(String)} would,
+     * since SQLite stores booleans as integers.
+     *
+     * @param value The column value.
+     * @return True if the value is true or a non zero number, false otherwise.
+     */
+    private static boolean isTrue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return Boolean.TRUE.equals(value);
+    }
+
+    @Override
+    public int branchId(Commit commit) throws BranchNotFoundException {
+        Integer branchId = commitBranches.get(commit.sha);
+        if (branchId == null) {
+            throw new BranchNotFoundException(projectId, commit.sha);
+        }
+        return branchId;
+    }
+
+    @Override
+    public int branchOrdinal(int branchId, Commit commit) throws QueryException {
+        Map<String, Integer> ordinals = branchOrdinals.get(branchId);
+        Integer ordinal = ordinals == null ? null : ordinals.get(commit.sha);
+        if (ordinal == null) {
+            throw new QueryException(logger.getName(), "Unable to find commit (" + commit.sha + ") in branch n°" + branchId);
+        }
+        return ordinal;
+    }
+
+    @Override
+    public Integer mergedCommitId(Commit commit) {
+        return mergedCommitIds.get(commit.sha);
+    }
+
+    @Override
+    public String lastCommitSha(int branchId) {
+        return lastCommitShas.get(branchId);
+    }
+
+    @Override
+    public String parentCommitSha(int branchId) {
+        return parentCommitShas.get(branchId);
+    }
+
+    @Override
+    public DetectorCommitShas detectorCommitShas(int branchId) {
+        // The lookup is shared between the analyses, thus only read once loaded.
+        return detectorCommitShas.getOrDefault(branchId, NO_DETECTOR_COMMITS);
+    }
+
+    @Override
+    public Map<Integer, Integer> branchingCommitReads(IdCache idCache) {
+        Map<Integer, Integer> reads = new HashMap<>();
+        for (Integer mergedCommitId : mergedCommitIds.values()) {
+            if (mergedCommitId != null) {
+                reads.merge(mergedCommitId, 1, Integer::sum);
+            }
+        }
+        Integer parentCommitId;
+        for (String parentSha : parentCommitShas.values()) {
+            parentCommitId = idCache.commitId(parentSha);
+            if (parentCommitId != null) {
+                reads.merge(parentCommitId, 1, Integer::sum);
+            }
+        }
+        return reads;
+    }
+}
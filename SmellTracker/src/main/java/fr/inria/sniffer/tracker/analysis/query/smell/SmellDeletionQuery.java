@@ -32,15 +32,17 @@ import java.util.Map;
 
 public class SmellDeletionQuery implements Query {
     private static final Logger logger = LoggerFactory.getLogger(SmellDeletionQuery.class.getName());
-    private final String paprikaDB;
+    // Refactorings checked, then committed, at once.
+    static final int PAGE_SIZE = 1000;
+    private final QueryEngine queryEngine;
     private final Persistence persistence;
     private final int projectId;
     private final SmellQueries smellQueries;
 
-    public SmellDeletionQuery(int projectId, String paprikaDB, Persistence persistence,
+    public SmellDeletionQuery(int projectId, QueryEngine queryEngine, Persistence persistence,
                               SmellQueries smellQueries) {
         this.projectId = projectId;
-        this.paprikaDB = paprikaDB;
+        this.queryEngine = queryEngine;
         this.persistence = persistence;
         this.smellQueries = smellQueries;
     }
@@ -48,42 +50,45 @@ public class SmellDeletionQuery implements Query {
     @Override
     public void query() throws QueryException {
         logger.info("[" + projectId + "] Starting Smells deletion query");
-        QueryEngine queryEngine = new QueryEngine(paprikaDB);
 
-        String refactoredQuery = smellQueries.allRefactoredInstancesWithSha1(projectId);
-        List<Map<String, Object>> result = persistence.query(refactoredQuery);
-
-        int refactoringId;
-        String instance;
-        String type;
-        String sha1;
-        logger.info("[" + projectId + "] Found " + result.size() + " refactoring to analyze");
-
-        int index = 0;
-        for (Map<String, Object> refactored : result) {
-            refactoringId = (int) refactored.get("id");
-            sha1 = (String) refactored.get("sha1");
-            instance = (String) refactored.get("instance");
-            type = (String) refactored.get("type");
-            logger.debug("[" + projectId + "] Checking smell: " + instance + " (" + type + ", " + sha1 + ")");
-
-            try {
-                boolean deleted = isDeleted(queryEngine, sha1, instance, type);
-                logger.debug("[" + projectId + "] Setting smell as deleted: " + deleted + " - sha1: " + sha1
-                        + " - instance: " + instance + " (" + type + ")");
-                persistence.addStatements(smellQueries.setAsDeleted(projectId, refactoringId, deleted));
-            } catch (QueryException e) {
-                logger.warn("[" + projectId + "] Unable to set deleted", e);
+        // The refactorings may not fit in memory, thus they are read by pages.
+        // A streaming cursor would keep the transaction open during the whole deletion pass.
+        int count = 0;
+        int lastId = 0;
+        List<Map<String, Object>> page;
+        do {
+            page = persistence.query(smellQueries.refactoredInstancesWithSha1Page(projectId, lastId, PAGE_SIZE));
+            for (Map<String, Object> refactored : page) {
+                lastId = (int) refactored.get("id");
+                checkDeletion(queryEngine, lastId, (String) refactored.get("sha1"),
+                        (String) refactored.get("instance"), (String) refactored.get("type"));
             }
+            count += page.size();
+            logger.info("[" + projectId + "] Persisting smells deletion (" + count + ")");
+            persistence.commit();
+        } while (page.size() == PAGE_SIZE);
+        logger.info("[" + projectId + "] Analyzed " + count + " refactoring");
+    }
 
-            if (++index % 1000 == 0) {
-                logger.info("[" + projectId + "] Persisting smells deletion (" + index + ")");
-                persistence.commit();
-            }
+    /**
+     * Add the statement setting if the refactored smell has been deleted.
+     *
+     * @param queryEngine   The Harissa's neo4j {@link QueryEngine}.
+     * @param refactoringId Identifier of the smell refactoring.
+     * @param sha1          The commit sha1.
+     * @param instance      The smell instance name, referencing its holding entity.
+     * @param type          The smell type to check.
+     */
+    private void checkDeletion(QueryEngine queryEngine, int refactoringId, String sha1, String instance, String type) {
+        logger.debug("[" + projectId + "] Checking smell: " + instance + " (" + type + ", " + sha1 + ")");
+        try {
+            boolean deleted = isDeleted(queryEngine, sha1, instance, type);
+            logger.debug("[" + projectId + "] Setting smell as deleted: " + deleted + " - sha1: " + sha1
+                    + " - instance: " + instance + " (" + type + ")");
+            persistence.addStatements(smellQueries.setAsDeleted(projectId, refactoringId, deleted));
+        } catch (QueryException e) {
+            logger.warn("[" + projectId + "] Unable to set deleted", e);
         }
-        persistence.commit();
-
-        queryEngine.shutDown();
     }
 
     /**
@@ -0,0 +1,89 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense indexes of the smells of a single type analysis, used as positions in the presence bitmaps.
+ * <p>
+ * Equal smells, parent included, share the same index,
+ * and a renamed smell is always indexed after its parent.
+ */
+class SmellDictionary {
+    private final List<Smell> smells = new ArrayList<>();
+    private final Map<Smell, Integer> indexes = new HashMap<>();
+    // Smells before this index have already been identified.
+    private int identified = 0;
+
+    /**
+     * Retrieve the index of a smell, indexing it if needed.
+     * The parent of a newly indexed smell is replaced by its indexed instance.
+     *
+     * @param smell The smell to index.
+     * @return The smell index.
+     */
+    int index(Smell smell) {
+        Integer index = indexes.get(smell);
+        if (index == null) {
+            if (smell.parent != null) {
+                smell.parent = smell(index(smell.parent));
+            }
+            index = smells.size();
+            smells.add(smell);
+            indexes.put(smell, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param index The smell index.
+     * @return The indexed smell.
+     */
+    Smell smell(int index) {
+        return smells.get(index);
+    }
+
+    /**
+     * Insert the smells indexed since the last call and set their identifier,
+     * the parents being inserted before their renamed smells.
+     *
+     * @param identifier The {@link SmellIdentifier} to use.
+     */
+    void identify(SmellIdentifier identifier) {
+        List<Smell> batch = new ArrayList<>();
+        Smell smell;
+        for (; identified < smells.size(); identified++) {
+            smell = smells.get(identified);
+            if (smell.id != -1) {
+                continue;
+            }
+            if (smell.parent != null && smell.parent.id == -1) {
+                identifier.identify(batch);
+                batch = new ArrayList<>();
+            }
+            batch.add(smell);
+        }
+        identifier.identify(batch);
+    }
+}
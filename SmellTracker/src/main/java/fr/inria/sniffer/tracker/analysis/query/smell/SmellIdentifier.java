@@ -0,0 +1,82 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Insert new smells and set their persistence identifier.
+ */
+class SmellIdentifier {
+    private final int projectId;
+    private final Persistence persistence;
+    private final SmellQueries smellQueries;
+
+    SmellIdentifier(int projectId, Persistence persistence, SmellQueries smellQueries) {
+        this.projectId = projectId;
+        this.persistence = persistence;
+        this.smellQueries = smellQueries;
+    }
+
+    /**
+     * Insert the given smells and set their identifier.
+     * <p>
+     * All smells are inserted and identified with a single query,
+     * falling back on inserting and querying each smell if no identifier could be retrieved.
+     * The parent of each renamed smell must already be identified.
+     *
+     * @param smells The smells to identify.
+     */
+    void identify(List<Smell> smells) {
+        if (smells.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> identifiers = new HashMap<>();
+        for (Map<String, Object> row : persistence.query(smellQueries.smellsInsertionStatement(projectId, smells))) {
+            identifiers.put(smellKey((String) row.get("instance"), (String) row.get("type"),
+                    (String) row.get("file"), (Integer) row.get("renamed_from")), (Integer) row.get("id"));
+        }
+
+        Integer identifier;
+        for (Smell smell : smells) {
+            identifier = identifiers.get(smellKey(smell));
+            smell.id = identifier != null ? identifier : insertSmellInstance(smell);
+            assert smell.id != -1;
+        }
+    }
+
+    private int insertSmellInstance(Smell smell) {
+        persistence.execute(smellQueries.smellInsertionStatement(projectId, smell));
+        List<Map<String, Object>> result = persistence.query(smellQueries.smellIdQuery(projectId, smell));
+        return (int) result.get(0).get("id");
+    }
+
+    private static String smellKey(Smell smell) {
+        return smellKey(smell.instance, smell.type, smell.file, smell.parent == null ? null : smell.parent.id);
+    }
+
+    private static String smellKey(String instance, String type, String file, Integer renamedFrom) {
+        return instance + "\n" + type + "\n" + file + "\n" + renamedFrom;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Track the presence of smells on consecutive commits of a branch,
+ * in order to persist it as intervals of branch ordinals rather than one row per commit.
+ * <p>
+ * An interval is closed on the first analyzed commit not holding its smell,
+ * or on a gap of commits unknown to Paprika, so that the intervals only hold
+ * the commits persisted per commit otherwise.
+ */
+class SmellPresenceIntervals {
+    private final int projectId;
+    private final int branchId;
+    private final Persistence persistence;
+    private final SmellQueries smellQueries;
+
+    // Intervals still holding their smell, by smell identifier.
+    private final Map<Integer, Interval> openIntervals = new HashMap<>();
+
+    SmellPresenceIntervals(int projectId, int branchId, Persistence persistence, SmellQueries smellQueries) {
+        this.projectId = projectId;
+        this.branchId = branchId;
+        this.persistence = persistence;
+        this.smellQueries = smellQueries;
+    }
+
+    /**
+     * Notify the presence of an identified smell on the given commit,
+     * extending the smell interval if it is still open and ends on the previous branch commit.
+     *
+     * @param smell  The smell, with its identifier.
+     * @param commit The commit holding the smell, with its branch ordinal.
+     */
+    void notifyPresence(Smell smell, Commit commit) {
+        Interval interval = openIntervals.get(smell.id);
+        if (interval != null && commit.getBranchOrdinal() > interval.lastOrdinal + 1) {
+            // The commits skipped since the end of the interval are unknown to Paprika.
+            persist(interval);
+            interval = null;
+        }
+        if (interval == null) {
+            openIntervals.put(smell.id, new Interval(smell, commit));
+        } else {
+            interval.extend(commit);
+        }
+    }
+
+    /**
+     * Persist and close the intervals of the smells absent from the given commit,
+     * once all the smells of this commit have been notified.
+     *
+     * @param commit The last analyzed commit.
+     */
+    void closeAbsent(Commit commit) {
+        Iterator<Interval> intervals = openIntervals.values().iterator();
+        Interval interval;
+        while (intervals.hasNext()) {
+            interval = intervals.next();
+            if (!interval.lastSha.equals(commit.sha)) {
+                persist(interval);
+                intervals.remove();
+            }
+        }
+    }
+
+    /**
+     * Persist the open intervals up to their last commit, keeping them open.
+     * This enables reading back the smells present on the branch commits.
+     */
+    void flush() {
+        for (Interval interval : openIntervals.values()) {
+            persist(interval);
+        }
+    }
+
+    /**
+     * Persist and close all the intervals, at the end of the branch.
+     */
+    void closeAll() {
+        flush();
+        openIntervals.clear();
+    }
+
+    private void persist(Interval interval) {
+        if (interval.persistedOrdinal == interval.lastOrdinal) {
+            return;
+        }
+        persistence.addParameterizedStatements(smellQueries.smellPresenceIntervalStatement(
+                projectId, branchId, interval.smell, interval.firstOrdinal, interval.lastOrdinal));
+        interval.persistedOrdinal = interval.lastOrdinal;
+    }
+
+    /**
+     * Consecutive branch commits holding a smell.
+     */
+    private static final class Interval {
+        final Smell smell;
+        final int firstOrdinal;
+        int lastOrdinal;
+        String lastSha;
+        // Last ordinal written in the persistence, the interval being extended on each write.
+        int persistedOrdinal = -1;
+
+        Interval(Smell smell, Commit commit) {
+            this.smell = smell;
+            this.firstOrdinal = commit.getBranchOrdinal();
+            extend(commit);
+        }
+
+        void extend(Commit commit) {
+            lastOrdinal = commit.getBranchOrdinal();
+            lastSha = commit.sha;
+        }
+    }
+}
@@ -17,10 +17,15 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.smell;
 
+import fr.inria.sniffer.tracker.analysis.AnalysisOptions;
+import fr.inria.sniffer.tracker.analysis.Main;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
 import fr.inria.sniffer.tracker.analysis.query.Query;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.PipelinedPersistence;
+import fr.inria.sniffer.tracker.analysis.persistence.PostgresqlPersistence;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.query.smell.duplication.SmellDuplicationChecker;
@@ -38,29 +43,73 @@ import org.neo4j.graphdb.Result;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Retrieve all the smells of a given project for each commits, through Paprika.
  */
 public class SmellQuery implements Query {
     private static final Logger logger = LoggerFactory.getLogger(SmellQuery.class.getName());
-    private final String paprikaDB;
+    private final QueryEngine queryEngine;
     private final Persistence persistence;
     private final int projectId;
     private BranchQueries branchQueries;
     private SmellQueries smellQueries;
     private CommitQueries commitQueries;
+    private final IdCache idCache;
+    private final DataSource connections;
+    private final AnalysisOptions options;
+    private final int analyzedCommitId;
 
-    public SmellQuery(int projectId, String paprikaDB, Persistence persistence,
+    public SmellQuery(int projectId, QueryEngine queryEngine, Persistence persistence,
                       CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries) {
+        this(projectId, queryEngine, persistence, commitQueries, smellQueries, branchQueries, new IdCache());
+    }
+
+    public SmellQuery(int projectId, QueryEngine queryEngine, Persistence persistence,
+                      CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries,
+                      IdCache idCache) {
+        this(projectId, queryEngine, persistence, commitQueries, smellQueries, branchQueries, idCache,
+                null, AnalysisOptions.DEFAULT, 0);
+    }
+
+    /**
+     * Retrieve the smells of the project commits added since a previous analysis,
+     * each smell type being analyzed on its own thread with its own connection
+     * if more than one smell thread is given.
+     * The parallel analysis neither uses the single pass over all smell types ({@link Main#SMELL_SINGLE_PASS})
+     * nor the pipelined persistence ({@link Main#PERSISTENCE_QUEUE_DEPTH}), each smell type being read
+     * and persisted synchronously on its own thread.
+     *
+     * @param connections      Pool of database connections for the smell types analysis, may be null to use persistence.
+     * @param options          The options tuning the analysis.
+     * @param analyzedCommitId Identifier of the last commit persisted by the previous analysis,
+     *                         0 to analyze the whole history.
+     */
+    public SmellQuery(int projectId, QueryEngine queryEngine, Persistence persistence,
+                      CommitQueries commitQueries, SmellQueries smellQueries, BranchQueries branchQueries,
+                      IdCache idCache, DataSource connections, AnalysisOptions options, int analyzedCommitId) {
         this.projectId = projectId;
-        this.paprikaDB = paprikaDB;
+        this.queryEngine = queryEngine;
         this.persistence = persistence;
         this.commitQueries = commitQueries;
         this.smellQueries = smellQueries;
         this.branchQueries = branchQueries;
+        this.idCache = idCache;
+        this.connections = connections;
+        this.options = options;
+        this.analyzedCommitId = analyzedCommitId;
     }
 
     private List<fr.inria.sniffer.detector.neo4j.Query> queries(QueryEngine queryEngine) {
@@ -80,21 +129,228 @@ public class SmellQuery implements Query {
     @Override
     public void query() throws QueryException {
         logger.info("[" + projectId + "] Starting Smells insertion");
-        QueryEngine queryEngine = new QueryEngine(paprikaDB);
+        if (analyzedCommitId > 0) {
+            logger.info("[" + projectId + "] => Analyzing smells of commits added since commit n°" + analyzedCommitId);
+            if (options.bitmapAnalysis) {
+                logger.warn("[" + projectId + "] Bitmap analysis can't be resumed, using the branch analysis");
+            }
+        }
         SmellDuplicationChecker duplicationChecker = new SmellDuplicationChecker(projectId, persistence, queryEngine);
+        BranchLookup branchLookup = PreloadedBranchLookup.load(projectId, persistence, commitQueries, branchQueries);
+        // Resolving commit identifiers beforehand enables bulk loading the smells categories.
+        idCache.putCommitIds(persistence.query(commitQueries.commitIdsQuery(projectId, idCache.lastCommitId())));
 
-        for (fr.inria.sniffer.detector.neo4j.Query query : queries(queryEngine)) {
-            logger.info("[" + projectId + "] => Querying Smells of type: " + query.getSmellName());
+        try {
+            if (connections != null && options.smellThreads > 1) {
+                queryInParallel(queries(queryEngine), duplicationChecker, branchLookup);
+            } else {
+                querySequentially(duplicationChecker, branchLookup);
+            }
+        } finally {
+            logger.info("[" + projectId + "] => Qualified names of renamed files: "
+                    + duplicationChecker.getQualifiedNameHits() + " cache hits, "
+                    + duplicationChecker.getQualifiedNameMisses() + " queries");
+        }
+    }
 
-            Result result = query.streamResult(true, true);
-            logger.trace("[" + projectId + "]   ==> Found smells: " + result);
+    /**
+     * Analyze the smell types on the current thread, instances being read and statements being written
+     * on their own threads.
+     *
+     * @param duplicationChecker The {@link SmellDuplicationChecker} to use.
+     * @param branchLookup       The preloaded branches of the project.
+     * @throws QueryException If a smell type could not be analyzed.
+     */
+    private void querySequentially(SmellDuplicationChecker duplicationChecker,
+                                   BranchLookup branchLookup) throws QueryException {
+        PipelinedPersistence writer = Main.PERSISTENCE_QUEUE_DEPTH > 0 ?
+                new PipelinedPersistence(persistence, Main.PERSISTENCE_QUEUE_DEPTH) : null;
+        try {
+            if (Main.SMELL_SINGLE_PASS) {
+                queryInSinglePass(queries(queryEngine), writer != null ? writer : persistence,
+                        duplicationChecker, branchLookup);
+            } else {
+                for (fr.inria.sniffer.detector.neo4j.Query query : queries(queryEngine)) {
+                    queryInSinglePass(Collections.singletonList(query), writer != null ? writer : persistence,
+                            duplicationChecker, branchLookup);
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        logger.info("[" + projectId + "] Removing previously inserted Smells");
+        for (String statement : smellQueries.projectSmellsDeletionStatements(projectId)) {
+            persistence.execute(statement);
+        }
+    }
+
+    /**
+     * Analyze all smell types in a single pass over their instances ordered by commit,
+     * each instance being dispatched to the analysis of its smell type.
+     * <p>
+     * The statements are handed to the persistence every {@link Main#SMELL_COMMIT_INTERVAL} commits,
+     * so that they are written while the next commits are analyzed.
+     *
+     * @param queries            The smell types to analyze.
+     * @param persistence        The persistence to write on.
+     * @param duplicationChecker The {@link SmellDuplicationChecker} to use.
+     * @param branchLookup       The {@link BranchLookup} to use.
+     * @throws QueryException If any smell type analysis failed.
+     */
+    private void queryInSinglePass(List<fr.inria.sniffer.detector.neo4j.Query> queries, Persistence persistence,
+                                   SmellDuplicationChecker duplicationChecker,
+                                   BranchLookup branchLookup) throws QueryException {
+        logger.info("[" + projectId + "] => Querying Smells of " + queries.size() + " types in a single pass");
+        Map<String, Callable<? extends Iterator<Map<String, Object>>>> sources = new LinkedHashMap<>();
+        Map<String, BranchAwareSmellTypeAnalysis> analyses = new LinkedHashMap<>();
+        for (fr.inria.sniffer.detector.neo4j.Query query : queries) {
+            sources.put(query.getSmellName(), () -> query.streamResult(true, true));
+            analyses.put(query.getSmellName(), smellTypeAnalysis(persistence, Collections.emptyIterator(),
+                    query.getSmellName(), duplicationChecker, branchLookup));
+        }
 
-            new BranchAwareSmellTypeAnalysis(projectId, persistence, result, query.getSmellName(), duplicationChecker, commitQueries, smellQueries, branchQueries).query();
+        long start = System.currentTimeMillis();
+        // Time spent waiting for the readers, and analyzing the instances.
+        long readNanos = 0;
+        long analysisNanos = 0;
+        long analyzed = 0;
+        long commits = 0;
+        int commitNumber = -1;
+        long timestamp;
+        try (MergedSmellStream stream = new MergedSmellStream(sources, Main.SMELL_READ_BUFFER_SIZE)) {
+            MergedSmellStream.TypedInstance smell;
+            while (true) {
+                timestamp = System.nanoTime();
+                if (!stream.hasNext()) {
+                    break;
+                }
+                smell = stream.next();
+                readNanos += System.nanoTime() - timestamp;
 
-            // Calling commit for each smell type to avoid too big request.
-            persistence.commit();
+                if (smell.commitNumber() != commitNumber) {
+                    commitNumber = smell.commitNumber();
+                    if (Main.SMELL_COMMIT_INTERVAL > 0 && ++commits % Main.SMELL_COMMIT_INTERVAL == 0) {
+                        persistence.commit();
+                    }
+                }
+                timestamp = System.nanoTime();
+                analyses.get(smell.smellType()).notifyInstance(smell.instance);
+                analysisNanos += System.nanoTime() - timestamp;
+                analyzed++;
+            }
+        } catch (IllegalStateException e) {
+            throw new QueryException(logger.getName(), e);
         }
+        for (BranchAwareSmellTypeAnalysis analysis : analyses.values()) {
+            analysis.finish();
+        }
+        persistence.commit();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        logger.info("[" + projectId + "]   ==> Analyzed " + analyzed + " smells in " + elapsed + "ms ("
+                + (analyzed * 1000 / elapsed) + " smells/s), waiting " + (readNanos / 1_000_000) + "ms for the readers "
+                + "and analyzing for " + (analysisNanos / 1_000_000) + "ms");
+    }
+
+    /**
+     * Analyze the smell types simultaneously, each one with its own connection.
+     * Neither the single pass nor the pipelined persistence are used in this mode.
+     * The duplication checker, branch lookup and identifiers cache are only read, thus shared.
+     *
+     * @param queries            The smell types to analyze.
+     * @param duplicationChecker The shared {@link SmellDuplicationChecker}.
+     * @param branchLookup       The shared {@link BranchLookup}.
+     * @throws QueryException If any smell type analysis failed, once all of them are done.
+     */
+    private void queryInParallel(List<fr.inria.sniffer.detector.neo4j.Query> queries,
+                                 SmellDuplicationChecker duplicationChecker,
+                                 BranchLookup branchLookup) throws QueryException {
+        logger.info("[" + projectId + "] Analyzing smell types using " + options.smellThreads
+                + " threads, without single pass nor pipelined persistence");
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(options.smellThreads, queries.size()));
+        List<Future<Void>> analyses = new ArrayList<>();
+        for (fr.inria.sniffer.detector.neo4j.Query query : queries) {
+            analyses.add(executorService.submit(() -> {
+                Persistence workerPersistence = new PostgresqlPersistence(connections.getConnection());
+                workerPersistence.setTransactionSize(options.transactionSize);
+                try {
+                    querySmellType(query, workerPersistence, duplicationChecker, branchLookup);
+                } finally {
+                    workerPersistence.close();
+                }
+                return null;
+            }));
+        }
+        executorService.shutdown();
+
+        QueryException failure = null;
+        for (Future<Void> analysis : analyses) {
+            try {
+                analysis.get();
+            } catch (InterruptedException e) {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new QueryException(logger.getName(), e);
+            } catch (ExecutionException e) {
+                logger.error("[" + projectId + "] Unable to analyze smell type", e.getCause());
+                if (failure == null) {
+                    failure = new QueryException(logger.getName(), e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Create the analysis of a single smell type.
+     *
+     * @param persistence        The persistence to write on.
+     * @param smells             The smell instances, ordered by commit.
+     * @param smellType          The analyzed smell type.
+     * @param duplicationChecker The {@link SmellDuplicationChecker} to use.
+     * @param branchLookup       The {@link BranchLookup} to use.
+     * @return The bitmap analysis if enabled and analyzing the whole history, the branch aware analysis otherwise.
+     */
+    private BranchAwareSmellTypeAnalysis smellTypeAnalysis(Persistence persistence, Iterator<Map<String, Object>> smells,
+                                                           String smellType, SmellDuplicationChecker duplicationChecker,
+                                                           BranchLookup branchLookup) {
+        if (options.bitmapAnalysis && analyzedCommitId <= 0) {
+            return new BitmapSmellTypeAnalysis(projectId, persistence, smells, smellType, duplicationChecker,
+                    commitQueries, smellQueries, branchQueries, branchLookup, idCache);
+        }
+        // The merges and branch starts are resolved from memory, leaving the writes batched.
+        return new BranchAwareSmellTypeAnalysis(projectId, persistence, smells, smellType, duplicationChecker,
+                commitQueries, smellQueries, branchQueries, branchLookup, idCache, analyzedCommitId,
+                branchLookup.branchingCommitReads(idCache));
+    }
+
+    /**
+     * Analyze a single smell type, then commit its statements.
+     *
+     * @param query              The Paprika query of the smell type.
+     * @param persistence        The persistence to write on.
+     * @param duplicationChecker The {@link SmellDuplicationChecker} to use.
+     * @param branchLookup       The {@link BranchLookup} to use.
+     * @throws QueryException If the analysis failed.
+     */
+    private void querySmellType(fr.inria.sniffer.detector.neo4j.Query query, Persistence persistence,
+                                SmellDuplicationChecker duplicationChecker,
+                                BranchLookup branchLookup) throws QueryException {
+        logger.info("[" + projectId + "] => Querying Smells of type: " + query.getSmellName());
+
+        Result result = query.streamResult(true, true);
+        logger.trace("[" + projectId + "]   ==> Found smells: " + result);
+
+        smellTypeAnalysis(persistence, result, query.getSmellName(), duplicationChecker, branchLookup).query();
 
-        queryEngine.shutDown();
+        // Calling commit for each smell type to avoid too big request.
+        persistence.commit();
     }
 }
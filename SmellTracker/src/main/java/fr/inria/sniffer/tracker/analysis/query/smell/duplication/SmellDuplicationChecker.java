@@ -17,19 +17,24 @@
  */
 package fr.inria.sniffer.tracker.analysis.query.smell.duplication;
 
+import fr.inria.sniffer.tracker.analysis.Main;
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.Row;
 import fr.inria.sniffer.detector.neo4j.QualifiedNameFromFileQuery;
 import fr.inria.sniffer.detector.neo4j.QueryEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Tries to generate parent {@link Smell} instances from project's files
@@ -43,12 +48,35 @@ public class SmellDuplicationChecker {
 
     private static final Logger logger = LoggerFactory.getLogger(SmellDuplicationChecker.class.getName());
     public static final String QUALIFIED_NAME = "qualified_name";
-    private final List<FileRenameEntry> fileRenamings;
+    // File renamings indexed by their commit and new file, see FileRenameEntry#equals.
+    private final Map<FileRenameEntry, FileRenameEntry> fileRenamings;
     private final QueryEngine queryEngine;
+    // Least recently used qualified names, keyed by commit and file.
+    private final Map<String, String> qualifiedNames;
+    private final AtomicLong qualifiedNameHits = new AtomicLong();
+    private final AtomicLong qualifiedNameMisses = new AtomicLong();
 
     public SmellDuplicationChecker(int projectId, Persistence persistence, QueryEngine queryEngine) {
+        this(projectId, persistence, queryEngine, Main.QUALIFIED_NAME_CACHE_SIZE);
+    }
+
+    /**
+     * @param projectId         Project identifier.
+     * @param persistence       The persistence to load the file renamings from.
+     * @param queryEngine       The engine used to query the qualified names on Paprika.
+     * @param qualifiedNameSize Maximum number of qualified names kept in cache, 0 to disable it.
+     */
+    public SmellDuplicationChecker(int projectId, Persistence persistence, QueryEngine queryEngine,
+                                   int qualifiedNameSize) {
         this.queryEngine = queryEngine;
         fileRenamings = loadFileRename(projectId, persistence);
+        qualifiedNames = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > qualifiedNameSize;
+            }
+        };
+        logger.debug("[" + projectId + "] Retaining " + fileRenamings.size() + " file renamings");
     }
 
     /**
@@ -68,12 +96,13 @@ public class SmellDuplicationChecker {
                 "WHERE file_rename.project_id = '" + projectId + "'";
     }
 
-    private List<FileRenameEntry> loadFileRename(int projectId, Persistence persistence) {
-        List<FileRenameEntry> renaming = new ArrayList<>();
-        List<Map<String, Object>> result = persistence.query(getFileRenameStatement(projectId));
-        for (Map<String, Object> rename : result) {
-            renaming.add(FileRenameEntry.fromDBEntry(rename));
-        }
+    private Map<FileRenameEntry, FileRenameEntry> loadFileRename(int projectId, Persistence persistence) {
+        Map<FileRenameEntry, FileRenameEntry> renaming = new HashMap<>();
+        persistence.query(getFileRenameStatement(projectId), rename -> {
+            FileRenameEntry entry = FileRenameEntry.fromDBEntry(rename);
+            // Keep the first renaming of a file in a commit, as the former list lookup did.
+            renaming.putIfAbsent(entry, entry);
+        });
         return renaming;
     }
 
@@ -89,10 +118,10 @@ public class SmellDuplicationChecker {
         logger.trace("==> Trying to guess original smell for: " + instance);
 
         // If we find a renaming of the smell file in this specific commit, try to guess the original smell.
-        int index = fileRenamings.indexOf(FileRenameEntry.fromSmell(instance, commit));
-        if (index > -1) {
+        FileRenameEntry renaming = fileRenamings.get(FileRenameEntry.fromSmell(instance, commit));
+        if (renaming != null) {
             logger.trace("  ==> Guessing new original smell!");
-            return guessOriginalSmell(instance, previous, fileRenamings.get(index));
+            return guessOriginalSmell(instance, previous, renaming);
         }
 
         logger.trace("  ==> No original smell found");
@@ -120,13 +149,39 @@ public class SmellDuplicationChecker {
     }
 
     /**
-     * Fetch the class fully qualified name from SmellDetector.
+     * Retrieve the class fully qualified name from the cache, or from SmellDetector on a miss.
+     * The checker is shared by the smell type analyses, hence the synchronized cache.
      *
      * @param sha  The commit to look into.
      * @param file The file containing the queried class.
      * @return The class fully qualified name if found, an empty String if not.
      */
     private String fetchQualifiedName(String sha, String file) {
+        String key = sha + ":" + file;
+        String qualifiedName;
+        synchronized (qualifiedNames) {
+            qualifiedName = qualifiedNames.get(key);
+        }
+        if (qualifiedName != null) {
+            qualifiedNameHits.incrementAndGet();
+            return qualifiedName;
+        }
+        qualifiedNameMisses.incrementAndGet();
+        qualifiedName = queryQualifiedName(sha, file);
+        synchronized (qualifiedNames) {
+            qualifiedNames.put(key, qualifiedName);
+        }
+        return qualifiedName;
+    }
+
+    /**
+     * Fetch the class fully qualified name from SmellDetector.
+     *
+     * @param sha  The commit to look into.
+     * @param file The file containing the queried class.
+     * @return The class fully qualified name if found, an empty String if not.
+     */
+    private String queryQualifiedName(String sha, String file) {
         QualifiedNameFromFileQuery query = new QualifiedNameFromFileQuery(queryEngine, sha, "/" + file);
         List<Map<String, Object>> result = query.fetchResult(false);
         if (result.isEmpty() || !result.get(0).containsKey(QUALIFIED_NAME)) {
@@ -137,6 +192,20 @@ public class SmellDuplicationChecker {
 
     }
 
+    /**
+     * @return Number of qualified names served from the cache.
+     */
+    public long getQualifiedNameHits() {
+        return qualifiedNameHits.get();
+    }
+
+    /**
+     * @return Number of qualified names queried on Paprika.
+     */
+    public long getQualifiedNameMisses() {
+        return qualifiedNameMisses.get();
+    }
+
 
     /**
      * Extract the ending identifier (i.e. the method name) from our smell id:
@@ -203,12 +272,13 @@ public class SmellDuplicationChecker {
          *
          * @param renameEntry The database entry to create a {@link FileRenameEntry} for.
          * @return The created {@link FileRenameEntry}
+         * @throws SQLException If the entry could not be read.
          */
-        static FileRenameEntry fromDBEntry(Map<String, Object> renameEntry) {
+        static FileRenameEntry fromDBEntry(Row renameEntry) throws SQLException {
             // Fields returned  by postgresql are always lowercase!
-            String sha1 = (String) renameEntry.get(SHA1_COLUMN);
-            String oldFile = (String) renameEntry.get(OLD_FILE_COLUMN);
-            String newFile = (String) renameEntry.get(NEW_FILE_COLUMN);
+            String sha1 = renameEntry.getString(SHA1_COLUMN);
+            String oldFile = renameEntry.getString(OLD_FILE_COLUMN);
+            String newFile = renameEntry.getString(NEW_FILE_COLUMN);
             return new FileRenameEntry(sha1, oldFile, newFile);
         }
 
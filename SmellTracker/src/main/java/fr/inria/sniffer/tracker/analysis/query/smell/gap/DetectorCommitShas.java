@@ -0,0 +1,48 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell.gap;
+
+import java.util.Arrays;
+
+/**
+ * Shas of the commits analyzed by SmellDetector, indexed by their ordinal in a branch.
+ */
+public class DetectorCommitShas {
+    private String[] shas = new String[0];
+
+    /**
+     * Set the sha of the commit at the given ordinal.
+     *
+     * @param ordinal The commit ordinal.
+     * @param sha     The commit sha.
+     */
+    public void put(int ordinal, String sha) {
+        if (ordinal >= shas.length) {
+            shas = Arrays.copyOf(shas, Math.max(ordinal + 1, shas.length * 2));
+        }
+        shas[ordinal] = sha;
+    }
+
+    /**
+     * @param ordinal The commit ordinal.
+     * @return The commit sha, null if there is no commit at this ordinal or if SmellDetector did not analyze it.
+     */
+    public String sha(int ordinal) {
+        return ordinal >= 0 && ordinal < shas.length ? shas[ordinal] : null;
+    }
+}
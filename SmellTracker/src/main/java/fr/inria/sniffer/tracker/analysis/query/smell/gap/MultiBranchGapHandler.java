@@ -24,17 +24,35 @@ import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Manage the gaps between the analyzed commits of a branch, using their ordinal in this branch.
+ * The commits analyzed by SmellDetector are either queried for each gap, or read from memory if preloaded.
+ */
 public class MultiBranchGapHandler implements CommitGapHandler {
     private final Persistence persistence;
     private final BranchQueries branchQueries;
     private final int projectId;
     private final int branchId;
+    // Preloaded commits of the branch, null to query them.
+    private final DetectorCommitShas detectorShas;
 
     public MultiBranchGapHandler(int projectId, int branchId, Persistence persistence, BranchQueries branchQueries) {
         this.persistence = persistence;
         this.branchQueries = branchQueries;
         this.projectId = projectId;
         this.branchId = branchId;
+        this.detectorShas = null;
+    }
+
+    /**
+     * @param detectorShas The commits of the branch analyzed by SmellDetector.
+     */
+    public MultiBranchGapHandler(int projectId, int branchId, DetectorCommitShas detectorShas) {
+        this.persistence = null;
+        this.branchQueries = null;
+        this.projectId = projectId;
+        this.branchId = branchId;
+        this.detectorShas = detectorShas;
     }
 
     @Override
@@ -45,13 +63,26 @@ public class MultiBranchGapHandler implements CommitGapHandler {
     @Override
     public Commit fetchNoSmellCommit(Commit previous) throws CommitNotFoundException {
         int branchOrdinal = previous.getBranchOrdinal() + 1;
-        List<Map<String, Object>> result = persistence.query(branchQueries.shaFromOrdinalQuery(projectId, branchId, branchOrdinal, true));
-        if (result.isEmpty() || result.get(0).get("sha1") == null) {
+        String sha = detectorShas != null ? detectorShas.sha(branchOrdinal) : querySha(branchOrdinal);
+        if (sha == null) {
             throw new CommitNotFoundException(projectId, previous.getOrdinal() + 1);
         }
-        Commit commit = new Commit(String.valueOf(result.get(0).get("sha1")), previous.getOrdinal());
+        Commit commit = new Commit(sha, previous.getOrdinal());
         commit.setBranchOrdinal(branchOrdinal);
         return commit;
     }
 
+    /**
+     * Query the sha of the branch commit at the given ordinal, if analyzed by SmellDetector.
+     *
+     * @param branchOrdinal The commit ordinal in the branch.
+     * @return The commit sha, null if not found.
+     */
+    private String querySha(int branchOrdinal) {
+        List<Map<String, Object>> result = persistence.query(branchQueries.shaFromOrdinalQuery(projectId, branchId, branchOrdinal, true));
+        if (result.isEmpty() || result.get(0).get("sha1") == null) {
+            return null;
+        }
+        return String.valueOf(result.get(0).get("sha1"));
+    }
 }
@@ -159,3 +159,49 @@ CREATE TABLE IF NOT EXISTS lost_smell_refactoring (
   FOREIGN KEY (smell_id) REFERENCES Smell (id),
   FOREIGN KEY (project_id) REFERENCES Project (id)
 );
+
+CREATE TABLE IF NOT EXISTS smell_presence_interval (
+  id             INTEGER PRIMARY KEY AUTOINCREMENT,
+  smell_id       INTEGER NOT NULL,
+  project_id     INTEGER NOT NULL,
+  branch_id      INTEGER NOT NULL,
+  first_ordinal  INTEGER NOT NULL,
+  last_ordinal   INTEGER NOT NULL,
+  UNIQUE (smell_id, branch_id, first_ordinal),
+  FOREIGN KEY (smell_id) REFERENCES Smell (id),
+  FOREIGN KEY (branch_id) REFERENCES Branch (id),
+  FOREIGN KEY (project_id) REFERENCES Project (id)
+);
+
+CREATE INDEX IF NOT EXISTS smell_presence_interval__branch_id_ordinals
+ON smell_presence_interval (branch_id, first_ordinal, last_ordinal);
+
+-- Smell presence on each commit, whether persisted per commit or as branch intervals.
+-- The intervals never span the commits unknown to Paprika, thus both hold the same rows.
+CREATE VIEW IF NOT EXISTS smell_presence_expanded AS
+SELECT smell_id, project_id, commit_id FROM smell_presence
+UNION ALL
+SELECT smell_presence_interval.smell_id, smell_presence_interval.project_id, branch_commit.commit_id
+FROM smell_presence_interval
+JOIN branch_commit ON branch_commit.branch_id = smell_presence_interval.branch_id
+AND branch_commit.ordinal BETWEEN smell_presence_interval.first_ordinal AND smell_presence_interval.last_ordinal;
+
+CREATE TABLE IF NOT EXISTS analysis_run (
+  id         INTEGER PRIMARY KEY AUTOINCREMENT,
+  project_id INTEGER NOT NULL,
+  type       VARCHAR(32) NOT NULL,
+  duration   BIGINT NOT NULL,
+  FOREIGN KEY (project_id) REFERENCES Project (id)
+);
+
+CREATE TABLE IF NOT EXISTS analysis_job (
+  id         INTEGER PRIMARY KEY AUTOINCREMENT,
+  project_id INTEGER NOT NULL,
+  stage      VARCHAR(64) NOT NULL,
+  status     VARCHAR(16) NOT NULL,
+  started    TIMESTAMP NOT NULL,
+  finished   TIMESTAMP,
+  error      TEXT,
+  UNIQUE (project_id, stage),
+  FOREIGN KEY (project_id) REFERENCES Project (id)
+);
@@ -0,0 +1,161 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCJobQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JobQueries;
+import fr.inria.sniffer.tracker.analysis.query.Query;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AnalysisJobsTest {
+    private static final int PROJECT_ID = 1;
+
+    private Persistence persistence;
+    private JobQueries jobQueries;
+    private AnalysisJobs jobs;
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        persistence = mock(Persistence.class);
+        jobQueries = new JDBCJobQueries();
+        jobs = new AnalysisJobs(PROJECT_ID, persistence, jobQueries);
+        events = new ArrayList<>();
+    }
+
+    private void previousStatuses(String... stageStatuses) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Map<String, Object> row;
+        for (int i = 0; i < stageStatuses.length; i += 2) {
+            row = new HashMap<>();
+            row.put("stage", stageStatuses[i]);
+            row.put("status", stageStatuses[i + 1]);
+            rows.add(row);
+        }
+        doReturn(rows).when(persistence).query(anyString());
+    }
+
+    private List<Query> stages() {
+        return Arrays.asList(new FirstStage(), new SecondStage(), new ThirdStage());
+    }
+
+    @Test
+    public void testRunAllStages() {
+        previousStatuses("FirstStage", AnalysisJobs.DONE);
+
+        assertTrue(jobs.run(stages(), false));
+
+        assertEquals(Arrays.asList("FirstStage", "SecondStage", "ThirdStage"), events);
+        assertFalse(jobs.resumed());
+        verify(persistence).execute(jobQueries.jobStartStatement(PROJECT_ID, "FirstStage", AnalysisJobs.RUNNING));
+        verify(persistence).execute(jobQueries.jobEndStatement(PROJECT_ID, "ThirdStage", AnalysisJobs.DONE, null));
+    }
+
+    @Test
+    public void testResumeAfterCompletedStages() {
+        previousStatuses("FirstStage", AnalysisJobs.DONE, "SecondStage", AnalysisJobs.RUNNING);
+
+        assertTrue(jobs.run(stages(), true));
+
+        // Unfinished stages are cleaned up in reverse order before running again.
+        assertEquals(Arrays.asList("ThirdStage-cleanup", "SecondStage-cleanup", "SecondStage", "ThirdStage"), events);
+        assertTrue(jobs.resumed());
+    }
+
+    @Test
+    public void testResumeAfterAllStages() {
+        previousStatuses("FirstStage", AnalysisJobs.DONE, "SecondStage", AnalysisJobs.DONE,
+                "ThirdStage", AnalysisJobs.DONE);
+
+        assertTrue(jobs.run(stages(), true));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testFailedStage() {
+        List<Query> stages = Arrays.asList(new FirstStage(), new FailingStage(), new ThirdStage());
+
+        assertFalse(jobs.run(stages, false));
+
+        // Following stages are neither executed nor recorded, thus run again on resume.
+        assertEquals(Collections.singletonList("FirstStage"), events);
+        verify(persistence).execute(jobQueries.jobEndStatement(PROJECT_ID, "FailingStage", AnalysisJobs.FAILED,
+                new QueryException("FailingStage", "failure").toString()));
+        verify(persistence, never()).execute(
+                jobQueries.jobStartStatement(PROJECT_ID, "ThirdStage", AnalysisJobs.RUNNING));
+        verify(persistence, never()).execute(
+                jobQueries.jobEndStatement(PROJECT_ID, "ThirdStage", AnalysisJobs.DONE, null));
+    }
+
+    @Test
+    public void testResumeAfterFailedStage() {
+        previousStatuses("FirstStage", AnalysisJobs.DONE, "SecondStage", AnalysisJobs.FAILED);
+
+        assertTrue(jobs.run(stages(), true));
+
+        assertEquals(Arrays.asList("ThirdStage-cleanup", "SecondStage-cleanup", "SecondStage", "ThirdStage"), events);
+    }
+
+    private abstract class RecordingStage implements Query {
+        @Override
+        public void query() throws QueryException {
+            events.add(getClass().getSimpleName());
+        }
+
+        @Override
+        public void cleanup() {
+            events.add(getClass().getSimpleName() + "-cleanup");
+        }
+    }
+
+    private class FirstStage extends RecordingStage {
+    }
+
+    private class SecondStage extends RecordingStage {
+    }
+
+    private class ThirdStage extends RecordingStage {
+    }
+
+    private class FailingStage implements Query {
+        @Override
+        public void query() throws QueryException {
+            throw new QueryException("FailingStage", "failure");
+        }
+    }
+}
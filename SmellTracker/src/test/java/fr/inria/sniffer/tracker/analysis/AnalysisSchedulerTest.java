@@ -0,0 +1,68 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static fr.inria.sniffer.tracker.analysis.AnalysisScheduler.UNKNOWN;
+import static org.junit.Assert.assertEquals;
+
+public class AnalysisSchedulerTest {
+    private AnalysisScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new AnalysisScheduler(Collections.emptyMap());
+    }
+
+    private static AnalysisScheduler.ScheduledAnalysis analysis(String app, long cost, long previousDuration) {
+        return new AnalysisScheduler.ScheduledAnalysis(app, app, app, cost, previousDuration);
+    }
+
+    @Test
+    public void testScheduleOnCostWithoutHistory() {
+        AnalysisScheduler.ScheduledAnalysis small = analysis("small", 10, UNKNOWN);
+        AnalysisScheduler.ScheduledAnalysis large = analysis("large", 1000, UNKNOWN);
+        AnalysisScheduler.ScheduledAnalysis medium = analysis("medium", 100, UNKNOWN);
+
+        List<AnalysisScheduler.ScheduledAnalysis> schedule = scheduler.schedule(Arrays.asList(small, large, medium));
+
+        assertEquals(Arrays.asList(large, medium, small), schedule);
+        assertEquals(UNKNOWN, large.predictedDuration);
+    }
+
+    @Test
+    public void testScheduleCalibratedOnHistory() {
+        // Projects without history are predicted from the overall duration per cost unit.
+        AnalysisScheduler.ScheduledAnalysis known = analysis("known", 100, 200);
+        AnalysisScheduler.ScheduledAnalysis slowKnown = analysis("slowKnown", 10, 5000);
+        AnalysisScheduler.ScheduledAnalysis unknown = analysis("unknown", 1000, UNKNOWN);
+
+        List<AnalysisScheduler.ScheduledAnalysis> schedule = scheduler.schedule(Arrays.asList(known, slowKnown, unknown));
+
+        assertEquals(200, known.predictedDuration);
+        assertEquals(5000, slowKnown.predictedDuration);
+        assertEquals(Math.round(1000 * 5200 / 110.0), unknown.predictedDuration);
+        assertEquals(Arrays.asList(unknown, slowKnown, known), schedule);
+    }
+}
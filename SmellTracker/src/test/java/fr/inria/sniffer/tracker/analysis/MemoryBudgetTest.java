@@ -0,0 +1,68 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+    @Test(timeout = 5000)
+    public void testOversizedAnalysisAdmittedAlone() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(10);
+
+        budget.reserve(100);
+        budget.release(100);
+        budget.reserve(100);
+    }
+
+    @Test(timeout = 5000)
+    public void testReserveWaitsForRelease() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(10);
+        budget.reserve(6);
+        budget.reserve(4);
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                budget.reserve(5);
+                admitted.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiting.start();
+
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        budget.release(4);
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        budget.release(6);
+        assertTrue(admitted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEstimateMissingInputs() {
+        assertEquals(MemoryBudget.estimate("/does/not/exist", "owner/project"),
+                MemoryBudget.estimate("/does/not/exist/either", null));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommitTest {
+    private static final int LARGE_COMMIT_SMELLS = 50000;
+
+    private Commit previous;
+    private Commit current;
+    private Smell kept;
+    private Smell refactored;
+    private Smell introduced;
+
+    @Before
+    public void setUp() throws Exception {
+        previous = new Commit("previous", 0);
+        current = new Commit("current", 1);
+        kept = new Smell("MIM", "kept", "a/file");
+        refactored = new Smell("MIM", "refactored", "a/file");
+        introduced = new Smell("MIM", "introduced", "a/file");
+    }
+
+    @Test
+    public void testIntroducedAndRefactored() {
+        previous.addSmells(Arrays.asList(kept, refactored));
+        current.addSmells(Arrays.asList(kept, introduced));
+
+        assertEquals(Collections.singletonList(introduced), current.getIntroduced(previous));
+        assertEquals(Collections.singletonList(refactored), current.getRefactored(previous));
+    }
+
+    @Test
+    public void testParentIsPartOfTheDiff() {
+        Smell renamed = new Smell("MIM", "kept", "a/file");
+        renamed.parent = refactored;
+        previous.addSmells(Arrays.asList(kept, refactored));
+        current.addSmells(Arrays.asList(renamed, kept));
+        current.setRenamedSmell(refactored, renamed);
+
+        // The renamed smell is neither introduced nor is its origin refactored.
+        assertTrue(current.getIntroduced(previous).isEmpty());
+        assertTrue(current.getRefactored(previous).isEmpty());
+    }
+
+    @Test
+    public void testMergeCommit() {
+        Smell merged = new Smell("MIM", "merged", "a/file");
+        previous.addSmells(Arrays.asList(kept, refactored));
+        current.addMergedSmells(Arrays.asList(kept, merged));
+        current.addSmells(Arrays.asList(merged, introduced));
+
+        // Smells from both branches are not introduced,
+        // only smells present in both branches can be refactored.
+        assertEquals(Collections.singletonList(introduced), current.getIntroduced(previous));
+        assertEquals(Collections.singletonList(kept), current.getRefactored(previous));
+    }
+
+    @Test
+    public void testInstanceLookup() {
+        Smell identified = new Smell("MIM", "kept", "a/file");
+        identified.id = 12;
+        identified.parent = refactored;
+        Smell duplicate = new Smell("MIM", "kept", "a/file");
+        previous.addSmells(Arrays.asList(identified, duplicate));
+        current.addMergedSmell(identified);
+
+        Smell tested = Smell.copyWithoutParent(kept);
+        assertSame(identified, previous.getPreviousInstance(tested));
+        assertSame(identified, current.getMergedInstance(tested));
+
+        // A smell with a parent never matches a parentless copy.
+        Smell withParent = new Smell("MIM", "kept", "a/file");
+        withParent.parent = introduced;
+        assertSame(withParent, previous.getPreviousInstance(withParent));
+        assertSame(introduced, current.getMergedInstance(introduced));
+        assertTrue(current.isMerge());
+    }
+
+    /**
+     * Diff two commits of {@link #LARGE_COMMIT_SMELLS} smells.
+     * Comparing the smell lists element by element needs billions of comparisons
+     * and takes tens of seconds, while the indexed version runs in milliseconds.
+     */
+    @Test(timeout = 5000)
+    public void testDiffLargeCommits() {
+        List<Smell> previousSmells = new ArrayList<>();
+        List<Smell> currentSmells = new ArrayList<>();
+        for (int i = 0; i < LARGE_COMMIT_SMELLS; i++) {
+            previousSmells.add(new Smell("MIM", "method" + i + "#Class", "a/Class" + i + ".java"));
+            currentSmells.add(new Smell("MIM", "method" + (i + 10) + "#Class", "a/Class" + (i + 10) + ".java"));
+        }
+        previous.addSmells(previousSmells);
+        current.addSmells(currentSmells);
+
+        List<Smell> introduction = current.getIntroduced(previous);
+        List<Smell> refactoring = current.getRefactored(previous);
+        for (Smell smell : currentSmells) {
+            previous.getPreviousInstance(smell);
+        }
+
+        assertEquals(10, introduction.size());
+        assertEquals(10, refactoring.size());
+        assertSame(previousSmells.get(10), previous.getPreviousInstance(currentSmells.get(0)));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import fr.inria.sniffer.tracker.analysis.persistence.queries.DeveloperQueries;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.JDBCDeveloperQueries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JDBCPersistenceTest extends PostgresTestCase {
+    private static final Logger logger = LoggerFactory.getLogger(JDBCPersistenceTest.class.getName());
+    private static final int BENCHMARK_STATEMENTS = 2000;
+    // Statements added before each call to Persistence#commit() in the benchmark.
+    private static final int BENCHMARK_BATCH_SIZE = 10;
+
+    private DeveloperQueries developerQueries;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        developerQueries = new JDBCDeveloperQueries();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        persistence.setTransactionSize(Persistence.AUTOCOMMIT);
+        super.tearDown();
+    }
+
+    @Test
+    public void testStatementsVisibleInTransaction() {
+        persistence.setTransactionSize(2);
+
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("first@dev.com"));
+        persistence.commit();
+        // Statements are visible to the connection running the transaction.
+        assertEquals(1, countElements("developer"));
+
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("second@dev.com"));
+        persistence.commit();
+        assertEquals(2, countElements("developer"));
+    }
+
+    @Test
+    public void testFailureDoesNotAbortTransaction() {
+        persistence.setTransactionSize(1000);
+
+        executeSuccess(developerQueries.developerInsertStatement("first@dev.com"));
+        // The developer does not exist, thus the insertion fails.
+        executeFailure(developerQueries.projectDeveloperInsertStatement(1, "unknown@dev.com"));
+        executeSuccess(developerQueries.developerInsertStatement("second@dev.com"));
+
+        // A failing batch does not abort the transaction either.
+        persistence.addParameterizedStatements(developerQueries.projectDeveloperInsertStatement(1, "unknown@dev.com"));
+        persistence.commit();
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("third@dev.com"));
+        persistence.commit();
+
+        persistence.setTransactionSize(Persistence.AUTOCOMMIT);
+        assertEquals(3, countElements("developer"));
+    }
+
+    @Test
+    public void testFailureAloneInTransaction() {
+        persistence.setTransactionSize(1);
+
+        // Each batch is its own transaction, rolled back as a whole on failure.
+        persistence.addParameterizedStatements(developerQueries.projectDeveloperInsertStatement(1, "unknown@dev.com"));
+        persistence.commit();
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("first@dev.com"));
+        persistence.commit();
+        assertTrue(persistence.query("SELECT username FROM developer", row -> {
+        }));
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("second@dev.com"));
+        persistence.commit();
+
+        persistence.setTransactionSize(Persistence.AUTOCOMMIT);
+        assertEquals(2, countElements("developer"));
+    }
+
+    @Test
+    public void testStatementsExecutedInOrder() {
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("first@dev.com"));
+        persistence.addStatements("UPDATE developer SET username = 'renamed@dev.com' WHERE username = 'first@dev.com'");
+        // Ignored as a duplicate of the first insertion if executed before the update.
+        persistence.addParameterizedStatements(developerQueries.developerInsertStatement("first@dev.com"));
+        persistence.commit();
+
+        assertEquals(2, countElements("developer"));
+    }
+
+    @Test
+    public void testStreamedQuery() {
+        for (int i = 0; i < BENCHMARK_STATEMENTS; i++) {
+            persistence.addParameterizedStatements(developerQueries.developerInsertStatement(i + "@dev.com"));
+        }
+        persistence.commit();
+
+        // Statements can be committed while streaming, the cursor stays open.
+        List<String> usernames = new ArrayList<>();
+        assertTrue(persistence.query("SELECT username FROM developer ORDER BY id", row -> {
+            usernames.add(row.getString("username"));
+            persistence.addParameterizedStatements(developerQueries.developerInsertStatement("copy-" + row.getString("username")));
+            persistence.commit();
+        }));
+        assertEquals(BENCHMARK_STATEMENTS, usernames.size());
+        assertEquals("0@dev.com", usernames.get(0));
+        assertEquals(2 * BENCHMARK_STATEMENTS, countElements("developer"));
+
+        // A failing query does not prevent the next ones.
+        assertFalse(persistence.query("SELECT unknown FROM developer", row -> {
+        }));
+        assertEquals(2 * BENCHMARK_STATEMENTS, countElements("developer"));
+    }
+
+    /**
+     * Compare the insertion throughput of the different transaction sizes.
+     * This benchmark is not part of the unit tests and must be run manually.
+     */
+    @Test
+    @Ignore("Benchmark")
+    public void benchmarkTransactionSizes() {
+        int[] sizes = {Persistence.AUTOCOMMIT, 1, 100, 10000};
+        long expected = 0;
+        for (int size : sizes) {
+            persistence.setTransactionSize(size);
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_STATEMENTS; i++) {
+                persistence.addParameterizedStatements(developerQueries.developerInsertStatement(size + "-" + i + "@dev.com"));
+                if ((i + 1) % BENCHMARK_BATCH_SIZE == 0) {
+                    persistence.commit();
+                }
+            }
+            persistence.commit();
+            persistence.setTransactionSize(Persistence.AUTOCOMMIT);
+            long elapsed = System.nanoTime() - start;
+
+            expected += BENCHMARK_STATEMENTS;
+            assertEquals(expected, countElements("developer"));
+            logger.info("Transaction size " + size + ": " +
+                    (BENCHMARK_STATEMENTS * 1_000_000_000L / Math.max(1, elapsed)) + " statements/s");
+        }
+    }
+}
@@ -63,6 +63,18 @@ public abstract class PersistenceTestCase {
         executeExpect(query, 0);
     }
 
+    protected void executeFailure(ParameterizedStatement statement) {
+        executeExpect(statement, -1);
+    }
+
+    protected void executeSuccess(ParameterizedStatement statement) {
+        executeExpect(statement, 1);
+    }
+
+    protected void executeNothinhDone(ParameterizedStatement statement) {
+        executeExpect(statement, 0);
+    }
+
     protected long countElements(String table) {
         List<Map<String, Object>> result = persistence.query("SELECT count(*) as cnt FROM " + table + ";");
         return (long) (result.isEmpty() ? -1L : result.get(0).get("cnt"));
@@ -73,6 +85,11 @@ public abstract class PersistenceTestCase {
         assertEquals(returned, ret);
     }
 
+    protected void executeExpect(ParameterizedStatement statement, int returned) {
+        int ret = persistence.execute(statement);
+        assertEquals(returned, ret);
+    }
+
     protected void checkContainsSmells(List<Map<String, Object>> result, List<Smell> smells) {
         Smell instance;
         for (Map<String, Object> mapping : result) {
@@ -0,0 +1,135 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class PipelinedPersistenceTest {
+    private Persistence delegate;
+    private PipelinedPersistence persistence;
+
+    @Before
+    public void setUp() {
+        delegate = mock(Persistence.class);
+        persistence = new PipelinedPersistence(delegate, 1);
+    }
+
+    @After
+    public void tearDown() {
+        persistence.shutdown();
+    }
+
+    @Test
+    public void testStatementsOnlyWrittenOnCommit() {
+        persistence.addStatements("first");
+        persistence.addStatements("second");
+        persistence.shutdown();
+
+        verify(delegate, never()).addStatements(anyString());
+        verify(delegate, never()).commit();
+    }
+
+    @Test
+    public void testQueryAfterPendingCommits() {
+        List<Map<String, Object>> rows = Collections.emptyList();
+        doReturn(rows).when(delegate).query("select");
+
+        persistence.addStatements("first");
+        persistence.commit();
+        persistence.addStatements("second");
+        persistence.commit();
+        assertEquals(rows, persistence.query("select"));
+
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).addStatements("first");
+        order.verify(delegate).commit();
+        order.verify(delegate).addStatements("second");
+        order.verify(delegate).commit();
+        order.verify(delegate).query("select");
+    }
+
+    @Test
+    public void testCommitFromQueryHandler() {
+        doAnswer(invocation -> {
+            RowHandler handler = invocation.getArgument(1);
+            handler.handle(mock(Row.class));
+            return true;
+        }).when(delegate).query(anyString(), any(RowHandler.class));
+
+        persistence.query("select", row -> {
+            persistence.addStatements("insert");
+            persistence.commit();
+        });
+        persistence.shutdown();
+
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).addStatements("insert");
+        order.verify(delegate).commit();
+    }
+
+    @Test
+    public void testWriteFailureRethrown() {
+        Persistence failingDelegate = mock(Persistence.class);
+        RuntimeException failure = new RuntimeException("failure");
+        doThrow(failure).when(failingDelegate).commit();
+        PipelinedPersistence failing = new PipelinedPersistence(failingDelegate, 1);
+
+        failing.addStatements("first");
+        failing.commit();
+        // The failure is rethrown once the writer reached it, the following commits being discarded.
+        try {
+            failing.query("select");
+            fail("Expected the write failure");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e.getCause());
+        }
+        try {
+            failing.commit();
+            fail("Expected the write failure");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e.getCause());
+        }
+        try {
+            failing.shutdown();
+            fail("Expected the write failure");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e.getCause());
+        }
+        verify(failingDelegate, never()).query("select");
+    }
+}
@@ -34,6 +34,7 @@ import java.util.Map;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class JDBCBranchQueriesTest extends PostgresTestCase {
     private DeveloperQueries developerQueries;
@@ -211,6 +212,31 @@ public class JDBCBranchQueriesTest extends PostgresTestCase {
         assertEquals(count, getBranchCommitCount());
     }
 
+    @Test
+    public void testCopiedBranchCommitRows() {
+        int branchId = insertBranch(projectId, 0, originCommit, mergedIntoCommit);
+        int commitId = insertCommitReturnId(projectId, generateCommit("sha", 0));
+        int anotherCommitId = insertCommitReturnId(projectId, generateCommit("another", 4));
+
+        // Rows are only copied on commit.
+        persistence.addCopyRows(
+                queries.branchCommitRow(branchId, commitId, 1),
+                queries.branchCommitRow(branchId, anotherCommitId, 2)
+        );
+        assertEquals(0, getBranchCommitCount());
+        persistence.commit();
+        assertEquals(2, getBranchCommitCount());
+
+        // Conflicting rows are ignored, others are still copied.
+        int otherBranchId = insertBranch(projectId, 1, originCommit, mergedIntoCommit);
+        persistence.addCopyRows(
+                queries.branchCommitRow(branchId, commitId, 3),
+                queries.branchCommitRow(otherBranchId, commitId, 1)
+        );
+        persistence.commit();
+        assertEquals(3, getBranchCommitCount());
+    }
+
     @Test
     public void testIdFromOrdinalQueryStatement() {
         List<Map<String, Object>> result;
@@ -381,6 +407,39 @@ public class JDBCBranchQueriesTest extends PostgresTestCase {
         assertEquals(anotherCommit.sha, result.get(0).get("sha1"));
     }
 
+    @Test
+    public void testLastCommitBeforeQuery() {
+        List<Map<String, Object>> result;
+
+        Commit branchCommit = generateCommit("sha", 0);
+        int branchCommitId = insertCommitReturnId(projectId, branchCommit);
+        Commit anotherCommit = generateCommit("another", 4);
+        int anotherCommitId = insertCommitReturnId(projectId, anotherCommit);
+
+        int branchId = insertBranch(projectId, 4, originCommit, mergedIntoCommit);
+
+        // Nothing returned if no commit in the branch
+        result = persistence.query(queries.lastCommitBeforeQuery(projectId, branchId, anotherCommitId));
+        assertTrue(result.isEmpty());
+
+        executeSuccess(queries.branchCommitInsertionQuery(projectId, 4, branchCommit.sha, 0));
+        executeSuccess(queries.branchCommitInsertionQuery(projectId, 4, anotherCommit.sha, 1));
+
+        // The last branch commit is returned if old enough
+        result = persistence.query(queries.lastCommitBeforeQuery(projectId, branchId, anotherCommitId));
+        assertEquals(anotherCommitId, result.get(0).get("id"));
+        assertEquals(anotherCommit.sha, result.get(0).get("sha1"));
+
+        // Otherwise the previous branch commit is returned
+        result = persistence.query(queries.lastCommitBeforeQuery(projectId, branchId, branchCommitId));
+        assertEquals(branchCommitId, result.get(0).get("id"));
+        assertEquals(branchCommit.sha, result.get(0).get("sha1"));
+
+        // Nothing returned if the branch only contains newer commits
+        result = persistence.query(queries.lastCommitBeforeQuery(projectId, branchId, branchCommitId - 1));
+        assertTrue(result.isEmpty());
+    }
+
     @Test
     public void testLastCommitIdQuery() {
         List<Map<String, Object>> result;
@@ -547,4 +606,90 @@ public class JDBCBranchQueriesTest extends PostgresTestCase {
         assertTrue(result.isEmpty());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testBranchCommitsQuery() {
+        List<Map<String, Object>> result;
+
+        Commit branchCommit = prepareCommit("sha", 0);
+        Commit anotherCommit = generateCommit("another", 4);
+        anotherCommit.setInPaprika(true);
+        executeSuccess(commitQueries.commitInsertionStatement(projectId, anotherCommit, GitDiff.EMPTY));
+
+        // No branch means no result
+        result = persistence.query(queries.branchCommitsQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        int firstBranchID = insertBranch(projectId, 4, originCommit, mergedIntoCommit);
+        int secondBranchID = insertBranch(projectId, 5, mergedIntoCommit, originCommit);
+
+        // Nothing returned if no commit in the branches
+        result = persistence.query(queries.branchCommitsQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        executeSuccess(queries.branchCommitInsertionQuery(projectId, 4, branchCommit.sha, 5));
+        executeSuccess(queries.branchCommitInsertionQuery(projectId, 4, anotherCommit.sha, 1));
+        executeSuccess(queries.branchCommitInsertionQuery(projectId, 5, branchCommit.sha, 3));
+
+        // Commits are returned in insertion order, with their branch, ordinal, and SmellDetector analysis
+        result = persistence.query(queries.branchCommitsQuery(projectId));
+        assertEquals(3, result.size());
+        assertEquals(firstBranchID, result.get(0).get("branch_id"));
+        assertEquals(branchCommit.sha, result.get(0).get("sha1"));
+        assertEquals(5, result.get(0).get("ordinal"));
+        assertEquals(false, result.get(0).get("in_detector"));
+        assertEquals(firstBranchID, result.get(1).get("branch_id"));
+        assertEquals(anotherCommit.sha, result.get(1).get("sha1"));
+        assertEquals(1, result.get(1).get("ordinal"));
+        assertEquals(true, result.get(1).get("in_detector"));
+        assertEquals(secondBranchID, result.get(2).get("branch_id"));
+        assertEquals(branchCommit.sha, result.get(2).get("sha1"));
+        assertEquals(3, result.get(2).get("ordinal"));
+    }
+
+    @Test
+    public void testBranchesQuery() {
+        List<Map<String, Object>> result;
+
+        // No branch means no result
+        result = persistence.query(queries.branchesQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        int firstBranchID = insertBranch(projectId, 0, null, null);
+        int secondBranchID = insertBranch(projectId, 1, originCommit, mergedIntoCommit);
+
+        result = persistence.query(queries.branchesQuery(projectId));
+        assertEquals(2, result.size());
+        for (Map<String, Object> branch : result) {
+            if (branch.get("id").equals(firstBranchID)) {
+                assertEquals(0, branch.get("ordinal"));
+                assertNull(branch.get("parent_sha1"));
+                assertNull(branch.get("merged_into_sha1"));
+            } else {
+                assertEquals(secondBranchID, branch.get("id"));
+                assertEquals(1, branch.get("ordinal"));
+                assertEquals(originCommit.sha, branch.get("parent_sha1"));
+                assertEquals(mergedIntoCommit.sha, branch.get("merged_into_sha1"));
+            }
+        }
+    }
+
+    @Test
+    public void testBranchMergedIntoStatement() {
+        int openBranchID = insertBranch(projectId, 0, null, null);
+        int otherBranchID = insertBranch(projectId, 1, originCommit, null);
+
+        // Only the given branch is merged.
+        executeSuccess(queries.branchMergedIntoStatement(projectId, 0, mergedIntoCommit));
+        List<Map<String, Object>> result = persistence.query(queries.mergedBranchIdQuery(projectId, mergedIntoCommit));
+        assertEquals(1, result.size());
+        assertEquals(openBranchID, result.get(0).get("id"));
+
+        // The parent commit is kept.
+        result = persistence.query(queries.parentCommitIdQuery(projectId, otherBranchID));
+        assertEquals(originCommitId, result.get(0).get("id"));
+
+        // Nothing is updated for an unknown branch.
+        executeNothinhDone(queries.branchMergedIntoStatement(projectId, 2, mergedIntoCommit));
+    }
+}
@@ -116,6 +116,68 @@ public class JDBCCommitQueriesTest extends PostgresTestCase {
 
     }
 
+    @Test
+    public void testBatchedCommitInsertion() {
+        Commit commit = generateCommit("sha", 1);
+        Commit anotherCommit = generateCommit("anotherSha", 2, "message with ' and $$ quotes");
+        Commit mergeCommit = generateCommit("thirdSha", 3);
+        mergeCommit.setParents(Arrays.asList(anotherCommit, commit));
+        GitRename rename = new GitRename("old", "new", 100);
+
+        // Statements are only persisted on commit, each template in the order of its first use.
+        persistence.addParameterizedStatements(
+                queries.commitInsertionStatement(projectId, commit, GitDiff.EMPTY),
+                queries.fileRenameInsertionStatement(projectId, commit.sha, rename),
+                queries.commitInsertionStatement(projectId, anotherCommit, GitDiff.EMPTY),
+                queries.commitInsertionStatement(projectId, mergeCommit, GitDiff.EMPTY)
+        );
+        assertEquals(0, getCommitCount());
+        persistence.commit();
+        assertEquals(3, getCommitCount());
+        assertEquals(1, getRenameCount());
+
+        List<Map<String, Object>> result = persistence.query(
+                "SELECT message FROM commit_entry WHERE sha1 = '" + anotherCommit.sha + "'");
+        assertEquals(anotherCommit.message, result.get(0).get("message"));
+        result = persistence.query(queries.mergedCommitIdsQuery(projectId));
+        assertEquals(1, result.size());
+        assertEquals(mergeCommit.sha, result.get(0).get("sha1"));
+    }
+
+    @Test
+    public void testCopiedCommitRows() {
+        Commit commit = generateCommit("sha", 1);
+        Commit anotherCommit = generateCommit("anotherSha", 2, "message with \", \n and '' quotes");
+        Commit mergeCommit = generateCommit("thirdSha", 3);
+        mergeCommit.setParents(Arrays.asList(anotherCommit, commit));
+        List<Map<String, Object>> result = persistence.query(developerQueries.idFromEmailQuery(mainDev));
+        int developerId = (int) result.get(0).get("id");
+
+        // Rows are only copied on commit, the merged commit being set afterward.
+        persistence.addCopyRows(
+                queries.commitRow(projectId, developerId, commit, GitDiff.EMPTY, null),
+                queries.commitRow(projectId, developerId, anotherCommit, GitDiff.EMPTY, null),
+                queries.commitRow(projectId, developerId, mergeCommit, GitDiff.EMPTY, null)
+        );
+        persistence.addParameterizedStatements(queries.mergedCommitUpdateStatement(projectId, mergeCommit));
+        assertEquals(0, getCommitCount());
+        persistence.commit();
+        assertEquals(3, getCommitCount());
+
+        result = persistence.query(
+                "SELECT message FROM commit_entry WHERE sha1 = '" + anotherCommit.sha + "'");
+        assertEquals(anotherCommit.message, result.get(0).get("message"));
+        result = persistence.query(queries.mergedCommitIdsQuery(projectId));
+        assertEquals(1, result.size());
+        assertEquals(mergeCommit.sha, result.get(0).get("sha1"));
+
+        // Conflicting rows are ignored.
+        persistence.addCopyRows(queries.commitRow(projectId, developerId, commit, GitDiff.EMPTY, null));
+        persistence.commit();
+        assertEquals(3, getCommitCount());
+        assertEquals(3, persistence.query(queries.commitIdsQuery(projectId)).size());
+    }
+
     @Test
     public void testFileRenameInsertionStatement() {
         long count = 0;
@@ -230,6 +292,30 @@ public class JDBCCommitQueriesTest extends PostgresTestCase {
         assertEquals(fifthOrdinal.sha, result.get(0).get("sha1"));
     }
 
+    @Test
+    public void testLastPersistedCommitQuery() {
+        List<Map<String, Object>> result;
+
+        // No commit means no result
+        result = persistence.query(queries.lastPersistedCommitQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        Commit commit = generateCommit("sha", 5);
+        executeSuccess(queries.commitInsertionStatement(projectId, commit, GitDiff.EMPTY));
+
+        result = persistence.query(queries.lastPersistedCommitQuery(projectId));
+        assertEquals(commit.sha, result.get(0).get("sha1"));
+
+        // The last inserted commit is returned whichever its ordinal
+        Commit lowerOrdinal = generateCommit("anotherSha", 1);
+        executeSuccess(queries.commitInsertionStatement(projectId, lowerOrdinal, GitDiff.EMPTY));
+
+        result = persistence.query(queries.lastPersistedCommitQuery(projectId));
+        assertEquals(lowerOrdinal.sha, result.get(0).get("sha1"));
+        assertEquals(persistence.query(queries.idFromShaQuery(projectId, lowerOrdinal.sha)).get(0).get("id"),
+                result.get(0).get("id"));
+    }
+
     @Test
     public void testMergedCommitIdQuery() {
         List<Map<String, Object>> result;
@@ -260,4 +346,33 @@ public class JDBCCommitQueriesTest extends PostgresTestCase {
         result = persistence.query(queries.mergedCommitIdQuery(projectId, mergeCommit));
         assertEquals(1, result.get(0).get("id"));
     }
+
+    @Test
+    public void testMergedCommitIdsQuery() {
+        List<Map<String, Object>> result;
+
+        Commit commit = generateCommit("sha", 1);
+        Commit secondCommit = generateCommit("anotherSha", 2);
+
+        // No commit means no result
+        result = persistence.query(queries.mergedCommitIdsQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        executeSuccess(queries.commitInsertionStatement(projectId, commit, GitDiff.EMPTY));
+        executeSuccess(queries.commitInsertionStatement(projectId, secondCommit, GitDiff.EMPTY));
+
+        // Not a merge commit means no result
+        result = persistence.query(queries.mergedCommitIdsQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        Commit mergeCommit = generateCommit("thirdSha", 3);
+        mergeCommit.setParents(Arrays.asList(secondCommit, commit));
+        executeSuccess(queries.commitInsertionStatement(projectId, mergeCommit, GitDiff.EMPTY));
+
+        // Only the merge commit is returned, with the ID of its second parent commit.
+        result = persistence.query(queries.mergedCommitIdsQuery(projectId));
+        assertEquals(1, result.size());
+        assertEquals(mergeCommit.sha, result.get(0).get("sha1"));
+        assertEquals(1, result.get(0).get("id"));
+    }
 }
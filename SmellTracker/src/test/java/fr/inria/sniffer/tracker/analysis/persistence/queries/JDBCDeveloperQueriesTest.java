@@ -21,6 +21,8 @@ import fr.inria.sniffer.tracker.analysis.persistence.PostgresTestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -105,6 +107,36 @@ public class JDBCDeveloperQueriesTest extends PostgresTestCase {
         assertEquals(count, getProjectDevelopersCount());
     }
 
+    @Test
+    public void testDeveloperIdsStatement() {
+        List<Map<String, Object>> result;
+        String name = "dev@name.com";
+        String anotherName = "another@name.com";
+
+        // The developers are inserted and their ids returned.
+        result = persistence.query(queries.developerIdsStatement(Collections.singletonList(name)));
+        assertEquals(1, getDevelopersCount());
+        assertEquals(1, result.size());
+        assertEquals(1, result.get(0).get("id"));
+        assertEquals(name, result.get(0).get("username"));
+
+        // An existing developer is not inserted again, but its id is still returned.
+        result = persistence.query(queries.developerIdsStatement(Arrays.asList(name, anotherName, anotherName)));
+        assertEquals(2, getDevelopersCount());
+        assertEquals(2, result.size());
+        for (Map<String, Object> row : result) {
+            if (name.equals(row.get("username"))) {
+                assertEquals(1, row.get("id"));
+            }
+        }
+
+        // The returned id can be used to bind the developer to the project.
+        executeSuccess(queries.projectDeveloperInsertStatement(projectId, (int) result.get(0).get("id")));
+        assertEquals(1, getProjectDevelopersCount());
+        executeNothinhDone(queries.projectDeveloperInsertStatement(projectId, (int) result.get(0).get("id")));
+        assertEquals(1, getProjectDevelopersCount());
+    }
+
     @Test
     public void testIdFroEmailQuery() {
         List<Map<String, Object>> result;
@@ -0,0 +1,110 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.persistence.queries;
+
+import fr.inria.sniffer.tracker.analysis.persistence.PostgresTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JDBCJobQueriesTest extends PostgresTestCase {
+    private JobQueries queries;
+    private ProjectQueries projectQueries;
+    private int projectId;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        queries = new JDBCJobQueries();
+        projectQueries = new JDBCProjectQueries();
+        projectId = createProject("projectName", projectQueries);
+    }
+
+    private List<Map<String, Object>> jobs() {
+        return persistence.query("SELECT stage, status, finished, error FROM analysis_job ORDER BY stage");
+    }
+
+    @Test
+    public void testJobLifecycle() {
+        List<Map<String, Object>> result;
+
+        executeSuccess(queries.jobStartStatement(projectId, "CommitsQuery", "RUNNING"));
+        result = jobs();
+        assertEquals(1, result.size());
+        assertEquals("RUNNING", result.get(0).get("status"));
+        assertNull(result.get(0).get("finished"));
+
+        executeSuccess(queries.jobEndStatement(projectId, "CommitsQuery", "FAILED", "It's broken"));
+        result = jobs();
+        assertEquals("FAILED", result.get(0).get("status"));
+        assertEquals("It's broken", result.get(0).get("error"));
+        assertNotNull(result.get(0).get("finished"));
+
+        // Starting the stage again replaces its previous execution.
+        executeSuccess(queries.jobStartStatement(projectId, "CommitsQuery", "RUNNING"));
+        result = jobs();
+        assertEquals(1, result.size());
+        assertEquals("RUNNING", result.get(0).get("status"));
+        assertNull(result.get(0).get("error"));
+        assertNull(result.get(0).get("finished"));
+    }
+
+    @Test
+    public void testJobStatusesQuery() {
+        List<Map<String, Object>> result;
+
+        result = persistence.query(queries.jobStatusesQuery(projectId));
+        assertTrue(result.isEmpty());
+
+        executeSuccess(queries.jobStartStatement(projectId, "CommitsQuery", "RUNNING"));
+        executeSuccess(queries.jobEndStatement(projectId, "CommitsQuery", "DONE", null));
+        executeSuccess(queries.jobStartStatement(projectId, "BranchQuery", "RUNNING"));
+
+        result = persistence.query(queries.jobStatusesQuery(projectId) + " ORDER BY stage");
+        assertEquals(2, result.size());
+        assertEquals("BranchQuery", result.get(0).get("stage"));
+        assertEquals("RUNNING", result.get(0).get("status"));
+        assertEquals("CommitsQuery", result.get(1).get("stage"));
+        assertEquals("DONE", result.get(1).get("status"));
+    }
+
+    @Test
+    public void testProjectsWithStatusQuery() {
+        List<Map<String, Object>> result;
+        int anotherProject = createProject("anotherProject", projectQueries);
+
+        executeSuccess(queries.jobStartStatement(projectId, "SINGLE_APP", "RUNNING"));
+        executeSuccess(queries.jobEndStatement(projectId, "SINGLE_APP", "DONE", null));
+        executeSuccess(queries.jobStartStatement(anotherProject, "SINGLE_APP", "RUNNING"));
+
+        result = persistence.query(queries.projectsWithStatusQuery("SINGLE_APP", "DONE"));
+        assertEquals(1, result.size());
+        assertEquals("projectName", result.get(0).get("name"));
+
+        result = persistence.query(queries.projectsWithStatusQuery("SUPPLEMENTARY", "DONE"));
+        assertTrue(result.isEmpty());
+    }
+}
@@ -93,4 +93,31 @@ public class JDBCProjectQueriesTest extends PostgresTestCase {
         assertFalse(result.isEmpty());
         assertEquals(2, result.get(0).get("id"));
     }
+
+    @Test
+    public void testLastAnalysisDurations() {
+        List<Map<String, Object>> result;
+        String name = "projectName";
+        String anotherProject = "anotherProject";
+
+        // Nothing is inserted for an unknown project.
+        executeNothinhDone(queries.analysisRunInsertStatement(name, "SINGLE_APP", 10));
+        result = persistence.query(queries.lastAnalysisDurationsQuery("SINGLE_APP"));
+        assertTrue(result.isEmpty());
+
+        executeSuccess(queries.projectInsertStatement(name, null));
+        executeSuccess(queries.projectInsertStatement(anotherProject, null));
+        executeSuccess(queries.analysisRunInsertStatement(name, "SINGLE_APP", 10));
+        executeSuccess(queries.analysisRunInsertStatement(name, "SINGLE_APP", 20));
+        executeSuccess(queries.analysisRunInsertStatement(name, "SUPPLEMENTARY", 30));
+        executeSuccess(queries.analysisRunInsertStatement(anotherProject, "SINGLE_APP", 40));
+
+        // Only the last run of each project is returned, for the given analysis type.
+        result = persistence.query(queries.lastAnalysisDurationsQuery("SINGLE_APP"));
+        assertEquals(2, result.size());
+        assertEquals(anotherProject, result.get(0).get("name"));
+        assertEquals(40L, result.get(0).get("duration"));
+        assertEquals(name, result.get(1).get("name"));
+        assertEquals(20L, result.get(1).get("duration"));
+    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package fr.inria.sniffer.tracker.analysis.persistence.queries;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
 import fr.inria.sniffer.tracker.analysis.persistence.PostgresTestCase;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
 import org.junit.Before;
@@ -113,6 +114,31 @@ public class JDBCSmellQueriesTest extends PostgresTestCase {
         assertEquals(++count, getSmellCount());
     }
 
+    @Test
+    public void testSmellsInsertionStatement() {
+        smell.id = createSmell(projectId, smell, queries);
+        Smell newSmell = new Smell(smell.type, "anotherinstance", smell.file);
+        Smell childSmell = new Smell(smell.type, smell.instance, smell.file);
+        childSmell.parent = smell;
+
+        // New smells are inserted, existing ones are returned as is.
+        List<Map<String, Object>> result = persistence.query(
+                queries.smellsInsertionStatement(projectId, Arrays.asList(smell, newSmell, childSmell)));
+        assertEquals(3, getSmellCount());
+        assertEquals(3, result.size());
+
+        // Nothing is inserted on the second time, but every smell is still returned.
+        result = persistence.query(queries.smellsInsertionStatement(projectId, Arrays.asList(newSmell, childSmell)));
+        assertEquals(3, getSmellCount());
+        assertEquals(3, result.size());
+        for (Map<String, Object> row : result) {
+            if (row.get("renamed_from") != null) {
+                assertEquals(smell.id, row.get("renamed_from"));
+                assertEquals(smell.instance, row.get("instance"));
+            }
+        }
+    }
+
     @Test
     public void testInsertSmellCategory() {
         smell.id = createSmell(projectId, smell, queries);
@@ -154,6 +180,51 @@ public class JDBCSmellQueriesTest extends PostgresTestCase {
         assertEquals(1, getSmellCount(SmellCategory.PRESENCE));
     }
 
+    @Test
+    public void testCopiedSmellCategoryRows() {
+        smell.id = createSmell(projectId, smell, queries);
+        Smell anotherSmell = new Smell("MIM", "instance", "file");
+        anotherSmell.id = createSmell(projectId, anotherSmell, queries);
+        Commit commit = prepareCommit();
+        List<Map<String, Object>> result = persistence.query(commitQueries.idFromShaQuery(projectId, commit.sha));
+        int commitId = (int) result.get(0).get("id");
+
+        // Rows are only copied on commit, into the right category.
+        persistence.addCopyRows(
+                queries.smellCategoryRow(projectId, commitId, smell, SmellCategory.PRESENCE),
+                queries.smellCategoryRow(projectId, commitId, anotherSmell, SmellCategory.PRESENCE),
+                queries.smellCategoryRow(projectId, commitId, smell, SmellCategory.INTRODUCTION)
+        );
+        assertEquals(0, getSmellCount(SmellCategory.PRESENCE));
+        persistence.commit();
+        assertEquals(2, getSmellCount(SmellCategory.PRESENCE));
+        assertEquals(1, getSmellCount(SmellCategory.INTRODUCTION));
+        assertEquals(0, getSmellCount(SmellCategory.REFACTOR));
+
+        // Duplicated rows are skipped without discarding the other ones.
+        persistence.addCopyRows(
+                queries.smellCategoryRow(projectId, commitId, smell, SmellCategory.PRESENCE),
+                queries.smellCategoryRow(projectId, commitId, smell, SmellCategory.REFACTOR)
+        );
+        persistence.commit();
+        assertEquals(2, getSmellCount(SmellCategory.PRESENCE));
+        assertEquals(1, getSmellCount(SmellCategory.REFACTOR));
+
+        // A conflicting copy does not discard the statements previously executed in the transaction.
+        persistence.setTransactionSize(1000);
+        persistence.addCopyRows(queries.smellCategoryRow(projectId, commitId, anotherSmell, SmellCategory.REFACTOR));
+        persistence.commit();
+        persistence.addCopyRows(queries.smellCategoryRow(projectId, commitId, smell, SmellCategory.INTRODUCTION));
+        persistence.commit();
+        persistence.setTransactionSize(Persistence.AUTOCOMMIT);
+        assertEquals(1, getSmellCount(SmellCategory.INTRODUCTION));
+        assertEquals(2, getSmellCount(SmellCategory.REFACTOR));
+
+        // Copied rows are visible to the smells queries.
+        result = persistence.query(queries.commitSmellsQuery(projectId, String.valueOf(commitId), null));
+        assertEquals(2, result.size());
+    }
+
     @Test
     public void testInsertLostSmellCategory() {
         persistence.execute(queries.smellInsertionStatement(projectId, smell));
@@ -285,4 +356,44 @@ public class JDBCSmellQueriesTest extends PostgresTestCase {
         checkContainsSmells(result, Arrays.asList(anotherSmell, smellOtherCommit));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSmellPresenceIntervals() {
+        List<Map<String, Object>> result;
+        queries = new JDBCSmellQueries(commitQueries, true);
+        BranchQueries branchQueries = new JDBCBranchQueries(commitQueries, queries);
+        Commit first = prepareCommit("sha");
+        Commit second = prepareCommit("another_sha");
+        Commit third = prepareCommit("yet_another_sha");
+        executeSuccess(branchQueries.branchInsertionStatement(projectId, 0, null, null));
+        int branchId = (int) persistence.query(branchQueries.idFromOrdinalQueryStatement(projectId, 0)).get(0).get("id");
+        executeSuccess(branchQueries.branchCommitInsertionQuery(projectId, 0, first.sha, 0));
+        executeSuccess(branchQueries.branchCommitInsertionQuery(projectId, 0, second.sha, 1));
+        executeSuccess(branchQueries.branchCommitInsertionQuery(projectId, 0, third.sha, 2));
+        String thirdIdQuery = "(" + commitQueries.idFromShaQuery(projectId, third.sha) + ")";
+        smell.id = createSmell(projectId, smell, queries);
+
+        // The smell is present on each commit of the interval
+        executeSuccess(queries.smellPresenceIntervalStatement(projectId, branchId, smell, 0, 1));
+        result = persistence.query(queries.commitSmellsQuery(projectId, "(" + commitQueries.idFromShaQuery(projectId, first.sha) + ")", null));
+        assertEquals(1, result.size());
+        checkContainsSmells(result, Arrays.asList(smell));
+        result = persistence.query(queries.commitSmellsQuery(projectId, "(" + commitQueries.idFromShaQuery(projectId, second.sha) + ")", null));
+        assertEquals(1, result.size());
+        checkContainsSmells(result, Arrays.asList(smell));
+        result = persistence.query(queries.commitSmellsQuery(projectId, thirdIdQuery, null));
+        assertTrue(result.isEmpty());
+
+        // The interval is extended rather than duplicated
+        executeSuccess(queries.smellPresenceIntervalStatement(projectId, branchId, smell, 0, 2));
+        assertEquals(1, countElements("smell_presence_interval"));
+        result = persistence.query(queries.commitSmellsQuery(projectId, thirdIdQuery, null));
+        assertEquals(1, result.size());
+        checkContainsSmells(result, Arrays.asList(smell));
+
+        // Intervals are removed along with the project smells
+        for (String statement : queries.projectSmellsDeletionStatements(projectId)) {
+            persistence.execute(statement);
+        }
+        assertEquals(0, countElements("smell_presence_interval"));
+    }
+}
@@ -18,8 +18,12 @@
 package fr.inria.sniffer.tracker.analysis.query.branch;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.CommitGraph;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.BranchQueries;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
@@ -29,10 +33,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -41,6 +47,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -59,14 +66,18 @@ public class BranchQueryTest {
         persistence = Mockito.mock(Persistence.class);
         branchQueries = Mockito.mock(BranchQueries.class);
         commitQueries = Mockito.mock(CommitQueries.class);
-        doReturn("BranchInsertion").when(branchQueries).branchInsertionStatement(eq(projectId), anyInt(), any(Commit.class), any(Commit.class));
-        doReturn("BranchInsertion").when(branchQueries).branchCommitInsertionQuery(eq(projectId), anyInt(), anyString(), anyInt());
+        doReturn(statement("BranchInsertion")).when(branchQueries).branchInsertionStatement(eq(projectId), anyInt(), any(Commit.class), any(Commit.class));
+        doReturn(statement("BranchInsertion")).when(branchQueries).branchCommitInsertionQuery(eq(projectId), anyInt(), anyString(), anyInt());
     }
 
     private BranchQuery getQuery() {
         return new BranchQuery(projectId, repository, persistence, commitQueries, branchQueries);
     }
 
+    private static ParameterizedStatement statement(String name) {
+        return new StatementTemplate(name, name).bind();
+    }
+
     private void initializeHead(Commit commit) throws IOException {
         HashMap<Object, Object> map = new HashMap<>();
         map.put("sha1", commit.sha);
@@ -76,21 +87,21 @@ public class BranchQueryTest {
     }
 
     /**
-     * Register all the given commits to be returned by getCommit.
+     * Register all the given commits in the repository commit graph, the last one being HEAD.
      *
      * @param commits Input order does not matter as they are referenced by their sha.
      * @throws IOException
      */
     private void initializeMocks(Commit... commits) throws IOException {
+        doReturn(new CommitGraph(Arrays.asList(commits), commits[commits.length - 1]))
+                .when(repository).getCommitGraph();
         for (Commit commit : commits) {
-            doReturn(commit).when(repository).getCommitWithParents(commit.sha);
             doReturn(commit.sha).when(commitQueries).idFromShaQuery(projectId, commit.sha);
             doReturn(commit.sha).when(commitQueries).idFromShaQuery(eq(projectId), eq(commit.sha), anyBoolean());
             HashMap<Object, Object> map = new HashMap<>();
             map.put("id", 1);
             doReturn(Collections.singletonList(map)).when(persistence).query(commit.sha);
         }
-        doReturn(commits[commits.length - 1]).when(repository).getHead();
     }
 
     /**
@@ -118,13 +129,45 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(4)).addStatements(any());
+        verify(persistence, times(4)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, C.sha, 2);
     }
 
+    @Test
+    public void testCopiedBranchCommits() throws QueryException, IOException {
+        Commit A = new Commit("a", 1);
+        Commit B = new Commit("b", 2, Collections.singletonList(A));
+        Commit C = new Commit("c", 3, Collections.singletonList(B));
+
+        initializeHead(C);
+        initializeMocks(A, B, C);
+        doReturn("branches").when(branchQueries).branchesQuery(projectId);
+        doReturn(Collections.singletonList(row("id", 10, "ordinal", 0))).when(persistence).query("branches");
+        doReturn("commits").when(commitQueries).commitIdsQuery(projectId, 0);
+        doReturn(Arrays.asList(row("id", 20, "sha1", A.sha), row("id", 21, "sha1", B.sha)))
+                .when(persistence).query("commits");
+
+        getQuery().query();
+
+        // Known commits are bulk loaded, others resolved by the database.
+        verify(persistence, times(2)).addParameterizedStatements(any());
+        verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
+        verify(branchQueries).branchCommitInsertionQuery(projectId, 0, C.sha, 2);
+        verify(persistence, times(2)).addCopyRows(any());
+        verify(branchQueries).branchCommitRow(10, 20, 0);
+        verify(branchQueries).branchCommitRow(10, 21, 1);
+    }
+
+    private static HashMap<String, Object> row(String key, Object value, String otherKey, Object otherValue) {
+        HashMap<String, Object> row = new HashMap<>();
+        row.put(key, value);
+        row.put(otherKey, otherValue);
+        return row;
+    }
+
     /**
      * Testing this kind of branching form (1 branch):
      * <pre><code>
@@ -156,7 +199,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(8)).addStatements(any());
+        verify(persistence, times(8)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -207,7 +250,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -263,7 +306,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(11)).addStatements(any());
+        verify(persistence, times(11)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -320,7 +363,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(11)).addStatements(any());
+        verify(persistence, times(11)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -376,7 +419,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(11)).addStatements(any());
+        verify(persistence, times(11)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -429,7 +472,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -484,7 +527,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -536,7 +579,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(11)).addStatements(any());
+        verify(persistence, times(11)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -590,7 +633,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(11)).addStatements(any());
+        verify(persistence, times(11)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -644,7 +687,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
@@ -696,7 +739,7 @@ public class BranchQueryTest {
         getQuery().query();
         debugBranchCommitInsertions();
 
-        verify(persistence, times(10)).addStatements(any());
+        verify(persistence, times(10)).addParameterizedStatements(any());
         verify(branchQueries).branchInsertionStatement(projectId, 0, null, null);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
         verify(branchQueries).branchCommitInsertionQuery(projectId, 0, F.sha, 1);
@@ -712,6 +755,122 @@ public class BranchQueryTest {
         verify(branchQueries).branchCommitInsertionQuery(projectId, 3, C.sha, 0);
     }
 
+    private void initializePersistedBranch(int branchId, int ordinal, Commit... commits) {
+        doReturn("branches").when(branchQueries).branchesQuery(projectId);
+        doReturn(Collections.singletonList(row("id", branchId, "ordinal", ordinal))).when(persistence).query("branches");
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < commits.length; i++) {
+            HashMap<String, Object> row = row("branch_id", branchId, "ordinal", i);
+            row.put("sha1", commits[i].sha);
+            rows.add(row);
+        }
+        doReturn("branchCommits").when(branchQueries).branchCommitsQuery(projectId);
+        doReturn(rows).when(persistence).query("branchCommits");
+    }
+
+    /**
+     * Extending this branch, persisted up to B:
+     * <pre><code>
+     * .   A
+     * |\
+     * . | B
+     * | . D
+     * |/
+     * .   E (merge)
+     * </pre></code>
+     *
+     * @throws QueryException
+     * @throws IOException
+     */
+    @Test
+    public void testExtendPersistedBranches() throws QueryException, IOException {
+        Commit A = new Commit("a", 1);
+        Commit B = new Commit("b", 2, Collections.singletonList(A));
+        Commit D = new Commit("d", 3, Collections.singletonList(A));
+        Commit E = new Commit("e", 4, Arrays.asList(B, D));
+
+        initializeHead(E);
+        initializeMocks(A, B, D, E);
+        initializePersistedBranch(10, 0, A, B);
+
+        new BranchQuery(projectId, repository, persistence, commitQueries, branchQueries, new IdCache(), true).query();
+
+        // The persisted branch is kept, only the new commits and branches are added.
+        verify(branchQueries, never()).projectBranchesDeletionStatements(projectId);
+        verify(branchQueries, never()).branchInsertionStatement(eq(projectId), eq(0), any(), any());
+        verify(branchQueries, never()).branchMergedIntoStatement(anyInt(), anyInt(), any());
+        verify(branchQueries, never()).branchCommitInsertionQuery(projectId, 0, A.sha, 0);
+        verify(branchQueries, never()).branchCommitInsertionQuery(projectId, 0, B.sha, 1);
+        verify(branchQueries).branchCommitInsertionQuery(projectId, 0, E.sha, 2);
+
+        verify(branchQueries).branchInsertionStatement(projectId, 1, A, E);
+        verify(branchQueries).branchCommitInsertionQuery(projectId, 1, D.sha, 0);
+    }
+
+    /**
+     * Extending the open branch persisted up to B, merged into the new history of another root commit:
+     * <pre><code>
+     *     . A
+     *     |
+     * .   | X
+     * |   . B
+     * |  /
+     * . /  M (merge)
+     * </pre></code>
+     *
+     * @throws QueryException
+     * @throws IOException
+     */
+    @Test
+    public void testExtendMergedPersistedBranch() throws QueryException, IOException {
+        Commit A = new Commit("a", 1);
+        Commit B = new Commit("b", 2, Collections.singletonList(A));
+        Commit X = new Commit("x", 3);
+        Commit M = new Commit("m", 4, Arrays.asList(X, B));
+
+        initializeHead(M);
+        initializeMocks(A, B, X, M);
+        initializePersistedBranch(10, 0, A, B);
+
+        new BranchQuery(projectId, repository, persistence, commitQueries, branchQueries, new IdCache(), true).query();
+
+        // The persisted branch is now merged, the new principal branch being numbered after it.
+        verify(branchQueries).branchMergedIntoStatement(projectId, 0, M);
+        verify(branchQueries, never()).branchInsertionStatement(eq(projectId), eq(0), any(), any());
+        verify(branchQueries, never()).branchCommitInsertionQuery(eq(projectId), eq(0), anyString(), anyInt());
+        verify(branchQueries).branchInsertionStatement(projectId, 1, null, null);
+        verify(branchQueries).branchCommitInsertionQuery(projectId, 1, X.sha, 0);
+        verify(branchQueries).branchCommitInsertionQuery(projectId, 1, M.sha, 1);
+    }
+
+    /**
+     * Extending the branch persisted up to B, which is no longer on the principal branch:
+     * <pre><code>
+     * .   A
+     * |\
+     * . | C
+     * | . B
+     * |/
+     * .   D (merge)
+     * </pre></code>
+     *
+     * @throws QueryException
+     * @throws IOException
+     */
+    @Test(expected = QueryException.class)
+    public void testExtendChangedBranches() throws QueryException, IOException {
+        Commit A = new Commit("a", 1);
+        Commit B = new Commit("b", 2, Collections.singletonList(A));
+        Commit C = new Commit("c", 3, Collections.singletonList(A));
+        Commit D = new Commit("d", 4, Arrays.asList(C, B));
+
+        initializeHead(D);
+        initializeMocks(A, B, C, D);
+        initializePersistedBranch(10, 0, A, B);
+
+        new BranchQuery(projectId, repository, persistence, commitQueries, branchQueries, new IdCache(), true).query();
+    }
+
     // TODO: TEST GAP COMMIT FOR: Merge, Parent, Last branch commit, initial commit, las project commit, random commit
 
     private void debugBranchCommitInsertions() {
@@ -23,7 +23,9 @@ import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
 import fr.inria.sniffer.tracker.analysis.model.GitDiff;
 import fr.inria.sniffer.tracker.analysis.model.GitRename;
 import fr.inria.sniffer.tracker.analysis.model.Repository;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.StatementTemplate;
 import fr.inria.sniffer.tracker.analysis.persistence.queries.CommitQueries;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import org.joda.time.DateTime;
@@ -78,13 +80,13 @@ public class CommitsAnalysisTest {
         detailsChecker = Mockito.mock(CommitDetailsChecker.class);
 
         paprikaCommitsList = new ArrayList<>();
-        doReturn("CommitInsertion").when(commitQueries).commitInsertionStatement(
+        doReturn(statement("CommitInsertion")).when(commitQueries).commitInsertionStatement(
                 eq(projectId), any(Commit.class), any(GitDiff.class));
-        doReturn("DeveloperInsertion").when(developerQueries).developerInsertStatement(
+        doReturn(statement("DeveloperInsertion")).when(developerQueries).developerInsertStatement(
                 anyString());
-        doReturn("DeveloperProjectInsertion").when(developerQueries).projectDeveloperInsertStatement(
+        doReturn(statement("DeveloperProjectInsertion")).when(developerQueries).projectDeveloperInsertStatement(
                 eq(projectId), anyString());
-        doReturn("FileRenameInsertion").when(commitQueries).fileRenameInsertionStatement(
+        doReturn(statement("FileRenameInsertion")).when(commitQueries).fileRenameInsertionStatement(
                 eq(projectId), anyString(), any(GitRename.class));
     }
 
@@ -92,6 +94,10 @@ public class CommitsAnalysisTest {
         return new CommitsAnalysis(projectId, persistence, repository, paprikaCommitsList.iterator(), detailsChecker, developerQueries, commitQueries);
     }
 
+    private static ParameterizedStatement statement(String name) {
+        return new StatementTemplate(name, name).bind();
+    }
+
     private void addCommitInPaprika(Commit commit) {
         Map<String, Object> smellMap = new HashMap<>();
         smellMap.put("key", commit.sha);
@@ -105,17 +111,16 @@ public class CommitsAnalysisTest {
 
     private void addCommitInRepository(Commit commit, CommitDetails details) throws IOException {
         // Prepare repository to return this commit.
-        doReturn(commit).when(repository).getCommitWithDetails(eq(commit.sha));
-        doReturn(commit).when(repository).getCommitWithParents(commit.sha);
         doReturn(details).when(detailsChecker).fetch(commit.sha);
     }
 
     private void prepareGitLog(Commit... commits) throws IOException {
-        List<String> log = new ArrayList<>();
+        // The git log is given from HEAD, the history is walked the other way around.
+        List<Commit> history = new ArrayList<>();
         for (Commit commit : commits) {
-            log.add(commit.sha);
+            history.add(0, commit);
         }
-        when(repository.getLog()).thenReturn(log);
+        when(repository.getHistory()).thenReturn(history.iterator());
     }
 
     /**
@@ -155,8 +160,10 @@ public class CommitsAnalysisTest {
         verify(commitQueries).commitInsertionStatement(projectId, merged, dummyDetails.diff);
         verify(commitQueries).commitInsertionStatement(projectId, parent, dummyDetails.diff);
         verify(commitQueries).commitInsertionStatement(projectId, merge, dummyDetails.diff);
+        // The merged commit is set once the whole batch is inserted.
+        verify(commitQueries).mergedCommitUpdateStatement(projectId, merge);
 
-        // Author insertion is brainlessly done at each encounter
+        // Unresolved authors are inserted once per batch
         verify(developerQueries, times(3)).developerInsertStatement(anyString());
         verify(developerQueries, times(1)).developerInsertStatement(merged.authorEmail);
         verify(developerQueries, times(1)).developerInsertStatement(parent.authorEmail);
@@ -204,18 +211,43 @@ public class CommitsAnalysisTest {
         verify(commitQueries).commitInsertionStatement(projectId, C, dummyDetails.diff);
         verify(commitQueries).commitInsertionStatement(projectId, D, dummyDetails.diff);
 
-        // Author insertion is brainlessly done at each encounter
-        verify(developerQueries, times(4)).developerInsertStatement(anyString());
-        verify(developerQueries, times(2)).developerInsertStatement(A.authorEmail);
-        verify(developerQueries, times(2)).developerInsertStatement(C.authorEmail);
-        verify(developerQueries, times(4)).projectDeveloperInsertStatement(eq(projectId), anyString());
-        verify(developerQueries, times(2)).projectDeveloperInsertStatement(projectId, A.authorEmail);
-        verify(developerQueries, times(2)).projectDeveloperInsertStatement(projectId, C.authorEmail);
+        // Unresolved authors are inserted once per batch
+        verify(developerQueries, times(2)).developerInsertStatement(anyString());
+        verify(developerQueries).developerInsertStatement(A.authorEmail);
+        verify(developerQueries).developerInsertStatement(C.authorEmail);
+        verify(developerQueries, times(2)).projectDeveloperInsertStatement(eq(projectId), anyString());
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, A.authorEmail);
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, C.authorEmail);
 
         // No GitRename handled
         verify(commitQueries, times(0)).fileRenameInsertionStatement(eq(projectId), anyString(), any(GitRename.class));
     }
 
+    @Test
+    public void testAuthorsResolvedOncePerBatch() throws Exception {
+        addCommitInPaprika(A);
+        addCommitInRepository(A);
+        addCommitInPaprika(B);
+        addCommitInRepository(B);
+        prepareGitLog(A, B);
+        ParameterizedStatement developerIds = statement("DeveloperIds");
+        doReturn(developerIds).when(developerQueries).developerIdsStatement(any());
+        Map<String, Object> developer = new HashMap<>();
+        developer.put("id", 5);
+        developer.put("username", A.authorEmail);
+        doReturn(Collections.singletonList(developer)).when(persistence).query(developerIds);
+
+        getCommitsAnalysis().query();
+
+        // Both commits share the same author, inserted once and then bulk loaded with its identifier.
+        verify(developerQueries).developerIdsStatement(Collections.singleton(A.authorEmail));
+        verify(developerQueries, times(0)).developerInsertStatement(anyString());
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, 5);
+        verify(commitQueries, times(0)).commitInsertionStatement(anyInt(), any(Commit.class), any(GitDiff.class));
+        verify(commitQueries).commitRow(projectId, 5, A, dummyDetails.diff, null);
+        verify(commitQueries).commitRow(projectId, 5, B, dummyDetails.diff, null);
+    }
+
     /**
      * <pre><code>
      *     * A
@@ -250,13 +282,13 @@ public class CommitsAnalysisTest {
         verify(commitQueries).commitInsertionStatement(projectId, C, dummyDetails.diff);
         verify(commitQueries).commitInsertionStatement(projectId, D, dummyDetails.diff);
 
-        // Author insertion is brainlessly done at each encounter
-        verify(developerQueries, times(4)).developerInsertStatement(anyString());
-        verify(developerQueries, times(2)).developerInsertStatement(A.authorEmail);
-        verify(developerQueries, times(2)).developerInsertStatement(C.authorEmail);
-        verify(developerQueries, times(4)).projectDeveloperInsertStatement(eq(projectId), anyString());
-        verify(developerQueries, times(2)).projectDeveloperInsertStatement(projectId, A.authorEmail);
-        verify(developerQueries, times(2)).projectDeveloperInsertStatement(projectId, C.authorEmail);
+        // Unresolved authors are inserted once per batch
+        verify(developerQueries, times(2)).developerInsertStatement(anyString());
+        verify(developerQueries).developerInsertStatement(A.authorEmail);
+        verify(developerQueries).developerInsertStatement(C.authorEmail);
+        verify(developerQueries, times(2)).projectDeveloperInsertStatement(eq(projectId), anyString());
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, A.authorEmail);
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, C.authorEmail);
 
         // No GitRename handled
         verify(commitQueries, times(0)).fileRenameInsertionStatement(eq(projectId), anyString(), any(GitRename.class));
@@ -296,9 +328,9 @@ public class CommitsAnalysisTest {
         verify(commitQueries).commitInsertionStatement(projectId, B, otherDetails.diff);
         verify(commitQueries).fileRenameInsertionStatement(projectId, B.sha, renameB);
 
-        // A and B share the same author.
-        verify(developerQueries, times(2)).developerInsertStatement(A.authorEmail);
-        verify(developerQueries, times(2)).projectDeveloperInsertStatement(projectId, A.authorEmail);
+        // A and B share the same author, inserted once.
+        verify(developerQueries).developerInsertStatement(A.authorEmail);
+        verify(developerQueries).projectDeveloperInsertStatement(projectId, A.authorEmail);
 
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.commit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static fr.inria.sniffer.tracker.analysis.query.commit.JGitCommitDetailsCheckerTest.assertSameDetails;
+
+public class GitLogCommitDetailsCheckerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Git git;
+    private String repository;
+    private List<RevCommit> commits;
+    private CommitDetailsChecker gitChecker;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = folder.getRoot().toString();
+        Assume.assumeFalse("git program unavailable", GitExecution.execute(repository, "--version").isEmpty());
+        git = Git.init().setDirectory(folder.getRoot()).call();
+        commits = new ArrayList<>();
+        gitChecker = new GitCommitDetailsChecker(repository);
+
+        for (int i = 0; i < 4; i++) {
+            writeFile("src/Foo" + i + ".java", "int field" + i + " = " + i + ";");
+            commit("Add Foo" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (git != null) {
+            git.close();
+        }
+    }
+
+    @Test
+    public void testSameDetailsFromGitLog() {
+        try (CommitDetailsChecker logChecker = new GitLogCommitDetailsChecker(repository)) {
+            for (RevCommit commit : commits) {
+                assertSameDetails(gitChecker.fetch(commit.name()), logChecker.fetch(commit.name()));
+            }
+            // Already read commits are fetched again on their own.
+            assertSameDetails(gitChecker.fetch(commits.get(0).name()), logChecker.fetch(commits.get(0).name()));
+        }
+    }
+
+    @Test
+    public void testBoundedReadAhead() {
+        try (CommitDetailsChecker logChecker = new GitLogCommitDetailsChecker(repository, 1)) {
+            // The last commit is too far ahead in the log, thus fetched on its own.
+            RevCommit last = commits.get(commits.size() - 1);
+            assertSameDetails(gitChecker.fetch(last.name()), logChecker.fetch(last.name()));
+
+            // The log keeps being read from where it stopped.
+            for (RevCommit commit : commits) {
+                assertSameDetails(gitChecker.fetch(commit.name()), logChecker.fetch(commit.name()));
+            }
+        }
+    }
+
+    private void writeFile(String path, String line) throws IOException {
+        File file = new File(folder.getRoot(), path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), Collections.singletonList(line), StandardCharsets.UTF_8);
+    }
+
+    private void commit(String message) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        commits.add(git.commit()
+                .setMessage(message)
+                .setAuthor("author", "author@email.com")
+                .setCommitter("author", "author@email.com")
+                .call());
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.commit;
+
+import fr.inria.sniffer.tracker.analysis.model.CommitDetails;
+import fr.inria.sniffer.tracker.analysis.model.GitChangedFile;
+import fr.inria.sniffer.tracker.analysis.model.GitRename;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JGitCommitDetailsCheckerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Git git;
+    private List<RevCommit> commits;
+
+    @Before
+    public void setUp() throws Exception {
+        git = Git.init().setDirectory(folder.getRoot()).call();
+        commits = new ArrayList<>();
+
+        writeFile("README.md", "title", "description");
+        writeFile("src/Foo.java", javaLines(10));
+        commit("Initial commit");
+
+        writeFile("README.md", "title", "new description", "more");
+        commit("Update readme");
+
+        deleteFile("src/Foo.java");
+        writeFile("src/main/Foo.java", javaLines(11));
+        commit("Move Foo");
+    }
+
+    @After
+    public void tearDown() {
+        git.close();
+    }
+
+    @Test
+    public void testInitialCommit() {
+        CommitDetails details = fetch(commits.get(0));
+
+        assertEquals(12, details.diff.getAddition());
+        assertEquals(0, details.diff.getDeletion());
+        assertEquals(2, details.diff.getChangedFiles());
+        assertTrue(details.renames.isEmpty());
+        assertEquals(2, details.changedFiles.size());
+        assertChangedFile(details.changedFiles.get(0), "README.md", 2);
+        assertChangedFile(details.changedFiles.get(1), "src/Foo.java", 10);
+    }
+
+    @Test
+    public void testModification() {
+        CommitDetails details = fetch(commits.get(1));
+
+        assertEquals(2, details.diff.getAddition());
+        assertEquals(1, details.diff.getDeletion());
+        assertEquals(1, details.diff.getChangedFiles());
+        assertTrue(details.renames.isEmpty());
+        assertEquals(1, details.changedFiles.size());
+        assertChangedFile(details.changedFiles.get(0), "README.md", 3);
+    }
+
+    @Test
+    public void testRename() {
+        CommitDetails details = fetch(commits.get(2));
+
+        assertEquals(1, details.diff.getAddition());
+        assertEquals(0, details.diff.getDeletion());
+        assertEquals(1, details.diff.getChangedFiles());
+        assertTrue(details.changedFiles.isEmpty());
+        assertEquals(1, details.renames.size());
+        GitRename rename = details.renames.get(0);
+        assertEquals("src/Foo.java", rename.oldFile);
+        assertEquals("src/main/Foo.java", rename.newFile);
+        assertTrue(rename.similarity >= 50);
+    }
+
+    @Test
+    public void testSameDetailsAsGitProgram() {
+        String repository = folder.getRoot().toString();
+        Assume.assumeFalse("git program unavailable", GitExecution.execute(repository, "--version").isEmpty());
+
+        CommitDetailsChecker gitChecker = new GitCommitDetailsChecker(repository);
+        for (RevCommit commit : commits) {
+            assertSameDetails(gitChecker.fetch(commit.name()), fetch(commit));
+        }
+    }
+
+    private CommitDetails fetch(RevCommit commit) {
+        try (CommitDetailsChecker checker = new JGitCommitDetailsChecker(git.getRepository())) {
+            return checker.fetch(commit.name());
+        }
+    }
+
+    static void assertSameDetails(CommitDetails expected, CommitDetails actual) {
+        assertEquals(expected.diff.getAddition(), actual.diff.getAddition());
+        assertEquals(expected.diff.getDeletion(), actual.diff.getDeletion());
+        assertEquals(expected.diff.getChangedFiles(), actual.diff.getChangedFiles());
+        assertEquals(expected.changedFiles.size(), actual.changedFiles.size());
+        for (int i = 0; i < expected.changedFiles.size(); i++) {
+            GitChangedFile file = expected.changedFiles.get(i);
+            assertChangedFile(actual.changedFiles.get(i), file.name, file.changeSize);
+        }
+        assertEquals(expected.renames.size(), actual.renames.size());
+        for (int i = 0; i < expected.renames.size(); i++) {
+            assertEquals(expected.renames.get(i).oldFile, actual.renames.get(i).oldFile);
+            assertEquals(expected.renames.get(i).newFile, actual.renames.get(i).newFile);
+        }
+    }
+
+    private static void assertChangedFile(GitChangedFile file, String name, int changeSize) {
+        assertEquals(name, file.name);
+        assertEquals(changeSize, file.changeSize);
+    }
+
+    private static String[] javaLines(int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = "int field" + i + " = " + i + ";";
+        }
+        return lines;
+    }
+
+    private void writeFile(String path, String... lines) throws IOException {
+        File file = new File(folder.getRoot(), path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private void deleteFile(String path) throws IOException {
+        Files.delete(new File(folder.getRoot(), path).toPath());
+    }
+
+    private void commit(String message) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        git.add().setUpdate(true).addFilepattern(".").call();
+        commits.add(git.commit()
+                .setMessage(message)
+                .setAuthor("author", "author@email.com")
+                .setCommitter("author", "author@email.com")
+                .call());
+    }
+}
@@ -0,0 +1,536 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
+import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
+import fr.inria.sniffer.tracker.analysis.query.QueryException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BitmapSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
+    private static final String BRANCH_COMMITS_STATEMENT = "BranchCommitsStatement";
+    private static final String BRANCHES_STATEMENT = "BranchesStatement";
+    private static final String MERGED_COMMITS_STATEMENT = "MergedCommitsStatement";
+
+    private List<Map<String, Object>> branchCommits;
+    private List<Map<String, Object>> branches;
+    private List<Map<String, Object>> mergedCommits;
+    private IdCache idCache;
+    // Shas of the commits put in the cache, by identifier.
+    private Map<Integer, String> commitShas;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        branchCommits = new ArrayList<>();
+        branches = new ArrayList<>();
+        mergedCommits = new ArrayList<>();
+        idCache = new IdCache();
+        commitShas = new HashMap<>();
+
+        doReturn(BRANCH_COMMITS_STATEMENT).when(branchQueries).branchCommitsQuery(projectId);
+        doReturn(BRANCHES_STATEMENT).when(branchQueries).branchesQuery(projectId);
+        doReturn(MERGED_COMMITS_STATEMENT).when(commitQueries).mergedCommitIdsQuery(projectId);
+        doReturn(branchCommits).when(persistence).query(BRANCH_COMMITS_STATEMENT);
+        doReturn(branches).when(persistence).query(BRANCHES_STATEMENT);
+        doReturn(mergedCommits).when(persistence).query(MERGED_COMMITS_STATEMENT);
+    }
+
+    private BitmapSmellTypeAnalysis getAnalysis() {
+        return new BitmapSmellTypeAnalysis(projectId, persistence, smellList.iterator(), smellType,
+                duplicationChecker, commitQueries, smellQueries, branchQueries,
+                PreloadedBranchLookup.load(projectId, persistence, commitQueries, branchQueries), idCache);
+    }
+
+    /**
+     * Run both the bitmap and the branch aware analyses on the same instances,
+     * checking that they emit the same smell category rows.
+     *
+     * @throws QueryException
+     */
+    private void assertSameRowsAsBranchAwareAnalysis() throws QueryException {
+        getAnalysis().query();
+        List<String> bitmapRows = emittedRows();
+        clearInvocations(smellQueries, persistence);
+
+        BranchLookup branchLookup = PreloadedBranchLookup.load(projectId, persistence, commitQueries, branchQueries);
+        new BranchAwareSmellTypeAnalysis(projectId, persistence, smellList.iterator(), smellType,
+                duplicationChecker, commitQueries, smellQueries, branchQueries, branchLookup, idCache, 0,
+                branchLookup.branchingCommitReads(idCache)).query();
+        List<String> branchAwareRows = emittedRows();
+
+        assertFalse(bitmapRows.isEmpty());
+        assertEquals(branchAwareRows, bitmapRows);
+    }
+
+    /**
+     * @return The smell category rows given to the {@link #smellQueries}, sorted.
+     */
+    private List<String> emittedRows() {
+        List<String> rows = new ArrayList<>();
+        Object[] arguments;
+        for (Invocation invocation : Mockito.mockingDetails(smellQueries).getInvocations()) {
+            arguments = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "smellCategoryRow":
+                    rows.add(row(commitShas.get((Integer) arguments[1]), (Smell) arguments[2], arguments[3]));
+                    break;
+                case "smellCategoryInsertionStatement":
+                    rows.add(row((String) arguments[1], (Smell) arguments[2], arguments[3]));
+                    break;
+                case "lostSmellCategoryInsertionStatement":
+                    rows.add(row("lost " + arguments[3] + "-" + arguments[4], (Smell) arguments[1], arguments[2]));
+                    break;
+                default:
+                    break;
+            }
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static String row(String commit, Smell smell, Object category) {
+        return commit + " " + category + " " + smell.instance
+                + (smell.parent == null ? "" : " <- " + smell.parent.instance);
+    }
+
+    private void putCommitId(Commit commit, int id) {
+        idCache.putCommitId(commit.sha, id);
+        commitShas.put(id, commit.sha);
+    }
+
+    private void mockCommitBranch(Commit commit, int branch, int ordinal) {
+        mockCommitBranch(commit, branch, ordinal, true);
+    }
+
+    private void mockCommitBranch(Commit commit, int branch, int ordinal, boolean inDetector) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("branch_id", branch);
+        row.put("ordinal", ordinal);
+        row.put("sha1", commit.sha);
+        row.put("in_detector", inDetector);
+        branchCommits.add(row);
+    }
+
+    private void mockBranchParent(int branch, Commit parent) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", branch);
+        row.put("parent_sha1", parent.sha);
+        branches.add(row);
+    }
+
+    private void mockMergeCommit(Commit merge, Commit merged) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("sha1", merge.sha);
+        row.put("id", idCache.commitId(merged.sha));
+        mergedCommits.add(row);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B (1)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleIntroductionAndRefactoring() throws QueryException {
+        addSmell(firstCommit, firstSmell);
+        addSmell(firstCommit, secondSmell);
+        addSmell(secondCommit, firstSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+
+        getAnalysis().query();
+
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
+        verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
+        verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
+
+        verify(persistence, times(6)).addParameterizedStatements(any());
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, secondSmell, SmellCategory.REFACTOR);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B ()
+     * |
+     * * C (2)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleCommitGap() throws QueryException {
+        addSmell(firstCommit, firstSmell);
+        addSmell(firstCommit, secondSmell);
+        addSmell(thirdCommit, secondSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+        mockCommitBranch(thirdCommit, 0, 2);
+
+        getAnalysis().query();
+
+        // The gap commit is found among the preloaded branch commits.
+        verify(branchQueries, never()).shaFromOrdinalQuery(anyInt(), anyInt(), anyInt(), anyBoolean());
+        verify(persistence, times(8)).addParameterizedStatements(any());
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.INTRODUCTION);
+
+        // The gap commit holds no smell.
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, firstSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, secondSmell, SmellCategory.REFACTOR);
+
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, secondSmell, SmellCategory.INTRODUCTION);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * ? [lost]
+     * |
+     * * B (2)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleLostCommitGap() throws QueryException {
+        Commit someCommit = new Commit("A", 57);
+        Commit anotherCommit = new Commit("B", 60);
+        addSmell(someCommit, firstSmell);
+        addSmell(someCommit, secondSmell);
+        addSmell(anotherCommit, secondSmell);
+        mockCommitBranch(someCommit, 0, 0);
+        mockCommitBranch(new Commit("lost", 58), 0, 1, false);
+        mockCommitBranch(anotherCommit, 0, 2);
+
+        getAnalysis().query();
+
+        verify(persistence, times(5)).addParameterizedStatements(any());
+        verify(persistence, times(1)).addStatements(any());
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, secondSmell, SmellCategory.INTRODUCTION);
+
+        // The commit following a lost gap is compared with the commit preceding it.
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, anotherCommit.sha, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).lostSmellCategoryInsertionStatement(projectId, firstSmell, SmellCategory.REFACTOR, someCommit.ordinal + 1, anotherCommit.ordinal);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1)
+     * |
+     * * B ()
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleRefactoringOnEndCommit() throws QueryException {
+        addSmell(firstCommit, firstSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+
+        getAnalysis().query();
+
+        verify(persistence, times(3)).addParameterizedStatements(any());
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, firstSmell, SmellCategory.REFACTOR);
+    }
+
+    /**
+     * <pre><code>
+     * *  A (1  )
+     * |
+     * * B (  2) [1 -> 2]
+     * </pre></code>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleRenamedSmell() throws QueryException {
+        ArgumentCaptor<Smell> smellCaptor = ArgumentCaptor.forClass(Smell.class);
+        addSmell(firstCommit, firstSmell);
+        addSmell(secondCommit, secondSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+
+        Smell expectedSecondSmell = mockSmellRenamed(secondCommit, secondSmell, firstSmell);
+        mockSmellId(expectedSecondSmell);
+
+        getAnalysis().query();
+
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
+        verify(smellQueries, times(2)).smellInsertionStatement(eq(projectId), smellCaptor.capture());
+        Smell renamed = smellCaptor.getAllValues().get(1);
+        assertEquals(expectedSecondSmell, renamed);
+        assertEquals(firstSmell, renamed.parent);
+
+        // Neither the renamed smell introduction nor its parent refactoring are persisted.
+        verify(persistence, times(3)).addParameterizedStatements(any());
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, expectedSecondSmell, SmellCategory.PRESENCE);
+    }
+
+    /**
+     * <pre><code>
+     * .    A (1, 2,     )
+     * |\
+     * | .  B (1,    3   )
+     * |/
+     * .    C (      3, 4) [merge]
+     * </pre></code>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testMergeCommitRefactorAndIntroduces() throws QueryException {
+        Commit A = new Commit("0-A", 0);
+        Commit B = new Commit("1-B", 1);
+        Commit C = new Commit("0-C", 2);
+        Smell fourthSmell = new Smell(smellType, "fourthSmellInstance", "fourthSmellFile");
+        mockSmellId(fourthSmell);
+        idCache.putCommitId(A.sha, 1);
+        idCache.putCommitId(B.sha, 2);
+        idCache.putCommitId(C.sha, 3);
+
+        addSmell(A, firstSmell);
+        addSmell(A, secondSmell);
+        addSmell(B, firstSmell);
+        addSmell(B, thirdSmell);
+        addSmell(C, thirdSmell);
+        addSmell(C, fourthSmell);
+        mockCommitBranch(A, 0, 0);
+        mockCommitBranch(B, 1, 0);
+        mockCommitBranch(C, 0, 1);
+        mockBranchParent(1, A);
+        mockMergeCommit(C, B);
+
+        getAnalysis().query();
+
+        // The parent and merged commits smells are read from memory.
+        verify(smellQueries, never()).commitSmellsQuery(anyInt(), any(), any());
+        verify(persistence, never()).commit();
+
+        verify(persistence, times(4)).execute(nullable(ParameterizedStatement.class));
+        verify(persistence, times(12)).addCopyRows(any());
+        // Initial branch
+        verify(smellQueries).smellCategoryRow(projectId, 1, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 1, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryRow(projectId, 1, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 1, secondSmell, SmellCategory.INTRODUCTION);
+
+        // First Branch
+        verify(smellQueries).smellCategoryRow(projectId, 2, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 2, secondSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryRow(projectId, 2, thirdSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 2, thirdSmell, SmellCategory.INTRODUCTION);
+
+        // Merge
+        verify(smellQueries).smellCategoryRow(projectId, 3, firstSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryRow(projectId, 3, thirdSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 3, fourthSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 3, fourthSmell, SmellCategory.INTRODUCTION);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B (1   )
+     * |
+     * * C (   2)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testSameRowsOnIntroductionAndRefactoring() throws QueryException {
+        addSmell(firstCommit, firstSmell);
+        addSmell(firstCommit, secondSmell);
+        addSmell(secondCommit, firstSmell);
+        addSmell(thirdCommit, secondSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+        mockCommitBranch(thirdCommit, 0, 2);
+
+        assertSameRowsAsBranchAwareAnalysis();
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B (    )
+     * |
+     * * C (   2)
+     * |
+     * * ? [lost]
+     * |
+     * * D (   3)
+     * |
+     * * E (    )
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testSameRowsOnGaps() throws QueryException {
+        Commit A = new Commit("A", 0);
+        Commit B = new Commit("B", 1);
+        Commit C = new Commit("C", 2);
+        Commit D = new Commit("D", 4);
+        Commit E = new Commit("E", 5);
+        addSmell(A, firstSmell);
+        addSmell(A, secondSmell);
+        addSmell(C, secondSmell);
+        addSmell(D, thirdSmell);
+        mockCommitBranch(A, 0, 0);
+        mockCommitBranch(B, 0, 1);
+        mockCommitBranch(C, 0, 2);
+        mockCommitBranch(new Commit("lost", 3), 0, 3, false);
+        mockCommitBranch(D, 0, 4);
+        mockCommitBranch(E, 0, 5);
+
+        assertSameRowsAsBranchAwareAnalysis();
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B (3, 2) [1 -> 3]
+     * |
+     * * C (3)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testSameRowsOnRename() throws QueryException {
+        addSmell(firstCommit, firstSmell);
+        addSmell(firstCommit, secondSmell);
+        addSmell(secondCommit, thirdSmell);
+        addSmell(secondCommit, secondSmell);
+        addSmell(thirdCommit, thirdSmell);
+        mockCommitBranch(firstCommit, 0, 0);
+        mockCommitBranch(secondCommit, 0, 1);
+        mockCommitBranch(thirdCommit, 0, 2);
+
+        Smell expectedThirdSmell = mockSmellRenamed(secondCommit, thirdSmell, firstSmell);
+        mockSmellId(expectedThirdSmell);
+
+        assertSameRowsAsBranchAwareAnalysis();
+    }
+
+    /**
+     * <pre><code>
+     * .      A (1,          )
+     * |\
+     * | .    B (1, 2,       )
+     * | |\
+     * | | .  C (   2, 3     )
+     * | |/
+     * | .    D (      3     ) [merge]
+     * |/
+     * .      E (      3, 4  ) [merge]
+     * </pre></code>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testSameRowsOnNestedMerges() throws QueryException {
+        Commit A = new Commit("0-A", 0);
+        Commit B = new Commit("1-B", 1);
+        Commit C = new Commit("2-C", 2);
+        Commit D = new Commit("1-D", 3);
+        Commit E = new Commit("0-E", 4);
+        Smell fourthSmell = new Smell(smellType, "fourthSmellInstance", "fourthSmellFile");
+        mockSmellId(fourthSmell);
+        putCommitId(A, 1);
+        putCommitId(B, 2);
+        putCommitId(C, 3);
+        putCommitId(D, 4);
+        putCommitId(E, 5);
+
+        addSmell(A, firstSmell);
+        addSmell(B, firstSmell);
+        addSmell(B, secondSmell);
+        addSmell(C, secondSmell);
+        addSmell(C, thirdSmell);
+        addSmell(D, thirdSmell);
+        addSmell(E, thirdSmell);
+        addSmell(E, fourthSmell);
+        mockCommitBranch(A, 0, 0);
+        mockCommitBranch(B, 1, 0);
+        mockCommitBranch(C, 2, 0);
+        mockCommitBranch(D, 1, 1);
+        mockCommitBranch(E, 0, 1);
+        mockBranchParent(1, A);
+        mockBranchParent(2, B);
+        mockMergeCommit(D, C);
+        mockMergeCommit(E, D);
+
+        assertSameRowsAsBranchAwareAnalysis();
+    }
+}
@@ -19,6 +19,8 @@ package fr.inria.sniffer.tracker.analysis.query.smell;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.IdCache;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import org.junit.Before;
@@ -39,7 +41,9 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -80,6 +84,9 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         when(commitQueries.mergedCommitIdQuery(anyInt(), any(Commit.class))).then((Answer<String>)
                 invocation -> mergedCommitStatement(invocation.getArgument(0),
                         ((Commit) invocation.getArgument(1)).sha));
+        when(branchQueries.lastCommitBeforeQuery(anyInt(), anyInt(), anyInt())).then((Answer<String>)
+                invocation -> lastCommitBeforeStatement(invocation.getArgument(0),
+                        invocation.getArgument(1), invocation.getArgument(2)));
         when(smellQueries.commitSmellsQuery(anyInt(), anyString(), anyString())).then((Answer<String>)
                 invocation -> commitSmellsStatement(invocation.getArgument(0),
                         Integer.valueOf(invocation.getArgument(1)), invocation.getArgument(2)));
@@ -117,6 +124,10 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         return "commitShaFromOrdinalStatement-" + projectId + "-" + sha;
     }
 
+    private static String lastCommitBeforeStatement(int projectId, int branchId, int lastCommitId) {
+        return "lastCommitBeforeStatement-" + projectId + "-" + branchId + "-" + lastCommitId;
+    }
+
     private static String commitSmellsStatement(int projectId, int commitId, String smellType) {
         return "commitSmellsStatement-" + projectId + "-" + commitId + "-" + smellType;
     }
@@ -233,10 +244,10 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, firstCommit);
         getAnalysis().query();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(2)).addStatements(any());
+        verify(persistence, times(2)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
     }
@@ -262,10 +273,10 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, lastCommitSha, firstSmell, SmellCategory.REFACTOR);
@@ -290,11 +301,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, secondCommit);
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(5)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -323,11 +334,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, secondCommit);
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(5)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -356,11 +367,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, secondCommit);
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(6)).addStatements(any());
+        verify(persistence, times(6)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.PRESENCE);
@@ -389,11 +400,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, secondCommit);
         getAnalysis().query();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         // We have only one smell insertion here since we check for existence in the previous commit.
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, firstSmell, SmellCategory.PRESENCE);
@@ -424,11 +435,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(6)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
+        verify(persistence, times(1)).addStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, someCommit.sha, secondSmell, SmellCategory.PRESENCE);
@@ -441,6 +453,71 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         verify(smellQueries).lostSmellCategoryInsertionStatement(projectId, firstSmell, SmellCategory.REFACTOR, someCommit.ordinal + 1, anotherCommit.ordinal);
     }
 
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * G (    ) analyzed without smells
+     * |
+     * * B (   2)
+     * |
+     * x Missing commit X
+     * |
+     * * C (   3)
+     * </code></pre>
+     * The branch commits are preloaded with the SmellDetector flag stored as an integer, as in SQLite.
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleCommitGapFromPreloadedCommits() throws QueryException {
+        Commit A = new Commit("A", 57);
+        Commit G = new Commit("G", 58);
+        Commit B = new Commit("B", 59);
+        Commit X = new Commit("X", 60);
+        Commit C = new Commit("C", 61);
+
+        addSmell(A, firstSmell);
+        addSmell(A, secondSmell);
+        addSmell(B, secondSmell);
+        addSmell(C, thirdSmell);
+        List<Map<String, Object>> branchCommits = Arrays.asList(
+                branchCommit(A, 0, 1),
+                branchCommit(G, 1, 1),
+                branchCommit(B, 2, 1),
+                branchCommit(X, 3, 0),
+                branchCommit(C, 4, 1));
+        doReturn("branchCommitsStatement").when(branchQueries).branchCommitsQuery(projectId);
+        doReturn(branchCommits).when(persistence).query("branchCommitsStatement");
+
+        new BranchAwareSmellTypeAnalysis(projectId, persistence, smellList.iterator(), smellType,
+                duplicationChecker, commitQueries, smellQueries, branchQueries,
+                PreloadedBranchLookup.load(projectId, persistence, commitQueries, branchQueries),
+                new IdCache(), 0, null).query();
+        debugSmellInsertions();
+
+        // The gap commits are read from the preloaded commits.
+        verify(branchQueries, never()).shaFromOrdinalQuery(anyInt(), anyInt(), anyInt(), anyBoolean());
+
+        // G is the commit following A, thus refactoring the smells of A.
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, G.sha, firstSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, G.sha, secondSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryInsertionStatement(projectId, B.sha, secondSmell, SmellCategory.INTRODUCTION);
+
+        // X was not analyzed by SmellDetector, thus the refactoring is lost.
+        verify(smellQueries).lostSmellCategoryInsertionStatement(projectId, secondSmell, SmellCategory.REFACTOR, B.ordinal + 1, C.ordinal);
+        verify(smellQueries, never()).smellCategoryInsertionStatement(projectId, X.sha, secondSmell, SmellCategory.REFACTOR);
+    }
+
+    private static Map<String, Object> branchCommit(Commit commit, int ordinal, int inDetector) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("branch_id", 0);
+        row.put("ordinal", ordinal);
+        row.put("sha1", commit.sha);
+        row.put("in_detector", inDetector);
+        return row;
+    }
+
     /**
      * <pre><code>
      * *  A (1  )
@@ -464,7 +541,7 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockLastBranchCommit(0, secondCommit.sha);
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         // We introduce the new smell instance definition with renamed_from filled in.
         // Since we use a captor we have to check all invocations of smellInsertionStatement...
@@ -475,7 +552,7 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         assertEquals(expectedSecondSmell, renamed);
         assertEquals(firstSmell, renamed.parent);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, expectedSecondSmell, SmellCategory.PRESENCE);
@@ -511,7 +588,7 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         // We introduce the new smell instance definition with renamed_from filled in.
         // Since we use a captor we have to check all invocations of smellInsertionStatement...
@@ -521,7 +598,7 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         assertEquals(expectedSecondSmell, renamed);
         assertEquals(firstSmell, renamed.parent);
 
-        verify(persistence, times(4)).addStatements(any());
+        verify(persistence, times(4)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -545,10 +622,10 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(2)).addStatements(any());
+        verify(persistence, times(2)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
     }
@@ -600,12 +677,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(15)).addStatements(any());
+        verify(persistence, times(15)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A0.sha, thirdSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A0.sha, thirdSmell, SmellCategory.INTRODUCTION);
@@ -692,12 +769,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(18)).addStatements(any());
+        verify(persistence, times(18)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -788,12 +865,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(17)).addStatements(any());
+        verify(persistence, times(17)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -877,12 +954,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         mockBranchParentCommitSmells(2, firstSmell);
 
         getAnalysis().query();
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(17)).addStatements(any());
+        verify(persistence, times(17)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -970,12 +1047,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(19)).addStatements(any());
+        verify(persistence, times(19)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1062,11 +1139,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1149,12 +1226,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(17)).addStatements(any());
+        verify(persistence, times(17)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, B.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, B.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1242,11 +1319,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
-        verify(persistence, times(17)).addStatements(any());
+        verify(persistence, times(17)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1332,12 +1409,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
 
-        verify(persistence, times(15)).addStatements(any());
+        verify(persistence, times(15)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1413,11 +1490,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
 
         getAnalysis().query();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1495,11 +1572,11 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1577,12 +1654,12 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, expectedSecondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, expectedRenamedFirstSmell);
 
-        verify(persistence, times(8)).addStatements(any());
+        verify(persistence, times(8)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -1631,14 +1708,14 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         getAnalysis().query();
 
 
-        verify(persistence, times(4)).execute(any());
+        verify(persistence, times(4)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, thirdSmell);
         verify(smellQueries).smellInsertionStatement(projectId, fourthSmell);
 
 
-        verify(persistence, times(12)).addStatements(any());
+        verify(persistence, times(12)).addParameterizedStatements(any());
         // Initial branch
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
@@ -1658,4 +1735,130 @@ public class BranchAwareSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase
         verify(smellQueries).smellCategoryInsertionStatement(projectId, C.sha, fourthSmell, SmellCategory.INTRODUCTION);
     }
 
-}
\ No newline at end of file
+    /**
+     * <pre><code>
+     * .    A (1, 2,     )
+     * |\
+     * | .  B (1,    3,  )
+     * |/
+     * .    C (      3, 4) [merge]
+     * </pre></code>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testMergeAndBranchStartReadFromSnapshots() throws QueryException {
+        Commit A = new Commit("0-A", 1);
+        Commit B = new Commit("1-B", 2);
+        Commit C = new Commit("0-C", 3);
+        Smell fourthSmell = new Smell(smellType, "fourthSmellInstance", "fourthSmellFile");
+        mockSmellId(fourthSmell);
+        IdCache idCache = new IdCache();
+        idCache.putCommitId(A.sha, 1);
+        idCache.putCommitId(B.sha, 2);
+        idCache.putCommitId(C.sha, 3);
+
+        addSmell(A, firstSmell);
+        addSmell(A, secondSmell);
+        addSmell(B, firstSmell);
+        addSmell(B, thirdSmell);
+        addSmell(C, thirdSmell);
+        addSmell(C, fourthSmell);
+        mockCommitBranch(A, 0, 0);
+        mockCommitBranch(B, 1, 0);
+        mockCommitBranch(C, 0, 1);
+        mockLastBranchCommit(0, C);
+        mockLastBranchCommit(1, B);
+        mockMergeCommit(C, B);
+
+        doReturn("parentCommitShaStatement").when(branchQueries).parentCommitShaQuery(projectId, 1);
+        doReturn(Collections.singletonList(Collections.singletonMap("sha1", A.sha)))
+                .when(persistence).query("parentCommitShaStatement");
+        // A starts a branch and B is merged.
+        Map<Integer, Integer> branchingCommitReads = new HashMap<>();
+        branchingCommitReads.put(1, 1);
+        branchingCommitReads.put(2, 1);
+
+        new BranchAwareSmellTypeAnalysis(projectId, persistence, smellList.iterator(), smellType,
+                duplicationChecker, commitQueries, smellQueries, branchQueries,
+                new PersistenceBranchLookup(projectId, persistence, commitQueries, branchQueries), idCache, 0,
+                branchingCommitReads).query();
+
+        // The parent and merged commits smells are read from memory.
+        verify(smellQueries, never()).commitSmellsQuery(anyInt(), any(), any());
+        verify(branchQueries, never()).parentCommitSmellsQuery(anyInt(), anyInt(), any());
+        verify(persistence, never()).commit();
+
+        verify(persistence, times(4)).execute(nullable(ParameterizedStatement.class));
+        verify(persistence, times(12)).addCopyRows(any());
+        // Initial branch
+        verify(smellQueries).smellCategoryRow(projectId, 1, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 1, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryRow(projectId, 1, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 1, secondSmell, SmellCategory.INTRODUCTION);
+
+        // First Branch
+        verify(smellQueries).smellCategoryRow(projectId, 2, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 2, secondSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryRow(projectId, 2, thirdSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 2, thirdSmell, SmellCategory.INTRODUCTION);
+
+        // Merge
+        verify(smellQueries).smellCategoryRow(projectId, 3, firstSmell, SmellCategory.REFACTOR);
+        verify(smellQueries).smellCategoryRow(projectId, 3, thirdSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 3, fourthSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 3, fourthSmell, SmellCategory.INTRODUCTION);
+
+        // Every smell of the snapshotted commits is shared, not only the last notified one.
+        verify(smellQueries, never()).smellCategoryRow(projectId, 2, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries, never()).smellCategoryRow(projectId, 3, thirdSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries, never()).smellCategoryRow(projectId, 3, secondSmell, SmellCategory.REFACTOR);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1)     Analyzed by a previous analysis
+     * |
+     * * B (1, 2)
+     * </code></pre>
+     *
+     * @throws QueryException
+     */
+    @Test
+    public void testHandleIncrementalAnalysis() throws QueryException {
+        Commit analyzedCommit = new Commit("A", 1);
+        Commit newCommit = new Commit("B", 2);
+        IdCache idCache = new IdCache();
+        idCache.putCommitId(analyzedCommit.sha, 1);
+        idCache.putCommitId(newCommit.sha, 2);
+
+        mockCommitSmells(analyzedCommit, firstSmell);
+        addSmell(newCommit, firstSmell);
+        addSmell(newCommit, secondSmell);
+        mockCommitBranch(analyzedCommit, 0, 0);
+        mockCommitBranch(newCommit, 0, 1);
+        mockLastBranchCommit(0, newCommit);
+
+        List<Map<String, Object>> analyzedResult = new ArrayList<>();
+        Map<String, Object> analyzed = new HashMap<>();
+        analyzed.put("id", 1);
+        analyzed.put("sha1", analyzedCommit.sha);
+        analyzedResult.add(analyzed);
+        doReturn(analyzedResult).when(persistence).query(lastCommitBeforeStatement(projectId, 0, 1));
+
+        new BranchAwareSmellTypeAnalysis(projectId, persistence, smellList.iterator(), smellType,
+                duplicationChecker, commitQueries, smellQueries, branchQueries,
+                new PersistenceBranchLookup(projectId, persistence, commitQueries, branchQueries), idCache, 1, null).query();
+
+        // The smells of the analyzed commit are not persisted again
+        verify(smellQueries, never()).smellCategoryRow(eq(projectId), eq(1), any(Smell.class), any(SmellCategory.class));
+        verify(smellQueries, never()).smellInsertionStatement(projectId, firstSmell);
+        verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
+
+        // The new commit is compared to the smells of the analyzed commit
+        verify(smellQueries).smellCategoryRow(projectId, 2, firstSmell, SmellCategory.PRESENCE);
+        verify(smellQueries, never()).smellCategoryRow(projectId, 2, firstSmell, SmellCategory.INTRODUCTION);
+        verify(smellQueries).smellCategoryRow(projectId, 2, secondSmell, SmellCategory.PRESENCE);
+        verify(smellQueries).smellCategoryRow(projectId, 2, secondSmell, SmellCategory.INTRODUCTION);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MergedSmellStreamTest {
+
+    @Test
+    public void testNoSource() {
+        MergedSmellStream stream = new MergedSmellStream(Collections.emptyMap(), 2);
+
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void testInstancesMergedByCommit() {
+        Map<String, Callable<? extends Iterator<Map<String, Object>>>> sources = new LinkedHashMap<>();
+        sources.put("MIM", () -> instances(0, 2, 2, 5).iterator());
+        sources.put("LIC", () -> instances(1, 2, 6).iterator());
+        sources.put("HMU", () -> instances().iterator());
+
+        List<String> merged = new ArrayList<>();
+        try (MergedSmellStream stream = new MergedSmellStream(sources, 2)) {
+            MergedSmellStream.TypedInstance smell;
+            while (stream.hasNext()) {
+                smell = stream.next();
+                merged.add(smell.smellType() + "-" + smell.instance.get("commit_number"));
+            }
+        }
+
+        assertEquals(Arrays.asList("MIM-0", "LIC-1", "MIM-2", "MIM-2", "LIC-2", "MIM-5", "LIC-6"), merged);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSourceFailure() {
+        Map<String, Callable<? extends Iterator<Map<String, Object>>>> sources = new LinkedHashMap<>();
+        sources.put("MIM", () -> instances(0, 1).iterator());
+        sources.put("LIC", () -> {
+            throw new IOException("Database unavailable");
+        });
+
+        try (MergedSmellStream stream = new MergedSmellStream(sources, 2)) {
+            while (stream.hasNext()) {
+                stream.next();
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class, timeout = 10000)
+    public void testSourceError() {
+        Map<String, Callable<? extends Iterator<Map<String, Object>>>> sources = new LinkedHashMap<>();
+        sources.put("MIM", () -> instances(0, 1).iterator());
+        sources.put("LIC", () -> new Iterator<Map<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                throw new OutOfMemoryError("Java heap space");
+            }
+        });
+
+        try (MergedSmellStream stream = new MergedSmellStream(sources, 2)) {
+            while (stream.hasNext()) {
+                stream.next();
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> instances(int... commitNumbers) {
+        List<Map<String, Object>> instances = new ArrayList<>();
+        Map<String, Object> instance;
+        for (int commitNumber : commitNumbers) {
+            instance = new HashMap<>();
+            instance.put("key", "sha-" + commitNumber);
+            instance.put("commit_number", commitNumber);
+            instances.add(instance);
+        }
+        return instances;
+    }
+}
@@ -19,6 +19,7 @@ package fr.inria.sniffer.tracker.analysis.query.smell;
 
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.ParameterizedStatement;
 import fr.inria.sniffer.tracker.analysis.persistence.SmellCategory;
 import fr.inria.sniffer.tracker.analysis.query.QueryException;
 import org.junit.Before;
@@ -28,6 +29,7 @@ import org.mockito.ArgumentCaptor;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -66,10 +68,10 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(2)).addStatements(any());
+        verify(persistence, times(2)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
     }
@@ -93,10 +95,10 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, lastCommitSha, firstSmell, SmellCategory.REFACTOR);
@@ -120,11 +122,11 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(5)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -152,11 +154,11 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(5)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -186,11 +188,11 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
 
 
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(6)).addStatements(any());
+        verify(persistence, times(6)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, secondSmell, SmellCategory.PRESENCE);
@@ -218,10 +220,10 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, secondCommit.sha, firstSmell, SmellCategory.PRESENCE);
@@ -251,11 +253,11 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         debugSmellInsertions();
 
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries, times(2)).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(8)).addStatements(any());
+        verify(persistence, times(8)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         // The 1st and 3rd commits will insert the secondSmell since 3rd has no idea it existed.
@@ -301,11 +303,11 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries, times(2)).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(8)).addStatements(any());
+        verify(persistence, times(8)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         // The 1st and Nth commits will insert the secondSmell since 3rd has no idea it existed.
@@ -343,11 +345,12 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, secondSmell);
 
-        verify(persistence, times(6)).addStatements(any());
+        verify(persistence, times(5)).addParameterizedStatements(any());
+        verify(persistence, times(1)).addStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
         // The 1st and Nth commits will insert the secondSmell since 3rd has no idea it existed.
@@ -382,7 +385,7 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries, times(2)).smellInsertionStatement(eq(projectId), smellCaptor.capture());
         // Check that the renamed commit has a set parent
@@ -390,7 +393,7 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         assertEquals(expectedSecondSmell, renamed);
         assertEquals(firstSmell, renamed.parent);
 
-        verify(persistence, times(3)).addStatements(any());
+        verify(persistence, times(3)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -427,7 +430,7 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(2)).execute(any());
+        verify(persistence, times(2)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries, times(2)).smellInsertionStatement(eq(projectId), smellCaptor.capture());
         // Check that the renamed commit has a set parent
@@ -435,7 +438,7 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         assertEquals(expectedSecondSmell, renamed);
         assertEquals(firstSmell, renamed.parent);
 
-        verify(persistence, times(4)).addStatements(any());
+        verify(persistence, times(4)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, firstCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
 
@@ -456,10 +459,10 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         mockEndCommit(thirdCommit.sha);
         getAnalysis().query();
 
-        verify(persistence, times(1)).execute(any());
+        verify(persistence, times(1)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
 
-        verify(persistence, times(2)).addStatements(any());
+        verify(persistence, times(2)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, thirdCommit.sha, firstSmell, SmellCategory.INTRODUCTION);
     }
@@ -518,12 +521,12 @@ public class OrdinalSmellTypeAnalysisTest extends SmellTypeAnalysisTestCase {
         getAnalysis().query();
         debugSmellInsertions();
 
-        verify(persistence, times(3)).execute(any());
+        verify(persistence, times(3)).execute(nullable(ParameterizedStatement.class));
         verify(smellQueries).smellInsertionStatement(projectId, firstSmell);
         verify(smellQueries).smellInsertionStatement(projectId, expectedSecondSmell);
         verify(smellQueries).smellInsertionStatement(projectId, expectedRenamedFirstSmell);
 
-        verify(persistence, times(8)).addStatements(any());
+        verify(persistence, times(8)).addParameterizedStatements(any());
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.PRESENCE);
         verify(smellQueries).smellCategoryInsertionStatement(projectId, A.sha, firstSmell, SmellCategory.INTRODUCTION);
 
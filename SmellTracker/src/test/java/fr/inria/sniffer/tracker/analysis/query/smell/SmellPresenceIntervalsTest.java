@@ -0,0 +1,169 @@
+/**
+ *   Sniffer - Analyze the history of Android code smells at scale.
+ *   Copyright (C) 2019 Sarra Habchi
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.inria.sniffer.tracker.analysis.query.smell;
+
+import fr.inria.sniffer.tracker.analysis.model.Commit;
+import fr.inria.sniffer.tracker.analysis.model.Smell;
+import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.queries.SmellQueries;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SmellPresenceIntervalsTest {
+    private final int projectId = 1;
+    private final int branchId = 3;
+
+    private Persistence persistence;
+    private SmellQueries smellQueries;
+    private SmellPresenceIntervals intervals;
+
+    private Smell firstSmell;
+    private Smell secondSmell;
+
+    @Before
+    public void setUp() {
+        persistence = Mockito.mock(Persistence.class);
+        smellQueries = Mockito.mock(SmellQueries.class);
+        intervals = new SmellPresenceIntervals(projectId, branchId, persistence, smellQueries);
+
+        firstSmell = new Smell("TEST", "instance", "/file");
+        firstSmell.id = 1;
+        secondSmell = new Smell("TEST", "secondInstance", "/file");
+        secondSmell.id = 2;
+    }
+
+    private static Commit branchCommit(String sha, int branchOrdinal) {
+        Commit commit = new Commit(sha, branchOrdinal);
+        commit.setBranchOrdinal(branchOrdinal);
+        return commit;
+    }
+
+    /**
+     * <pre><code>
+     * * A (1, 2)
+     * |
+     * * B (1, 2)
+     * |
+     * * C (1   )
+     * </code></pre>
+     */
+    @Test
+    public void testIntervalClosedOnAbsence() {
+        Commit first = branchCommit("A", 0);
+        Commit second = branchCommit("B", 1);
+        Commit third = branchCommit("C", 2);
+
+        intervals.notifyPresence(firstSmell, first);
+        intervals.notifyPresence(secondSmell, first);
+        intervals.closeAbsent(first);
+        intervals.notifyPresence(firstSmell, second);
+        intervals.notifyPresence(secondSmell, second);
+        intervals.closeAbsent(second);
+        intervals.notifyPresence(firstSmell, third);
+        intervals.closeAbsent(third);
+
+        // Only the refactored smell interval is persisted
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, secondSmell, 0, 1);
+        verify(smellQueries, never()).smellPresenceIntervalStatement(anyInt(), anyInt(), eq(firstSmell), anyInt(), anyInt());
+
+        intervals.closeAll();
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 2);
+        verify(persistence, times(2)).addParameterizedStatements(any());
+    }
+
+    /**
+     * <pre><code>
+     * * A (1)
+     * |
+     * * B ( )
+     * |
+     * * C (1)
+     * </code></pre>
+     */
+    @Test
+    public void testReintroducedSmellOpensNewInterval() {
+        Commit first = branchCommit("A", 0);
+        Commit second = branchCommit("B", 1);
+        Commit third = branchCommit("C", 2);
+
+        intervals.notifyPresence(firstSmell, first);
+        intervals.closeAbsent(first);
+        intervals.closeAbsent(second);
+        intervals.notifyPresence(firstSmell, third);
+        intervals.closeAll();
+
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 0);
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 2, 2);
+    }
+
+    /**
+     * <pre><code>
+     * * A (1)
+     * |
+     * * B      (unknown to Paprika)
+     * |
+     * * C (1)
+     * </code></pre>
+     */
+    @Test
+    public void testIntervalClosedOnGap() {
+        Commit first = branchCommit("A", 0);
+        Commit third = branchCommit("C", 2);
+
+        intervals.notifyPresence(firstSmell, first);
+        intervals.closeAbsent(first);
+        intervals.notifyPresence(firstSmell, third);
+        intervals.closeAbsent(third);
+        intervals.closeAll();
+
+        // The gap commit is not considered holding the smell.
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 0);
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 2, 2);
+        verify(smellQueries, never()).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 2);
+    }
+
+    @Test
+    public void testFlushKeepsIntervalOpen() {
+        Commit first = branchCommit("A", 0);
+        Commit second = branchCommit("B", 1);
+
+        intervals.notifyPresence(firstSmell, first);
+        intervals.closeAbsent(first);
+        intervals.flush();
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 0);
+
+        // An unchanged interval is not written again
+        intervals.flush();
+        verify(persistence, times(1)).addParameterizedStatements(any());
+
+        // The interval is then extended from its first commit
+        intervals.notifyPresence(firstSmell, second);
+        intervals.closeAbsent(second);
+        intervals.closeAll();
+        verify(smellQueries).smellPresenceIntervalStatement(projectId, branchId, firstSmell, 0, 1);
+        verify(persistence, times(2)).addParameterizedStatements(any());
+    }
+}
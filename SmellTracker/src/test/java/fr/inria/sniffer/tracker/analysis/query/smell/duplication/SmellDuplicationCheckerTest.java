@@ -21,6 +21,8 @@ import fr.inria.sniffer.detector.neo4j.QueryEngine;
 import fr.inria.sniffer.tracker.analysis.model.Commit;
 import fr.inria.sniffer.tracker.analysis.model.Smell;
 import fr.inria.sniffer.tracker.analysis.persistence.Persistence;
+import fr.inria.sniffer.tracker.analysis.persistence.Row;
+import fr.inria.sniffer.tracker.analysis.persistence.RowHandler;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -28,6 +30,7 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,9 +43,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class SmellDuplicationCheckerTest {
 
@@ -92,9 +95,25 @@ public class SmellDuplicationCheckerTest {
     }
 
     private SmellDuplicationChecker getDuplicationChecker() {
+        return getDuplicationChecker(16);
+    }
+
+    private SmellDuplicationChecker getDuplicationChecker(int qualifiedNameSize) {
         Persistence persistence = mock(Persistence.class);
-        when(persistence.query(anyString())).thenReturn(filesRenames);
-        return new SmellDuplicationChecker(1, persistence, queryEngine);
+        doAnswer(invocation -> {
+            RowHandler handler = invocation.getArgument(1);
+            for (Map<String, Object> rename : filesRenames) {
+                handler.handle(mapRow(rename));
+            }
+            return true;
+        }).when(persistence).query(anyString(), any(RowHandler.class));
+        return new SmellDuplicationChecker(1, persistence, queryEngine, qualifiedNameSize);
+    }
+
+    private static Row mapRow(Map<String, Object> values) throws SQLException {
+        Row row = mock(Row.class);
+        doAnswer(invocation -> values.get(invocation.<String>getArgument(0))).when(row).getString(anyString());
+        return row;
     }
 
     private void mockPreviousQualifiedName(String qualifiedName) {
@@ -283,4 +302,56 @@ public class SmellDuplicationCheckerTest {
         assertEquals("method#a.b.c$myInnerClass$AnotherInnerClass", original.instance);
         assertEquals(g2jRename.oldFile, original.file);
     }
+
+    @Test
+    public void firstRenamingOfAFileInACommitIsKept() {
+        addRenameEntry(new SmellDuplicationChecker.FileRenameEntry(sameOldFile.sha1,
+                "x/y/z.java", sameOldFile.newFile));
+        Smell instance = new Smell("MIM", "d.e.f", sameOldFile.newFile);
+        Commit commit = new Commit(sameOldFile.sha1, 1);
+
+        mockPreviousQualifiedName("a.b.c");
+        SmellDuplicationChecker checker = getDuplicationChecker();
+        Smell original = checker.original(instance, commit, parent);
+
+        assertNotNull(original);
+        assertEquals(sameOldFile.oldFile, original.file);
+    }
+
+    @Test
+    public void qualifiedNameIsCachedPerCommitAndFile() {
+        Smell instance = new Smell("MIM", "method#d.e.f", sameOldFile.newFile);
+        Smell otherType = new Smell("HMU", "d.e.f", sameOldFile.newFile);
+        Commit commit = new Commit(sameOldFile.sha1, 1);
+        Commit otherParent = new Commit("otherParent", 0);
+
+        mockPreviousQualifiedName("a.b.c");
+        SmellDuplicationChecker checker = getDuplicationChecker();
+        checker.original(instance, commit, parent);
+        mockPreviousQualifiedName("x.y.z");
+        Smell cached = checker.original(otherType, commit, parent);
+        Smell queried = checker.original(otherType, commit, otherParent);
+
+        assertEquals("a.b.c", cached.instance);
+        assertEquals("x.y.z", queried.instance);
+        assertEquals(1, checker.getQualifiedNameHits());
+        assertEquals(2, checker.getQualifiedNameMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedQualifiedNameIsEvicted() {
+        Smell first = new Smell("MIM", "d.e.f", sameOldFile.newFile);
+        Smell second = new Smell("MIM", "g.h.i", sameCommit.newFile);
+        Commit firstCommit = new Commit(sameOldFile.sha1, 1);
+        Commit secondCommit = new Commit(sameCommit.sha1, 2);
+
+        mockPreviousQualifiedName("a.b.c");
+        SmellDuplicationChecker checker = getDuplicationChecker(1);
+        checker.original(first, firstCommit, parent);
+        checker.original(second, secondCommit, parent);
+        checker.original(first, firstCommit, parent);
+
+        assertEquals(0, checker.getQualifiedNameHits());
+        assertEquals(3, checker.getQualifiedNameMisses());
+    }
 }